@@ -0,0 +1,65 @@
+package benchmark;
+
+import model.Account;
+import model.TransferStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(32)
+public class AccountTransferBenchmark {
+    static final long INITIAL_BALANCE = 1_000_000_000_000L;
+    static final long AMOUNT_TO_TRANSFER = 1L;
+
+    @Param({"1000", "1000000", "10000000"})
+    int accountCount;
+
+    @Param({"UNIFORM", "ZIPF", "HOT_MERCHANT"})
+    TransferWorkload workload;
+
+    @Param({"monitor", "striped", "optimistic", "sharded"})
+    String transferStrategy;
+
+    private Account[] accounts;
+
+    @Setup(Level.Trial)
+    public void createAccounts() {
+        Account.setTransferStrategy(TransferStrategy.forName(transferStrategy));
+        accounts = new Account[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            accounts[i] = new Account(i, INITIAL_BALANCE);
+        }
+    }
+
+    @Benchmark
+    public void transfer(Transfers transfers) {
+        int index = transfers.sequence.next();
+        Account accountFrom = accounts[transfers.sequence.accountFrom(index)];
+        Account accountTo = accounts[transfers.sequence.accountTo(index)];
+        accountFrom.transfer(accountTo, AMOUNT_TO_TRANSFER);
+    }
+
+    @State(Scope.Thread)
+    public static class Transfers {
+        TransferSequence sequence;
+
+        @Setup(Level.Trial)
+        public void generate(AccountTransferBenchmark benchmark) {
+            sequence = new TransferSequence(
+                    benchmark.workload, benchmark.accountCount, ThreadLocalRandom.current().nextLong());
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package benchmark;
+
+import model.Account;
+import model.TransferResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static benchmark.AccountTransferBenchmark.AMOUNT_TO_TRANSFER;
+import static benchmark.AccountTransferBenchmark.INITIAL_BALANCE;
+
+/**
+ * Consistent reads of several balances while transfers between the same accounts go on, compare the transfer
+ * throughput with {@code transferOnly} to see what readers cost the transfer path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BalanceReadBenchmark {
+    @Param({"1000", "1000000"})
+    int accountCount;
+
+    @Param({"1", "4"})
+    int accountsPerRead;
+
+    private Account[] accounts;
+
+    @Setup
+    public void createAccounts() {
+        accounts = new Account[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            accounts[i] = new Account(i, INITIAL_BALANCE);
+        }
+    }
+
+    @Benchmark
+    @Group("readWhileTransferring")
+    @GroupThreads(3)
+    public long[] read(Reads reads) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < reads.accounts.length; i++) {
+            reads.accounts[i] = accounts[random.nextInt(accountCount)];
+        }
+        Account.readBalances(reads.accounts, reads.balances);
+        return reads.balances;
+    }
+
+    @Benchmark
+    @Group("readWhileTransferring")
+    @GroupThreads(1)
+    public boolean transfer() {
+        return transferRandomly();
+    }
+
+    @Benchmark
+    @Group("transferOnly")
+    @GroupThreads(1)
+    public boolean transferOnly() {
+        return transferRandomly();
+    }
+
+    private boolean transferRandomly() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int accountFrom = random.nextInt(accountCount);
+        int accountTo = (accountFrom + 1 + random.nextInt(accountCount - 1)) % accountCount;
+        return accounts[accountFrom].tryTransfer(accounts[accountTo], AMOUNT_TO_TRANSFER) == TransferResult.OK;
+    }
+
+    @State(Scope.Thread)
+    public static class Reads {
+        Account[] accounts;
+        long[] balances;
+
+        @Setup
+        public void allocate(BalanceReadBenchmark benchmark) {
+            accounts = new Account[benchmark.accountsPerRead];
+            balances = new long[benchmark.accountsPerRead];
+        }
+    }
+}
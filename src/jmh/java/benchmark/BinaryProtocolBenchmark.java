@@ -0,0 +1,109 @@
+package benchmark;
+
+import model.Account;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import repository.AccountsRepository;
+import service.MoneyTransferService;
+import tcp.BinaryTransferServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static benchmark.AccountTransferBenchmark.AMOUNT_TO_TRANSFER;
+import static benchmark.AccountTransferBenchmark.INITIAL_BALANCE;
+
+/**
+ * Transfers over the binary TCP endpoint on loopback, every thread is a connection which sends a window of
+ * {@link #PIPELINE} requests and reads their responses, so throughput counts transfers, not windows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(4)
+public class BinaryProtocolBenchmark {
+    static final int PIPELINE = 256;
+
+    @Param({"1000", "1000000"})
+    int accountCount;
+
+    @Param({"UNIFORM", "ZIPF", "HOT_MERCHANT"})
+    TransferWorkload workload;
+
+    private BinaryTransferServer server;
+
+    @Setup(Level.Trial)
+    public void startServer() throws IOException {
+        AccountsRepository accountsRepository = AccountsRepository.getInstance();
+        for (int i = 0; i < accountCount; i++) {
+            accountsRepository.add(new Account(i, INITIAL_BALANCE));
+        }
+        server = new BinaryTransferServer(MoneyTransferService.getInstance(), new InetSocketAddress("localhost", 0),
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() {
+        server.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIPELINE)
+    public long transfer(Connection connection) throws IOException {
+        ByteBuffer requests = connection.requests;
+        requests.clear();
+        for (int i = 0; i < PIPELINE; i++) {
+            int index = connection.sequence.next();
+            requests.putLong(i)
+                    .putLong(connection.sequence.accountFrom(index))
+                    .putLong(connection.sequence.accountTo(index))
+                    .putLong(AMOUNT_TO_TRANSFER);
+        }
+        requests.flip();
+        ByteBuffer responses = connection.responses;
+        responses.clear();
+        while (requests.hasRemaining() || responses.hasRemaining()) {
+            if (requests.hasRemaining()) {
+                connection.channel.write(requests);
+            }
+            if (connection.channel.read(responses) < 0) {
+                throw new IOException("Connection closed");
+            }
+        }
+        return responses.getLong(0);
+    }
+
+    @State(Scope.Thread)
+    public static class Connection {
+        final ByteBuffer requests = ByteBuffer.allocateDirect(PIPELINE * BinaryTransferServer.REQUEST_SIZE);
+        final ByteBuffer responses = ByteBuffer.allocateDirect(PIPELINE * BinaryTransferServer.RESPONSE_SIZE);
+        SocketChannel channel;
+        TransferSequence sequence;
+
+        @Setup(Level.Trial)
+        public void connect(BinaryProtocolBenchmark benchmark) throws IOException {
+            channel = SocketChannel.open(new InetSocketAddress("localhost", benchmark.server.getPort()));
+            sequence = new TransferSequence(
+                    benchmark.workload, benchmark.accountCount, ThreadLocalRandom.current().nextLong());
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
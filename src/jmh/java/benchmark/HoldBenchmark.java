@@ -0,0 +1,73 @@
+package benchmark;
+
+import model.Account;
+import model.TransferResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import repository.AccountsRepository;
+import service.MoneyTransferService;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static benchmark.AccountTransferBenchmark.AMOUNT_TO_TRANSFER;
+import static benchmark.AccountTransferBenchmark.INITIAL_BALANCE;
+
+/**
+ * A hold captured right away against a plain transfer of the same amount between random accounts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(16)
+public class HoldBenchmark {
+    private static final long TTL_MILLIS = 60_000L;
+
+    @Param({"64", "1000000"})
+    int accountCount;
+
+    private MoneyTransferService moneyTransferService;
+
+    @Setup(Level.Trial)
+    public void createAccounts() {
+        AccountsRepository accountsRepository = AccountsRepository.getInstance();
+        for (int i = 0; i < accountCount; i++) {
+            accountsRepository.add(new Account(i, INITIAL_BALANCE));
+        }
+        moneyTransferService = MoneyTransferService.getInstance();
+    }
+
+    @Benchmark
+    public TransferResult holdAndCapture() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long accountFromId = random.nextInt(accountCount);
+        long accountToId = otherAccountThan(accountFromId, random);
+        long holdId = moneyTransferService.tryHold(accountFromId, AMOUNT_TO_TRANSFER,
+                System.currentTimeMillis() + TTL_MILLIS);
+        if (holdId < 0) {
+            return MoneyTransferService.declineOf(holdId);
+        }
+        return moneyTransferService.capture(holdId, accountToId, AMOUNT_TO_TRANSFER);
+    }
+
+    @Benchmark
+    public TransferResult transfer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long accountFromId = random.nextInt(accountCount);
+        return moneyTransferService.tryTransfer(accountFromId, otherAccountThan(accountFromId, random),
+                AMOUNT_TO_TRANSFER);
+    }
+
+    //a hold captured to the same account would stay active until it expires
+    private long otherAccountThan(long accountId, ThreadLocalRandom random) {
+        return (accountId + 1 + random.nextInt(accountCount - 1)) % accountCount;
+    }
+}
@@ -0,0 +1,55 @@
+package benchmark;
+
+import idempotency.IdempotencyCache;
+import model.TransferResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost which the idempotency cache adds to a transfer with a new key, the cache is full and every key evicts
+ * an older one, and to a retry which is answered from the cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(32)
+public class IdempotencyCacheBenchmark {
+    private static final int CAPACITY = 1 << 20;
+    private static final long FINGERPRINT = IdempotencyCache.fingerprint(1L, 2L, 100L);
+
+    private IdempotencyCache idempotencyCache;
+
+    @Setup
+    public void fillCache() {
+        idempotencyCache = new IdempotencyCache(CAPACITY, TimeUnit.HOURS.toMillis(1));
+        for (long key = 0; key < CAPACITY; key++) {
+            idempotencyCache.begin(key, key, FINGERPRINT);
+            idempotencyCache.complete(key, key, TransferResult.OK);
+        }
+    }
+
+    @Benchmark
+    public TransferResult newKey() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long keyHigh = random.nextLong();
+        long keyLow = random.nextLong();
+        TransferResult stored = idempotencyCache.begin(keyHigh, keyLow, FINGERPRINT);
+        idempotencyCache.complete(keyHigh, keyLow, TransferResult.OK);
+        return stored;
+    }
+
+    @Benchmark
+    public TransferResult retry() {
+        long key = ThreadLocalRandom.current().nextInt(CAPACITY);
+        return idempotencyCache.begin(key, key, FINGERPRINT);
+    }
+}
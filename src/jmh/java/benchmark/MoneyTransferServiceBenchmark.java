@@ -0,0 +1,78 @@
+package benchmark;
+
+import json.MoneyTransferRequest;
+import model.Account;
+import model.TransferStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import repository.AccountStore;
+import repository.AccountsRepository;
+import service.MoneyTransferService;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static benchmark.AccountTransferBenchmark.AMOUNT_TO_TRANSFER;
+import static benchmark.AccountTransferBenchmark.INITIAL_BALANCE;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(32)
+public class MoneyTransferServiceBenchmark {
+    @Param({"1000", "1000000", "10000000"})
+    int accountCount;
+
+    @Param({"UNIFORM", "ZIPF", "HOT_MERCHANT"})
+    TransferWorkload workload;
+
+    @Param({"monitor", "striped", "optimistic", "sharded"})
+    String transferStrategy;
+
+    @Param({"open-addressing", "map", "off-heap"})
+    String accountStore;
+
+    private MoneyTransferService moneyTransferService;
+
+    @Setup(Level.Trial)
+    public void createAccounts() {
+        Account.setTransferStrategy(TransferStrategy.forName(transferStrategy));
+        //the repository singleton is created on first use, so the store has to be chosen before it
+        System.setProperty(AccountStore.SYSTEM_PROPERTY, accountStore);
+        System.setProperty(AccountStore.CAPACITY_SYSTEM_PROPERTY, String.valueOf(accountCount));
+        AccountsRepository accountsRepository = AccountsRepository.getInstance();
+        moneyTransferService = MoneyTransferService.getInstance();
+        for (int i = 0; i < accountCount; i++) {
+            accountsRepository.add(new Account(i, INITIAL_BALANCE));
+        }
+    }
+
+    @Benchmark
+    public void transfer(Transfers transfers) {
+        int index = transfers.sequence.next();
+        MoneyTransferRequest request = transfers.request;
+        request.setAccountFromId(transfers.sequence.accountFrom(index));
+        request.setAccountToId(transfers.sequence.accountTo(index));
+        moneyTransferService.transfer(request);
+    }
+
+    @State(Scope.Thread)
+    public static class Transfers {
+        final MoneyTransferRequest request = new MoneyTransferRequest(0L, 0L, AMOUNT_TO_TRANSFER);
+        TransferSequence sequence;
+
+        @Setup(Level.Trial)
+        public void generate(MoneyTransferServiceBenchmark benchmark) {
+            sequence = new TransferSequence(
+                    benchmark.workload, benchmark.accountCount, ThreadLocalRandom.current().nextLong());
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package benchmark;
+
+import model.Account;
+import model.TransferResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import repository.AccountsRepository;
+import service.MoneyTransferService;
+import service.MultiLegTransfer;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static benchmark.AccountTransferBenchmark.AMOUNT_TO_TRANSFER;
+import static benchmark.AccountTransferBenchmark.INITIAL_BALANCE;
+
+/**
+ * Multi-leg transfers between random accounts, half of the legs debits and half credits, against the same
+ * money moved by separate transfers which are not atomic. Few accounts make threads contend for the same locks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(16)
+public class MultiLegTransferBenchmark {
+    @Param({"64", "1000000"})
+    int accountCount;
+
+    @Param({"2", "4", "8", "16"})
+    int legs;
+
+    private MoneyTransferService moneyTransferService;
+
+    @Setup(Level.Trial)
+    public void createAccounts() {
+        AccountsRepository accountsRepository = AccountsRepository.getInstance();
+        for (int i = 0; i < accountCount; i++) {
+            accountsRepository.add(new Account(i, INITIAL_BALANCE));
+        }
+        moneyTransferService = MoneyTransferService.getInstance();
+    }
+
+    @Benchmark
+    public TransferResult multiLeg(Legs legs) {
+        legs.next();
+        legs.transfer.clear();
+        for (int i = 0; i < legs.accountIds.length; i++) {
+            legs.transfer.add(legs.accountIds[i], i % 2 == 0 ? -AMOUNT_TO_TRANSFER : AMOUNT_TO_TRANSFER);
+        }
+        return moneyTransferService.tryTransfer(legs.transfer);
+    }
+
+    @Benchmark
+    public void pairwise(Legs legs) {
+        legs.next();
+        for (int i = 0; i < legs.accountIds.length; i += 2) {
+            moneyTransferService.tryTransfer(legs.accountIds[i], legs.accountIds[i + 1], AMOUNT_TO_TRANSFER);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Legs {
+        final MultiLegTransfer transfer = new MultiLegTransfer(MultiLegTransfer.MAX_LEGS);
+        long[] accountIds;
+        int accountCount;
+
+        @Setup(Level.Trial)
+        public void prepare(MultiLegTransferBenchmark benchmark) {
+            accountIds = new long[benchmark.legs];
+            accountCount = benchmark.accountCount;
+        }
+
+        //distinct random accounts, so no transfer is declined as SAME_ACCOUNT
+        void next() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < accountIds.length; i++) {
+                long accountId;
+                boolean taken;
+                do {
+                    accountId = random.nextInt(accountCount);
+                    taken = false;
+                    for (int j = 0; j < i; j++) {
+                        taken |= accountIds[j] == accountId;
+                    }
+                } while (taken);
+                accountIds[i] = accountId;
+            }
+        }
+    }
+}
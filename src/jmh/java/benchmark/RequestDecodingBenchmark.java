@@ -0,0 +1,87 @@
+package benchmark;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import json.MoneyTransferRequest;
+import json.MoneyTransferRequestDecoder;
+import model.Account;
+import model.TransferResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import repository.AccountsRepository;
+import service.MoneyTransferService;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request path of a single transfer from the request body to the outcome: {@code ObjectMapper} with business
+ * errors as exceptions against the streaming decoder with result codes. Run with the gc profiler to compare
+ * allocation per operation, declined transfers show the cost of exceptions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RequestDecodingBenchmark {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final long ACCOUNT_ID_WITH_MONEY = 1_000_001L;
+    private static final long ACCOUNT_ID_WITHOUT_MONEY = 1_000_002L;
+
+    @Param({"true", "false"})
+    boolean declined;
+
+    private MoneyTransferService moneyTransferService;
+    private byte[] body;
+
+    @Setup(Level.Trial)
+    public void createAccounts() {
+        AccountsRepository accountsRepository = AccountsRepository.getInstance();
+        moneyTransferService = MoneyTransferService.getInstance();
+        accountsRepository.add(new Account(ACCOUNT_ID_WITH_MONEY, Long.MAX_VALUE / 2));
+        accountsRepository.add(new Account(ACCOUNT_ID_WITHOUT_MONEY, 0L));
+        //a declined transfer is taken from the empty account, an accepted one moves nothing, so balances never run out
+        long accountFromId = declined ? ACCOUNT_ID_WITHOUT_MONEY : ACCOUNT_ID_WITH_MONEY;
+        long accountToId = declined ? ACCOUNT_ID_WITH_MONEY : ACCOUNT_ID_WITHOUT_MONEY;
+        long amount = declined ? 100L : 0L;
+        body = format(accountFromId, accountToId, amount).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String objectMapperAndExceptions() throws IOException {
+        MoneyTransferRequest request = OBJECT_MAPPER.readValue(body, MoneyTransferRequest.class);
+        try {
+            moneyTransferService.transfer(request);
+            return null;
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+    }
+
+    @Benchmark
+    public TransferResult decoderAndResultCodes(Requests requests) throws IOException {
+        try (JsonParser parser = OBJECT_MAPPER.getFactory().createParser(body)) {
+            MoneyTransferRequest request = MoneyTransferRequestDecoder.decode(parser, requests.request);
+            return moneyTransferService.tryTransfer(
+                    request.getAccountFromId(), request.getAccountToId(), request.getAmount());
+        }
+    }
+
+    private static String format(long accountFromId, long accountToId, long amount) {
+        return "{\"accountFromId\":" + accountFromId
+                + ",\"accountToId\":" + accountToId
+                + ",\"amount\":" + amount + "}";
+    }
+
+    @State(Scope.Thread)
+    public static class Requests {
+        final MoneyTransferRequest request = new MoneyTransferRequest();
+    }
+}
@@ -0,0 +1,68 @@
+package benchmark;
+
+import model.Account;
+import model.TransferResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import repository.AccountStore;
+import repository.LongOpenHashAccountStore;
+import repository.MappedAccountStore;
+import repository.TieredAccountStore;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import static benchmark.AccountTransferBenchmark.AMOUNT_TO_TRANSFER;
+import static benchmark.AccountTransferBenchmark.INITIAL_BALANCE;
+
+/**
+ * Transfers looked up in a store of many accounts, the tiered store caches 1 of every 64 of them on the heap.
+ * Under the Zipf workload most lookups hit the cache, under the uniform one most of them fault an account in.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(4)
+public class TieredAccountStoreBenchmark {
+    @Param({"1000000"})
+    int accountCount;
+
+    @Param({"open-addressing", "off-heap", "tiered"})
+    String store;
+
+    @Param({"UNIFORM", "ZIPF"})
+    TransferWorkload workload;
+
+    private AccountStore accounts;
+
+    @Setup(Level.Trial)
+    public void createAccounts() {
+        MappedAccountStore disk = MappedAccountStore.inMemory(accountCount);
+        accounts = store.equals("open-addressing") ? new LongOpenHashAccountStore(accountCount)
+                : store.equals("off-heap") ? disk
+                : new TieredAccountStore(disk, accountCount / 64);
+        for (int i = 0; i < accountCount; i++) {
+            accounts.put(new Account(i, INITIAL_BALANCE));
+        }
+    }
+
+    @Benchmark
+    public TransferResult transfer(Randomness randomness) {
+        Account accountFrom = accounts.get(workload.nextAccountFrom(randomness.random, accountCount));
+        Account accountTo = accounts.get(workload.nextAccountTo(randomness.random, accountCount));
+        return accountFrom.tryTransfer(accountTo, AMOUNT_TO_TRANSFER);
+    }
+
+    @State(Scope.Thread)
+    public static class Randomness {
+        final SplittableRandom random = new SplittableRandom();
+    }
+}
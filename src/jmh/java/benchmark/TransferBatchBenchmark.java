@@ -0,0 +1,80 @@
+package benchmark;
+
+import json.MoneyTransferRequest;
+import model.Account;
+import model.TransferResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import repository.AccountsRepository;
+import service.MoneyTransferService;
+import service.TransferBatch;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static benchmark.AccountTransferBenchmark.AMOUNT_TO_TRANSFER;
+import static benchmark.AccountTransferBenchmark.INITIAL_BALANCE;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(4)
+public class TransferBatchBenchmark {
+    @Param({"1000000"})
+    int accountCount;
+
+    @Param({"UNIFORM", "HOT_MERCHANT"})
+    TransferWorkload workload;
+
+    @Param({"10", "1000"})
+    int batchSize;
+
+    private MoneyTransferService moneyTransferService;
+
+    @Setup(Level.Trial)
+    public void createAccounts() {
+        AccountsRepository accountsRepository = AccountsRepository.getInstance();
+        for (int i = 0; i < accountCount; i++) {
+            accountsRepository.add(new Account(i, INITIAL_BALANCE));
+        }
+        moneyTransferService = MoneyTransferService.getInstance();
+    }
+
+    @Benchmark
+    public TransferResult[] batch(Transfers transfers) {
+        TransferBatch batch = new TransferBatch(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            int index = transfers.sequence.next();
+            batch.add(transfers.sequence.accountFrom(index), transfers.sequence.accountTo(index), AMOUNT_TO_TRANSFER);
+        }
+        return moneyTransferService.transfer(batch);
+    }
+
+    @Benchmark
+    public void oneByOne(Transfers transfers) {
+        for (int i = 0; i < batchSize; i++) {
+            int index = transfers.sequence.next();
+            moneyTransferService.transfer(new MoneyTransferRequest(
+                    transfers.sequence.accountFrom(index), transfers.sequence.accountTo(index), AMOUNT_TO_TRANSFER));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Transfers {
+        TransferSequence sequence;
+
+        @Setup(Level.Trial)
+        public void generate(TransferBatchBenchmark benchmark) {
+            sequence = new TransferSequence(
+                    benchmark.workload, benchmark.accountCount, ThreadLocalRandom.current().nextLong());
+        }
+    }
+}
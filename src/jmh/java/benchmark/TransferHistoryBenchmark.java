@@ -0,0 +1,40 @@
+package benchmark;
+
+import history.TransferHistory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost which the history adds to every applied transfer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(32)
+public class TransferHistoryBenchmark {
+    @Param({"1000", "1000000"})
+    int accounts;
+
+    private TransferHistory transferHistory;
+
+    @Setup
+    public void createHistory() {
+        transferHistory = new TransferHistory(1 << 20);
+    }
+
+    @Benchmark
+    public void append() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        transferHistory.append(random.nextInt(accounts), random.nextInt(accounts), 100L);
+    }
+}
@@ -0,0 +1,60 @@
+package benchmark;
+
+import journal.FileTransferJournal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TransferJournalBenchmark {
+    private Path file;
+    private FileTransferJournal journal;
+
+    @Setup(Level.Trial)
+    public void openJournal() throws IOException {
+        file = Files.createTempFile("transfers", ".journal");
+        journal = FileTransferJournal.open(file);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteJournal() throws IOException {
+        journal.close();
+        Files.delete(file);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void commitWithOneWriter() {
+        commit();
+    }
+
+    @Benchmark
+    @Threads(10)
+    public void commitWithTenWriters() {
+        commit();
+    }
+
+    @Benchmark
+    @Threads(100)
+    public void commitWithHundredWriters() {
+        commit();
+    }
+
+    private void commit() {
+        journal.awaitDurable(journal.append(1L, 2L, 1L));
+    }
+}
@@ -0,0 +1,43 @@
+package benchmark;
+
+import metrics.TransferMetrics;
+import model.TransferResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the metrics recorded for one request: timing of every stage, the result and the hot account sample.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(32)
+public class TransferMetricsBenchmark {
+    private static final TransferMetrics.Stage[] STAGES = TransferMetrics.Stage.values();
+    private final TransferMetrics transferMetrics = TransferMetrics.getInstance();
+
+    //reference for the clock reads which are part of every recording
+    @Benchmark
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @Benchmark
+    public void recordRequest() {
+        long start = System.nanoTime();
+        for (TransferMetrics.Stage stage : STAGES) {
+            transferMetrics.record(stage, System.nanoTime() - start);
+        }
+        transferMetrics.recordResult(TransferResult.OK);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        transferMetrics.recordTransfer(random.nextInt(1000), random.nextInt(1000));
+    }
+}
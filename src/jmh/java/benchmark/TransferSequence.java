@@ -0,0 +1,36 @@
+package benchmark;
+
+import java.util.SplittableRandom;
+
+public class TransferSequence {
+    private static final int LENGTH = 1 << 16;
+    private static final int MASK = LENGTH - 1;
+    private final int[] accountsFrom = new int[LENGTH];
+    private final int[] accountsTo = new int[LENGTH];
+    private int position;
+
+    public TransferSequence(TransferWorkload workload, int accountCount, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < LENGTH; i++) {
+            int accountFrom = workload.nextAccountFrom(random, accountCount);
+            int accountTo = workload.nextAccountTo(random, accountCount);
+            if (accountFrom == accountTo) {
+                accountTo = (accountTo + 1) % accountCount;
+            }
+            accountsFrom[i] = accountFrom;
+            accountsTo[i] = accountTo;
+        }
+    }
+
+    public int next() {
+        return position = (position + 1) & MASK;
+    }
+
+    public int accountFrom(int index) {
+        return accountsFrom[index];
+    }
+
+    public int accountTo(int index) {
+        return accountsTo[index];
+    }
+}
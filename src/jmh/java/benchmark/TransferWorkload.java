@@ -0,0 +1,44 @@
+package benchmark;
+
+import java.util.SplittableRandom;
+
+public enum TransferWorkload {
+    UNIFORM {
+        @Override
+        int nextAccountTo(SplittableRandom random, int accountCount) {
+            return random.nextInt(accountCount);
+        }
+    },
+    ZIPF {
+        @Override
+        int nextAccountFrom(SplittableRandom random, int accountCount) {
+            return zipf(random, accountCount);
+        }
+
+        @Override
+        int nextAccountTo(SplittableRandom random, int accountCount) {
+            return zipf(random, accountCount);
+        }
+    },
+    HOT_MERCHANT {
+        @Override
+        int nextAccountTo(SplittableRandom random, int accountCount) {
+            return random.nextDouble() < HOT_MERCHANT_SHARE ? HOT_MERCHANT_ACCOUNT : random.nextInt(accountCount);
+        }
+    };
+
+    public static final int HOT_MERCHANT_ACCOUNT = 0;
+    private static final double HOT_MERCHANT_SHARE = 0.3;
+
+    int nextAccountFrom(SplittableRandom random, int accountCount) {
+        return random.nextInt(accountCount);
+    }
+
+    abstract int nextAccountTo(SplittableRandom random, int accountCount);
+
+    //continuous approximation of Zipf with exponent 1: rank = N^u
+    private static int zipf(SplittableRandom random, int accountCount) {
+        int rank = (int) Math.exp(random.nextDouble() * Math.log(accountCount));
+        return Math.min(rank, accountCount) - 1;
+    }
+}
@@ -0,0 +1,44 @@
+package loadtest;
+
+import cluster.ClusterNode;
+import cluster.ClusterTopology;
+import model.Account;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import repository.AccountsRepository;
+
+/**
+ * Node of a local cluster started by {@link LocalCluster}: creates the accounts of the load test which it owns,
+ * serves transfers and balances on an embedded Jetty and prints {@link #READY} once it takes requests.
+ * The cluster itself is configured by {@code moneyTransfer.cluster.*} system properties.
+ */
+public final class ClusterNodeMain {
+    static final String HTTP_PORT_SYSTEM_PROPERTY = "loadTest.node.httpPort";
+    static final String READY = "Node is ready";
+
+    private ClusterNodeMain() {}
+
+    public static void main(String[] args) throws Exception {
+        LoadTestSettings settings = LoadTestSettings.fromSystemProperties();
+        ClusterNode clusterNode = ClusterNode.getInstance();
+        if (clusterNode == null) {
+            throw new IllegalStateException(ClusterTopology.NODES_SYSTEM_PROPERTY + " is not set");
+        }
+        ClusterTopology topology = clusterNode.getTopology();
+        AccountsRepository accountsRepository = AccountsRepository.getInstance();
+        for (long accountId = 0; accountId < settings.accounts; accountId++) {
+            if (topology.isLocal(accountId)) {
+                accountsRepository.add(new Account(accountId, settings.initialBalance));
+            }
+        }
+        Server server = new Server(Integer.getInteger(HTTP_PORT_SYSTEM_PROPERTY));
+        ServletContextHandler context = new ServletContextHandler();
+        //servlets live in the default package, which can't be imported
+        context.addServlet("MoneyTransferServlet", "/").setAsyncSupported(true);
+        context.addServlet("AccountBalanceServlet", "/balance");
+        server.setHandler(context);
+        server.start();
+        System.out.println(READY);
+        server.join();
+    }
+}
@@ -0,0 +1,93 @@
+package loadtest;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Latency percentiles and outcomes of every kind of request as JSON, one file per run, so runs of different
+ * builds can be compared with {@link #compare(Path)}.
+ */
+final class LatencyReport {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999, 0.9999, 1.0};
+    private static final String[] QUANTILE_NAMES = {"p50", "p90", "p99", "p99.9", "p99.99", "max"};
+    private final LoadTestSettings settings;
+    private final OpenLoopLoad load;
+    private final boolean checksPassed;
+
+    LatencyReport(LoadTestSettings settings, OpenLoopLoad load, boolean checksPassed) {
+        this.settings = settings;
+        this.load = load;
+        this.checksPassed = checksPassed;
+    }
+
+    void write(Path file) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        try (OutputStream out = Files.newOutputStream(file);
+             JsonGenerator generator = OBJECT_MAPPER.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            generator.useDefaultPrettyPrinter();
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("settings");
+            generator.writeNumberField("rate", settings.rate);
+            generator.writeNumberField("durationSeconds", settings.durationSeconds);
+            generator.writeNumberField("warmupSeconds", settings.warmupSeconds);
+            generator.writeNumberField("connections", settings.connections);
+            generator.writeNumberField("accounts", settings.accounts);
+            generator.writeStringField("skew", settings.skew.name());
+            generator.writeNumberField("declinedShare", settings.declinedShare);
+            generator.writeNumberField("unknownAccountShare", settings.unknownAccountShare);
+            generator.writeNumberField("seed", settings.seed);
+            generator.writeNumberField("nodes", settings.nodes);
+            generator.writeEndObject();
+            generator.writeBooleanField("checksPassed", checksPassed);
+            generator.writeObjectFieldStart("requests");
+            for (TransferRequests.Kind kind : TransferRequests.Kind.values()) {
+                generator.writeObjectFieldStart(kind.name());
+                for (OpenLoopLoad.Outcome outcome : OpenLoopLoad.Outcome.values()) {
+                    generator.writeNumberField(outcome.name().toLowerCase(), load.count(kind, outcome));
+                }
+                generator.writeObjectFieldStart("latencyMicros");
+                long[] counts = load.latencyCounts(kind);
+                for (int i = 0; i < QUANTILES.length; i++) {
+                    generator.writeNumberField(
+                            QUANTILE_NAMES[i], LatencyHistogram.valueAtQuantile(counts, QUANTILES[i]) / 1_000.0);
+                }
+                generator.writeEndObject();
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Prints latencies of the baseline report next to the latencies of the given one.
+     */
+    static void compare(Path baseline, Path current) throws IOException {
+        JsonNode before = OBJECT_MAPPER.readTree(baseline.toFile()).path("requests");
+        JsonNode after = OBJECT_MAPPER.readTree(current.toFile()).path("requests");
+        System.out.printf("Latencies against %s, microseconds:%n", baseline);
+        for (TransferRequests.Kind kind : TransferRequests.Kind.values()) {
+            for (String quantile : QUANTILE_NAMES) {
+                JsonNode was = before.path(kind.name()).path("latencyMicros").path(quantile);
+                double is = after.path(kind.name()).path("latencyMicros").path(quantile).asDouble();
+                if (was.isMissingNode()) {
+                    continue;
+                }
+                double change = was.asDouble() == 0 ? 0 : (is / was.asDouble() - 1) * 100;
+                System.out.printf("%-16s %-7s %12.1f -> %12.1f  %+7.1f%%%n",
+                        kind, quantile, was.asDouble(), is, change);
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package loadtest;
+
+import model.Account;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import repository.AccountsRepository;
+
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Soak test of the transfer endpoint: starts the servlet on an embedded Jetty in this JVM, or a {@link LocalCluster}
+ * of several JVMs, sends it an open-loop mix of valid, declined and unknown account transfers and afterwards checks
+ * that no money was made or lost. Exits with 1 if a check fails. Settings are described in {@link LoadTestSettings}.
+ */
+public final class LoadTest {
+    private static final int PROGRESS_SECONDS = 5;
+
+    private LoadTest() {}
+
+    public static void main(String[] args) throws Exception {
+        LoadTestSettings settings = LoadTestSettings.fromSystemProperties();
+        OpenLoopLoad load;
+        boolean passed;
+        if (settings.nodes == 1) {
+            AccountsRepository accountsRepository = AccountsRepository.getInstance();
+            for (long accountId = 0; accountId < settings.accounts; accountId++) {
+                accountsRepository.add(new Account(accountId, settings.initialBalance));
+            }
+            Server server = new Server(0);
+            ServletContextHandler context = new ServletContextHandler();
+            //servlets live in the default package, which can't be imported
+            ServletHolder holder = context.addServlet("MoneyTransferServlet", "/");
+            holder.setAsyncSupported(true);
+            server.setHandler(context);
+            server.start();
+            try {
+                int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+                load = run(settings, new URL("http", "localhost", port, "/"));
+            } finally {
+                server.stop();
+            }
+            passed = checkMoneyConserved(settings, accountsRepository);
+        } else {
+            try (LocalCluster cluster = LocalCluster.start(settings)) {
+                load = run(settings, cluster.getUrls());
+                passed = checkMoneyConserved(settings, cluster.readBalances(settings.accounts));
+            }
+        }
+        long accepted = load.count(TransferRequests.Kind.VALID, OpenLoopLoad.Outcome.OK);
+        long shed = 0;
+        for (TransferRequests.Kind kind : TransferRequests.Kind.values()) {
+            shed += load.count(kind, OpenLoopLoad.Outcome.SHED);
+        }
+        System.out.printf("Goodput %,d transfers per second, %,d requests shed%n",
+                accepted / settings.durationSeconds, shed);
+        passed &= checkInvalidRequestsRejected(load);
+        if (load.failed() > 0) {
+            System.out.printf("%,d requests failed%n", load.failed());
+            passed = false;
+        }
+        LatencyReport report = new LatencyReport(settings, load, passed);
+        report.write(settings.report);
+        System.out.printf("Report written to %s%n", settings.report.toAbsolutePath());
+        if (settings.baseline != null) {
+            LatencyReport.compare(settings.baseline, settings.report);
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static OpenLoopLoad run(LoadTestSettings settings, URL... urls) throws InterruptedException {
+        System.out.printf("Sending %,d transfers per second for %s + %s seconds over %s connections to %s nodes%n",
+                settings.rate, settings.warmupSeconds, settings.durationSeconds, settings.connections, urls.length);
+        OpenLoopLoad load = new OpenLoopLoad(settings, urls);
+        load.run(PROGRESS_SECONDS);
+        return load;
+    }
+
+    //the money supply of a cluster node has its settlement floats, so only balances are checked
+    private static boolean checkMoneyConserved(LoadTestSettings settings, long[] balances) {
+        long expected = settings.accounts * settings.initialBalance;
+        long total = 0;
+        long negative = 0;
+        for (long balance : balances) {
+            total += balance;
+            negative += balance < 0 ? 1 : 0;
+        }
+        boolean passed = true;
+        if (total != expected) {
+            System.out.printf("Money is not conserved: expected %,d, balances add up to %,d%n", expected, total);
+            passed = false;
+        }
+        if (negative > 0) {
+            System.out.printf("%,d accounts have negative balances%n", negative);
+            passed = false;
+        }
+        return passed;
+    }
+
+    private static boolean checkMoneyConserved(LoadTestSettings settings, AccountsRepository accountsRepository) {
+        long expected = settings.accounts * settings.initialBalance;
+        LongAdder total = new LongAdder();
+        AtomicLong negative = new AtomicLong();
+        accountsRepository.forEach(account -> {
+            long balance = account.getBalance();
+            total.add(balance);
+            if (balance < 0) {
+                negative.incrementAndGet();
+            }
+        });
+        boolean passed = true;
+        if (total.sum() != expected || accountsRepository.getMoneySupply() != expected) {
+            System.out.printf("Money is not conserved: expected %,d, balances add up to %,d, money supply is %,d%n",
+                    expected, total.sum(), accountsRepository.getMoneySupply());
+            passed = false;
+        }
+        if (negative.get() > 0) {
+            System.out.printf("%,d accounts have negative balances%n", negative.get());
+            passed = false;
+        }
+        return passed;
+    }
+
+    private static boolean checkInvalidRequestsRejected(OpenLoopLoad load) {
+        boolean passed = true;
+        for (TransferRequests.Kind kind : TransferRequests.Kind.values()) {
+            long accepted = load.count(kind, OpenLoopLoad.Outcome.OK);
+            if (kind != TransferRequests.Kind.VALID && accepted > 0) {
+                System.out.printf("%,d %s requests were accepted%n", accepted, kind);
+                passed = false;
+            }
+        }
+        return passed;
+    }
+}
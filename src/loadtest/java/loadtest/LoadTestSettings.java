@@ -0,0 +1,69 @@
+package loadtest;
+
+import cluster.ClusterTopology;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static java.lang.String.format;
+
+/**
+ * Settings of a load test run, taken from {@code loadTest.*} system properties.
+ */
+final class LoadTestSettings {
+    final int rate;
+    final int durationSeconds;
+    final int warmupSeconds;
+    final int connections;
+    final int accounts;
+    final long initialBalance;
+    final TransferRequests.Skew skew;
+    final double declinedShare;
+    final double unknownAccountShare;
+    final long seed;
+    final Path report;
+    final Path baseline;
+    final int nodes;
+
+    private LoadTestSettings() {
+        rate = Integer.getInteger("loadTest.rate", 1_000);
+        durationSeconds = Integer.getInteger("loadTest.durationSeconds", 60);
+        warmupSeconds = Integer.getInteger("loadTest.warmupSeconds", 10);
+        connections = Integer.getInteger("loadTest.connections", 64);
+        accounts = Integer.getInteger("loadTest.accounts", 100_000);
+        initialBalance = Long.getLong("loadTest.initialBalance", 1_000_000L);
+        skew = TransferRequests.Skew.valueOf(System.getProperty("loadTest.skew", "UNIFORM"));
+        declinedShare = Double.parseDouble(System.getProperty("loadTest.declinedShare", "0.05"));
+        unknownAccountShare = Double.parseDouble(System.getProperty("loadTest.unknownAccountShare", "0.01"));
+        seed = Long.getLong("loadTest.seed", 42L);
+        report = Paths.get(System.getProperty("loadTest.report", "build/reports/loadtest/report.json"));
+        String baselineFile = System.getProperty("loadTest.baseline");
+        baseline = baselineFile == null ? null : Paths.get(baselineFile);
+        nodes = Integer.getInteger("loadTest.nodes", 1);
+        if (rate <= 0 || durationSeconds <= 0 || warmupSeconds < 0 || connections <= 0 || accounts < 2) {
+            throw new IllegalArgumentException(format(
+                    "Rate, duration, connections should be above zero and there should be at least two accounts, "
+                            + "actual were %s, %s, %s, %s", rate, durationSeconds, connections, accounts));
+        }
+        if (nodes <= 0 || nodes > ClusterTopology.MAX_NODES) {
+            throw new IllegalArgumentException(
+                    format("Nodes should be from 1 to %s, actual were %s", ClusterTopology.MAX_NODES, nodes));
+        }
+        if (declinedShare < 0 || unknownAccountShare < 0 || declinedShare + unknownAccountShare > 1) {
+            throw new IllegalArgumentException(format("Shares of declined and unknown account requests should "
+                    + "add up to at most 1, actual were %s and %s", declinedShare, unknownAccountShare));
+        }
+    }
+
+    static LoadTestSettings fromSystemProperties() {
+        return new LoadTestSettings();
+    }
+
+    long totalRequests() {
+        return (long) rate * (warmupSeconds + durationSeconds);
+    }
+
+    long warmupRequests() {
+        return (long) rate * warmupSeconds;
+    }
+}
@@ -0,0 +1,155 @@
+package loadtest;
+
+import cluster.ClusterTopology;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cluster of {@link ClusterNodeMain} processes on this machine, every node a JVM of its own with the classpath
+ * and the {@code loadTest.*} and {@code moneyTransfer.*} system properties of this one.
+ */
+final class LocalCluster implements Closeable {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final long START_TIMEOUT_SECONDS = 60;
+    //the query of a balance request has to fit the 8 KB request header buffer of Jetty
+    private static final int BALANCES_PER_REQUEST = 200;
+
+    private final ClusterTopology topology;
+    private final URL[] urls;
+    private final List<Process> processes = new ArrayList<>();
+
+    private LocalCluster(ClusterTopology topology, URL[] urls) {
+        this.topology = topology;
+        this.urls = urls;
+    }
+
+    static LocalCluster start(LoadTestSettings settings) throws IOException, InterruptedException {
+        List<InetSocketAddress> nodes = new ArrayList<>();
+        StringBuilder nodeList = new StringBuilder();
+        URL[] urls = new URL[settings.nodes];
+        for (int node = 0; node < settings.nodes; node++) {
+            int rpcPort = freePort();
+            nodes.add(InetSocketAddress.createUnresolved("localhost", rpcPort));
+            nodeList.append(node == 0 ? "" : ",").append("localhost:").append(rpcPort);
+            urls[node] = new URL("http", "localhost", freePort(), "/");
+        }
+        LocalCluster cluster = new LocalCluster(new ClusterTopology(nodes, 0), urls);
+        CountDownLatch ready = new CountDownLatch(settings.nodes);
+        try {
+            for (int node = 0; node < settings.nodes; node++) {
+                cluster.processes.add(startNode(node, nodeList.toString(), urls[node].getPort(), ready));
+            }
+            if (!ready.await(START_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Nodes didn't start in time");
+            }
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            cluster.close();
+            throw e;
+        }
+        return cluster;
+    }
+
+    URL[] getUrls() {
+        return urls;
+    }
+
+    /**
+     * @return balances of accounts {@code [0, accounts)}, every one read from its owner
+     */
+    long[] readBalances(int accounts) throws IOException {
+        long[] balances = new long[accounts];
+        for (int node = 0; node < urls.length; node++) {
+            List<Long> owned = new ArrayList<>();
+            for (long accountId = 0; accountId < accounts; accountId++) {
+                if (topology.ownerOf(accountId) == node) {
+                    owned.add(accountId);
+                }
+            }
+            for (int first = 0; first < owned.size(); first += BALANCES_PER_REQUEST) {
+                StringBuilder query = new StringBuilder();
+                for (Long accountId : owned.subList(first, Math.min(owned.size(), first + BALANCES_PER_REQUEST))) {
+                    query.append(query.length() == 0 ? "" : "&").append("accountId=").append(accountId);
+                }
+                URL url = new URL(urls[node], "/balance?" + query);
+                for (JsonNode balance : OBJECT_MAPPER.readTree(url).get("balances")) {
+                    balances[balance.get("accountId").asInt()] = balance.get("balance").asLong();
+                }
+            }
+        }
+        return balances;
+    }
+
+    @Override
+    public void close() {
+        for (Process process : processes) {
+            process.destroy();
+        }
+        for (Process process : processes) {
+            try {
+                process.waitFor();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static Process startNode(int node, String nodeList, int httpPort, CountDownLatch ready)
+            throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        for (Map.Entry<Object, Object> property : System.getProperties().entrySet()) {
+            String name = property.getKey().toString();
+            if (name.startsWith("loadTest.") || name.startsWith("moneyTransfer.")) {
+                command.add("-D" + name + "=" + property.getValue());
+            }
+        }
+        command.add("-D" + ClusterTopology.NODES_SYSTEM_PROPERTY + "=" + nodeList);
+        command.add("-D" + ClusterTopology.NODE_INDEX_SYSTEM_PROPERTY + "=" + node);
+        command.add("-D" + ClusterNodeMain.HTTP_PORT_SYSTEM_PROPERTY + "=" + httpPort);
+        command.add(ClusterNodeMain.class.getName());
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        Thread output = new Thread(() -> echo(process.getInputStream(), "[node " + node + "] ", ready),
+                "node-" + node + "-output");
+        output.setDaemon(true);
+        output.start();
+        return process;
+    }
+
+    private static void echo(InputStream output, String prefix, CountDownLatch ready) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(output, StandardCharsets.UTF_8))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                System.out.println(prefix + line);
+                if (line.equals(ClusterNodeMain.READY)) {
+                    ready.countDown();
+                }
+            }
+        } catch (IOException ignored) {
+            //the node is gone
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
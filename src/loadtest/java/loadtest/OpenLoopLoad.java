@@ -0,0 +1,158 @@
+package loadtest;
+
+import metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends requests on a fixed schedule whatever the response times are: request {@code n} is due at
+ * {@code start + n / rate}, and its latency is measured from that moment, not from when it was actually sent.
+ * A stalled server therefore shows up in the latencies of every request which was due meanwhile, instead of
+ * only in the one that waited (coordinated omission). Every connection is a thread taking the next due request.
+ * Requests go to the endpoints in turn.
+ */
+final class OpenLoopLoad {
+    private static final int KINDS = TransferRequests.Kind.values().length;
+    private final LoadTestSettings settings;
+    private final URL[] urls;
+    private final TransferRequests requests;
+    private final AtomicLong nextPosition = new AtomicLong();
+    private final LatencyHistogram[] latencies = new LatencyHistogram[KINDS];
+    private final LongAdder[][] outcomes = new LongAdder[KINDS][Outcome.values().length];
+    private final LongAdder completed = new LongAdder();
+    private final long intervalNanos;
+    private long startNanos;
+
+    OpenLoopLoad(LoadTestSettings settings, URL... urls) {
+        this.settings = settings;
+        this.urls = urls;
+        this.requests = new TransferRequests(settings);
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / settings.rate;
+        for (int kind = 0; kind < KINDS; kind++) {
+            latencies[kind] = new LatencyHistogram();
+            for (int outcome = 0; outcome < Outcome.values().length; outcome++) {
+                outcomes[kind][outcome] = new LongAdder();
+            }
+        }
+        //keep-alive connections are pooled by the JDK, 5 by default
+        System.setProperty("http.maxConnections", String.valueOf(settings.connections));
+    }
+
+    /**
+     * Runs the whole schedule, warmup included, reports progress every {@code progressSeconds}.
+     */
+    void run(int progressSeconds) throws InterruptedException {
+        startNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        Thread[] connections = new Thread[settings.connections];
+        for (int i = 0; i < connections.length; i++) {
+            String caller = "load-connection-" + i;
+            connections[i] = new Thread(() -> sendDueRequests(caller), caller);
+            connections[i].start();
+        }
+        long lastCompleted = 0;
+        for (Thread connection : connections) {
+            while (connection.isAlive()) {
+                connection.join(TimeUnit.SECONDS.toMillis(progressSeconds));
+                if (connection.isAlive()) {
+                    long completedNow = completed.sum();
+                    System.out.printf("%,d requests done, %,d per second, %,d failed%n", completedNow,
+                            (completedNow - lastCompleted) / progressSeconds, failed());
+                    lastCompleted = completedNow;
+                }
+            }
+        }
+    }
+
+    long[] latencyCounts(TransferRequests.Kind kind) {
+        return latencies[kind.ordinal()].counts();
+    }
+
+    long count(TransferRequests.Kind kind, Outcome outcome) {
+        return outcomes[kind.ordinal()][outcome.ordinal()].sum();
+    }
+
+    long failed() {
+        long failed = 0;
+        for (int kind = 0; kind < KINDS; kind++) {
+            failed += outcomes[kind][Outcome.FAILED.ordinal()].sum();
+        }
+        return failed;
+    }
+
+    private void sendDueRequests(String caller) {
+        long[] request = new long[3];
+        StringBuilder body = new StringBuilder(128);
+        byte[] buffer = new byte[4096];
+        long total = settings.totalRequests();
+        for (long position = nextPosition.getAndIncrement(); position < total;
+             position = nextPosition.getAndIncrement()) {
+            long due = startNanos + position * intervalNanos;
+            for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                LockSupport.parkNanos(wait);
+            }
+            TransferRequests.Kind kind = requests.next(position, request);
+            body.setLength(0);
+            body.append("{\"accountFromId\":").append(request[0])
+                    .append(",\"accountToId\":").append(request[1])
+                    .append(",\"amount\":").append(request[2]).append('}');
+            Outcome outcome = send(urls[(int) (position % urls.length)], caller, body, buffer);
+            long latency = System.nanoTime() - due;
+            if (position >= settings.warmupRequests()) {
+                latencies[kind.ordinal()].record(latency);
+                outcomes[kind.ordinal()][outcome.ordinal()].increment();
+            }
+            completed.increment();
+        }
+    }
+
+    private Outcome send(URL url, String caller, CharSequence body, byte[] buffer) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            //every connection is a caller of its own for admission control
+            connection.setRequestProperty("X-Caller-Id", caller);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            int status = connection.getResponseCode();
+            //the response is read to the end, so the connection goes back to the pool
+            try (InputStream in = status < HttpURLConnection.HTTP_BAD_REQUEST
+                    ? connection.getInputStream()
+                    : connection.getErrorStream()) {
+                while (in != null && in.read(buffer) >= 0) {
+                    //skipped
+                }
+            }
+            if (status == HttpURLConnection.HTTP_OK) {
+                return Outcome.OK;
+            }
+            if (status == HttpURLConnection.HTTP_UNAVAILABLE) {
+                return Outcome.SHED;
+            }
+            return status == HttpURLConnection.HTTP_INTERNAL_ERROR ? Outcome.REJECTED : Outcome.FAILED;
+        } catch (IOException e) {
+            return Outcome.FAILED;
+        }
+    }
+
+    enum Outcome {
+        OK,
+        //the service refused the transfer: not enough money, unknown account
+        REJECTED,
+        //admission control turned the request away before the transfer, the client may retry it
+        SHED,
+        //no response or an unexpected status
+        FAILED
+    }
+}
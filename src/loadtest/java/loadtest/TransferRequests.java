@@ -0,0 +1,83 @@
+package loadtest;
+
+import java.util.SplittableRandom;
+
+/**
+ * Request of every position of the schedule, derived from the seed and the position only, so the same settings
+ * send the same requests whatever thread sends them.
+ */
+final class TransferRequests {
+    private static final long MAX_VALID_AMOUNT = 100;
+    private final LoadTestSettings settings;
+
+    TransferRequests(LoadTestSettings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * @return the request is written to the target, {accountFromId, accountToId, amount}
+     */
+    Kind next(long position, long[] target) {
+        SplittableRandom random = new SplittableRandom(settings.seed + position);
+        int accountFrom = settings.skew.nextAccountFrom(random, settings.accounts);
+        int accountTo = settings.skew.nextAccountTo(random, settings.accounts);
+        if (accountFrom == accountTo) {
+            accountTo = (accountTo + 1) % settings.accounts;
+        }
+        target[0] = accountFrom;
+        target[1] = accountTo;
+        double kind = random.nextDouble();
+        if (kind < settings.unknownAccountShare) {
+            target[1] = settings.accounts + random.nextInt(settings.accounts);
+            target[2] = 1 + random.nextLong(MAX_VALID_AMOUNT);
+            return Kind.UNKNOWN_ACCOUNT;
+        }
+        if (kind < settings.unknownAccountShare + settings.declinedShare) {
+            //more than all the money there is
+            target[2] = Long.MAX_VALUE;
+            return Kind.DECLINED;
+        }
+        target[2] = 1 + random.nextLong(MAX_VALID_AMOUNT);
+        return Kind.VALID;
+    }
+
+    enum Kind {
+        VALID, DECLINED, UNKNOWN_ACCOUNT
+    }
+
+    enum Skew {
+        UNIFORM,
+        ZIPF {
+            @Override
+            int nextAccountFrom(SplittableRandom random, int accounts) {
+                return zipf(random, accounts);
+            }
+
+            @Override
+            int nextAccountTo(SplittableRandom random, int accounts) {
+                return zipf(random, accounts);
+            }
+        },
+        //30% of transfers go to account 0
+        HOT_MERCHANT {
+            @Override
+            int nextAccountTo(SplittableRandom random, int accounts) {
+                return random.nextDouble() < 0.3 ? 0 : random.nextInt(accounts);
+            }
+        };
+
+        int nextAccountFrom(SplittableRandom random, int accounts) {
+            return random.nextInt(accounts);
+        }
+
+        int nextAccountTo(SplittableRandom random, int accounts) {
+            return random.nextInt(accounts);
+        }
+
+        //continuous approximation of Zipf with exponent 1: rank = N^u
+        private static int zipf(SplittableRandom random, int accounts) {
+            int rank = (int) Math.exp(random.nextDouble() * Math.log(accounts));
+            return Math.min(rank, accounts) - 1;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.assertj.core.util.VisibleForTesting;
+import service.MoneyTransferService;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+import static java.lang.String.format;
+import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+import static javax.servlet.http.HttpServletResponse.SC_OK;
+import static javax.servlet.http.HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+
+@WebServlet(name = "AccountBalanceServlet", urlPatterns = {"/balance"}, loadOnStartup = 1)
+public class AccountBalanceServlet extends HttpServlet {
+    static final int MAX_ACCOUNTS = 1000;
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private final MoneyTransferService moneyTransferService;
+
+    public AccountBalanceServlet() {
+        this(MoneyTransferService.getInstance());
+    }
+
+    @VisibleForTesting
+    AccountBalanceServlet(MoneyTransferService moneyTransferService) {
+        this.moneyTransferService = moneyTransferService;
+    }
+
+    /**
+     * Returns balances of every requested account, several accounts are read as of one moment. If the accounts
+     * keep changing while they are read, the client is asked to retry instead of waiting here.
+     */
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        long[] accountIds;
+        long[] balances;
+        try {
+            accountIds = parseAccountIds(req.getParameterValues("accountId"));
+            balances = moneyTransferService.getBalances(accountIds);
+        } catch (IllegalArgumentException e) {
+            resp.sendError(SC_INTERNAL_SERVER_ERROR, e.getMessage());
+            return;
+        }
+        if (balances == null) {
+            resp.setHeader("Retry-After", MoneyTransferServlet.RETRY_AFTER_SECONDS);
+            resp.sendError(SC_SERVICE_UNAVAILABLE, "Balances keep changing, retry later");
+            return;
+        }
+        resp.setStatus(SC_OK);
+        resp.setContentType("application/json");
+        try (JsonGenerator generator = OBJECT_MAPPER.getFactory().createGenerator(resp.getWriter())) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("balances");
+            for (int i = 0; i < accountIds.length; i++) {
+                generator.writeStartObject();
+                generator.writeNumberField("accountId", accountIds[i]);
+                generator.writeNumberField("balance", balances[i]);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    private static long[] parseAccountIds(String[] values) {
+        if (values == null || values.length == 0) {
+            throw new IllegalArgumentException("Parameter accountId is required");
+        }
+        if (values.length > MAX_ACCOUNTS) {
+            throw new IllegalArgumentException(
+                    format("At most %s accounts can be read at once, actual was %s", MAX_ACCOUNTS, values.length));
+        }
+        long[] accountIds = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            accountIds[i] = Long.parseLong(values[i]);
+        }
+        return accountIds;
+    }
+}
@@ -0,0 +1,112 @@
+import cluster.SettlementAccounts;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import history.TransferHistory;
+import org.assertj.core.util.VisibleForTesting;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+import static java.lang.String.format;
+import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+import static javax.servlet.http.HttpServletResponse.SC_OK;
+
+@WebServlet(name = "AccountHistoryServlet", urlPatterns = {"/history"}, loadOnStartup = 1)
+public class AccountHistoryServlet extends HttpServlet {
+    static final int DEFAULT_LIMIT = 100;
+    static final int MAX_LIMIT = 1000;
+    private static final int FIELDS_PER_RECORD = 4;
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private final TransferHistory transferHistory;
+
+    public AccountHistoryServlet() {
+        this(TransferHistory.getInstance());
+    }
+
+    @VisibleForTesting
+    AccountHistoryServlet(TransferHistory transferHistory) {
+        this.transferHistory = transferHistory;
+    }
+
+    /**
+     * Returns a page of transfers of the account, newest first, the cursor of the next page or null, and whether
+     * the history doesn't have all transfers of the range anymore, see {@link TransferHistory#TRUNCATED}.
+     */
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        Page page = new Page();
+        try {
+            long accountId = Long.parseLong(getRequiredParameter(req, "accountId"));
+            if (SettlementAccounts.isSettlementAccount(accountId)) {
+                throw new IllegalArgumentException(format("Can't find an account with id %s", accountId));
+            }
+            long fromMillis = getParameter(req, "from", 0L);
+            long toMillis = getParameter(req, "to", Long.MAX_VALUE);
+            long cursor = getParameter(req, "cursor", TransferHistory.NO_MORE_RECORDS);
+            long limit = getParameter(req, "limit", DEFAULT_LIMIT);
+            if (limit <= 0 || limit > MAX_LIMIT) {
+                throw new IllegalArgumentException(
+                        format("Limit should be from 1 to %s, actual was %s", MAX_LIMIT, limit));
+            }
+            page.records = new long[(int) limit * FIELDS_PER_RECORD];
+            page.next = transferHistory.read(accountId, fromMillis, toMillis, cursor, (int) limit, page);
+        } catch (IllegalArgumentException e) {
+            resp.sendError(SC_INTERNAL_SERVER_ERROR, e.getMessage());
+            return;
+        }
+        resp.setStatus(SC_OK);
+        resp.setContentType("application/json");
+        try (JsonGenerator generator = OBJECT_MAPPER.getFactory().createGenerator(resp.getWriter())) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("records");
+            for (int i = 0; i < page.size; i += FIELDS_PER_RECORD) {
+                generator.writeStartObject();
+                generator.writeNumberField("timestamp", page.records[i]);
+                generator.writeNumberField("accountFromId", page.records[i + 1]);
+                generator.writeNumberField("accountToId", page.records[i + 2]);
+                generator.writeNumberField("amount", page.records[i + 3]);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            if (page.next == TransferHistory.NO_MORE_RECORDS || page.next == TransferHistory.TRUNCATED) {
+                generator.writeNullField("next");
+            } else {
+                generator.writeNumberField("next", page.next);
+            }
+            generator.writeBooleanField("truncated", page.next == TransferHistory.TRUNCATED);
+            generator.writeEndObject();
+        }
+    }
+
+    private static String getRequiredParameter(HttpServletRequest req, String name) {
+        String value = req.getParameter(name);
+        if (value == null) {
+            throw new IllegalArgumentException(format("Parameter %s is required", name));
+        }
+        return value;
+    }
+
+    private static long getParameter(HttpServletRequest req, String name, long defaultValue) {
+        String value = req.getParameter(name);
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+
+    //records are collected before anything is written, so an invalid cursor is still reported as an error
+    private static class Page implements TransferHistory.RecordVisitor {
+        private long[] records;
+        private int size;
+        private long next;
+
+        @Override
+        public void visit(long timestamp, long accountFromId, long accountToId, long amount) {
+            records[size++] = timestamp;
+            records[size++] = accountFromId;
+            records[size++] = accountToId;
+            records[size++] = amount;
+        }
+    }
+}
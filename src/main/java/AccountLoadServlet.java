@@ -0,0 +1,98 @@
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.assertj.core.util.VisibleForTesting;
+import provisioning.BulkAccountLoader;
+import provisioning.BulkLoadReport;
+import repository.AccountsRepository;
+import service.MoneyTransferService;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static java.lang.String.format;
+import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+import static javax.servlet.http.HttpServletResponse.SC_OK;
+
+@WebServlet(name = "AccountLoadServlet", urlPatterns = {"/accounts/load"}, loadOnStartup = 1)
+public class AccountLoadServlet extends HttpServlet {
+    static final String PARALLELISM_SYSTEM_PROPERTY = "moneyTransfer.provisioning.parallelism";
+    static final String DIRECTORY_SYSTEM_PROPERTY = "moneyTransfer.provisioning.directory";
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private final BulkAccountLoader loader;
+    private final Path directory;
+
+    public AccountLoadServlet() {
+        this(new BulkAccountLoader(AccountsRepository.getInstance(), MoneyTransferService.getInstance()::addAccounts,
+                Integer.getInteger(PARALLELISM_SYSTEM_PROPERTY, Runtime.getRuntime().availableProcessors())),
+                System.getProperty(DIRECTORY_SYSTEM_PROPERTY) == null
+                        ? null : Paths.get(System.getProperty(DIRECTORY_SYSTEM_PROPERTY)));
+    }
+
+    /**
+     * @param directory the only directory files are loaded from, or null if loading is not configured
+     */
+    @VisibleForTesting
+    AccountLoadServlet(BulkAccountLoader loader, Path directory) {
+        this.loader = loader;
+        this.directory = directory;
+    }
+
+    /**
+     * Adds accounts from a CSV or binary file {@code ?file=<name>} in the configured directory, returns
+     * the number of loaded accounts, rows of existing accounts which were declined and malformed rows which were
+     * skipped. Existing accounts are replaced only with {@code &replace=true}.
+     */
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (directory == null) {
+            resp.sendError(SC_INTERNAL_SERVER_ERROR, "Loading accounts is not configured");
+            return;
+        }
+        String file = req.getParameter("file");
+        if (file == null) {
+            resp.sendError(SC_INTERNAL_SERVER_ERROR, "Parameter file is required");
+            return;
+        }
+        BulkLoadReport report;
+        try {
+            report = loader.load(resolve(file), Boolean.parseBoolean(req.getParameter("replace")));
+        } catch (IOException | UncheckedIOException | IllegalStateException | IllegalArgumentException e) {
+            resp.sendError(SC_INTERNAL_SERVER_ERROR, e.getMessage());
+            return;
+        }
+        resp.setStatus(SC_OK);
+        resp.setContentType("application/json");
+        try (JsonGenerator generator = OBJECT_MAPPER.getFactory().createGenerator(resp.getWriter())) {
+            generator.writeStartObject();
+            generator.writeNumberField("loaded", report.getLoaded());
+            generator.writeNumberField("existing", report.getExisting());
+            generator.writeNumberField("malformed", report.getMalformed());
+            generator.writeArrayFieldStart("malformedRows");
+            for (BulkLoadReport.MalformedRow row : report.getMalformedRows()) {
+                generator.writeStartObject();
+                generator.writeNumberField("row", row.getRow());
+                generator.writeStringField("reason", row.getReason());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    //links are followed before the check, so neither ../ nor a link leads out of the directory
+    private Path resolve(String file) throws IOException {
+        Path resolved = directory.resolve(file).toRealPath();
+        if (!resolved.startsWith(directory.toRealPath())) {
+            throw new IllegalArgumentException(format("File %s is outside of the directory accounts are loaded from",
+                    file));
+        }
+        return resolved;
+    }
+}
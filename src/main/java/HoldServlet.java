@@ -0,0 +1,95 @@
+import admission.ConcurrencyLimiter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import json.LongFieldsDecoder;
+import model.TransferResult;
+import org.assertj.core.util.VisibleForTesting;
+import service.MoneyTransferService;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+import static java.lang.String.format;
+import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+import static javax.servlet.http.HttpServletResponse.SC_OK;
+
+@WebServlet(name = "HoldServlet", urlPatterns = {"/hold", "/hold/capture", "/hold/release"}, loadOnStartup = 1)
+public class HoldServlet extends HttpServlet {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private final MoneyTransferService moneyTransferService;
+    private final RequestAdmission admission;
+
+    public HoldServlet() {
+        this.moneyTransferService = MoneyTransferService.getInstance();
+        this.admission = RequestAdmission.fromSystemProperties();
+    }
+
+    @VisibleForTesting
+    HoldServlet(MoneyTransferService moneyTransferService) {
+        this(moneyTransferService, null);
+    }
+
+    @VisibleForTesting
+    HoldServlet(MoneyTransferService moneyTransferService, ConcurrencyLimiter limiter) {
+        this.moneyTransferService = moneyTransferService;
+        this.admission = new RequestAdmission(limiter, null);
+    }
+
+    /**
+     * Puts {@code {"accountId":1,"amount":100,"ttlSeconds":60}} on hold and returns the id of the hold,
+     * captures {@code {"holdId":<id>,"accountToId":2,"amount":100}} or releases {@code {"holdId":<id>}}.
+     */
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        long start = System.nanoTime();
+        int budget = admission.admit(req, resp);
+        if (budget == RequestAdmission.REJECTED) {
+            return;
+        }
+        long holdId = 0;
+        TransferResult result;
+        try (JsonParser parser = OBJECT_MAPPER.getFactory().createParser(req.getInputStream())) {
+            switch (req.getServletPath()) {
+                case "/hold/capture":
+                    long[] capture = LongFieldsDecoder.decode(parser, "holdId", "accountToId", "amount");
+                    result = moneyTransferService.capture(capture[0], capture[1], capture[2]);
+                    break;
+                case "/hold/release":
+                    result = moneyTransferService.release(LongFieldsDecoder.decode(parser, "holdId")[0]);
+                    break;
+                default:
+                    long[] hold = LongFieldsDecoder.decode(parser, "accountId", "amount", "ttlSeconds");
+                    if (hold[2] <= 0) {
+                        throw new IllegalArgumentException(
+                                format("Field ttlSeconds should be above zero, actual was %s", hold[2]));
+                    }
+                    holdId = moneyTransferService.tryHold(hold[0], hold[1],
+                            System.currentTimeMillis() + hold[2] * 1000);
+                    result = holdId < 0 ? MoneyTransferService.declineOf(holdId) : TransferResult.OK;
+            }
+        } catch (Exception e) {
+            resp.sendError(SC_INTERNAL_SERVER_ERROR, e.getMessage());
+            return;
+        } finally {
+            admission.release(budget, System.nanoTime() - start);
+        }
+        if (result != TransferResult.OK) {
+            resp.sendError(SC_INTERNAL_SERVER_ERROR, result.name());
+            return;
+        }
+        resp.setStatus(SC_OK);
+        if (req.getServletPath().equals("/hold")) {
+            resp.setContentType("application/json");
+            try (JsonGenerator generator = OBJECT_MAPPER.getFactory().createGenerator(resp.getWriter())) {
+                generator.writeStartObject();
+                generator.writeNumberField("holdId", holdId);
+                generator.writeEndObject();
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+import admission.ConcurrencyLimiter;
+import idempotency.IdempotencyCache;
+import metrics.TransferMetrics;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+import static javax.servlet.http.HttpServletResponse.SC_OK;
+
+@WebServlet(name = "MetricsServlet", urlPatterns = {"/metrics"}, loadOnStartup = 1)
+public class MetricsServlet extends HttpServlet {
+    private static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private final TransferMetrics transferMetrics = TransferMetrics.getInstance();
+    private final ConcurrencyLimiter limiter = ConcurrencyLimiter.getInstance();
+    private final IdempotencyCache idempotencyCache = IdempotencyCache.getInstance();
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        resp.setStatus(SC_OK);
+        resp.setContentType(PROMETHEUS_CONTENT_TYPE);
+        transferMetrics.writePrometheus(resp.getWriter());
+        if (limiter != null) {
+            limiter.writePrometheus(resp.getWriter());
+        }
+        idempotencyCache.writePrometheus(resp.getWriter());
+    }
+}
@@ -0,0 +1,85 @@
+import admission.ConcurrencyLimiter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import json.MoneyTransferRequest;
+import json.MoneyTransferRequestDecoder;
+import model.TransferResult;
+import org.assertj.core.util.VisibleForTesting;
+import service.MoneyTransferService;
+import service.TransferBatch;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+import static javax.servlet.http.HttpServletResponse.SC_OK;
+
+@WebServlet(name = "MoneyTransferBatchServlet", urlPatterns = {"/batch"}, loadOnStartup = 1)
+public class MoneyTransferBatchServlet extends HttpServlet {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private final MoneyTransferService moneyTransferService = MoneyTransferService.getInstance();
+    private final RequestAdmission admission;
+
+    public MoneyTransferBatchServlet() {
+        this.admission = RequestAdmission.fromSystemProperties();
+    }
+
+    @VisibleForTesting
+    MoneyTransferBatchServlet(ConcurrencyLimiter limiter) {
+        this.admission = new RequestAdmission(limiter, null);
+    }
+
+    /**
+     * Takes one permit of the concurrency limit for the whole batch, the same as a single transfer.
+     */
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        long start = System.nanoTime();
+        int budget = admission.admit(req, resp);
+        if (budget == RequestAdmission.REJECTED) {
+            return;
+        }
+        TransferResult[] results;
+        try {
+            results = moneyTransferService.transfer(readBatch(req));
+        } catch (Exception e) {
+            resp.sendError(SC_INTERNAL_SERVER_ERROR, e.getMessage());
+            return;
+        } finally {
+            admission.release(budget, System.nanoTime() - start);
+        }
+        resp.setStatus(SC_OK);
+        resp.setContentType("application/json");
+        try (JsonGenerator generator = OBJECT_MAPPER.getFactory().createGenerator(resp.getOutputStream())) {
+            generator.writeStartArray();
+            for (TransferResult result : results) {
+                generator.writeString(result.name());
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    private static TransferBatch readBatch(HttpServletRequest req) throws IOException {
+        TransferBatch batch = new TransferBatch();
+        try (JsonParser parser = OBJECT_MAPPER.getFactory().createParser(req.getInputStream())) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("Batch should be a JSON array of transfers");
+            }
+            MoneyTransferRequest request = new MoneyTransferRequest();
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                MoneyTransferRequestDecoder.decode(parser, request);
+                batch.add(request.getAccountFromId(), request.getAccountToId(), request.getAmount());
+            }
+            if (parser.getCurrentToken() != JsonToken.END_ARRAY) {
+                throw new IllegalArgumentException("Batch should be a JSON array of transfers");
+            }
+        }
+        return batch;
+    }
+}
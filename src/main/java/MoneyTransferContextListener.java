@@ -0,0 +1,103 @@
+import cluster.ClusterNode;
+import hold.Holds;
+import reconciliation.Reconciliation;
+import reconciliation.ReconciliationReport;
+import scheduling.TransferScheduler;
+import service.MoneyTransferService;
+import snapshot.SnapshotDirectory;
+import tcp.BinaryTransferServer;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+@WebListener
+public class MoneyTransferContextListener implements ServletContextListener {
+    private static final String SNAPSHOT_INTERVAL_SYSTEM_PROPERTY = "moneyTransfer.snapshot.intervalSeconds";
+    private static final long DEFAULT_SNAPSHOT_INTERVAL_SECONDS = 300;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "money-transfer-background-jobs");
+        thread.setDaemon(true);
+        return thread;
+    });
+    //holds expire on time however long a snapshot or a reconciliation takes
+    private final ScheduledExecutorService holdsExpiry = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "money-transfer-holds-expiry");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Reconciliation reconciliation;
+    private BinaryTransferServer binaryTransferServer;
+    private ClusterNode clusterNode;
+    private TransferScheduler transferScheduler;
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        ServletContext context = sce.getServletContext();
+        MoneyTransferService moneyTransferService = MoneyTransferService.getInstance();
+        SnapshotDirectory snapshotDirectory = SnapshotDirectory.fromSystemProperties();
+        if (snapshotDirectory != null) {
+            long interval = Long.getLong(SNAPSHOT_INTERVAL_SYSTEM_PROPERTY, DEFAULT_SNAPSHOT_INTERVAL_SECONDS);
+            scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    moneyTransferService.takeSnapshot(snapshotDirectory);
+                } catch (RuntimeException e) {
+                    context.log("Can't take a snapshot of balances", e);
+                }
+            }, interval, interval, SECONDS);
+        }
+        long reconciliationInterval =
+                Long.getLong(Reconciliation.INTERVAL_SYSTEM_PROPERTY, Reconciliation.DEFAULT_INTERVAL_SECONDS);
+        if (reconciliationInterval > 0) {
+            reconciliation = Reconciliation.fromSystemProperties();
+            scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    ReconciliationReport report = moneyTransferService.reconcile(reconciliation);
+                    context.log(report.hasDrift() ? "Balances drifted! " + report : report.toString());
+                } catch (RuntimeException e) {
+                    context.log("Can't reconcile balances", e);
+                }
+            }, reconciliationInterval, reconciliationInterval, SECONDS);
+        }
+        long holdsTick = Long.getLong(Holds.TICK_SYSTEM_PROPERTY, Holds.DEFAULT_TICK_MILLIS);
+        holdsExpiry.scheduleWithFixedDelay(() -> {
+            try {
+                moneyTransferService.releaseExpiredHolds(System.currentTimeMillis());
+            } catch (RuntimeException e) {
+                context.log("Can't release expired holds", e);
+            }
+        }, holdsTick, holdsTick, MILLISECONDS);
+        binaryTransferServer = BinaryTransferServer.fromSystemProperties(moneyTransferService);
+        //started with the application, other nodes may forward transfers before the first request comes here
+        clusterNode = ClusterNode.getInstance();
+        transferScheduler = TransferScheduler.getInstance();
+        if (transferScheduler != null) {
+            transferScheduler.start(e -> context.log("Can't execute scheduled transfers", e));
+        }
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        scheduler.shutdownNow();
+        holdsExpiry.shutdownNow();
+        if (transferScheduler != null) {
+            transferScheduler.close();
+        }
+        if (binaryTransferServer != null) {
+            binaryTransferServer.close();
+        }
+        if (clusterNode != null) {
+            clusterNode.close();
+        }
+        if (reconciliation != null) {
+            reconciliation.close();
+        }
+        MoneyTransferService.getInstance().close();
+    }
+}
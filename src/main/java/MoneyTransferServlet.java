@@ -1,40 +1,312 @@
+import admission.ConcurrencyLimiter;
+import cluster.ClusterNode;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import json.MoneyTransferRequest;
+import json.MoneyTransferRequestDecoder;
+import metrics.TransferMetrics;
+import metrics.TransferMetrics.Stage;
+import model.TransferResult;
+import org.assertj.core.util.VisibleForTesting;
 import service.MoneyTransferService;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ReadListener;
 import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.lang.String.format;
 import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
 import static javax.servlet.http.HttpServletResponse.SC_OK;
 
-@WebServlet(name = "MoneyTransferServlet", urlPatterns = {"/"}, loadOnStartup = 1)
+@WebServlet(name = "MoneyTransferServlet", urlPatterns = {"/"}, loadOnStartup = 1, asyncSupported = true)
 public class MoneyTransferServlet extends HttpServlet {
+    static final String ASYNC_SYSTEM_PROPERTY = "moneyTransfer.servlet.async";
+    static final String ASYNC_THREADS_SYSTEM_PROPERTY = "moneyTransfer.servlet.async.threads";
+    static final String ASYNC_TIMEOUT_SYSTEM_PROPERTY = "moneyTransfer.servlet.async.timeoutMillis";
+    //set only behind a proxy which overwrites the header, a client can send any value
+    static final String CALLER_HEADER_SYSTEM_PROPERTY = "moneyTransfer.admission.callerHeader";
+    static final String RETRY_AFTER_SECONDS = "1";
+    private static final int READ_BUFFER_SIZE = 512;
+    //a transfer with the longest idempotency key is far below it
+    static final int MAX_BODY_SIZE = 4096;
     private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final TransferMetrics METRICS = TransferMetrics.getInstance();
+    private static final ThreadLocal<MoneyTransferRequest> REQUEST = ThreadLocal.withInitial(MoneyTransferRequest::new);
     private final MoneyTransferService moneyTransferService = MoneyTransferService.getInstance();
+    private final ClusterNode clusterNode = ClusterNode.getInstance();
+    private final RequestAdmission admission;
+    //above the request timeout of the cluster, so a transfer waiting for another node ends before the request does
+    private final long asyncTimeoutMillis = Long.getLong(ASYNC_TIMEOUT_SYSTEM_PROPERTY, 30_000L);
+    private ExecutorService transferExecutor;
+
+    public MoneyTransferServlet() {
+        this.admission = RequestAdmission.fromSystemProperties();
+    }
+
+    @VisibleForTesting
+    MoneyTransferServlet(ExecutorService transferExecutor) {
+        this(transferExecutor, ConcurrencyLimiter.getInstance());
+    }
+
+    @VisibleForTesting
+    MoneyTransferServlet(ExecutorService transferExecutor, ConcurrencyLimiter limiter) {
+        this(transferExecutor, limiter, null);
+    }
+
+    @VisibleForTesting
+    MoneyTransferServlet(ExecutorService transferExecutor, ConcurrencyLimiter limiter, String callerHeader) {
+        this.transferExecutor = transferExecutor;
+        this.admission = new RequestAdmission(limiter, callerHeader);
+    }
+
+    @Override
+    public void init() {
+        if (transferExecutor == null && Boolean.getBoolean(ASYNC_SYSTEM_PROPERTY)) {
+            int threads = Integer.getInteger(ASYNC_THREADS_SYSTEM_PROPERTY, Runtime.getRuntime().availableProcessors());
+            AtomicInteger threadNumber = new AtomicInteger();
+            transferExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "money-transfer-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (transferExecutor != null) {
+            transferExecutor.shutdown();
+        }
+    }
 
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-        try {
-            MoneyTransferRequest moneyTransferRequest =
-                    OBJECT_MAPPER.readValue(req.getReader(), MoneyTransferRequest.class);
-            validate(moneyTransferRequest);
-            moneyTransferService.transfer(moneyTransferRequest);
+        long start = System.nanoTime();
+        //rejected before the body is read, so shedding costs next to nothing
+        int budget = admission.admit(req, resp);
+        if (budget == RequestAdmission.REJECTED) {
+            return;
+        }
+        if (transferExecutor != null && req.isAsyncSupported()) {
+            readAsync(req, resp, start, budget);
+            return;
+        }
+        TransferResult result;
+        try (JsonParser parser = OBJECT_MAPPER.getFactory().createParser(req.getReader())) {
+            MoneyTransferRequest moneyTransferRequest = decode(parser);
+            result = clusterNode == null
+                    ? moneyTransferService.tryTransfer(moneyTransferRequest)
+                    : clusterNode.tryTransferAsync(moneyTransferRequest).join();
         } catch(Exception e) {
             resp.sendError(SC_INTERNAL_SERVER_ERROR, e.getMessage());
+            return;
+        } finally {
+            release(budget, start);
+        }
+        if (result == TransferResult.OK) {
+            resp.setStatus(SC_OK);
+        } else {
+            resp.sendError(SC_INTERNAL_SERVER_ERROR, result.name());
+        }
+    }
+
+    //the permit is given back on any failure, else every such request would shrink the limit for good
+    private void readAsync(HttpServletRequest req, HttpServletResponse resp, long start, int budget)
+            throws IOException {
+        AsyncContext asyncContext;
+        try {
+            asyncContext = req.startAsync();
+        } catch (RuntimeException e) {
+            release(budget, start);
+            resp.sendError(SC_INTERNAL_SERVER_ERROR, e.getMessage());
+            return;
         }
-        resp.setStatus(SC_OK);
+        AsyncResponse response = new AsyncResponse(asyncContext, start, budget);
+        try {
+            asyncContext.addListener(response);
+            asyncContext.setTimeout(asyncTimeoutMillis);
+            ServletInputStream inputStream = req.getInputStream();
+            inputStream.setReadListener(new RequestBodyListener(response, inputStream));
+        } catch (IOException | RuntimeException e) {
+            response.completeWithError(e.getMessage());
+        }
+    }
+
+    private void release(int budget, long start) {
+        long latency = System.nanoTime() - start;
+        admission.release(budget, latency);
+        METRICS.record(Stage.REQUEST, latency);
     }
 
-    private void validate(MoneyTransferRequest moneyTransferRequest) {
-        if (moneyTransferRequest.getAmount() < 0) {
-            throw new IllegalArgumentException(
-                    format("Amount to transfer should be above zero, %s", moneyTransferRequest.getAmount()));
+    private static MoneyTransferRequest decode(JsonParser parser) throws IOException {
+        long start = System.nanoTime();
+        MoneyTransferRequest moneyTransferRequest = MoneyTransferRequestDecoder.decode(parser, REQUEST.get());
+        METRICS.record(Stage.PARSE, System.nanoTime() - start);
+        return moneyTransferRequest;
+    }
+
+    /**
+     * Transfers are applied on the transfer executor, the response is completed by the journal once the transfer
+     * is durable, so neither container nor transfer threads wait for slow clients or for the disk.
+     */
+    private void transferAsync(AsyncResponse response, byte[] body) {
+        try (JsonParser parser = OBJECT_MAPPER.getFactory().createParser(body)) {
+            MoneyTransferRequest moneyTransferRequest = decode(parser);
+            CompletableFuture<TransferResult> transfer = clusterNode == null
+                    ? moneyTransferService.tryTransferAsync(moneyTransferRequest)
+                    : clusterNode.tryTransferAsync(moneyTransferRequest);
+            transfer.whenComplete((result, e) -> {
+                if (e != null) {
+                    response.completeWithError(e.getMessage());
+                } else if (result != TransferResult.OK) {
+                    response.completeWithError(result.name());
+                } else {
+                    response.complete();
+                }
+            });
+        } catch (Exception e) {
+            response.completeWithError(e.getMessage());
+        }
+    }
+
+    /**
+     * Response of an async request, completed once by whichever comes first: the transfer, a failure, or
+     * the container on a timeout or a broken connection. The permit is released exactly once, even if
+     * the container has already completed the request and refuses to complete it again.
+     */
+    private class AsyncResponse implements AsyncListener {
+        private final AsyncContext asyncContext;
+        private final long start;
+        private final int budget;
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        private AsyncResponse(AsyncContext asyncContext, long start, int budget) {
+            this.asyncContext = asyncContext;
+            this.start = start;
+            this.budget = budget;
+        }
+
+        private void complete() {
+            if (!completed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                ((HttpServletResponse) asyncContext.getResponse()).setStatus(SC_OK);
+                asyncContext.complete();
+            } catch (IllegalStateException ignored) {
+                //the container has completed the request already
+            } finally {
+                release(budget, start);
+            }
+        }
+
+        private void completeWithError(String message) {
+            if (!completed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                ((HttpServletResponse) asyncContext.getResponse()).sendError(SC_INTERNAL_SERVER_ERROR, message);
+            } catch (IOException | IllegalStateException ignored) {
+                //the client has gone or the response is already committed, nothing can be reported
+            }
+            try {
+                asyncContext.complete();
+            } catch (IllegalStateException ignored) {
+                //the container has completed the request already
+            } finally {
+                release(budget, start);
+            }
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            completeWithError(format("No result within %s ms", asyncTimeoutMillis));
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            Throwable cause = event.getThrowable();
+            completeWithError(cause == null ? "Request failed" : cause.getMessage());
+        }
+
+        //the container completed the request on its own, the permit is still to be given back
+        @Override
+        public void onComplete(AsyncEvent event) {
+            if (completed.compareAndSet(false, true)) {
+                release(budget, start);
+            }
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            //the request is never restarted
+        }
+    }
+
+    /**
+     * Collects the body as it arrives, container threads are only used while there are bytes to read. A body
+     * longer than {@link #MAX_BODY_SIZE} fails the request as soon as it's seen, the rest is never read.
+     */
+    private class RequestBodyListener implements ReadListener {
+        private final AsyncResponse response;
+        private final ServletInputStream inputStream;
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream(READ_BUFFER_SIZE);
+        private final byte[] buffer = new byte[READ_BUFFER_SIZE];
+        private boolean completed;
+
+        private RequestBodyListener(AsyncResponse response, ServletInputStream inputStream) {
+            this.response = response;
+            this.inputStream = inputStream;
+        }
+
+        @Override
+        public void onDataAvailable() throws IOException {
+            while (!completed && inputStream.isReady() && !inputStream.isFinished()) {
+                int read = inputStream.read(buffer);
+                if (read > 0 && body.size() + read > MAX_BODY_SIZE) {
+                    completed = true;
+                    response.completeWithError(format("Request body is longer than %s bytes", MAX_BODY_SIZE));
+                } else if (read > 0) {
+                    body.write(buffer, 0, read);
+                }
+            }
+        }
+
+        @Override
+        public void onAllDataRead() {
+            if (completed) {
+                return;
+            }
+            completed = true;
+            byte[] bytes = body.toByteArray();
+            try {
+                transferExecutor.execute(() -> transferAsync(response, bytes));
+            } catch (RuntimeException e) {
+                response.completeWithError(e.getMessage());
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            if (completed) {
+                return;
+            }
+            completed = true;
+            response.completeWithError(t.getMessage());
         }
     }
-}
\ No newline at end of file
+}
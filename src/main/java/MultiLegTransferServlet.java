@@ -0,0 +1,100 @@
+import admission.ConcurrencyLimiter;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import model.TransferResult;
+import org.assertj.core.util.VisibleForTesting;
+import service.MoneyTransferService;
+import service.MultiLegTransfer;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+import static java.lang.String.format;
+import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+import static javax.servlet.http.HttpServletResponse.SC_OK;
+
+@WebServlet(name = "MultiLegTransferServlet", urlPatterns = {"/multi-leg"}, loadOnStartup = 1)
+public class MultiLegTransferServlet extends HttpServlet {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private final MoneyTransferService moneyTransferService = MoneyTransferService.getInstance();
+    private final RequestAdmission admission;
+
+    public MultiLegTransferServlet() {
+        this.admission = RequestAdmission.fromSystemProperties();
+    }
+
+    @VisibleForTesting
+    MultiLegTransferServlet(ConcurrencyLimiter limiter) {
+        this.admission = new RequestAdmission(limiter, null);
+    }
+
+    /**
+     * Applies all legs of {@code {"legs":[{"accountId":1,"amount":-100},{"accountId":2,"amount":100}]}} or none.
+     */
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        long start = System.nanoTime();
+        int budget = admission.admit(req, resp);
+        if (budget == RequestAdmission.REJECTED) {
+            return;
+        }
+        TransferResult result;
+        try {
+            result = moneyTransferService.tryTransfer(readTransfer(req));
+        } catch (Exception e) {
+            resp.sendError(SC_INTERNAL_SERVER_ERROR, e.getMessage());
+            return;
+        } finally {
+            admission.release(budget, System.nanoTime() - start);
+        }
+        if (result == TransferResult.OK) {
+            resp.setStatus(SC_OK);
+        } else {
+            resp.sendError(SC_INTERNAL_SERVER_ERROR, result.name());
+        }
+    }
+
+    private static MultiLegTransfer readTransfer(HttpServletRequest req) throws IOException {
+        MultiLegTransfer transfer = new MultiLegTransfer();
+        try (JsonParser parser = OBJECT_MAPPER.getFactory().createParser(req.getInputStream())) {
+            if (parser.nextToken() != JsonToken.START_OBJECT || parser.nextToken() != JsonToken.FIELD_NAME
+                    || !parser.getCurrentName().equals("legs") || parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("Transfer should be a JSON object with an array of legs");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                readLeg(parser, transfer);
+            }
+            if (parser.getCurrentToken() != JsonToken.END_ARRAY || parser.nextToken() != JsonToken.END_OBJECT) {
+                throw new IllegalArgumentException("Transfer should be a JSON object with an array of legs");
+            }
+        }
+        return transfer;
+    }
+
+    private static void readLeg(JsonParser parser, MultiLegTransfer transfer) throws IOException {
+        Long accountId = null;
+        Long amount = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            if (parser.nextToken() != JsonToken.VALUE_NUMBER_INT) {
+                throw new IllegalArgumentException(format("Field %s should be an integer number", fieldName));
+            }
+            if (fieldName.equals("accountId")) {
+                accountId = parser.getLongValue();
+            } else if (fieldName.equals("amount")) {
+                amount = parser.getLongValue();
+            } else {
+                throw new IllegalArgumentException(format("Unknown field %s", fieldName));
+            }
+        }
+        if (accountId == null || amount == null) {
+            throw new IllegalArgumentException("Leg should have accountId and amount");
+        }
+        transfer.add(accountId, amount);
+    }
+}
@@ -0,0 +1,59 @@
+import admission.ConcurrencyLimiter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+import static javax.servlet.http.HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+
+/**
+ * Admits requests which change balances under the {@link ConcurrencyLimiter}, so transfers, batches, multi-leg
+ * transfers and holds share one limit. A request over the limit is answered with 503 before its body is read.
+ */
+final class RequestAdmission {
+    static final int REJECTED = Integer.MIN_VALUE;
+    private final ConcurrencyLimiter limiter;
+    private final String callerHeader;
+
+    RequestAdmission(ConcurrencyLimiter limiter, String callerHeader) {
+        this.limiter = limiter;
+        this.callerHeader = callerHeader;
+    }
+
+    static RequestAdmission fromSystemProperties() {
+        return new RequestAdmission(ConcurrencyLimiter.getInstance(),
+                System.getProperty(MoneyTransferServlet.CALLER_HEADER_SYSTEM_PROPERTY));
+    }
+
+    /**
+     * @return budget of the request to pass to {@link #release(int, long)}, or {@link #REJECTED} once the request
+     * is answered with 503
+     */
+    int admit(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if (limiter == null) {
+            return ConcurrencyLimiter.NO_BUDGET;
+        }
+        int budget = limiter.budgetOf(callerOf(req));
+        if (!limiter.tryAcquire(budget)) {
+            resp.setHeader("Retry-After", MoneyTransferServlet.RETRY_AFTER_SECONDS);
+            resp.sendError(SC_SERVICE_UNAVAILABLE, "Too many transfers in flight");
+            return REJECTED;
+        }
+        return budget;
+    }
+
+    void release(int budget, long latencyNanos) {
+        if (limiter != null) {
+            limiter.release(budget, latencyNanos);
+        }
+    }
+
+    //the authenticated user, or else the header a trusted proxy sets, the remote address may be a load balancer
+    private String callerOf(HttpServletRequest req) {
+        String user = req.getRemoteUser();
+        if (user != null || callerHeader == null) {
+            return user;
+        }
+        return req.getHeader(callerHeader);
+    }
+}
@@ -0,0 +1,116 @@
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import json.LongFieldsDecoder;
+import org.assertj.core.util.VisibleForTesting;
+import scheduling.TransferScheduler;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+import static java.lang.String.format;
+import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+import static javax.servlet.http.HttpServletResponse.SC_OK;
+
+@WebServlet(name = "ScheduledTransferServlet", urlPatterns = {"/scheduled"}, loadOnStartup = 1)
+public class ScheduledTransferServlet extends HttpServlet {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private final TransferScheduler transferScheduler;
+
+    public ScheduledTransferServlet() {
+        this(TransferScheduler.getInstance());
+    }
+
+    @VisibleForTesting
+    ScheduledTransferServlet(TransferScheduler transferScheduler) {
+        this.transferScheduler = transferScheduler;
+    }
+
+    /**
+     * Schedules {@code {"accountFromId":2,"accountToId":1,"amount":100,"executeAt":<millis>}} and returns its id.
+     */
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (transferScheduler == null) {
+            resp.sendError(SC_INTERNAL_SERVER_ERROR, "Scheduled transfers are not configured");
+            return;
+        }
+        long id;
+        try (JsonParser parser = OBJECT_MAPPER.getFactory().createParser(req.getInputStream())) {
+            long[] fields = LongFieldsDecoder.decode(parser, "accountFromId", "accountToId", "amount", "executeAt");
+            id = transferScheduler.schedule(fields[3], fields[0], fields[1], fields[2]);
+        } catch (Exception e) {
+            resp.sendError(SC_INTERNAL_SERVER_ERROR, e.getMessage());
+            return;
+        }
+        resp.setStatus(SC_OK);
+        resp.setContentType("application/json");
+        try (JsonGenerator generator = OBJECT_MAPPER.getFactory().createGenerator(resp.getWriter())) {
+            generator.writeStartObject();
+            generator.writeNumberField("id", id);
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Returns {@code {"id":<id>,"status":"OK"}} for the transfer {@code ?id=<id>}: PENDING, EXECUTING, FAILED or
+     * the result of the executed transfer, an error if the transfer is cancelled or executed too long ago.
+     */
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (transferScheduler == null) {
+            resp.sendError(SC_INTERNAL_SERVER_ERROR, "Scheduled transfers are not configured");
+            return;
+        }
+        String id = req.getParameter("id");
+        String status;
+        try {
+            if (id == null) {
+                throw new IllegalArgumentException("Parameter id is required");
+            }
+            status = transferScheduler.getStatus(Long.parseLong(id));
+            if (status == null) {
+                throw new IllegalArgumentException(format("Transfer %s is unknown", id));
+            }
+        } catch (IllegalArgumentException e) {
+            resp.sendError(SC_INTERNAL_SERVER_ERROR, e.getMessage());
+            return;
+        }
+        resp.setStatus(SC_OK);
+        resp.setContentType("application/json");
+        try (JsonGenerator generator = OBJECT_MAPPER.getFactory().createGenerator(resp.getWriter())) {
+            generator.writeStartObject();
+            generator.writeNumberField("id", Long.parseLong(id));
+            generator.writeStringField("status", status);
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Cancels the pending transfer {@code ?id=<id>}.
+     */
+    @Override
+    protected void doDelete(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (transferScheduler == null) {
+            resp.sendError(SC_INTERNAL_SERVER_ERROR, "Scheduled transfers are not configured");
+            return;
+        }
+        String id = req.getParameter("id");
+        try {
+            if (id == null) {
+                throw new IllegalArgumentException("Parameter id is required");
+            }
+            if (!transferScheduler.cancel(Long.parseLong(id))) {
+                throw new IllegalArgumentException(format("Transfer %s is not pending", id));
+            }
+        } catch (IllegalArgumentException e) {
+            resp.sendError(SC_INTERNAL_SERVER_ERROR, e.getMessage());
+            return;
+        }
+        resp.setStatus(SC_OK);
+    }
+}
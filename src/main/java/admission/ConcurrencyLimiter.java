@@ -0,0 +1,205 @@
+package admission;
+
+import org.assertj.core.util.VisibleForTesting;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import static java.lang.String.format;
+
+/**
+ * Caps transfers in flight at a limit which follows latency: every window the average latency of the window is
+ * compared with its long-term average, while it stays within {@link #TOLERANCE} of it the limit grows by about
+ * the square root of itself, once latency goes up the limit shrinks in proportion, at most by half per window.
+ * A transfer over the limit is rejected at once instead of queueing behind the others.
+ *
+ * <p>Callers are hashed into {@link #BUDGETS} budgets, a budget gets at most {@code callerShare} of the limit,
+ * so one busy caller can't take all of it. Budgets are opt-in: with a share of 1, the default, and for transfers
+ * of no known caller there is no budget to count, only the limit applies. Callers who are told apart by nothing
+ * but the address of a load balancer would otherwise all share one budget.
+ */
+public class ConcurrencyLimiter {
+    public static final String ENABLED_SYSTEM_PROPERTY = "moneyTransfer.admission.enabled";
+    public static final String INITIAL_LIMIT_SYSTEM_PROPERTY = "moneyTransfer.admission.initialLimit";
+    public static final String MIN_LIMIT_SYSTEM_PROPERTY = "moneyTransfer.admission.minLimit";
+    public static final String MAX_LIMIT_SYSTEM_PROPERTY = "moneyTransfer.admission.maxLimit";
+    public static final String CALLER_SHARE_SYSTEM_PROPERTY = "moneyTransfer.admission.callerShare";
+    public static final int NO_BUDGET = -1;
+    static final int BUDGETS = 256;
+    static final long WINDOW_NANOS = 100_000_000L;
+    static final int MIN_SAMPLES_PER_WINDOW = 10;
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final double LONG_TERM_SMOOTHING = 0.05;
+    //ints between two budgets, keeps every budget on its own cache line
+    private static final int BUDGET_PADDING = 16;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double callerShare;
+    private final LongSupplier nanoClock;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicIntegerArray budgets = new AtomicIntegerArray(BUDGETS * BUDGET_PADDING);
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder windowLatency = new LongAdder();
+    private final LongAdder windowSamples = new LongAdder();
+    private final AtomicBoolean updating = new AtomicBoolean();
+    private volatile int limit;
+    //racy maximum, only tells a window which didn't use the limit
+    private volatile int windowMaxInFlight;
+    private volatile long windowEnd;
+    //written by the thread which won updating
+    private double estimatedLimit;
+    private double longTermLatency;
+
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double callerShare) {
+        this(initialLimit, minLimit, maxLimit, callerShare, System::nanoTime);
+    }
+
+    @VisibleForTesting
+    ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double callerShare, LongSupplier nanoClock) {
+        if (minLimit <= 0 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException(format("Limits should be 0 < min <= initial <= max, "
+                    + "actual were %s, %s, %s", minLimit, initialLimit, maxLimit));
+        }
+        if (callerShare <= 0 || callerShare > 1) {
+            throw new IllegalArgumentException(
+                    format("Caller share should be above 0 and at most 1, actual was %s", callerShare));
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.callerShare = callerShare;
+        this.nanoClock = nanoClock;
+        this.limit = initialLimit;
+        this.estimatedLimit = initialLimit;
+        this.windowEnd = nanoClock.getAsLong() + WINDOW_NANOS;
+    }
+
+    /**
+     * @return budget of the caller to pass to {@link #tryAcquire(int)} and {@link #release(int, long)},
+     * {@link #NO_BUDGET} if the caller is not known or callers have no share of their own
+     */
+    public int budgetOf(String caller) {
+        return caller == null || callerShare >= 1 ? NO_BUDGET : (caller.hashCode() * 0x9E3779B9) >>> 24;
+    }
+
+    /**
+     * @return true if the transfer may go on, then it has to be released, false if it should be rejected
+     */
+    public boolean tryAcquire(int budget) {
+        int currentLimit = limit;
+        int index = budget * BUDGET_PADDING;
+        if (budget != NO_BUDGET && budgets.incrementAndGet(index) > Math.max(1, (int) (currentLimit * callerShare))) {
+            budgets.decrementAndGet(index);
+            rejected.increment();
+            return false;
+        }
+        int current = inFlight.incrementAndGet();
+        if (current > currentLimit) {
+            inFlight.decrementAndGet();
+            if (budget != NO_BUDGET) {
+                budgets.decrementAndGet(index);
+            }
+            rejected.increment();
+            return false;
+        }
+        if (current > windowMaxInFlight) {
+            windowMaxInFlight = current;
+        }
+        return true;
+    }
+
+    public void release(int budget, long latencyNanos) {
+        inFlight.decrementAndGet();
+        if (budget != NO_BUDGET) {
+            budgets.decrementAndGet(budget * BUDGET_PADDING);
+        }
+        windowLatency.add(latencyNanos);
+        windowSamples.increment();
+        long now = nanoClock.getAsLong();
+        if (now - windowEnd >= 0 && updating.compareAndSet(false, true)) {
+            try {
+                update(now);
+            } finally {
+                updating.set(false);
+            }
+        }
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public void writePrometheus(Appendable out) throws IOException {
+        out.append("# HELP money_transfer_concurrency_limit Transfers allowed in flight at once.\n");
+        out.append("# TYPE money_transfer_concurrency_limit gauge\n");
+        out.append(String.format(Locale.ROOT, "money_transfer_concurrency_limit %d\n", limit));
+        out.append("# HELP money_transfer_in_flight Transfers in flight.\n");
+        out.append("# TYPE money_transfer_in_flight gauge\n");
+        out.append(String.format(Locale.ROOT, "money_transfer_in_flight %d\n", inFlight.get()));
+        out.append("# HELP money_transfer_rejected_total Transfers rejected over the concurrency limit.\n");
+        out.append("# TYPE money_transfer_rejected_total counter\n");
+        out.append(String.format(Locale.ROOT, "money_transfer_rejected_total %d\n", rejected.sum()));
+    }
+
+    private void update(long now) {
+        windowEnd = now + WINDOW_NANOS;
+        if (windowSamples.sum() < MIN_SAMPLES_PER_WINDOW) {
+            //too few transfers to tell, they are counted in the next window
+            return;
+        }
+        long samples = windowSamples.sumThenReset();
+        double latency = (double) windowLatency.sumThenReset() / samples;
+        int maxInFlight = windowMaxInFlight;
+        windowMaxInFlight = 0;
+        if (longTermLatency == 0) {
+            longTermLatency = latency;
+        }
+        longTermLatency = longTermLatency * (1 - LONG_TERM_SMOOTHING) + latency * LONG_TERM_SMOOTHING;
+        if (longTermLatency > latency * 2) {
+            //the load went down, the long-term average catches up faster than it drifted up
+            longTermLatency *= 0.9;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longTermLatency / latency));
+        double next = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        if (maxInFlight < estimatedLimit / 2) {
+            //the limit wasn't in the way, so the window tells nothing about a higher one
+            next = Math.min(next, estimatedLimit);
+        }
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit,
+                estimatedLimit * (1 - SMOOTHING) + next * SMOOTHING));
+        limit = (int) estimatedLimit;
+    }
+
+    /**
+     * @return limiter configured by system properties or null if admission control is turned off
+     */
+    public static ConcurrencyLimiter getInstance() {
+        return ConcurrencyLimiterInstanceHolder.INSTANCE;
+    }
+
+    private static class ConcurrencyLimiterInstanceHolder {
+        private static final ConcurrencyLimiter INSTANCE =
+                Boolean.parseBoolean(System.getProperty(ENABLED_SYSTEM_PROPERTY, "true"))
+                        ? new ConcurrencyLimiter(
+                                Integer.getInteger(INITIAL_LIMIT_SYSTEM_PROPERTY, 100),
+                                Integer.getInteger(MIN_LIMIT_SYSTEM_PROPERTY, 8),
+                                Integer.getInteger(MAX_LIMIT_SYSTEM_PROPERTY, 4096),
+                                Double.parseDouble(System.getProperty(CALLER_SHARE_SYSTEM_PROPERTY, "1")))
+                        : null;
+        private ConcurrencyLimiterInstanceHolder() {}
+    }
+}
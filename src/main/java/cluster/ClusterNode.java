@@ -0,0 +1,383 @@
+package cluster;
+
+import cluster.InDoubtReservations.Reservation;
+import idempotency.IdempotencyCache;
+import json.MoneyTransferRequest;
+import model.TransferResult;
+import org.assertj.core.util.VisibleForTesting;
+import service.MoneyTransferService;
+import tcp.BinaryTransferServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static java.lang.String.format;
+
+/**
+ * Node of a cluster which splits accounts between processes by {@link ClusterTopology}. A transfer is run by
+ * the owner of the account money is taken from, other nodes forward it there. If the owner of the other account
+ * is another node, the transfer takes three steps:
+ * <ol>
+ * <li>reserve: the amount is moved from the payer to the settlement account of the other node, durably</li>
+ * <li>credit: the other node pays the amount out of its settlement account of this node to the payee</li>
+ * <li>confirm: an accepted credit makes the reservation final, a declined one gives it back to the payer</li>
+ * </ol>
+ * Every step is a local transfer of the node which makes it, journaled as any other, see
+ * {@link SettlementAccounts}. A reservation is kept in {@link InDoubtReservations} until the outcome of its
+ * credit is known. The credit carries the idempotency key of the reservation, so if the other node can't be
+ * reached or doesn't answer within the request timeout the transfer ends with
+ * {@link TransferResult#OUTCOME_UNKNOWN} and the credit is sent again in the background, after a restart too,
+ * until the other node accepts or declines it.
+ *
+ * <p>Nodes talk over the binary framing of {@link BinaryTransferServer} with requests of {@link #REQUEST_SIZE}
+ * bytes: correlation id, operation and source node as ints, account ids, amount and the idempotency key of
+ * the transfer as longs. Forwarded transfers and cross-node transfers are run on a pool of threads, so neither
+ * event loops nor the journal thread ever wait for another node.
+ */
+public class ClusterNode implements Closeable {
+    public static final String EVENT_LOOPS_SYSTEM_PROPERTY = "moneyTransfer.cluster.eventLoops";
+    public static final String THREADS_SYSTEM_PROPERTY = "moneyTransfer.cluster.threads";
+    public static final String CONNECTIONS_SYSTEM_PROPERTY = "moneyTransfer.cluster.connections";
+    public static final String REQUEST_TIMEOUT_SYSTEM_PROPERTY = "moneyTransfer.cluster.requestTimeoutMillis";
+    static final int REQUEST_SIZE = 56;
+    static final int FORWARD = 1;
+    static final int CREDIT = 2;
+    //set on an operation which carries an idempotency key
+    static final int IDEMPOTENT = 0x100;
+    private static final int OPERATION_MASK = 0xFF;
+
+    private final ClusterTopology topology;
+    private final int localNode;
+    private final MoneyTransferService moneyTransferService;
+    private final IdempotencyCache idempotencyCache;
+    private final InDoubtReservations reservations;
+    private final long requestTimeoutMillis;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService timer;
+    private final BinaryTransferServer server;
+    private final PeerConnection[][] peers;
+
+    public ClusterNode(ClusterTopology topology, MoneyTransferService moneyTransferService, int eventLoops,
+                       int threads, int connections) throws IOException {
+        this(topology, moneyTransferService, IdempotencyCache.getInstance(), eventLoops, threads, connections);
+    }
+
+    @VisibleForTesting
+    ClusterNode(ClusterTopology topology, MoneyTransferService moneyTransferService,
+                IdempotencyCache idempotencyCache, int eventLoops, int threads, int connections) throws IOException {
+        this(topology, moneyTransferService, idempotencyCache, InDoubtReservations.fromSystemProperties(),
+                Long.getLong(REQUEST_TIMEOUT_SYSTEM_PROPERTY, 5000), eventLoops, threads, connections);
+    }
+
+    @VisibleForTesting
+    ClusterNode(ClusterTopology topology, MoneyTransferService moneyTransferService,
+                IdempotencyCache idempotencyCache, InDoubtReservations reservations, long requestTimeoutMillis,
+                int eventLoops, int threads, int connections) throws IOException {
+        if (threads <= 0 || connections <= 0) {
+            throw new IllegalArgumentException(format(
+                    "Threads and connections should be above zero, actual were %s and %s", threads, connections));
+        }
+        if (requestTimeoutMillis <= 0) {
+            throw new IllegalArgumentException(format(
+                    "Request timeout should be above zero, actual was %s", requestTimeoutMillis));
+        }
+        this.topology = topology;
+        this.localNode = topology.getLocalNode();
+        this.moneyTransferService = moneyTransferService;
+        this.idempotencyCache = idempotencyCache;
+        this.reservations = reservations;
+        this.requestTimeoutMillis = requestTimeoutMillis;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "cluster-transfer-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cluster-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.peers = new PeerConnection[topology.size()][connections];
+        this.server = new BinaryTransferServer(this::handle, REQUEST_SIZE,
+                new InetSocketAddress(topology.addressOf(localNode).getPort()), eventLoops, "cluster-rpc");
+        long expiryInterval = Math.max(1, requestTimeoutMillis / 4);
+        timer.scheduleWithFixedDelay(this::expireRequests, expiryInterval, expiryInterval, TimeUnit.MILLISECONDS);
+        timer.scheduleWithFixedDelay(this::resolveInDoubt, 0, requestTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public ClusterTopology getTopology() {
+        return topology;
+    }
+
+    public int getPort() {
+        return server.getPort();
+    }
+
+    /**
+     * Runs the transfer on the owner of the account money is taken from, the request can be reused as soon as
+     * the method returns.
+     *
+     * @return future of the result, failed if a node involved could not be reached; settlement accounts are
+     * unknown accounts to clients
+     */
+    public CompletableFuture<TransferResult> tryTransferAsync(MoneyTransferRequest request) {
+        if (involvesSettlementAccount(request.getAccountFromId(), request.getAccountToId())) {
+            return CompletableFuture.completedFuture(TransferResult.UNKNOWN_ACCOUNT);
+        }
+        int owner = topology.ownerOf(request.getAccountFromId());
+        if (owner == localNode) {
+            return transfer(request.getAccountFromId(), request.getAccountToId(), request.getAmount(),
+                    request.hasIdempotencyKey(), request.idempotencyKeyHigh(), request.idempotencyKeyLow());
+        }
+        int operation = request.hasIdempotencyKey() ? FORWARD | IDEMPOTENT : FORWARD;
+        return send(owner, operation, request.getAccountFromId(), request.getAccountToId(), request.getAmount(),
+                request.idempotencyKeyHigh(), request.idempotencyKeyLow());
+    }
+
+    @Override
+    public void close() {
+        server.close();
+        timer.shutdownNow();
+        executor.shutdown();
+        for (PeerConnection[] connections : peers) {
+            for (PeerConnection connection : connections) {
+                if (connection != null) {
+                    connection.close();
+                }
+            }
+        }
+        reservations.close();
+    }
+
+    private CompletableFuture<TransferResult> transfer(long accountFromId, long accountToId, long amount,
+                                                       boolean idempotent, long keyHigh, long keyLow) {
+        //a forwarded transfer is checked again, the port of the node is as open as the binary endpoint
+        if (involvesSettlementAccount(accountFromId, accountToId)) {
+            return CompletableFuture.completedFuture(TransferResult.UNKNOWN_ACCOUNT);
+        }
+        int ownerOfAccountTo = topology.ownerOf(accountToId);
+        if (ownerOfAccountTo == localNode) {
+            MoneyTransferRequest request = new MoneyTransferRequest(accountFromId, accountToId, amount);
+            if (idempotent) {
+                request.setIdempotencyKeyHash(keyHigh, keyLow);
+            }
+            return moneyTransferService.tryTransferAsync(request);
+        }
+        if (!idempotent) {
+            return transferAcross(ownerOfAccountTo, accountFromId, accountToId, amount);
+        }
+        return once(keyHigh, keyLow, IdempotencyCache.fingerprint(accountFromId, accountToId, amount),
+                () -> transferAcross(ownerOfAccountTo, accountFromId, accountToId, amount));
+    }
+
+    private CompletableFuture<TransferResult> once(long keyHigh, long keyLow, long fingerprint,
+                                                   Supplier<CompletableFuture<TransferResult>> transfer) {
+        TransferResult stored = idempotencyCache.begin(keyHigh, keyLow, fingerprint);
+        if (stored != null) {
+            return CompletableFuture.completedFuture(stored);
+        }
+        //only a transfer which failed before it was applied is thrown right away, then a retry may run it
+        CompletableFuture<TransferResult> result;
+        try {
+            result = transfer.get();
+        } catch (RuntimeException e) {
+            idempotencyCache.abandon(keyHigh, keyLow);
+            throw e;
+        }
+        return result.whenComplete((completed, e) ->
+                idempotencyCache.complete(keyHigh, keyLow, e != null ? TransferResult.OUTCOME_UNKNOWN : completed));
+    }
+
+    //reserve, credit, then confirm or give the reservation back
+    private CompletableFuture<TransferResult> transferAcross(int ownerOfAccountTo, long accountFromId,
+                                                             long accountToId, long amount) {
+        long settlementAccountId = SettlementAccounts.accountId(localNode, ownerOfAccountTo, accountFromId);
+        return moneyTransferService.trySettleAsync(accountFromId, settlementAccountId, amount)
+                .thenComposeAsync(reserved -> {
+                    if (reserved != TransferResult.OK) {
+                        return CompletableFuture.completedFuture(reserved);
+                    }
+                    Reservation reservation;
+                    try {
+                        reservation = reservations.add(
+                                ownerOfAccountTo, accountFromId, accountToId, settlementAccountId, amount);
+                    } catch (RuntimeException e) {
+                        //no credit is sent without a record of the reservation, so it can be given back right away
+                        return giveBack(settlementAccountId, accountFromId, amount).thenApply(givenBack -> {
+                            throw e;
+                        });
+                    }
+                    return credit(reservation).thenApply(credited ->
+                            credited != null ? credited : TransferResult.OUTCOME_UNKNOWN);
+                }, executor);
+    }
+
+    /**
+     * Sends the credit of a reservation which is resolving and resolves it if the other node answers.
+     *
+     * @return future of the outcome of the credit, or of null if the reservation is still in doubt
+     */
+    private CompletableFuture<TransferResult> credit(Reservation reservation) {
+        return send(reservation.peerNode, CREDIT | IDEMPOTENT, 0L, reservation.accountToId, reservation.amount,
+                reservation.keyHigh, reservation.keyLow)
+                .handleAsync((credited, e) -> e != null || credited == TransferResult.IN_PROGRESS ? null : credited,
+                        executor)
+                .thenCompose(credited -> credited != null
+                        ? resolve(reservation, credited) : CompletableFuture.completedFuture(null))
+                .whenComplete((credited, e) -> reservation.stopResolving());
+    }
+
+    private CompletableFuture<TransferResult> resolve(Reservation reservation, TransferResult credited) {
+        reservations.resolve(reservation);
+        //a credit which may have been applied on the other node is not given back
+        if (credited == TransferResult.OK || credited == TransferResult.OUTCOME_UNKNOWN) {
+            return CompletableFuture.completedFuture(credited);
+        }
+        return giveBack(reservation.settlementAccountId, reservation.accountFromId, reservation.amount)
+                .thenApply(givenBack -> credited);
+    }
+
+    private CompletableFuture<TransferResult> giveBack(long settlementAccountId, long accountFromId, long amount) {
+        return moneyTransferService.trySettleAsync(settlementAccountId, accountFromId, amount)
+                .thenApply(givenBack -> {
+                    if (givenBack != TransferResult.OK) {
+                        throw new IllegalStateException(format("Reservation of %s for the account %s can't be "
+                                + "given back: %s", amount, accountFromId, givenBack));
+                    }
+                    return givenBack;
+                });
+    }
+
+    //runs on the timer, a reservation whose credit is being sent is skipped
+    private void resolveInDoubt() {
+        for (Reservation reservation : reservations.inDoubt()) {
+            if (reservation.startResolving()) {
+                credit(reservation);
+            }
+        }
+    }
+
+    //runs on the timer
+    private void expireRequests() {
+        long now = System.nanoTime();
+        for (PeerConnection[] connections : peers) {
+            synchronized (connections) {
+                for (PeerConnection connection : connections) {
+                    if (connection != null) {
+                        connection.expire(now);
+                    }
+                }
+            }
+        }
+    }
+
+    //runs on an event loop, anything which may wait for another node goes to the executor
+    private CompletableFuture<TransferResult> handle(ByteBuffer request) {
+        int operation = request.getInt();
+        int sourceNode = request.getInt();
+        long accountFromId = request.getLong();
+        long accountToId = request.getLong();
+        long amount = request.getLong();
+        long keyHigh = request.getLong();
+        long keyLow = request.getLong();
+        switch (operation & OPERATION_MASK) {
+            case FORWARD:
+                if (topology.ownerOf(accountFromId) != localNode) {
+                    throw new IllegalStateException(format("Account %s is not owned by the node %s, nodes are "
+                            + "started with different topologies", accountFromId, localNode));
+                }
+                return CompletableFuture.supplyAsync(() -> transfer(accountFromId, accountToId, amount,
+                        (operation & IDEMPOTENT) != 0, keyHigh, keyLow), executor).thenCompose(Function.identity());
+            case CREDIT:
+                if (sourceNode < 0 || sourceNode >= topology.size() || sourceNode == localNode) {
+                    throw new IllegalStateException(format("Credit from unknown node %s", sourceNode));
+                }
+                if (SettlementAccounts.isSettlementAccount(accountToId)) {
+                    return CompletableFuture.completedFuture(TransferResult.UNKNOWN_ACCOUNT);
+                }
+                long settlementAccountId = SettlementAccounts.accountId(localNode, sourceNode, accountToId);
+                if ((operation & IDEMPOTENT) == 0) {
+                    return moneyTransferService.trySettleAsync(settlementAccountId, accountToId, amount);
+                }
+                //a credit is sent again until it's answered, it is applied once
+                return once(keyHigh, keyLow, IdempotencyCache.fingerprint(settlementAccountId, accountToId, amount),
+                        () -> moneyTransferService.trySettleAsync(settlementAccountId, accountToId, amount));
+            default:
+                throw new IllegalStateException(format("Unknown operation %s", operation));
+        }
+    }
+
+    private static boolean involvesSettlementAccount(long accountFromId, long accountToId) {
+        return SettlementAccounts.isSettlementAccount(accountFromId)
+                || SettlementAccounts.isSettlementAccount(accountToId);
+    }
+
+    private CompletableFuture<TransferResult> send(int node, int operation, long accountFromId, long accountToId,
+                                                   long amount, long keyHigh, long keyLow) {
+        PeerConnection connection;
+        try {
+            connection = connectionTo(node);
+        } catch (IOException e) {
+            CompletableFuture<TransferResult> failed = new CompletableFuture<>();
+            failed.completeExceptionally(
+                    new UncheckedIOException(format("Can't connect to %s", topology.addressOf(node)), e));
+            return failed;
+        }
+        return connection.send(operation, localNode, accountFromId, accountToId, amount, keyHigh, keyLow);
+    }
+
+    //connections are opened on first use, so nodes can be started in any order, and opened again once broken
+    private PeerConnection connectionTo(int node) throws IOException {
+        PeerConnection[] connections = peers[node];
+        int index = ThreadLocalRandom.current().nextInt(connections.length);
+        synchronized (connections) {
+            PeerConnection connection = connections[index];
+            if (connection == null || connection.isBroken()) {
+                connection = new PeerConnection(topology.addressOf(node), "cluster-peer-" + node + "-" + index,
+                        requestTimeoutMillis);
+                connections[index] = connection;
+            }
+            return connection;
+        }
+    }
+
+    /**
+     * @return node configured by system properties or null if the cluster is not configured
+     */
+    public static ClusterNode getInstance() {
+        return ClusterNodeInstanceHolder.INSTANCE;
+    }
+
+    private static class ClusterNodeInstanceHolder {
+        private static final ClusterNode INSTANCE = create(ClusterTopology.fromSystemProperties());
+        private ClusterNodeInstanceHolder() {}
+
+        private static ClusterNode create(ClusterTopology topology) {
+            if (topology == null) {
+                return null;
+            }
+            int processors = Runtime.getRuntime().availableProcessors();
+            try {
+                return new ClusterNode(topology, MoneyTransferService.getInstance(),
+                        Integer.getInteger(EVENT_LOOPS_SYSTEM_PROPERTY, processors),
+                        Integer.getInteger(THREADS_SYSTEM_PROPERTY, processors * 2),
+                        Integer.getInteger(CONNECTIONS_SYSTEM_PROPERTY, 2));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
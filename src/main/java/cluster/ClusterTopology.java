@@ -0,0 +1,127 @@
+package cluster;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.lang.String.format;
+
+/**
+ * Nodes of the cluster and the owner of every account id by consistent hashing: every node takes
+ * {@link #VIRTUAL_NODES} points on a ring of 64-bit hashes, derived from its address, and an account belongs to
+ * the node of the first point at or after the hash of its id. Adding a node moves only the accounts which the new
+ * node takes over, about {@code 1 / nodes} of them, accounts never move between the nodes which were already
+ * there. Every node has to be started with the same list of nodes.
+ */
+public class ClusterTopology {
+    public static final String NODES_SYSTEM_PROPERTY = "moneyTransfer.cluster.nodes";
+    public static final String NODE_INDEX_SYSTEM_PROPERTY = "moneyTransfer.cluster.nodeIndex";
+    public static final int MAX_NODES = 64;
+    static final int VIRTUAL_NODES = 256;
+
+    private final List<InetSocketAddress> nodes;
+    private final int localNode;
+    private final long[] points;
+    private final int[] owners;
+
+    public ClusterTopology(List<InetSocketAddress> nodes, int localNode) {
+        if (nodes.isEmpty() || nodes.size() > MAX_NODES) {
+            throw new IllegalArgumentException(
+                    format("There should be from 1 to %s nodes, actual were %s", MAX_NODES, nodes.size()));
+        }
+        if (localNode < 0 || localNode >= nodes.size()) {
+            throw new IllegalArgumentException(
+                    format("Node index should be from 0 to %s, actual was %s", nodes.size() - 1, localNode));
+        }
+        this.nodes = new ArrayList<>(nodes);
+        this.localNode = localNode;
+        long[] entries = new long[nodes.size() * VIRTUAL_NODES];
+        for (int node = 0; node < nodes.size(); node++) {
+            String name = nodes.get(node).getHostString() + ":" + nodes.get(node).getPort();
+            for (int point = 0; point < VIRTUAL_NODES; point++) {
+                entries[node * VIRTUAL_NODES + point] = hash(name, point);
+            }
+        }
+        //points are sorted together with their nodes, ties which are next to impossible go to the lower node
+        Integer[] order = new Integer[entries.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (left, right) -> Long.compare(entries[left], entries[right]));
+        this.points = new long[entries.length];
+        this.owners = new int[entries.length];
+        for (int i = 0; i < order.length; i++) {
+            points[i] = entries[order[i]];
+            owners[i] = order[i] / VIRTUAL_NODES;
+        }
+    }
+
+    public int ownerOf(long accountId) {
+        int index = Arrays.binarySearch(points, mix(accountId));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    public boolean isLocal(long accountId) {
+        return ownerOf(accountId) == localNode;
+    }
+
+    public int getLocalNode() {
+        return localNode;
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    public InetSocketAddress addressOf(int node) {
+        return nodes.get(node);
+    }
+
+    private static long hash(String name, int point) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            hash = (hash ^ name.charAt(i)) * 0x100000001B3L;
+        }
+        return mix(hash ^ point * 0x9E3779B97F4A7C15L);
+    }
+
+    //murmur3 finalizer, consecutive ids land all over the ring
+    private static long mix(long value) {
+        long hash = value;
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    /**
+     * Parses {@code host:port} addresses of the cluster RPC endpoints separated by commas.
+     *
+     * @return topology of the node or null if the cluster is not configured
+     */
+    public static ClusterTopology fromSystemProperties() {
+        String nodes = System.getProperty(NODES_SYSTEM_PROPERTY);
+        if (nodes == null) {
+            return null;
+        }
+        return new ClusterTopology(parse(nodes), Integer.getInteger(NODE_INDEX_SYSTEM_PROPERTY, 0));
+    }
+
+    static List<InetSocketAddress> parse(String nodes) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String node : nodes.split(",")) {
+            int colon = node.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException(format("Node %s should be host:port", node));
+            }
+            addresses.add(InetSocketAddress.createUnresolved(
+                    node.substring(0, colon).trim(), Integer.parseInt(node.substring(colon + 1).trim())));
+        }
+        return addresses;
+    }
+}
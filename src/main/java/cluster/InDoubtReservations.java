@@ -0,0 +1,249 @@
+package cluster;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.lang.String.format;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Reservations of transfers across nodes whose credit on the other node is not known to be made or declined yet,
+ * see {@link ClusterNode}. Every reservation gets a random idempotency key for its credit, so the credit can be
+ * sent again until the other node answers it.
+ *
+ * <p>With a file reservations survive a restart: a reservation record is written and fsynced before its credit
+ * is sent, a resolution record before the reservation is confirmed or given back. Records are of fixed size:
+ * idempotency key, account from, account to, settlement account and amount as longs, the other node and
+ * the state as ints. On open the reservations without a resolution are read back and the file is rewritten
+ * with them only, a torn record at the end is cut off.
+ */
+final class InDoubtReservations implements Closeable {
+    public static final String FILE_SYSTEM_PROPERTY = "moneyTransfer.cluster.reservationsFile";
+    static final int RECORD_SIZE = 56;
+    private static final int RESERVED = 1;
+    private static final int RESOLVED = 2;
+
+    private final Set<Reservation> inDoubt = ConcurrentHashMap.newKeySet();
+    private final FileChannel channel;
+    private final Object forceLock = new Object();
+    private long written;
+    private long forced;
+
+    private InDoubtReservations(FileChannel channel, Collection<Reservation> inDoubt) {
+        this.channel = channel;
+        this.inDoubt.addAll(inDoubt);
+    }
+
+    /**
+     * @return reservations kept in memory only, they are lost with the process
+     */
+    static InDoubtReservations inMemory() {
+        return new InDoubtReservations(null, new ArrayList<>());
+    }
+
+    /**
+     * @return reservations of the file configured by system properties, or kept in memory if there is none
+     */
+    static InDoubtReservations fromSystemProperties() {
+        String file = System.getProperty(FILE_SYSTEM_PROPERTY);
+        return file == null ? inMemory() : open(Paths.get(file));
+    }
+
+    static InDoubtReservations open(Path file) {
+        try {
+            Collection<Reservation> inDoubt = read(file);
+            Path compacted = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(compacted, CREATE, WRITE, TRUNCATE_EXISTING)) {
+                for (Reservation reservation : inDoubt) {
+                    ByteBuffer record = reservation.toRecord(RESERVED);
+                    while (record.hasRemaining()) {
+                        channel.write(record);
+                    }
+                }
+                channel.force(true);
+            }
+            Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return new InDoubtReservations(FileChannel.open(file, WRITE, APPEND), inDoubt);
+        } catch (IOException e) {
+            throw new UncheckedIOException(format("Can't open reservations %s", file), e);
+        }
+    }
+
+    /**
+     * Adds a reservation which is already made, it is durable when the method returns. The reservation is
+     * returned resolving, its credit is sent by the caller.
+     */
+    Reservation add(int peerNode, long accountFromId, long accountToId, long settlementAccountId, long amount) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Reservation reservation = new Reservation(random.nextLong(), random.nextLong(), peerNode,
+                accountFromId, accountToId, settlementAccountId, amount);
+        reservation.startResolving();
+        write(reservation.toRecord(RESERVED));
+        inDoubt.add(reservation);
+        return reservation;
+    }
+
+    /**
+     * Marks the reservation resolved once the outcome of its credit is known, before the reservation is given
+     * back, so a reservation is never given back twice; it is durable when the method returns.
+     */
+    void resolve(Reservation reservation) {
+        write(reservation.toRecord(RESOLVED));
+        inDoubt.remove(reservation);
+    }
+
+    Collection<Reservation> inDoubt() {
+        return inDoubt;
+    }
+
+    @Override
+    public void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //a thread which waited for the force of another one finds its record forced already, so writers share fsyncs
+    private void write(ByteBuffer record) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            long end;
+            synchronized (this) {
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+                end = written += RECORD_SIZE;
+            }
+            synchronized (forceLock) {
+                if (forced < end) {
+                    long upTo;
+                    synchronized (this) {
+                        upTo = written;
+                    }
+                    channel.force(false);
+                    forced = upTo;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't write reservations", e);
+        }
+    }
+
+    private static Collection<Reservation> read(Path file) throws IOException {
+        Set<Reservation> inDoubt = new LinkedHashSet<>();
+        if (!Files.exists(file)) {
+            return inDoubt;
+        }
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            ByteBuffer records = ByteBuffer.allocate(RECORD_SIZE * 1024);
+            while (channel.read(records) >= 0) {
+                records.flip();
+                while (records.remaining() >= RECORD_SIZE) {
+                    long keyHigh = records.getLong();
+                    long keyLow = records.getLong();
+                    long accountFromId = records.getLong();
+                    long accountToId = records.getLong();
+                    long settlementAccountId = records.getLong();
+                    long amount = records.getLong();
+                    int peerNode = records.getInt();
+                    int state = records.getInt();
+                    Reservation reservation = new Reservation(keyHigh, keyLow, peerNode, accountFromId, accountToId,
+                            settlementAccountId, amount);
+                    if (state == RESERVED) {
+                        inDoubt.add(reservation);
+                    } else if (state == RESOLVED) {
+                        inDoubt.remove(reservation);
+                    } else {
+                        throw new IllegalStateException(format("Unknown state %s of a reservation in %s",
+                                state, file));
+                    }
+                }
+                records.compact();
+            }
+        }
+        return inDoubt;
+    }
+
+    /**
+     * Reservation identified by the idempotency key of its credit.
+     */
+    static final class Reservation {
+        final long keyHigh;
+        final long keyLow;
+        final int peerNode;
+        final long accountFromId;
+        final long accountToId;
+        final long settlementAccountId;
+        final long amount;
+        //set while the credit is sent, so a reservation is not resolved by two threads at once
+        private final AtomicBoolean resolving = new AtomicBoolean();
+
+        Reservation(long keyHigh, long keyLow, int peerNode, long accountFromId, long accountToId,
+                    long settlementAccountId, long amount) {
+            this.keyHigh = keyHigh;
+            this.keyLow = keyLow;
+            this.peerNode = peerNode;
+            this.accountFromId = accountFromId;
+            this.accountToId = accountToId;
+            this.settlementAccountId = settlementAccountId;
+            this.amount = amount;
+        }
+
+        boolean startResolving() {
+            return resolving.compareAndSet(false, true);
+        }
+
+        void stopResolving() {
+            resolving.set(false);
+        }
+
+        private ByteBuffer toRecord(int state) {
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            record.putLong(keyHigh).putLong(keyLow).putLong(accountFromId).putLong(accountToId)
+                    .putLong(settlementAccountId).putLong(amount).putInt(peerNode).putInt(state).flip();
+            return record;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Reservation)) {
+                return false;
+            }
+            Reservation other = (Reservation) o;
+            return keyHigh == other.keyHigh && keyLow == other.keyLow;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(keyHigh * 31 + keyLow);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package cluster;
+
+import model.TransferResult;
+import tcp.BinaryTransferServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.String.format;
+
+/**
+ * Client side of a connection to another node. Callers write their requests one at a time and don't wait for
+ * responses, which are read by a thread of the connection and complete the futures of their requests, so many
+ * requests of many callers are in flight on one connection. Once the connection breaks every request in flight
+ * fails and the connection is not used again. A request without a response within the timeout fails once
+ * {@link #expire(long)} finds it, its late response is ignored.
+ */
+final class PeerConnection implements Closeable {
+    private static final TransferResult[] TRANSFER_RESULTS = TransferResult.values();
+
+    private final SocketChannel channel;
+    private final ByteBuffer request = ByteBuffer.allocateDirect(ClusterNode.REQUEST_SIZE);
+    private final ConcurrentHashMap<Long, Request> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong correlationIds = new AtomicLong();
+    private final Thread reader;
+    private final long requestTimeoutMillis;
+    private volatile boolean broken;
+
+    PeerConnection(InetSocketAddress address, String name, long requestTimeoutMillis) throws IOException {
+        this.requestTimeoutMillis = requestTimeoutMillis;
+        this.channel = SocketChannel.open(new InetSocketAddress(address.getHostString(), address.getPort()));
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        this.reader = new Thread(this::readResponses, name);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    CompletableFuture<TransferResult> send(int operation, int sourceNode, long accountFromId, long accountToId,
+                                           long amount, long idempotencyKeyHigh, long idempotencyKeyLow) {
+        long correlationId = correlationIds.incrementAndGet();
+        Request result = new Request(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(requestTimeoutMillis));
+        inFlight.put(correlationId, result);
+        try {
+            synchronized (request) {
+                request.clear();
+                request.putLong(correlationId).putInt(operation).putInt(sourceNode)
+                        .putLong(accountFromId).putLong(accountToId).putLong(amount)
+                        .putLong(idempotencyKeyHigh).putLong(idempotencyKeyLow).flip();
+                while (request.hasRemaining()) {
+                    channel.write(request);
+                }
+            }
+        } catch (IOException e) {
+            fail(new UncheckedIOException(e));
+        }
+        if (broken) {
+            //the reader may have failed the requests in flight before this one was added
+            fail(new IllegalStateException("Connection to the node is closed"));
+        }
+        return result;
+    }
+
+    /**
+     * Fails requests in flight whose timeout has passed.
+     *
+     * @param now {@link System#nanoTime()}
+     */
+    void expire(long now) {
+        for (Map.Entry<Long, Request> request : inFlight.entrySet()) {
+            if (now - request.getValue().deadline >= 0 && inFlight.remove(request.getKey(), request.getValue())) {
+                request.getValue().completeExceptionally(new IllegalStateException(
+                        format("No response from %s within %s ms", channel, requestTimeoutMillis)));
+            }
+        }
+    }
+
+    boolean isBroken() {
+        return broken;
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+            reader.join();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void readResponses() {
+        ByteBuffer responses = ByteBuffer.allocateDirect(BinaryTransferServer.RESPONSE_SIZE * 1024);
+        try {
+            while (channel.read(responses) >= 0) {
+                responses.flip();
+                while (responses.remaining() >= BinaryTransferServer.RESPONSE_SIZE) {
+                    Request result = inFlight.remove(responses.getLong());
+                    byte code = responses.get();
+                    if (result == null) {
+                        continue;
+                    }
+                    if (code == BinaryTransferServer.FAILED) {
+                        result.completeExceptionally(new IllegalStateException("Transfer failed on the node"));
+                    } else {
+                        result.complete(TRANSFER_RESULTS[code]);
+                    }
+                }
+                responses.compact();
+            }
+            fail(new IllegalStateException("Connection to the node is closed"));
+        } catch (IOException e) {
+            fail(new UncheckedIOException(format("Connection to %s is broken", channel), e));
+        }
+    }
+
+    private void fail(RuntimeException cause) {
+        broken = true;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            //the connection is gone anyway
+        }
+        for (Long correlationId : inFlight.keySet()) {
+            Request result = inFlight.remove(correlationId);
+            if (result != null) {
+                result.completeExceptionally(cause);
+            }
+        }
+    }
+
+    private static final class Request extends CompletableFuture<TransferResult> {
+        private final long deadline;
+
+        private Request(long deadline) {
+            this.deadline = deadline;
+        }
+    }
+}
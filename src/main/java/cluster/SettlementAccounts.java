@@ -0,0 +1,52 @@
+package cluster;
+
+import model.Account;
+import repository.AccountsRepository;
+
+/**
+ * Accounts which carry money between nodes, so a node's journal only ever has transfers between its own accounts.
+ * For every other node a node keeps {@link #STRIPES} settlement accounts, which start with a float of
+ * {@link #FLOAT}: money sent to the other node is moved from the payer into one of them, money received from it
+ * is paid out of one of them. Their balance less the float is the net amount sent to that node, the settlement
+ * accounts of the two nodes mirror each other and add up to their floats once no transfer is between them.
+ * Transfers are spread over stripes by account id, so the accounts are not a single point of contention.
+ * Only {@link ClusterNode} moves money to and from them, every client facing path treats their ids as unknown
+ * accounts, so nobody can drain a float, read it or load over it.
+ */
+public final class SettlementAccounts {
+    static final int STRIPES = 16;
+    static final long FLOAT = 1L << 48;
+    //ids from the very bottom of the range, clear of any real account
+    private static final long FIRST_ACCOUNT_ID = Long.MIN_VALUE;
+
+    private SettlementAccounts() {
+    }
+
+    public static long accountId(int localNode, int peerNode, long accountId) {
+        long stripe = (accountId * 0x9E3779B97F4A7C15L) >>> (Long.SIZE - Integer.numberOfTrailingZeros(STRIPES));
+        return FIRST_ACCOUNT_ID + ((long) localNode * ClusterTopology.MAX_NODES + peerNode) * STRIPES + stripe;
+    }
+
+    public static boolean isSettlementAccount(long accountId) {
+        return accountId < FIRST_ACCOUNT_ID + (long) ClusterTopology.MAX_NODES * ClusterTopology.MAX_NODES * STRIPES;
+    }
+
+    /**
+     * Adds settlement accounts of the local node which the repository doesn't have yet, the ones restored from
+     * a snapshot keep their balances.
+     */
+    public static void addMissing(ClusterTopology topology, AccountsRepository accountsRepository) {
+        int localNode = topology.getLocalNode();
+        for (int peerNode = 0; peerNode < topology.size(); peerNode++) {
+            if (peerNode == localNode) {
+                continue;
+            }
+            long first = FIRST_ACCOUNT_ID + ((long) localNode * ClusterTopology.MAX_NODES + peerNode) * STRIPES;
+            for (long accountId = first; accountId < first + STRIPES; accountId++) {
+                if (accountsRepository.get(accountId) == null) {
+                    accountsRepository.add(new Account(accountId, FLOAT));
+                }
+            }
+        }
+    }
+}
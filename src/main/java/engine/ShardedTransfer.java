@@ -0,0 +1,74 @@
+package engine;
+
+import model.Account;
+import model.TransferLog;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A transfer, or a single step of a multi-account transfer, on its way through the shards. Every caller thread
+ * reuses its own instance, it belongs to the shards from submission until it is completed.
+ */
+final class ShardedTransfer {
+    private static final int PENDING = 0;
+    private static final int DONE = 1;
+    private static final int DECLINED = 2;
+    private static final int SPINS_BEFORE_PARKING = 64;
+
+    enum Step {
+        /** debit accountFrom, then credit accountTo on the same or another shard */
+        TRANSFER,
+        /** credit accountTo, the debit is done already */
+        CREDIT,
+        /** give the debit back to accountFrom as the credit can't be applied */
+        REFUND,
+        /** debit accountFrom only */
+        DEBIT,
+        /** credit accountFrom only */
+        DEPOSIT
+    }
+
+    Step step;
+    Account accountFrom;
+    Account accountTo;
+    long amount;
+    TransferLog log;
+    //set by the shard which credits a transfer, read by the caller once it's completed
+    long sequence;
+    RuntimeException logFailure;
+    ShardedTransferEngine.Shard admittedBy;
+    private Thread waiter;
+    private volatile int state;
+
+    void prepare(Step step, Account accountFrom, Account accountTo, long amount) {
+        this.step = step;
+        this.accountFrom = accountFrom;
+        this.accountTo = accountTo;
+        this.amount = amount;
+        this.waiter = Thread.currentThread();
+        this.state = PENDING;
+    }
+
+    /**
+     * The last access of a shard to the transfer, the caller may reuse it right after.
+     */
+    void complete(boolean done) {
+        Thread thread = waiter;
+        admittedBy.release();
+        state = done ? DONE : DECLINED;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * @return true if the transfer is done, false if it is declined
+     */
+    boolean await() {
+        for (int i = 0; i < SPINS_BEFORE_PARKING && state == PENDING; i++) {
+            //the shard usually answers within a few microseconds
+        }
+        while (state == PENDING) {
+            LockSupport.park(this);
+        }
+        return state == DONE;
+    }
+}
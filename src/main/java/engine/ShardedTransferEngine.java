@@ -0,0 +1,252 @@
+package engine;
+
+import model.Account;
+import model.TransferLog;
+import model.TransferStrategy;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+import static java.lang.String.format;
+
+/**
+ * Partitions accounts by id across shards, every shard has its own thread which is the only one changing balances
+ * of its accounts, so transfers within a shard take no locks. A transfer between shards is done in two steps:
+ * the debit is reserved on the shard of accountFrom, then the credit is applied on the shard of accountTo, and if
+ * the credit can't be applied (the balance would overflow) the debit is given back on the shard of accountFrom.
+ * Callers wait for the outcome, so the engine is a drop-in {@link TransferStrategy}. A transfer is appended to
+ * its {@link TransferLog} by the shard of accountTo right before the credit, once it's known to be applied.
+ *
+ * <p>Every shard admits a bounded number of transfers at once, then no ring can overflow: the inbox of a shard
+ * holds only transfers admitted by it and a transfer waits in at most one hand-off ring at a time.
+ */
+public class ShardedTransferEngine implements TransferStrategy, Closeable {
+    static final int MAX_IN_FLIGHT_PER_SHARD = 1024;
+    private static final int SPINS_BEFORE_YIELDING = 100;
+    private static final int YIELDS_BEFORE_PARKING = 100;
+
+    private final Shard[] shards;
+    private final ThreadLocal<ShardedTransfer> transfers = ThreadLocal.withInitial(ShardedTransfer::new);
+
+    public ShardedTransferEngine(int shardCount) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException(format("Shards should be above zero, actual was %s", shardCount));
+        }
+        int handOffCapacity = Integer.highestOneBit(shardCount * MAX_IN_FLIGHT_PER_SHARD - 1) << 1;
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i, handOffCapacity);
+        }
+        for (Shard shard : shards) {
+            shard.thread.start();
+        }
+    }
+
+    @Override
+    public long transfer(Account accountFrom, Account accountTo, long amountToTransfer, TransferLog log) {
+        ShardedTransfer transfer = transfers.get();
+        transfer.prepare(ShardedTransfer.Step.TRANSFER, accountFrom, accountTo, amountToTransfer);
+        transfer.log = log;
+        if (!shardOf(accountFrom).submit(transfer)) {
+            return DECLINED;
+        }
+        RuntimeException logFailure = transfer.logFailure;
+        if (logFailure != null) {
+            transfer.logFailure = null;
+            throw logFailure;
+        }
+        return transfer.sequence;
+    }
+
+    /**
+     * Debits are reserved one by one on the shards of their accounts and given back if one of them fails,
+     * then the log is called and credits are applied. Money is seen on neither account in between.
+     */
+    @Override
+    public long transfer(Account[] accountsSortedById, long[] amounts, LongSupplier log) {
+        ShardedTransfer transfer = transfers.get();
+        for (int i = 0; i < accountsSortedById.length; i++) {
+            if (amounts[i] >= 0) {
+                continue;
+            }
+            transfer.prepare(ShardedTransfer.Step.DEBIT, accountsSortedById[i], null, -amounts[i]);
+            if (!shardOf(accountsSortedById[i]).submit(transfer)) {
+                for (int j = 0; j < i; j++) {
+                    if (amounts[j] < 0) {
+                        deposit(transfer, accountsSortedById[j], -amounts[j]);
+                    }
+                }
+                return DECLINED;
+            }
+        }
+        try {
+            return log.getAsLong();
+        } finally {
+            for (int i = 0; i < accountsSortedById.length; i++) {
+                if (amounts[i] > 0) {
+                    deposit(transfer, accountsSortedById[i], amounts[i]);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Shard shard : shards) {
+            shard.running = false;
+            LockSupport.unpark(shard.thread);
+        }
+        for (Shard shard : shards) {
+            try {
+                shard.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    int shardIndex(long accountId) {
+        long hash = accountId * 0x9E3779B97F4A7C15L;
+        return Math.floorMod((int) (hash ^ (hash >>> 32)), shards.length);
+    }
+
+    private void deposit(ShardedTransfer transfer, Account account, long amount) {
+        transfer.prepare(ShardedTransfer.Step.DEPOSIT, account, null, amount);
+        shardOf(account).submit(transfer);
+    }
+
+    private Shard shardOf(Account account) {
+        return shards[shardIndex(account.getAccountId())];
+    }
+
+    final class Shard implements Runnable {
+        private final TransferRing inbox = new TransferRing(MAX_IN_FLIGHT_PER_SHARD);
+        private final TransferRing handOffs;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final Thread thread;
+        private volatile boolean parked;
+        private volatile boolean running = true;
+
+        private Shard(int index, int handOffCapacity) {
+            this.handOffs = new TransferRing(handOffCapacity);
+            this.thread = new Thread(this, "transfer-shard-" + index);
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            int idle = 0;
+            while (running) {
+                //hand-offs finish transfers which are already half done, so they go first
+                ShardedTransfer transfer = handOffs.poll();
+                if (transfer == null) {
+                    transfer = inbox.poll();
+                }
+                if (transfer != null) {
+                    process(transfer);
+                    idle = 0;
+                } else if (++idle > SPINS_BEFORE_YIELDING + YIELDS_BEFORE_PARKING) {
+                    park();
+                    idle = 0;
+                } else if (idle > SPINS_BEFORE_YIELDING) {
+                    Thread.yield();
+                }
+            }
+        }
+
+        boolean submit(ShardedTransfer transfer) {
+            while (inFlight.incrementAndGet() > MAX_IN_FLIGHT_PER_SHARD) {
+                inFlight.decrementAndGet();
+                Thread.yield();
+            }
+            transfer.admittedBy = this;
+            offer(inbox, transfer);
+            return transfer.await();
+        }
+
+        void release() {
+            inFlight.decrementAndGet();
+        }
+
+        private void process(ShardedTransfer transfer) {
+            switch (transfer.step) {
+                case TRANSFER:
+                    if (!transfer.accountFrom.tryWithdraw(transfer.amount)) {
+                        transfer.complete(false);
+                    } else if (shardOf(transfer.accountTo) == this || transfer.accountTo.isHot()) {
+                        //credits of a hot account go to its credit cells which any shard can write
+                        credit(transfer);
+                    } else {
+                        transfer.step = ShardedTransfer.Step.CREDIT;
+                        shardOf(transfer.accountTo).handOff(transfer);
+                    }
+                    break;
+                case CREDIT:
+                    credit(transfer);
+                    break;
+                case REFUND:
+                    transfer.accountFrom.add(transfer.amount);
+                    transfer.complete(false);
+                    break;
+                case DEBIT:
+                    transfer.complete(transfer.accountFrom.tryWithdraw(transfer.amount));
+                    break;
+                case DEPOSIT:
+                    transfer.accountFrom.add(transfer.amount);
+                    transfer.complete(true);
+                    break;
+                default:
+                    throw new IllegalStateException(format("Unknown step %s", transfer.step));
+            }
+        }
+
+        private void credit(ShardedTransfer transfer) {
+            //the shard is the only writer of the balance, so it can't change between the check and the credit,
+            //for a hot account the check is approximate
+            if (transfer.accountTo.getBalance() > Long.MAX_VALUE - transfer.amount) {
+                transfer.step = ShardedTransfer.Step.REFUND;
+                Shard source = shardOf(transfer.accountFrom);
+                if (source == this) {
+                    process(transfer);
+                } else {
+                    source.handOff(transfer);
+                }
+                return;
+            }
+            try {
+                transfer.sequence = transfer.log.append(
+                        transfer.accountFrom.getAccountId(), transfer.accountTo.getAccountId(), transfer.amount);
+            } catch (RuntimeException e) {
+                //the debit is applied already, so is the credit, the caller gets the failure
+                transfer.logFailure = e;
+            }
+            transfer.accountTo.add(transfer.amount);
+            transfer.complete(true);
+        }
+
+        private void handOff(ShardedTransfer transfer) {
+            offer(handOffs, transfer);
+        }
+
+        private void offer(TransferRing ring, ShardedTransfer transfer) {
+            //admission keeps rings from filling up, the loop only covers a slot not yet freed by the consumer
+            while (!ring.offer(transfer)) {
+                Thread.yield();
+            }
+            if (parked) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        private void park() {
+            parked = true;
+            if (running && handOffs.isEmpty() && inbox.isEmpty()) {
+                LockSupport.park(this);
+            }
+            parked = false;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static java.lang.String.format;
+
+/**
+ * Bounded lock-free queue of transfers with many producers and a single consumer. Producers claim a slot
+ * by moving the tail and publish the transfer into it, the consumer takes transfers in claim order and frees
+ * their slots. A claimed slot which is not published yet looks empty to the consumer.
+ */
+final class TransferRing {
+    private static final AtomicLongFieldUpdater<TransferRing> HEAD_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(TransferRing.class, "head");
+
+    private final AtomicReferenceArray<ShardedTransfer> slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    TransferRing(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException(format("Capacity should be a power of two, actual was %s", capacity));
+        }
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * @return false if the ring is full
+     */
+    boolean offer(ShardedTransfer transfer) {
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head >= slots.length()) {
+                return false;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+        //a volatile write, so a consumer going to sleep either sees the transfer or is seen sleeping
+        slots.set((int) sequence & mask, transfer);
+        return true;
+    }
+
+    /**
+     * Consumer only.
+     *
+     * @return the next transfer or null if there is none published yet
+     */
+    ShardedTransfer poll() {
+        long sequence = head;
+        int slot = (int) sequence & mask;
+        ShardedTransfer transfer = slots.get(slot);
+        if (transfer == null) {
+            return null;
+        }
+        slots.lazySet(slot, null);
+        HEAD_UPDATER.lazySet(this, sequence + 1);
+        return transfer;
+    }
+
+    /**
+     * Consumer only.
+     */
+    boolean isEmpty() {
+        return slots.get((int) head & mask) == null;
+    }
+}
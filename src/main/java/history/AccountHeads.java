@@ -0,0 +1,86 @@
+package history;
+
+/**
+ * Newest history record of every account. Accounts are spread over stripes, each one a small open addressing
+ * table of primitive ids guarded by its own monitor, so an append locks only the stripes of its two accounts.
+ */
+final class AccountHeads {
+    static final long NONE = -1;
+    private static final int STRIPES = 256;
+    private static final int INITIAL_STRIPE_CAPACITY = 64;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    AccountHeads() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    Stripe stripeOf(long accountId) {
+        return stripes[(int) (hash(accountId) >>> 56)];
+    }
+
+    private static long hash(long accountId) {
+        return accountId * 0x9E3779B97F4A7C15L;
+    }
+
+    /**
+     * Callers hold the monitor of the stripe.
+     */
+    static final class Stripe {
+        private long[] accountIds = new long[INITIAL_STRIPE_CAPACITY];
+        //record index + 1, 0 marks an empty slot
+        private long[] heads = new long[INITIAL_STRIPE_CAPACITY];
+        private int size;
+
+        long get(long accountId) {
+            int mask = accountIds.length - 1;
+            for (int slot = (int) hash(accountId) & mask; heads[slot] != 0; slot = (slot + 1) & mask) {
+                if (accountIds[slot] == accountId) {
+                    return heads[slot] - 1;
+                }
+            }
+            return NONE;
+        }
+
+        /**
+         * @return previous head of the account
+         */
+        long replace(long accountId, long head) {
+            int mask = accountIds.length - 1;
+            int slot = (int) hash(accountId) & mask;
+            for (; heads[slot] != 0; slot = (slot + 1) & mask) {
+                if (accountIds[slot] == accountId) {
+                    long previous = heads[slot] - 1;
+                    heads[slot] = head + 1;
+                    return previous;
+                }
+            }
+            accountIds[slot] = accountId;
+            heads[slot] = head + 1;
+            if (++size > accountIds.length / 4 * 3) {
+                grow();
+            }
+            return NONE;
+        }
+
+        private void grow() {
+            long[] oldAccountIds = accountIds;
+            long[] oldHeads = heads;
+            accountIds = new long[oldAccountIds.length * 2];
+            heads = new long[oldHeads.length * 2];
+            int mask = accountIds.length - 1;
+            for (int i = 0; i < oldAccountIds.length; i++) {
+                if (oldHeads[i] != 0) {
+                    int slot = (int) hash(oldAccountIds[i]) & mask;
+                    while (heads[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    accountIds[slot] = oldAccountIds[i];
+                    heads[slot] = oldHeads[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package history;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static java.lang.String.format;
+
+/**
+ * Append-only log of applied transfers which keeps the latest {@code capacity} records. A record takes 40 bytes
+ * in chunks allocated as the log fills up: timestamp, account ids and amount as four longs, and for each of the
+ * two accounts the distance back to the previous record of that account as an int. Accounts are read newest first
+ * by following these links from the head kept in {@link AccountHeads}, no record is an object of its own.
+ *
+ * <p>Once the log wraps around the oldest records are overwritten, readers check after reading a record that its
+ * slot was not claimed again in the meantime and stop at the first record which is gone.
+ *
+ * <p>The log is kept in memory only and starts empty on every start, transfers of an earlier run are in
+ * the journal alone, see {@link #startAfterRestart(long)}. A read which runs into records that are gone, either
+ * overwritten or from before the restart, returns {@link #TRUNCATED}, so a statement is never silently short.
+ */
+public class TransferHistory {
+    public static final String CAPACITY_SYSTEM_PROPERTY = "moneyTransfer.history.capacity";
+    public static final long NO_MORE_RECORDS = -1;
+    //no more records are kept, older records of the account may be gone
+    public static final long TRUNCATED = -2;
+    private static final int DEFAULT_CAPACITY = 1 << 22;
+    private static final int CHUNK_SIZE = 1 << 14;
+    private static final int LONGS_PER_RECORD = 4;
+    private static final int TIMESTAMP = 0;
+    private static final int ACCOUNT_FROM_ID = 1;
+    private static final int ACCOUNT_TO_ID = 2;
+    private static final int AMOUNT = 3;
+    private static final int LINKS_PER_RECORD = 2;
+    private static final int LINK_OF_ACCOUNT_FROM = 0;
+    private static final int LINK_OF_ACCOUNT_TO = 1;
+    //link of a record whose previous record of the account was already overwritten, 0 marks the first record
+    private static final int PREVIOUS_GONE = -1;
+
+    private final int capacity;
+    private final int chunkSize;
+    private final AtomicReferenceArray<Chunk> chunks;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AccountHeads heads = new AccountHeads();
+    private volatile long keptSinceMillis = Long.MIN_VALUE;
+
+    public TransferHistory(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException(
+                    format("History capacity should be a power of two, actual was %s", capacity));
+        }
+        this.capacity = capacity;
+        this.chunkSize = Math.min(capacity, CHUNK_SIZE);
+        this.chunks = new AtomicReferenceArray<>(capacity / chunkSize);
+    }
+
+    /**
+     * Marks transfers before the given time as applied by an earlier run, they are not in the history and reads
+     * which reach back before that time report the history of the account as {@link #TRUNCATED}.
+     */
+    public void startAfterRestart(long nowMillis) {
+        keptSinceMillis = nowMillis;
+    }
+
+    /**
+     * Records the transfer with the current time.
+     */
+    public void append(long accountFromId, long accountToId, long amount) {
+        long timestamp = System.currentTimeMillis();
+        long index = claimed.getAndIncrement();
+        Chunk chunk = chunkOf(index);
+        int slot = (int) (index & (chunkSize - 1));
+        chunk.records.lazySet(slot * LONGS_PER_RECORD + TIMESTAMP, timestamp);
+        chunk.records.lazySet(slot * LONGS_PER_RECORD + ACCOUNT_FROM_ID, accountFromId);
+        chunk.records.lazySet(slot * LONGS_PER_RECORD + ACCOUNT_TO_ID, accountToId);
+        chunk.records.lazySet(slot * LONGS_PER_RECORD + AMOUNT, amount);
+        //the record is written before it becomes the head, readers see it through the monitor of the stripe
+        link(chunk, slot, LINK_OF_ACCOUNT_FROM, accountFromId, index);
+        link(chunk, slot, LINK_OF_ACCOUNT_TO, accountToId, index);
+    }
+
+    /**
+     * Passes records of the account with timestamps in {@code [fromMillis, toMillis)} to the visitor, newest first.
+     * Timestamps of transfers applied at the same time by different threads may be out of order by a millisecond
+     * or so, the walk stops at the first record older than {@code fromMillis}.
+     *
+     * @param cursor {@link #NO_MORE_RECORDS} to start from the newest record or a value returned by a previous read
+     * @return cursor of the next page, {@link #NO_MORE_RECORDS} after the last record of the range or
+     * {@link #TRUNCATED} if the history doesn't have all of the range anymore
+     */
+    public long read(long accountId, long fromMillis, long toMillis, long cursor, int limit, RecordVisitor visitor) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException(format("Limit should be above zero, actual was %s", limit));
+        }
+        long index = cursor;
+        if (index == NO_MORE_RECORDS) {
+            AccountHeads.Stripe stripe = heads.stripeOf(accountId);
+            synchronized (stripe) {
+                index = stripe.get(accountId);
+            }
+        } else if (index < 0 || index >= claimed.get() || chunks.get(chunkIndexOf(index)) == null) {
+            throw new IllegalArgumentException(format("Cursor %s is not valid", cursor));
+        }
+        int visited = 0;
+        while (index != AccountHeads.NONE) {
+            Chunk chunk = chunks.get(chunkIndexOf(index));
+            int slot = (int) (index & (chunkSize - 1));
+            long timestamp = chunk.records.get(slot * LONGS_PER_RECORD + TIMESTAMP);
+            long accountFromId = chunk.records.get(slot * LONGS_PER_RECORD + ACCOUNT_FROM_ID);
+            long accountToId = chunk.records.get(slot * LONGS_PER_RECORD + ACCOUNT_TO_ID);
+            long amount = chunk.records.get(slot * LONGS_PER_RECORD + AMOUNT);
+            int link = chunk.links.get(
+                    slot * LINKS_PER_RECORD + (accountFromId == accountId ? LINK_OF_ACCOUNT_FROM : LINK_OF_ACCOUNT_TO));
+            if (claimed.get() - index > capacity) {
+                //the slot is written by a newer record, older records are gone as well
+                return TRUNCATED;
+            }
+            if (accountFromId != accountId && accountToId != accountId) {
+                throw new IllegalArgumentException(
+                        format("Cursor %s doesn't belong to the account %s", cursor, accountId));
+            }
+            if (timestamp < fromMillis) {
+                return NO_MORE_RECORDS;
+            }
+            if (timestamp < toMillis) {
+                if (visited == limit) {
+                    return index;
+                }
+                visitor.visit(timestamp, accountFromId, accountToId, amount);
+                visited++;
+            }
+            if (link == PREVIOUS_GONE) {
+                return TRUNCATED;
+            }
+            index = link == 0 ? AccountHeads.NONE : index - link;
+        }
+        return fromMillis < keptSinceMillis ? TRUNCATED : NO_MORE_RECORDS;
+    }
+
+    /**
+     * @return position of the next record, the number of records appended so far
+     */
+    public long getPosition() {
+        return claimed.get();
+    }
+
+    /**
+     * Passes records from {@code fromPosition} (inclusive) to {@code toPosition} (exclusive) to the visitor in
+     * the order they were appended. Records before {@code toPosition} should be complete, which is the case for
+     * a position taken while no transfer is in flight.
+     *
+     * @return false if some of the records are already overwritten, the visitor may have got a part of them
+     */
+    public boolean forEach(long fromPosition, long toPosition, RecordVisitor visitor) {
+        for (long index = fromPosition; index < toPosition; index++) {
+            Chunk chunk = chunks.get(chunkIndexOf(index));
+            int slot = (int) (index & (chunkSize - 1));
+            long timestamp = chunk.records.get(slot * LONGS_PER_RECORD + TIMESTAMP);
+            long accountFromId = chunk.records.get(slot * LONGS_PER_RECORD + ACCOUNT_FROM_ID);
+            long accountToId = chunk.records.get(slot * LONGS_PER_RECORD + ACCOUNT_TO_ID);
+            long amount = chunk.records.get(slot * LONGS_PER_RECORD + AMOUNT);
+            if (claimed.get() - index > capacity) {
+                return false;
+            }
+            visitor.visit(timestamp, accountFromId, accountToId, amount);
+        }
+        return true;
+    }
+
+    private void link(Chunk chunk, int slot, int link, long accountId, long index) {
+        AccountHeads.Stripe stripe = heads.stripeOf(accountId);
+        synchronized (stripe) {
+            long previous = stripe.replace(accountId, index);
+            //a record which is already overwritten is not linked, the read stops there
+            long distance = previous == AccountHeads.NONE ? 0 : index - previous;
+            chunk.links.lazySet(slot * LINKS_PER_RECORD + link, distance < capacity ? (int) distance : PREVIOUS_GONE);
+        }
+    }
+
+    private Chunk chunkOf(long index) {
+        int chunkIndex = chunkIndexOf(index);
+        Chunk chunk = chunks.get(chunkIndex);
+        if (chunk == null) {
+            chunks.compareAndSet(chunkIndex, null, new Chunk(chunkSize));
+            chunk = chunks.get(chunkIndex);
+        }
+        return chunk;
+    }
+
+    private int chunkIndexOf(long index) {
+        return (int) ((index & (capacity - 1)) / chunkSize);
+    }
+
+    @FunctionalInterface
+    public interface RecordVisitor {
+        void visit(long timestamp, long accountFromId, long accountToId, long amount);
+    }
+
+    private static final class Chunk {
+        private final AtomicLongArray records;
+        private final AtomicIntegerArray links;
+
+        private Chunk(int size) {
+            this.records = new AtomicLongArray(size * LONGS_PER_RECORD);
+            this.links = new AtomicIntegerArray(size * LINKS_PER_RECORD);
+        }
+    }
+
+    public static TransferHistory getInstance() {
+        return TransferHistoryInstanceHolder.INSTANCE;
+    }
+
+    private static class TransferHistoryInstanceHolder {
+        private static final TransferHistory INSTANCE =
+                new TransferHistory(Integer.getInteger(CAPACITY_SYSTEM_PROPERTY, DEFAULT_CAPACITY));
+        private TransferHistoryInstanceHolder() {}
+    }
+}
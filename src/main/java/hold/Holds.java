@@ -0,0 +1,137 @@
+package hold;
+
+import scheduling.ScheduledTransfers;
+
+import static java.lang.String.format;
+
+/**
+ * Active holds by id, with the account, amount and expiry of every hold. A hold is kept as a transfer scheduled
+ * at its expiry in one of {@link #STRIPES} timing wheels, see {@link ScheduledTransfers}, so holds are added and
+ * removed in constant time and only the slots which came due are looked at to expire them. A thread adds holds
+ * to a wheel of its own stripe and the stripe is a part of the hold id, so threads creating and capturing holds
+ * at once rarely wait for each other.
+ */
+public class Holds {
+    public static final String TICK_SYSTEM_PROPERTY = "moneyTransfer.holds.tickMillis";
+    public static final long DEFAULT_TICK_MILLIS = 100;
+    public static final long NO_HOLD = -1;
+    static final int STRIPE_BITS = 6;
+    static final int STRIPES = 1 << STRIPE_BITS;
+    private static final int EXPIRED_PER_LOCK = 1024;
+
+    private final ScheduledTransfers[] stripes = new ScheduledTransfers[STRIPES];
+
+    public Holds(long tickMillis, long nowMillis) {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ScheduledTransfers(tickMillis, nowMillis);
+        }
+    }
+
+    public static Holds fromSystemProperties() {
+        return new Holds(Long.getLong(TICK_SYSTEM_PROPERTY, DEFAULT_TICK_MILLIS), System.currentTimeMillis());
+    }
+
+    /**
+     * @return id of the hold
+     */
+    public long add(long accountId, long amount, long expiresAtMillis) {
+        if (amount <= 0) {
+            throw new IllegalArgumentException(format("Amount on hold should be above zero, actual was %s", amount));
+        }
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        ScheduledTransfers transfers = stripes[stripe];
+        synchronized (transfers) {
+            return transfers.add(expiresAtMillis, accountId, 0, amount) << STRIPE_BITS | stripe;
+        }
+    }
+
+    /**
+     * @return amount of the active hold, {@link #NO_HOLD} if it's captured, released or expired
+     */
+    public long amountOf(long holdId) {
+        if (holdId < 0) {
+            return NO_HOLD;
+        }
+        ScheduledTransfers transfers = stripeOf(holdId);
+        synchronized (transfers) {
+            return transfers.getAmount(holdId >>> STRIPE_BITS);
+        }
+    }
+
+    /**
+     * @return account of the active hold, undefined if the hold is not active
+     */
+    public long accountOf(long holdId) {
+        if (holdId < 0) {
+            return 0;
+        }
+        ScheduledTransfers transfers = stripeOf(holdId);
+        synchronized (transfers) {
+            return transfers.getAccountFromId(holdId >>> STRIPE_BITS);
+        }
+    }
+
+    /**
+     * A hold is removed once, by a capture, a release or its expiry, whichever comes first. An id is never reused
+     * for another hold of the same stripe until the index comes round again 2^24 times.
+     *
+     * @return false if the hold is not active
+     */
+    public boolean remove(long holdId) {
+        if (holdId < 0) {
+            return false;
+        }
+        ScheduledTransfers transfers = stripeOf(holdId);
+        synchronized (transfers) {
+            return transfers.cancel(holdId >>> STRIPE_BITS);
+        }
+    }
+
+    /**
+     * Removes holds which expired by now and passes them to the visitor, outside of the locks of the stripes.
+     *
+     * @return number of expired holds
+     */
+    public int removeExpired(long nowMillis, ExpiredHoldVisitor visitor) {
+        long[] accountIds = new long[EXPIRED_PER_LOCK];
+        long[] amounts = new long[EXPIRED_PER_LOCK];
+        int expired = 0;
+        for (ScheduledTransfers transfers : stripes) {
+            int polled;
+            do {
+                int[] size = {0};
+                synchronized (transfers) {
+                    polled = transfers.pollDue(nowMillis, EXPIRED_PER_LOCK,
+                            (id, expiresAtMillis, accountId, ignored, amount) -> {
+                                accountIds[size[0]] = accountId;
+                                amounts[size[0]++] = amount;
+                            });
+                }
+                for (int i = 0; i < polled; i++) {
+                    visitor.visit(accountIds[i], amounts[i]);
+                }
+                expired += polled;
+            } while (polled == EXPIRED_PER_LOCK);
+        }
+        return expired;
+    }
+
+    public int size() {
+        int size = 0;
+        for (ScheduledTransfers transfers : stripes) {
+            synchronized (transfers) {
+                size += transfers.size();
+            }
+        }
+        return size;
+    }
+
+    private ScheduledTransfers stripeOf(long holdId) {
+        return stripes[(int) (holdId & (STRIPES - 1))];
+    }
+
+    @FunctionalInterface
+    public interface ExpiredHoldVisitor {
+        void visit(long accountId, long amount);
+    }
+}
@@ -0,0 +1,238 @@
+package idempotency;
+
+import model.TransferResult;
+import org.assertj.core.util.VisibleForTesting;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import static java.lang.String.format;
+
+/**
+ * Results of recent transfers by idempotency key in a fixed number of slots, 32 bytes each: both halves of the
+ * key, a fingerprint of the transfer and the expiry time with the state of the entry. A key maps to a bucket of
+ * {@link #WAYS} slots, a new key takes an empty or expired slot of its bucket or else the entry of the bucket
+ * which expires first, so memory never grows and a key is remembered for the time to live or until newer keys
+ * push it out. Every bucket has a lock of its own, there is nothing global to contend on.
+ * Unless the capacity is set, it's sized from the expected rate of keys and the time to live, and keys pushed out
+ * before they expired are counted, a growing count means retries may run their transfers again.
+ *
+ * <p>An entry is created before its transfer runs and completed with the result after it, a retry arriving
+ * in between finds the transfer in progress instead of running it again.
+ */
+public class IdempotencyCache {
+    public static final String CAPACITY_SYSTEM_PROPERTY = "moneyTransfer.idempotency.capacity";
+    public static final String TTL_SYSTEM_PROPERTY = "moneyTransfer.idempotency.ttlSeconds";
+    public static final String KEYS_PER_SECOND_SYSTEM_PROPERTY = "moneyTransfer.idempotency.keysPerSecond";
+    static final int WAYS = 4;
+    //slots of an AtomicLongArray are indexed by int
+    static final int MAX_CAPACITY = 1 << 28;
+    private static final long DEFAULT_TTL_SECONDS = 3600;
+    private static final long DEFAULT_KEYS_PER_SECOND = 1000;
+    private static final int LONGS_PER_SLOT = 4;
+    private static final int KEY_HIGH = 0;
+    private static final int KEY_LOW = 1;
+    private static final int FINGERPRINT = 2;
+    private static final int STATE = 3;
+    //the state is the expiry time shifted left by STATE_BITS and the code of the entry in the low bits
+    private static final int STATE_BITS = 8;
+    private static final long CODE_MASK = (1L << STATE_BITS) - 1;
+    private static final long EMPTY = 0;
+    private static final int IN_PROGRESS = 1;
+    private static final int COMPLETED = 2;
+    private static final int SPINS_BEFORE_YIELDING = 64;
+    private static final TransferResult[] TRANSFER_RESULTS = TransferResult.values();
+
+    private final AtomicLongArray slots;
+    private final AtomicIntegerArray locks;
+    private final int bucketMask;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final LongAdder evictedBeforeExpiry = new LongAdder();
+
+    public IdempotencyCache(int capacity, long ttlMillis) {
+        this(capacity, ttlMillis, System::currentTimeMillis);
+    }
+
+    @VisibleForTesting
+    IdempotencyCache(int capacity, long ttlMillis, LongSupplier clock) {
+        if (capacity < WAYS || capacity > MAX_CAPACITY || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException(format("Capacity should be a power of two from %s to %s, actual was %s",
+                    WAYS, MAX_CAPACITY, capacity));
+        }
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException(format("Time to live should be above zero, actual was %s", ttlMillis));
+        }
+        this.slots = new AtomicLongArray(capacity * LONGS_PER_SLOT);
+        this.locks = new AtomicIntegerArray(capacity / WAYS);
+        this.bucketMask = capacity / WAYS - 1;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Looks the key up and, if it's not there, remembers it as in progress.
+     *
+     * @return null if the transfer should run, then it has to be completed or abandoned, otherwise the stored
+     * result, {@link TransferResult#IN_PROGRESS} or {@link TransferResult#IDEMPOTENCY_KEY_REUSED} if the key
+     * came with another transfer
+     */
+    public TransferResult begin(long keyHigh, long keyLow, long fingerprint) {
+        int bucket = bucketOf(keyHigh, keyLow);
+        long now = clock.getAsLong();
+        lock(bucket);
+        try {
+            int first = bucket * WAYS * LONGS_PER_SLOT;
+            int victim = first;
+            long victimRank = Long.MAX_VALUE;
+            for (int slot = first; slot < first + WAYS * LONGS_PER_SLOT; slot += LONGS_PER_SLOT) {
+                long state = slots.get(slot + STATE);
+                boolean live = state != EMPTY && (state >>> STATE_BITS) > now;
+                if (live && slots.get(slot + KEY_HIGH) == keyHigh && slots.get(slot + KEY_LOW) == keyLow) {
+                    if (slots.get(slot + FINGERPRINT) != fingerprint) {
+                        return TransferResult.IDEMPOTENCY_KEY_REUSED;
+                    }
+                    int code = (int) (state & CODE_MASK);
+                    return code == IN_PROGRESS ? TransferResult.IN_PROGRESS : TRANSFER_RESULTS[code - COMPLETED];
+                }
+                //free slots go first, then the entry which expires first, a transfer in progress goes last
+                long rank = !live ? Long.MIN_VALUE
+                        : (state & CODE_MASK) == IN_PROGRESS ? (state >>> STATE_BITS) + ttlMillis
+                        : state >>> STATE_BITS;
+                if (rank < victimRank) {
+                    victim = slot;
+                    victimRank = rank;
+                }
+            }
+            if (victimRank != Long.MIN_VALUE) {
+                evictedBeforeExpiry.increment();
+            }
+            slots.lazySet(victim + KEY_HIGH, keyHigh);
+            slots.lazySet(victim + KEY_LOW, keyLow);
+            slots.lazySet(victim + FINGERPRINT, fingerprint);
+            slots.lazySet(victim + STATE, ((now + ttlMillis) << STATE_BITS) | IN_PROGRESS);
+            return null;
+        } finally {
+            unlock(bucket);
+        }
+    }
+
+    /**
+     * Stores the result of a transfer which was begun, retries get it for the time to live from now.
+     */
+    public void complete(long keyHigh, long keyLow, TransferResult result) {
+        long state = ((clock.getAsLong() + ttlMillis) << STATE_BITS) | (COMPLETED + result.ordinal());
+        replaceInProgress(keyHigh, keyLow, state);
+    }
+
+    /**
+     * Forgets a transfer which was begun but failed, so a retry runs it.
+     */
+    public void abandon(long keyHigh, long keyLow) {
+        replaceInProgress(keyHigh, keyLow, EMPTY);
+    }
+
+    private void replaceInProgress(long keyHigh, long keyLow, long state) {
+        int bucket = bucketOf(keyHigh, keyLow);
+        lock(bucket);
+        try {
+            int first = bucket * WAYS * LONGS_PER_SLOT;
+            for (int slot = first; slot < first + WAYS * LONGS_PER_SLOT; slot += LONGS_PER_SLOT) {
+                if ((slots.get(slot + STATE) & CODE_MASK) == IN_PROGRESS
+                        && slots.get(slot + KEY_HIGH) == keyHigh && slots.get(slot + KEY_LOW) == keyLow) {
+                    slots.lazySet(slot + STATE, state);
+                    return;
+                }
+            }
+            //pushed out by newer keys, the result is not remembered
+        } finally {
+            unlock(bucket);
+        }
+    }
+
+    public int getCapacity() {
+        return slots.length() / LONGS_PER_SLOT;
+    }
+
+    /**
+     * @return number of keys pushed out by newer keys while they were still live
+     */
+    public long getEvictedBeforeExpiry() {
+        return evictedBeforeExpiry.sum();
+    }
+
+    public void writePrometheus(Appendable out) throws IOException {
+        out.append("# HELP money_transfer_idempotency_capacity Idempotency keys kept at most.\n");
+        out.append("# TYPE money_transfer_idempotency_capacity gauge\n");
+        out.append(String.format(Locale.ROOT, "money_transfer_idempotency_capacity %d\n", getCapacity()));
+        out.append("# HELP money_transfer_idempotency_evicted_total "
+                + "Idempotency keys pushed out before they expired.\n");
+        out.append("# TYPE money_transfer_idempotency_evicted_total counter\n");
+        out.append(String.format(Locale.ROOT, "money_transfer_idempotency_evicted_total %d\n",
+                evictedBeforeExpiry.sum()));
+    }
+
+    /**
+     * @return the smallest power of two which keeps the keys of one time to live with a quarter to spare, so
+     * the buckets of {@link #WAYS} slots rarely have to push out a live key, but at most {@link #MAX_CAPACITY}
+     */
+    static int capacityFor(long keysPerSecond, long ttlSeconds) {
+        if (keysPerSecond <= 0) {
+            throw new IllegalArgumentException(
+                    format("Keys per second should be above zero, actual was %s", keysPerSecond));
+        }
+        long keys = keysPerSecond * ttlSeconds;
+        long wanted = keys + keys / 4;
+        if (wanted >= MAX_CAPACITY) {
+            return MAX_CAPACITY;
+        }
+        return Math.max(WAYS, Integer.highestOneBit((int) wanted - 1) << 1);
+    }
+
+    private int bucketOf(long keyHigh, long keyLow) {
+        return (int) (keyHigh ^ (keyLow >>> 32)) & bucketMask;
+    }
+
+    private void lock(int bucket) {
+        for (int spins = 0; !locks.compareAndSet(bucket, 0, 1); spins++) {
+            if (spins > SPINS_BEFORE_YIELDING) {
+                Thread.yield();
+            }
+        }
+    }
+
+    //the releasing write publishes the slots written under the lock
+    private void unlock(int bucket) {
+        locks.set(bucket, 0);
+    }
+
+    /**
+     * @return fingerprint of the transfer a key is used with, a retry has to come with the same one
+     */
+    public static long fingerprint(long accountFromId, long accountToId, long amount) {
+        long hash = accountFromId * 0x9E3779B97F4A7C15L;
+        hash = (hash ^ (hash >>> 32) ^ accountToId) * 0xC2B2AE3D27D4EB4FL;
+        hash = (hash ^ (hash >>> 29) ^ amount) * 0x165667B19E3779F9L;
+        return hash ^ (hash >>> 32);
+    }
+
+    public static IdempotencyCache getInstance() {
+        return IdempotencyCacheInstanceHolder.INSTANCE;
+    }
+
+    private static class IdempotencyCacheInstanceHolder {
+        private static final IdempotencyCache INSTANCE = create(
+                Long.getLong(TTL_SYSTEM_PROPERTY, DEFAULT_TTL_SECONDS));
+        private IdempotencyCacheInstanceHolder() {}
+
+        private static IdempotencyCache create(long ttlSeconds) {
+            int capacity = Integer.getInteger(CAPACITY_SYSTEM_PROPERTY, capacityFor(
+                    Long.getLong(KEYS_PER_SECOND_SYSTEM_PROPERTY, DEFAULT_KEYS_PER_SECOND), ttlSeconds));
+            return new IdempotencyCache(capacity, ttlSeconds * 1000);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package idempotency;
+
+/**
+ * Keys are kept as two independent 64-bit hashes of their characters, 16 bytes whatever the key is, the chance
+ * of two keys sharing both halves is negligible for the number of keys the cache holds.
+ */
+public final class IdempotencyKey {
+    public static final int MAX_LENGTH = 255;
+    private static final long HIGH_SEED = 0x243F6A8885A308D3L;
+    private static final long LOW_SEED = 0x13198A2E03707344L;
+
+    private IdempotencyKey() {
+    }
+
+    public static long high(char[] chars, int offset, int length) {
+        return hash(chars, offset, length, HIGH_SEED, 0x9E3779B97F4A7C15L);
+    }
+
+    public static long low(char[] chars, int offset, int length) {
+        return hash(chars, offset, length, LOW_SEED, 0xC2B2AE3D27D4EB4FL);
+    }
+
+    private static long hash(char[] chars, int offset, int length, long seed, long multiplier) {
+        long hash = seed ^ length;
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ chars[i]) * multiplier;
+            hash ^= hash >>> 29;
+        }
+        //murmur3 finalizer, every input bit affects every output bit
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        return hash ^ (hash >>> 33);
+    }
+}
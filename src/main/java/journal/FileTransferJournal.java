@@ -0,0 +1,373 @@
+package journal;
+
+import model.Account;
+import repository.AccountsRepository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.lang.String.format;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only file of fixed size records: sequence number, account from, account to and amount.
+ * A record from an account to itself adds the account with the amount as its balance, see
+ * {@link TransferJournal#appendAccount(long, long)}.
+ * Appended records are staged in memory and a single committer thread writes and fsyncs everything staged
+ * so far at once, so concurrent transfers share one fsync. Appenders, the committer and threads waiting for
+ * durability wait on separate conditions: an append wakes the committer only, and waiters of durability are
+ * woken only once the durable sequence moves.
+ */
+public class FileTransferJournal implements TransferJournal, Closeable {
+    static final int RECORD_SIZE = 32;
+    private static final int MAX_GROUP_SIZE = 4096;
+
+    private final FileChannel channel;
+    private final Thread committer;
+    private final ReentrantLock lock = new ReentrantLock();
+    //signalled once there are staged records for an idle committer
+    private final Condition recordsStaged = lock.newCondition();
+    //signalled once the committer takes the staged records, for appenders waiting for room
+    private final Condition stagingFreed = lock.newCondition();
+    //signalled once the durable sequence moves
+    private final Condition durableAdvanced = lock.newCondition();
+    private ByteBuffer staged = ByteBuffer.allocateDirect(MAX_GROUP_SIZE * RECORD_SIZE);
+    private ByteBuffer committing = ByteBuffer.allocateDirect(MAX_GROUP_SIZE * RECORD_SIZE);
+    private final PriorityQueue<DurableFuture> durableFutures =
+            new PriorityQueue<>(Comparator.comparingLong(future -> future.sequence));
+    private long lastSequence;
+    private long durableSequence;
+    private IOException failure;
+    private boolean closed;
+
+    private FileTransferJournal(FileChannel channel, long lastSequence) {
+        this.channel = channel;
+        this.lastSequence = lastSequence;
+        this.durableSequence = lastSequence;
+        this.committer = new Thread(this::commitGroups, "transfer-journal-committer");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    /**
+     * Opens the journal for appending after its last complete record, a torn record at the end is cut off.
+     */
+    public static FileTransferJournal open(Path file) {
+        return open(file, 0);
+    }
+
+    /**
+     * Opens the journal reading only the records after a sequence number whose records are known to be
+     * complete, usually the one {@link #replay(Path, long, AccountsRepository)} returned, so a start doesn't
+     * read the whole journal again.
+     */
+    public static FileTransferJournal open(Path file, long knownSequence) {
+        try {
+            FileChannel channel = FileChannel.open(file, CREATE, READ, WRITE);
+            //sequence numbers start from 1 without gaps, so the known record ends right at knownSequence records
+            long position = Math.min(knownSequence * RECORD_SIZE, channel.size() / RECORD_SIZE * RECORD_SIZE);
+            long[] end = readRecords(channel, position, position / RECORD_SIZE, null);
+            channel.truncate(end[1]);
+            channel.position(end[1]);
+            return new FileTransferJournal(channel, end[0]);
+        } catch (IOException e) {
+            throw new UncheckedIOException(format("Can't open journal %s", file), e);
+        }
+    }
+
+    /**
+     * Applies every complete record of the journal to the accounts of the repository, accounts are added
+     * by their records.
+     *
+     * @return sequence number of the last replayed record, 0 if the journal is empty
+     */
+    public static long replay(Path file, AccountsRepository accountsRepository) {
+        return replay(file, 0, accountsRepository);
+    }
+
+    /**
+     * Applies records after the given sequence number only.
+     */
+    public static long replay(Path file, long afterSequence, AccountsRepository accountsRepository) {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            //sequence numbers start from 1 without gaps, so the tail starts right at the record after afterSequence
+            long position = Math.min(afterSequence * RECORD_SIZE, channel.size() / RECORD_SIZE * RECORD_SIZE);
+            RecordHandler applyTransfer = (sequence, accountFromId, accountToId, amount) -> {
+                if (sequence > afterSequence && accountFromId == accountToId) {
+                    accountsRepository.add(new Account(accountFromId, amount));
+                } else if (sequence > afterSequence) {
+                    //records are applied unconditionally, final balances don't depend on the order of additions
+                    getAccount(accountsRepository, accountFromId).add(-amount);
+                    getAccount(accountsRepository, accountToId).add(amount);
+                }
+            };
+            return readRecords(channel, position, position / RECORD_SIZE, applyTransfer)[0];
+        } catch (IOException e) {
+            throw new UncheckedIOException(format("Can't replay journal %s", file), e);
+        }
+    }
+
+    @Override
+    public long append(long accountFromId, long accountToId, long amount) {
+        lock.lock();
+        try {
+            while (!staged.hasRemaining() && failure == null && !closed) {
+                awaitUninterruptibly(stagingFreed);
+            }
+            checkState();
+            long sequence = ++lastSequence;
+            staged.putLong(sequence).putLong(accountFromId).putLong(accountToId).putLong(amount);
+            //the committer waits only while nothing is staged
+            if (staged.position() == RECORD_SIZE) {
+                recordsStaged.signal();
+            }
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void awaitDurable(long sequence) {
+        lock.lock();
+        try {
+            while (durableSequence < sequence) {
+                checkState();
+                awaitUninterruptibly(durableAdvanced);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> whenDurable(long sequence) {
+        DurableFuture future = new DurableFuture(sequence);
+        lock.lock();
+        try {
+            if (durableSequence < sequence && failure == null && !closed) {
+                durableFutures.add(future);
+                return future;
+            }
+        } finally {
+            lock.unlock();
+        }
+        completeOrFail(future);
+        return future;
+    }
+
+    @Override
+    public long getLastSequence() {
+        lock.lock();
+        try {
+            return lastSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getDurableSequence() {
+        lock.lock();
+        try {
+            return durableSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            signalStopped();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            committer.join();
+            completeDurableFutures(true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing the journal");
+        }
+        channel.close();
+    }
+
+    private void commitGroups() {
+        while (true) {
+            long groupSequence;
+            lock.lock();
+            try {
+                while (staged.position() == 0 && !closed) {
+                    awaitUninterruptibly(recordsStaged);
+                }
+                if (staged.position() == 0) {
+                    return;
+                }
+                ByteBuffer group = staged;
+                staged = committing;
+                committing = group;
+                groupSequence = lastSequence;
+                stagingFreed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                committing.flip();
+                while (committing.hasRemaining()) {
+                    channel.write(committing);
+                }
+                channel.force(false);
+                committing.clear();
+            } catch (IOException e) {
+                lock.lock();
+                try {
+                    failure = e;
+                    signalStopped();
+                } finally {
+                    lock.unlock();
+                }
+                completeDurableFutures(true);
+                return;
+            }
+            lock.lock();
+            try {
+                durableSequence = groupSequence;
+                durableAdvanced.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            completeDurableFutures(false);
+        }
+    }
+
+    /**
+     * Completes futures of durable transfers, or all of them once the committer is stopped.
+     */
+    private void completeDurableFutures(boolean stopped) {
+        List<DurableFuture> futures = new ArrayList<>();
+        lock.lock();
+        try {
+            while (!durableFutures.isEmpty() && (stopped || durableFutures.peek().sequence <= durableSequence)) {
+                futures.add(durableFutures.poll());
+            }
+        } finally {
+            lock.unlock();
+        }
+        futures.forEach(this::completeOrFail);
+    }
+
+    private void completeOrFail(DurableFuture future) {
+        long durable;
+        IOException journalFailure;
+        lock.lock();
+        try {
+            durable = durableSequence;
+            journalFailure = failure;
+        } finally {
+            lock.unlock();
+        }
+        if (future.sequence <= durable) {
+            future.complete(null);
+        } else if (journalFailure != null) {
+            future.completeExceptionally(new UncheckedIOException("Journal can't be written", journalFailure));
+        } else {
+            future.completeExceptionally(new IllegalStateException("Journal is closed"));
+        }
+    }
+
+    private void checkState() {
+        if (failure != null) {
+            throw new UncheckedIOException("Journal can't be written", failure);
+        }
+        if (closed) {
+            throw new IllegalStateException("Journal is closed");
+        }
+    }
+
+    //a failed or closed journal wakes everyone, each of them finds out on its own
+    private void signalStopped() {
+        recordsStaged.signal();
+        stagingFreed.signalAll();
+        durableAdvanced.signalAll();
+    }
+
+    private static void awaitUninterruptibly(Condition condition) {
+        try {
+            condition.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the journal", e);
+        }
+    }
+
+    private static Account getAccount(AccountsRepository accountsRepository, long accountId) {
+        Account account = accountsRepository.get(accountId);
+        if (account == null) {
+            throw new IllegalStateException(format("Journal has a transfer of an unknown account %s", accountId));
+        }
+        return account;
+    }
+
+    /**
+     * @return sequence number of the last complete record and the position right after it
+     */
+    private static long[] readRecords(
+            FileChannel channel, long startPosition, long sequenceBefore, RecordHandler handler) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_GROUP_SIZE * RECORD_SIZE);
+        long lastSequence = sequenceBefore;
+        long position = startPosition;
+        channel.position(startPosition);
+        while (channel.read(buffer) > 0 || buffer.position() >= RECORD_SIZE) {
+            buffer.flip();
+            while (buffer.remaining() >= RECORD_SIZE) {
+                long sequence = buffer.getLong();
+                long accountFromId = buffer.getLong();
+                long accountToId = buffer.getLong();
+                long amount = buffer.getLong();
+                if (sequence != lastSequence + 1) {
+                    return new long[] {lastSequence, position};
+                }
+                if (handler != null) {
+                    handler.handle(sequence, accountFromId, accountToId, amount);
+                }
+                lastSequence = sequence;
+                position += RECORD_SIZE;
+            }
+            buffer.compact();
+        }
+        return new long[] {lastSequence, position};
+    }
+
+    private static class DurableFuture extends CompletableFuture<Void> {
+        private final long sequence;
+
+        private DurableFuture(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+
+    @FunctionalInterface
+    private interface RecordHandler {
+        void handle(long sequence, long accountFromId, long accountToId, long amount);
+    }
+}
@@ -0,0 +1,75 @@
+package journal;
+
+import repository.AccountsRepository;
+
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+
+public interface TransferJournal {
+    String FILE_SYSTEM_PROPERTY = "moneyTransfer.journal.file";
+
+    TransferJournal NONE = new TransferJournal() {
+        @Override
+        public long append(long accountFromId, long accountToId, long amount) {
+            return 0;
+        }
+
+        @Override
+        public void awaitDurable(long sequence) {
+        }
+
+        @Override
+        public CompletableFuture<Void> whenDurable(long sequence) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public long getLastSequence() {
+            return 0;
+        }
+    };
+
+    /**
+     * @return sequence number of the appended transfer
+     */
+    long append(long accountFromId, long accountToId, long amount);
+
+    /**
+     * Appends an added account as a transfer of its balance from the account to itself, transfers within
+     * an account are never made, so the journal has every account a transfer of it needs.
+     *
+     * @return sequence number of the appended account
+     */
+    default long appendAccount(long accountId, long balance) {
+        return append(accountId, accountId, balance);
+    }
+
+    /**
+     * Blocks until the transfer with the given sequence number and all transfers before it are on disk.
+     */
+    void awaitDurable(long sequence);
+
+    /**
+     * Non-blocking counterpart of {@link #awaitDurable(long)}, the future is completed by the thread that made
+     * the transfer durable, so dependent actions should be short.
+     */
+    CompletableFuture<Void> whenDurable(long sequence);
+
+    /**
+     * @return sequence number of the last appended transfer, durable or not
+     */
+    long getLastSequence();
+
+    /**
+     * Replays transfers after the given sequence number from the journal file into the repository and opens it
+     * for appending, no journal if the file is not configured.
+     */
+    static TransferJournal fromSystemProperties(AccountsRepository accountsRepository, long afterSequence) {
+        String file = System.getProperty(FILE_SYSTEM_PROPERTY);
+        if (file == null) {
+            return NONE;
+        }
+        long lastSequence = FileTransferJournal.replay(Paths.get(file), afterSequence, accountsRepository);
+        return FileTransferJournal.open(Paths.get(file), lastSequence);
+    }
+}
@@ -0,0 +1,48 @@
+package json;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+
+import static java.lang.String.format;
+
+/**
+ * Reads a flat JSON object of integer fields, all of them required, straight from the parser tokens.
+ */
+public final class LongFieldsDecoder {
+    private LongFieldsDecoder() {
+    }
+
+    /**
+     * @return values of the fields in the order of the names
+     */
+    public static long[] decode(JsonParser parser, String... names) throws IOException {
+        long[] fields = new long[names.length];
+        boolean[] present = new boolean[names.length];
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IllegalArgumentException("Request should be a JSON object");
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            if (parser.nextToken() != JsonToken.VALUE_NUMBER_INT) {
+                throw new IllegalArgumentException(format("Field %s should be an integer number", fieldName));
+            }
+            int field = 0;
+            while (field < names.length && !names[field].equals(fieldName)) {
+                field++;
+            }
+            if (field == names.length) {
+                throw new IllegalArgumentException(format("Unknown field %s", fieldName));
+            }
+            fields[field] = parser.getLongValue();
+            present[field] = true;
+        }
+        for (int field = 0; field < names.length; field++) {
+            if (!present[field]) {
+                throw new IllegalArgumentException(format("Field %s is required", names[field]));
+            }
+        }
+        return fields;
+    }
+}
@@ -1,9 +1,17 @@
 package json;
 
+import idempotency.IdempotencyKey;
+
+import static java.lang.String.format;
+
 public class MoneyTransferRequest {
     private long accountFromId;
     private long accountToId;
     private long amount;
+    //only the hash of the key is kept, the key itself is never needed again
+    private boolean idempotent;
+    private long idempotencyKeyHigh;
+    private long idempotencyKeyLow;
 
     public MoneyTransferRequest() {
     }
@@ -37,4 +45,46 @@ public class MoneyTransferRequest {
     public void setAmount(long amount) {
         this.amount = amount;
     }
+
+    /**
+     * Sets the optional key a client retries the transfer with, null if retries are not expected.
+     */
+    public void setIdempotencyKey(String idempotencyKey) {
+        if (idempotencyKey == null) {
+            clearIdempotencyKey();
+            return;
+        }
+        char[] chars = idempotencyKey.toCharArray();
+        if (chars.length == 0 || chars.length > IdempotencyKey.MAX_LENGTH) {
+            throw new IllegalArgumentException(format(
+                    "Idempotency key should be from 1 to %s characters, actual was %s",
+                    IdempotencyKey.MAX_LENGTH, chars.length));
+        }
+        setIdempotencyKeyHash(IdempotencyKey.high(chars, 0, chars.length), IdempotencyKey.low(chars, 0, chars.length));
+    }
+
+    public void setIdempotencyKeyHash(long idempotencyKeyHigh, long idempotencyKeyLow) {
+        this.idempotent = true;
+        this.idempotencyKeyHigh = idempotencyKeyHigh;
+        this.idempotencyKeyLow = idempotencyKeyLow;
+    }
+
+    public void clearIdempotencyKey() {
+        this.idempotent = false;
+        this.idempotencyKeyHigh = 0;
+        this.idempotencyKeyLow = 0;
+    }
+
+    public boolean hasIdempotencyKey() {
+        return idempotent;
+    }
+
+    //not bean getters, the hash is not a part of the JSON form of the request
+    public long idempotencyKeyHigh() {
+        return idempotencyKeyHigh;
+    }
+
+    public long idempotencyKeyLow() {
+        return idempotencyKeyLow;
+    }
 }
@@ -0,0 +1,92 @@
+package json;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import idempotency.IdempotencyKey;
+
+import java.io.IOException;
+
+import static java.lang.String.format;
+
+/**
+ * Reads a {@link MoneyTransferRequest} straight from the parser tokens, without the reflection and the bean
+ * instantiation of {@code ObjectMapper}. Field names are canonicalized by the parser, so a decoded request
+ * allocates nothing when the target is reused.
+ */
+public final class MoneyTransferRequestDecoder {
+    private static final String ACCOUNT_FROM_ID = "accountFromId";
+    private static final String ACCOUNT_TO_ID = "accountToId";
+    private static final String AMOUNT = "amount";
+    private static final String IDEMPOTENCY_KEY = "idempotencyKey";
+
+    private MoneyTransferRequestDecoder() {
+    }
+
+    /**
+     * Fills the target with the next JSON object of the parser, fields which are absent are set to zero and
+     * an absent idempotency key is cleared. The key is hashed from the buffer of the parser, it's never a string.
+     */
+    public static MoneyTransferRequest decode(JsonParser parser, MoneyTransferRequest target) throws IOException {
+        JsonToken token = parser.getCurrentToken() == null ? parser.nextToken() : parser.getCurrentToken();
+        if (token != JsonToken.START_OBJECT) {
+            throw new IllegalArgumentException(format("Transfer should be a JSON object, but was %s", token));
+        }
+        long accountFromId = 0;
+        long accountToId = 0;
+        long amount = 0;
+        boolean idempotent = false;
+        long idempotencyKeyHigh = 0;
+        long idempotencyKeyLow = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch (fieldName) {
+                case ACCOUNT_FROM_ID:
+                    accountFromId = getLongValue(parser, fieldName, value);
+                    break;
+                case ACCOUNT_TO_ID:
+                    accountToId = getLongValue(parser, fieldName, value);
+                    break;
+                case AMOUNT:
+                    amount = getLongValue(parser, fieldName, value);
+                    break;
+                case IDEMPOTENCY_KEY:
+                    if (value != JsonToken.VALUE_STRING) {
+                        throw new IllegalArgumentException(format("Field %s should be a string", fieldName));
+                    }
+                    char[] chars = parser.getTextCharacters();
+                    int offset = parser.getTextOffset();
+                    int length = parser.getTextLength();
+                    if (length == 0 || length > IdempotencyKey.MAX_LENGTH) {
+                        throw new IllegalArgumentException(format("Field %s should be from 1 to %s characters",
+                                fieldName, IdempotencyKey.MAX_LENGTH));
+                    }
+                    idempotent = true;
+                    idempotencyKeyHigh = IdempotencyKey.high(chars, offset, length);
+                    idempotencyKeyLow = IdempotencyKey.low(chars, offset, length);
+                    break;
+                default:
+                    throw new IllegalArgumentException(format("Unknown field %s", fieldName));
+            }
+        }
+        if (parser.getCurrentToken() != JsonToken.END_OBJECT) {
+            throw new IllegalArgumentException("Transfer should be a JSON object");
+        }
+        target.setAccountFromId(accountFromId);
+        target.setAccountToId(accountToId);
+        target.setAmount(amount);
+        if (idempotent) {
+            target.setIdempotencyKeyHash(idempotencyKeyHigh, idempotencyKeyLow);
+        } else {
+            target.clearIdempotencyKey();
+        }
+        return target;
+    }
+
+    private static long getLongValue(JsonParser parser, String fieldName, JsonToken value) throws IOException {
+        if (value != JsonToken.VALUE_NUMBER_INT) {
+            throw new IllegalArgumentException(format("Field %s should be an integer number", fieldName));
+        }
+        return parser.getLongValue();
+    }
+}
@@ -0,0 +1,89 @@
+package metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Approximate top accounts by number of transfers. Only one transfer out of {@value #SAMPLE_RATE} is counted
+ * and the counting is the Space-Saving algorithm over a fixed number of slots: an account which is not tracked
+ * takes over the slot with the smallest count, so heavy hitters stay while the memory stays fixed. Every
+ * {@link Stripes stripe} of threads counts into a summary of its own, so recording threads don't contend;
+ * summaries are merged by adding counts of the same account when the top is read.
+ */
+public final class HotAccounts {
+    static final int SAMPLE_RATE = 64;
+    private final Summary[] summaries = new Summary[Stripes.COUNT];
+
+    public HotAccounts(int capacity) {
+        for (int i = 0; i < summaries.length; i++) {
+            summaries[i] = new Summary(capacity);
+        }
+    }
+
+    public void record(long accountId) {
+        if (ThreadLocalRandom.current().nextInt(SAMPLE_RATE) == 0) {
+            count(accountId);
+        }
+    }
+
+    /**
+     * @return up to the given number of accounts, the most active first, each as account id and
+     * estimated number of transfers
+     */
+    public List<long[]> top(int limit) {
+        Map<Long, Long> merged = new HashMap<>();
+        for (Summary summary : summaries) {
+            summary.addTo(merged);
+        }
+        List<long[]> top = new ArrayList<>(merged.size());
+        merged.forEach((accountId, count) -> top.add(new long[] {accountId, count * SAMPLE_RATE}));
+        top.sort(Comparator.comparingLong((long[] account) -> account[1]).reversed());
+        return top.subList(0, Math.min(limit, top.size()));
+    }
+
+    void count(long accountId) {
+        summaries[Stripes.current()].count(accountId);
+    }
+
+    //locked by the threads of one stripe and by readers only, so the lock is almost never contended
+    private static final class Summary {
+        private final long[] accountIds;
+        private final long[] counts;
+        private int size;
+
+        private Summary(int capacity) {
+            this.accountIds = new long[capacity];
+            this.counts = new long[capacity];
+        }
+
+        private synchronized void count(long accountId) {
+            int smallest = 0;
+            for (int i = 0; i < size; i++) {
+                if (accountIds[i] == accountId) {
+                    counts[i]++;
+                    return;
+                }
+                if (counts[i] < counts[smallest]) {
+                    smallest = i;
+                }
+            }
+            if (size < accountIds.length) {
+                accountIds[size] = accountId;
+                counts[size++] = 1;
+            } else {
+                accountIds[smallest] = accountId;
+                counts[smallest]++;
+            }
+        }
+
+        private synchronized void addTo(Map<Long, Long> merged) {
+            for (int i = 0; i < size; i++) {
+                merged.merge(accountIds[i], counts[i], Long::sum);
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log-linear histogram of nanosecond values in the spirit of HdrHistogram: every power of two range is split
+ * into {@value #SUB_BUCKETS} equal buckets, so a value is known within about 3%. Recording is one atomic
+ * increment in the {@link Stripes stripe} of the thread and takes no locks, so threads don't contend on
+ * the buckets of common values; readers merge the stripes into a copy and compute quantiles from it.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray[] counts = new AtomicLongArray[Stripes.COUNT];
+    private final LongAdder sum = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new AtomicLongArray(BUCKETS);
+        }
+    }
+
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts[Stripes.current()].incrementAndGet(bucketOf(value));
+        sum.add(value);
+    }
+
+    /**
+     * @return counts of every bucket, each count only grows, so the difference of two copies covers the
+     * values recorded in between
+     */
+    public long[] counts() {
+        long[] copy = new long[BUCKETS];
+        for (AtomicLongArray stripe : counts) {
+            for (int i = 0; i < BUCKETS; i++) {
+                copy[i] += stripe.get(i);
+            }
+        }
+        return copy;
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * @return value below which the given fraction of the counted values are, 0 if nothing is counted
+     */
+    public static long valueAtQuantile(long[] counts, double quantile) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return highestValueOf(bucket);
+            }
+        }
+        return highestValueOf(counts.length - 1);
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,20 @@
+package metrics;
+
+/**
+ * Stripes of a metric which threads record into without sharing a cache line with each other, merged when the
+ * metric is read. A thread always records into the same stripe, picked by its id.
+ */
+final class Stripes {
+    //a power of two of at least twice the number of CPUs, so threads which run at once rarely share a stripe,
+    //up to a bound which keeps every histogram within a few megabytes
+    static final int COUNT = Math.min(64,
+            Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 4 - 1));
+
+    private Stripes() {}
+
+    static int current() {
+        long id = Thread.currentThread().getId();
+        //ids of threads started together are consecutive, so they land in different stripes
+        return (int) (id ^ id >>> 32) & (COUNT - 1);
+    }
+}
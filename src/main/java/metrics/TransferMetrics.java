@@ -0,0 +1,177 @@
+package metrics;
+
+import model.TransferResult;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Latency of every stage of a transfer, results by reason and the most active accounts, exported in the
+ * Prometheus text format. Quantiles are computed over a sliding window of about the last minute, so a spike shows
+ * up instead of being averaged with the whole uptime. The window is moved by the time which passed, not by exports,
+ * so every scraper sees the same values however often any of them scrapes.
+ */
+public class TransferMetrics {
+    private static final int HOT_ACCOUNTS_CAPACITY = 256;
+    private static final int HOT_ACCOUNTS_TO_EXPORT = 10;
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final double NANOS_IN_SECOND = 1e9;
+    static final long WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1);
+    //counts are kept once per slice, so the window is up to one slice longer than WINDOW_NANOS
+    static final long SLICE_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final TransferResult[] TRANSFER_RESULTS = TransferResult.values();
+
+    public enum Stage {
+        /** reading the request body */
+        PARSE,
+        /** finding both accounts in the repository */
+        LOOKUP,
+        /** reading an account which is not cached from the disk, part of {@link #LOOKUP} */
+        FAULT,
+        /** waiting for account locks, part of {@link #APPLY} */
+        LOCK_WAIT,
+        /** changing the balances */
+        APPLY,
+        /** waiting for the journal to write the transfer to disk */
+        JOURNAL,
+        /** whole request */
+        REQUEST
+    }
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+    //oldest first, the first one is where the window starts
+    private final Deque<CountsAt> slices = new ArrayDeque<>();
+    private final LongSupplier nanoClock;
+    private final LongAdder[] results = new LongAdder[TRANSFER_RESULTS.length];
+    private final HotAccounts hotAccounts = new HotAccounts(HOT_ACCOUNTS_CAPACITY);
+    private final LongAdder accountCacheHits = new LongAdder();
+    private final LongAdder accountCacheMisses = new LongAdder();
+
+    TransferMetrics() {
+        this(System::nanoTime);
+    }
+
+    TransferMetrics(LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < results.length; i++) {
+            results[i] = new LongAdder();
+        }
+        slices.add(new CountsAt(nanoClock.getAsLong(), counts()));
+    }
+
+    public void record(Stage stage, long nanos) {
+        histograms[stage.ordinal()].record(nanos);
+    }
+
+    public void recordResult(TransferResult result) {
+        results[result.ordinal()].increment();
+    }
+
+    public void recordTransfer(long accountFromId, long accountToId) {
+        hotAccounts.record(accountFromId);
+        hotAccounts.record(accountToId);
+    }
+
+    /**
+     * Counts a lookup of the cache of the tiered account store.
+     */
+    public void recordAccountCacheLookup(boolean hit) {
+        (hit ? accountCacheHits : accountCacheMisses).increment();
+    }
+
+    public synchronized void writePrometheus(Appendable out) throws IOException {
+        long[][] counts = counts();
+        long[][] windowStart = slide(nanoClock.getAsLong(), counts);
+        out.append("# HELP money_transfer_stage_seconds Latency of transfer stages over the last minute.\n");
+        out.append("# TYPE money_transfer_stage_seconds summary\n");
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = histograms[stage.ordinal()];
+            long[] stageCounts = counts[stage.ordinal()];
+            long[] interval = new long[stageCounts.length];
+            long total = 0;
+            for (int i = 0; i < stageCounts.length; i++) {
+                interval[i] = stageCounts[i] - windowStart[stage.ordinal()][i];
+                total += stageCounts[i];
+            }
+            String name = stage.name().toLowerCase(Locale.ROOT);
+            for (double quantile : QUANTILES) {
+                out.append(String.format(Locale.ROOT, "money_transfer_stage_seconds{stage=\"%s\",quantile=\"%s\"} %s\n",
+                        name, quantile, LatencyHistogram.valueAtQuantile(interval, quantile) / NANOS_IN_SECOND));
+            }
+            out.append(String.format(Locale.ROOT, "money_transfer_stage_seconds_sum{stage=\"%s\"} %s\n",
+                    name, histogram.getSum() / NANOS_IN_SECOND));
+            out.append(String.format(Locale.ROOT, "money_transfer_stage_seconds_count{stage=\"%s\"} %d\n",
+                    name, total));
+        }
+        out.append("# HELP money_transfer_results_total Transfers by result.\n");
+        out.append("# TYPE money_transfer_results_total counter\n");
+        for (TransferResult result : TRANSFER_RESULTS) {
+            out.append(String.format(Locale.ROOT, "money_transfer_results_total{result=\"%s\"} %d\n",
+                    result.name(), results[result.ordinal()].sum()));
+        }
+        out.append("# HELP money_transfer_hot_account_transfers Estimated transfers of the most active accounts.\n");
+        out.append("# TYPE money_transfer_hot_account_transfers gauge\n");
+        for (long[] account : hotAccounts.top(HOT_ACCOUNTS_TO_EXPORT)) {
+            out.append(String.format(Locale.ROOT, "money_transfer_hot_account_transfers{account=\"%d\"} %d\n",
+                    account[0], account[1]));
+        }
+        out.append("# HELP money_transfer_account_cache_lookups_total Lookups of the account cache by result.\n");
+        out.append("# TYPE money_transfer_account_cache_lookups_total counter\n");
+        out.append(String.format(Locale.ROOT, "money_transfer_account_cache_lookups_total{result=\"hit\"} %d\n",
+                accountCacheHits.sum()));
+        out.append(String.format(Locale.ROOT, "money_transfer_account_cache_lookups_total{result=\"miss\"} %d\n",
+                accountCacheMisses.sum()));
+    }
+
+    private long[][] counts() {
+        long[][] counts = new long[histograms.length][];
+        for (int i = 0; i < histograms.length; i++) {
+            counts[i] = histograms[i].counts();
+        }
+        return counts;
+    }
+
+    /**
+     * Keeps the given counts if a slice passed since the newest kept ones and drops the ones the window has left.
+     *
+     * @return counts the window starts at, the newest ones kept at least a window ago or the oldest ones
+     */
+    private long[][] slide(long now, long[][] counts) {
+        CountsAt windowStart = slices.removeFirst();
+        while (!slices.isEmpty() && now - slices.getFirst().nanos >= WINDOW_NANOS) {
+            windowStart = slices.removeFirst();
+        }
+        slices.addFirst(windowStart);
+        if (now - slices.getLast().nanos >= SLICE_NANOS) {
+            slices.addLast(new CountsAt(now, counts));
+        }
+        return slices.getFirst().counts;
+    }
+
+    private static class CountsAt {
+        private final long nanos;
+        private final long[][] counts;
+
+        private CountsAt(long nanos, long[][] counts) {
+            this.nanos = nanos;
+            this.counts = counts;
+        }
+    }
+
+    public static TransferMetrics getInstance() {
+        return TransferMetricsInstanceHolder.INSTANCE;
+    }
+
+    private static class TransferMetricsInstanceHolder {
+        private static final TransferMetrics INSTANCE = new TransferMetrics();
+        private TransferMetricsInstanceHolder() {}
+    }
+}
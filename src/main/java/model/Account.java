@@ -1,10 +1,51 @@
 package model;
 
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.LongSupplier;
+
 import static java.lang.String.format;
 
+/**
+ * Balance of an account is the money it has, including money on hold: a hold reserves a part of the balance for
+ * a later capture, so it can't be taken by transfers or other holds, but it stays on the account until captured.
+ * The available balance is the balance minus active holds.
+ */
 public class Account {
+    private static final int HOT_PROMOTION_THRESHOLD = 64;
+    private static final int MAX_READ_ATTEMPTS = 100;
+    private static final TransferResult[] TRANSFER_RESULTS = TransferResult.values();
+    //changes in flight are counted in the low half of the change counter, completed ones in the high half
+    private static final long CHANGES_IN_FLIGHT_MASK = 0xFFFF_FFFFL;
+    private static final long CHANGE_COMPLETED = (1L << 32) - 1;
+    private static final AtomicLongFieldUpdater<Account> BALANCE_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(Account.class, "balance");
+    private static final AtomicLongFieldUpdater<Account> HELD_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(Account.class, "held");
+    private static final AtomicReferenceFieldUpdater<Account, CreditCells> CREDIT_CELLS_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(Account.class, CreditCells.class, "creditCells");
+    private static final AtomicLongFieldUpdater<Account> CHANGES_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(Account.class, "changes");
+    private static final AtomicLongFieldUpdater<Account> FOLDS_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(Account.class, "folds");
+    private static final AtomicIntegerFieldUpdater<Account> CONTENTION_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(Account.class, "contention");
+    private static volatile TransferStrategy transferStrategy =
+            TransferStrategy.forName(System.getProperty(TransferStrategy.SYSTEM_PROPERTY));
+    private static volatile long snapshotEpoch;
     private final long accountId;
-    private long balance;
+    //money which is not on hold, debits are checked against it alone
+    private volatile long balance;
+    private volatile long held;
+    private volatile long preservedEpoch;
+    private long preservedBalance;
+    private volatile CreditCells creditCells;
+    private volatile long changes;
+    //folds of credits into the balance, counted like changes, in flight in the low half and completed in the high
+    private volatile long folds;
+    //grows on contended credits and shrinks on uncontended ones, a shrink which loses a race is skipped
+    private volatile int contention;
 
     public Account(long accountId) {
         this.accountId = accountId;
@@ -15,19 +56,191 @@ public class Account {
         this.balance = checkInitialBalance(initialBalance);
     }
 
-    public synchronized void add(long extraAmount) {
-        this.balance += extraAmount;
+    /**
+     * For stores which keep the account elsewhere while it's not in memory, with the money it has on hold.
+     */
+    protected Account(long accountId, long availableBalance, long held) {
+        this.accountId = accountId;
+        this.balance = availableBalance;
+        this.held = held;
+    }
+
+    public void add(long extraAmount) {
+        preserveBalance();
+        CreditCells cells = creditCells;
+        if (cells != null && extraAmount > 0) {
+            cells.add(extraAmount);
+            return;
+        }
+        long currentBalance = balance;
+        if (BALANCE_UPDATER.compareAndSet(this, currentBalance, currentBalance + extraAmount)) {
+            int currentContention = contention;
+            if (currentContention > 0) {
+                CONTENTION_UPDATER.compareAndSet(this, currentContention, currentContention - 1);
+            }
+        } else {
+            recordContention();
+            BALANCE_UPDATER.addAndGet(this, extraAmount);
+        }
     }
 
-    public synchronized void withdraw(long amountToWithdraw) {
-        if (balance < amountToWithdraw) {
+    public void withdraw(long amountToWithdraw) {
+        if (!tryWithdraw(amountToWithdraw)) {
             throw new IllegalArgumentException("Not enough money!");
         }
-        balance -= amountToWithdraw;
     }
 
-    public synchronized long getBalance() {
-        return balance;
+    public boolean tryWithdraw(long amountToWithdraw) {
+        preserveBalance();
+        while (true) {
+            long currentBalance = balance;
+            if (currentBalance < amountToWithdraw) {
+                if (foldCredits() == 0) {
+                    return false;
+                }
+            } else if (BALANCE_UPDATER.compareAndSet(this, currentBalance, currentBalance - amountToWithdraw)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * For a hot account the balance and its pending credits are read one after another, like
+     * {@link java.util.concurrent.atomic.LongAdder#sum()}, and the read is retried if credits were folded into
+     * the balance meanwhile, so they are never missed or counted twice. Credits and debits which run during
+     * the read may or may not be seen.
+     */
+    public long getBalance() {
+        CreditCells cells = creditCells;
+        if (cells == null) {
+            return balance + held;
+        }
+        while (true) {
+            long foldsBefore = folds;
+            if ((foldsBefore & CHANGES_IN_FLIGHT_MASK) == 0) {
+                long sum = balance + held + cells.sum();
+                if (folds == foldsBefore) {
+                    return sum;
+                }
+            }
+            Thread.yield();
+        }
+    }
+
+    public long getAvailableBalance() {
+        return getBalance() - getHeld();
+    }
+
+    /**
+     * @return total of active holds of the account
+     */
+    public long getHeld() {
+        return held;
+    }
+
+    /**
+     * Puts the amount on hold if the available balance covers it, as cheap as a debit: the amount is taken from
+     * the available balance with a compare-and-set, then added to the holds.
+     *
+     * @return false if there is not enough money available, nothing is changed in that case
+     */
+    public boolean tryHold(long amountToHold) {
+        beginChange();
+        try {
+            if (!tryWithdraw(amountToHold)) {
+                return false;
+            }
+            HELD_UPDATER.addAndGet(this, amountToHold);
+            return true;
+        } finally {
+            endChange();
+        }
+    }
+
+    /**
+     * Makes money on hold available again.
+     */
+    public void releaseHold(long amountHeld) {
+        preserveBalance();
+        beginChange();
+        try {
+            HELD_UPDATER.addAndGet(this, -amountHeld);
+            add(amountHeld);
+        } finally {
+            endChange();
+        }
+    }
+
+    /**
+     * Takes money on hold off the account, the caller credits the captured amount where it goes and the rest of
+     * the hold becomes available again.
+     */
+    public void captureHold(long amountHeld, long amountToCapture) {
+        preserveBalance();
+        beginChange();
+        try {
+            HELD_UPDATER.addAndGet(this, -amountHeld);
+            if (amountHeld != amountToCapture) {
+                add(amountHeld - amountToCapture);
+            }
+        } finally {
+            endChange();
+        }
+    }
+
+    /**
+     * {@link #captureHold(long, long)} which credits the captured amount to accountTo within the same change,
+     * so consistent reads never see it missing from both accounts. The capture is appended to the log as
+     * a transfer before the credit, see {@link TransferLog}.
+     *
+     * @return sequence number the log gave the capture
+     */
+    public long captureHold(long amountHeld, Account accountTo, long amountToCapture, TransferLog log) {
+        beginChange();
+        try {
+            captureHold(amountHeld, amountToCapture);
+            return TransferStrategy.appendAndCredit(this, accountTo, amountToCapture, log);
+        } finally {
+            endChange();
+        }
+    }
+
+    /**
+     * Hot accounts take credits into per thread cells instead of the balance, so credits don't contend with each
+     * other and transfer strategies don't need to lock the account to credit it.
+     */
+    public boolean isHot() {
+        return creditCells != null;
+    }
+
+    /**
+     * Called when a credit of the account had to wait for another transfer, the account becomes hot once most
+     * of its credits do.
+     */
+    public void recordContention() {
+        if (CONTENTION_UPDATER.incrementAndGet(this) >= HOT_PROMOTION_THRESHOLD && creditCells == null) {
+            CREDIT_CELLS_UPDATER.compareAndSet(this, null, new CreditCells());
+        }
+    }
+
+    /**
+     * @return balance the account had when the given snapshot epoch started
+     */
+    public synchronized long getBalanceAt(long epoch) {
+        if (preservedEpoch != epoch) {
+            preservedBalance = getBalance();
+            preservedEpoch = epoch;
+        }
+        return preservedBalance;
+    }
+
+    /**
+     * @return balance preserved for the snapshot epoch, or the given balance if the account didn't change in it,
+     * for a subclass which can't read its balance through {@link #getBalance()}. Takes no monitor, so it's only
+     * for an account nothing changes or preserves the balance of anymore.
+     */
+    protected long getPreservedBalance(long epoch, long balance) {
+        return preservedEpoch == epoch ? preservedBalance : balance;
     }
 
     public long getAccountId() {
@@ -35,15 +248,200 @@ public class Account {
     }
 
     public void transfer(final Account accountTo, long amountToTransfer) {
+        transfer(accountTo, amountToTransfer, TransferLog.NONE);
+    }
+
+    /**
+     * Same as {@link #transfer(Account, long)}, the transfer is appended to the log while it's applied,
+     * see {@link TransferLog}.
+     *
+     * @return sequence number the log gave the transfer
+     */
+    public long transfer(final Account accountTo, long amountToTransfer, TransferLog log) {
         validate(accountTo, amountToTransfer);
-        Account accountWithSmallerAccountId = (this.accountId < accountTo.accountId) ? this : accountTo;
-        Account accountWithBiggerAccountId = (this.accountId > accountTo.accountId) ? this : accountTo;
-        synchronized (accountWithSmallerAccountId) {
-            synchronized (accountWithBiggerAccountId) {
-                withdraw(amountToTransfer);
-                accountTo.add(amountToTransfer);
+        long sequence = transferFrom(accountTo, amountToTransfer, log);
+        if (sequence == TransferStrategy.DECLINED) {
+            throw new IllegalArgumentException("Not enough money!");
+        }
+        return sequence;
+    }
+
+    /**
+     * Same as {@link #transfer(Account, long)} but a declined transfer is reported with the result instead of
+     * an exception, nothing is allocated on either outcome.
+     */
+    public TransferResult tryTransfer(Account accountTo, long amountToTransfer) {
+        long sequence = tryTransfer(accountTo, amountToTransfer, TransferLog.NONE);
+        return sequence < 0 ? TRANSFER_RESULTS[(int) (-1 - sequence)] : TransferResult.OK;
+    }
+
+    /**
+     * Same as {@link #tryTransfer(Account, long)}, the transfer is appended to the log while it's applied,
+     * see {@link TransferLog}.
+     *
+     * @return sequence number the log gave the transfer or, if it is declined, {@code -1 - ordinal} of the result
+     */
+    public long tryTransfer(Account accountTo, long amountToTransfer, TransferLog log) {
+        if (amountToTransfer < 0) {
+            return -1 - TransferResult.INVALID_AMOUNT.ordinal();
+        }
+        if (this.accountId == accountTo.accountId) {
+            return -1 - TransferResult.SAME_ACCOUNT.ordinal();
+        }
+        long sequence = transferFrom(accountTo, amountToTransfer, log);
+        return sequence == TransferStrategy.DECLINED ? -1 - TransferResult.NOT_ENOUGH_MONEY.ordinal() : sequence;
+    }
+
+    /**
+     * Applies amounts to accounts all at once with the current transfer strategy, see
+     * {@link TransferStrategy#transfer(Account[], long[])}.
+     */
+    public static boolean transfer(Account[] accountsSortedById, long[] amounts) {
+        return transfer(accountsSortedById, amounts, () -> 0) != TransferStrategy.DECLINED;
+    }
+
+    /**
+     * Same as {@link #transfer(Account[], long[])}, the log is called between debits and credits, see
+     * {@link TransferStrategy#transfer(Account[], long[], LongSupplier)}.
+     *
+     * @return what the log returned, or {@link TransferStrategy#DECLINED} if any debit can't be covered
+     */
+    public static long transfer(Account[] accountsSortedById, long[] amounts, LongSupplier log) {
+        for (Account account : accountsSortedById) {
+            account.beginChange();
+        }
+        try {
+            return transferStrategy.transfer(accountsSortedById, amounts, log);
+        } finally {
+            for (Account account : accountsSortedById) {
+                account.endChange();
+            }
+        }
+    }
+
+    /**
+     * Reads balances of the accounts as they were at one moment, when no transfer made through {@link Account}
+     * was half applied between them. Reads take no locks and never hold transfers back: change counters of the
+     * accounts are read before and after the balances and the read is retried if a transfer changed them.
+     * Only the account money is taken from is counted, a credit alone is a single update of one balance.
+     *
+     * @return false if the accounts kept changing during every attempt, balances are not consistent then
+     */
+    public static boolean readBalances(Account[] accounts, long[] balances) {
+        long[] changesBefore = new long[accounts.length];
+        for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+            if (!readChanges(accounts, changesBefore)) {
+                Thread.yield();
+                continue;
+            }
+            for (int i = 0; i < accounts.length; i++) {
+                balances[i] = accounts[i].getBalance();
+            }
+            if (changesAreSame(accounts, changesBefore)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static TransferStrategy getTransferStrategy() {
+        return transferStrategy;
+    }
+
+    public static void setTransferStrategy(TransferStrategy transferStrategy) {
+        Account.transferStrategy = transferStrategy;
+    }
+
+    public static long getSnapshotEpoch() {
+        return snapshotEpoch;
+    }
+
+    /**
+     * Starts a new snapshot epoch, from now on every account keeps the balance it had at this moment until it's
+     * read with {@link #getBalanceAt(long)}. Should be called while no transfer is in flight.
+     */
+    public static synchronized long startSnapshotEpoch() {
+        return ++snapshotEpoch;
+    }
+
+    /**
+     * Moves the snapshot epoch past the given one, so balances preserved by a previous run for an epoch up to it
+     * are never taken for balances of an epoch of this run.
+     */
+    public static synchronized void startSnapshotEpochAfter(long epoch) {
+        if (snapshotEpoch <= epoch) {
+            snapshotEpoch = epoch + 1;
+        }
+    }
+
+    /**
+     * Starts a change which takes money from the account, consistent reads of the account are retried until
+     * {@link #endChange()}. Any number of changes can be in flight at once.
+     */
+    protected void beginChange() {
+        CHANGES_UPDATER.getAndIncrement(this);
+    }
+
+    protected void endChange() {
+        CHANGES_UPDATER.getAndAdd(this, CHANGE_COMPLETED);
+    }
+
+    protected long getChanges() {
+        return changes;
+    }
+
+    //debits fold credits of a hot account into the balance, so they are changes as well
+    private long transferFrom(Account accountTo, long amountToTransfer, TransferLog log) {
+        beginChange();
+        try {
+            return transferStrategy.transfer(this, accountTo, amountToTransfer, log);
+        } finally {
+            endChange();
+        }
+    }
+
+    private static boolean readChanges(Account[] accounts, long[] changes) {
+        for (int i = 0; i < accounts.length; i++) {
+            changes[i] = accounts[i].getChanges();
+            if ((changes[i] & CHANGES_IN_FLIGHT_MASK) != 0) {
+                return false;
             }
         }
+        return true;
+    }
+
+    private static boolean changesAreSame(Account[] accounts, long[] changes) {
+        for (int i = 0; i < accounts.length; i++) {
+            if (accounts[i].getChanges() != changes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long foldCredits() {
+        CreditCells cells = creditCells;
+        if (cells == null) {
+            return 0;
+        }
+        FOLDS_UPDATER.getAndIncrement(this);
+        try {
+            long credits = cells.drain();
+            if (credits != 0) {
+                BALANCE_UPDATER.addAndGet(this, credits);
+            }
+            return credits;
+        } finally {
+            FOLDS_UPDATER.getAndAdd(this, CHANGE_COMPLETED);
+        }
+    }
+
+    //the first change of the account in a snapshot epoch keeps the balance it had when the epoch started
+    private void preserveBalance() {
+        long epoch = snapshotEpoch;
+        if (preservedEpoch != epoch) {
+            getBalanceAt(epoch);
+        }
     }
 
     private long checkInitialBalance(long initialBalance) {
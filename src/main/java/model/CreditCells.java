@@ -0,0 +1,39 @@
+package model;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Credits of a hot account spread over cells on separate cache lines, picked by thread, so concurrent credits
+ * don't contend on one balance. Cells are drained into the balance of the account when a debit needs them.
+ */
+final class CreditCells {
+    private static final int LONGS_PER_CACHE_LINE = 8;
+    private static final int CELLS = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1;
+
+    private final AtomicLongArray cells = new AtomicLongArray(CELLS * LONGS_PER_CACHE_LINE);
+
+    void add(long amount) {
+        long hash = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        int cell = (int) (hash >>> 32) & (CELLS - 1);
+        cells.getAndAdd(cell * LONGS_PER_CACHE_LINE, amount);
+    }
+
+    long sum() {
+        long sum = 0;
+        for (int cell = 0; cell < CELLS; cell++) {
+            sum += cells.get(cell * LONGS_PER_CACHE_LINE);
+        }
+        return sum;
+    }
+
+    /**
+     * @return sum of the cells, which are emptied
+     */
+    long drain() {
+        long sum = 0;
+        for (int cell = 0; cell < CELLS; cell++) {
+            sum += cells.getAndSet(cell * LONGS_PER_CACHE_LINE, 0);
+        }
+        return sum;
+    }
+}
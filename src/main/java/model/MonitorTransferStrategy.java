@@ -0,0 +1,76 @@
+package model;
+
+import metrics.TransferMetrics;
+
+import java.util.function.LongSupplier;
+
+public class MonitorTransferStrategy implements TransferStrategy {
+    private static final TransferMetrics METRICS = TransferMetrics.getInstance();
+    //an uncontended monitor is taken in tens of nanoseconds, a wait is at least a thread wake up
+    private static final long CONTENDED_LOCK_WAIT_NANOS = 1_000;
+    //a frame per monitor, well within the stack of any thread
+    static final int MAX_LOCKED_ACCOUNTS = 1024;
+
+    @Override
+    public long transfer(Account accountFrom, Account accountTo, long amountToTransfer, TransferLog log) {
+        Account accountWithSmallerAccountId =
+                (accountFrom.getAccountId() < accountTo.getAccountId()) ? accountFrom : accountTo;
+        Account accountWithBiggerAccountId =
+                (accountFrom.getAccountId() > accountTo.getAccountId()) ? accountFrom : accountTo;
+        long start = System.nanoTime();
+        if (accountTo.isHot()) {
+            return transferToHotAccount(accountFrom, accountTo, amountToTransfer, log, start);
+        }
+        synchronized (accountWithSmallerAccountId) {
+            synchronized (accountWithBiggerAccountId) {
+                long lockWait = System.nanoTime() - start;
+                if (lockWait > CONTENDED_LOCK_WAIT_NANOS) {
+                    accountTo.recordContention();
+                }
+                METRICS.record(TransferMetrics.Stage.LOCK_WAIT, lockWait);
+                if (!accountFrom.tryWithdraw(amountToTransfer)) {
+                    return DECLINED;
+                }
+                return TransferStrategy.appendAndCredit(accountFrom, accountTo, amountToTransfer, log);
+            }
+        }
+    }
+
+    //credits of a hot account can't overdraw it and don't contend, only the debit needs the monitor
+    private static long transferToHotAccount(
+            Account accountFrom, Account accountTo, long amountToTransfer, TransferLog log, long start) {
+        synchronized (accountFrom) {
+            METRICS.record(TransferMetrics.Stage.LOCK_WAIT, System.nanoTime() - start);
+            if (!accountFrom.tryWithdraw(amountToTransfer)) {
+                return DECLINED;
+            }
+        }
+        return TransferStrategy.appendAndCredit(accountFrom, accountTo, amountToTransfer, log);
+    }
+
+    /**
+     * Monitors can only be taken one nested block at a time, so up to {@link #MAX_LOCKED_ACCOUNTS} accounts are
+     * locked with a stack frame each. Larger transfers, a full {@link service.TransferBatch} has up to twice
+     * {@link service.TransferBatch#MAX_SIZE} accounts, are applied without monitors like with
+     * {@link OptimisticTransferStrategy}: debits are compare-and-set one by one and given back if one of them
+     * fails, consistent reads still see them as one change.
+     */
+    @Override
+    public long transfer(Account[] accountsSortedById, long[] amounts, LongSupplier log) {
+        if (accountsSortedById.length > MAX_LOCKED_ACCOUNTS) {
+            return TransferStrategy.super.transfer(accountsSortedById, amounts, log);
+        }
+        return transferLocked(accountsSortedById, amounts, log, 0, System.nanoTime());
+    }
+
+    private long transferLocked(
+            Account[] accountsSortedById, long[] amounts, LongSupplier log, int lockedAccounts, long start) {
+        if (lockedAccounts == accountsSortedById.length) {
+            METRICS.record(TransferMetrics.Stage.LOCK_WAIT, System.nanoTime() - start);
+            return TransferStrategy.super.transfer(accountsSortedById, amounts, log);
+        }
+        synchronized (accountsSortedById[lockedAccounts]) {
+            return transferLocked(accountsSortedById, amounts, log, lockedAccounts + 1, start);
+        }
+    }
+}
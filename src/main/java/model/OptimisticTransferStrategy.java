@@ -0,0 +1,15 @@
+package model;
+
+/**
+ * Takes no locks at all: the debit is a compare-and-set on the balance of accountFrom and the credit,
+ * which can't fail, is applied right after it. Money is briefly seen on neither account in between.
+ */
+public class OptimisticTransferStrategy implements TransferStrategy {
+    @Override
+    public long transfer(Account accountFrom, Account accountTo, long amountToTransfer, TransferLog log) {
+        if (!accountFrom.tryWithdraw(amountToTransfer)) {
+            return DECLINED;
+        }
+        return TransferStrategy.appendAndCredit(accountFrom, accountTo, amountToTransfer, log);
+    }
+}
@@ -0,0 +1,127 @@
+package model;
+
+import metrics.TransferMetrics;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import static java.lang.String.format;
+
+/**
+ * Serializes transfers on a fixed table of locks picked by account id instead of the account monitors,
+ * two locks are always taken in stripe order, so transfers can't deadlock.
+ */
+public class StripedLockTransferStrategy implements TransferStrategy {
+    private static final TransferMetrics METRICS = TransferMetrics.getInstance();
+    private final ReentrantLock[] locks;
+    private final int mask;
+
+    public StripedLockTransferStrategy(int stripes) {
+        if (stripes <= 0 || Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException(format("Stripes should be a power of two, actual was %s", stripes));
+        }
+        this.locks = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.mask = stripes - 1;
+    }
+
+    @Override
+    public long transfer(Account accountFrom, Account accountTo, long amountToTransfer, TransferLog log) {
+        int stripeFrom = stripe(accountFrom.getAccountId());
+        int stripeTo = stripe(accountTo.getAccountId());
+        if (accountTo.isHot()) {
+            return transferToHotAccount(accountFrom, accountTo, amountToTransfer, log, locks[stripeFrom]);
+        }
+        ReentrantLock first = locks[Math.min(stripeFrom, stripeTo)];
+        ReentrantLock second = locks[Math.max(stripeFrom, stripeTo)];
+        long lockWait = lock(first);
+        try {
+            if (second != first) {
+                lockWait += lock(second);
+            }
+            if (lockWait > 0) {
+                accountTo.recordContention();
+            }
+            METRICS.record(TransferMetrics.Stage.LOCK_WAIT, lockWait);
+            try {
+                if (!accountFrom.tryWithdraw(amountToTransfer)) {
+                    return DECLINED;
+                }
+                return TransferStrategy.appendAndCredit(accountFrom, accountTo, amountToTransfer, log);
+            } finally {
+                if (second != first) {
+                    second.unlock();
+                }
+            }
+        } finally {
+            first.unlock();
+        }
+    }
+
+    //credits of a hot account can't overdraw it and don't contend, only the debit needs the lock
+    private static long transferToHotAccount(
+            Account accountFrom, Account accountTo, long amountToTransfer, TransferLog log, ReentrantLock lock) {
+        METRICS.record(TransferMetrics.Stage.LOCK_WAIT, lock(lock));
+        try {
+            if (!accountFrom.tryWithdraw(amountToTransfer)) {
+                return DECLINED;
+            }
+        } finally {
+            lock.unlock();
+        }
+        return TransferStrategy.appendAndCredit(accountFrom, accountTo, amountToTransfer, log);
+    }
+
+    @Override
+    public long transfer(Account[] accountsSortedById, long[] amounts, LongSupplier log) {
+        long[] usedStripes = new long[(locks.length + 63) >>> 6];
+        for (Account account : accountsSortedById) {
+            int stripe = stripe(account.getAccountId());
+            usedStripes[stripe >>> 6] |= 1L << stripe;
+        }
+        int lockedWords = 0;
+        long lockWait = 0;
+        try {
+            for (; lockedWords < usedStripes.length; lockedWords++) {
+                lockWait += lockStripes(usedStripes[lockedWords], lockedWords << 6);
+            }
+            METRICS.record(TransferMetrics.Stage.LOCK_WAIT, lockWait);
+            return TransferStrategy.super.transfer(accountsSortedById, amounts, log);
+        } finally {
+            for (int i = lockedWords - 1; i >= 0; i--) {
+                unlockStripes(usedStripes[i], i << 6);
+            }
+        }
+    }
+
+    private long lockStripes(long stripes, int firstStripe) {
+        long lockWait = 0;
+        for (long remaining = stripes; remaining != 0; remaining &= remaining - 1) {
+            lockWait += lock(locks[firstStripe + Long.numberOfTrailingZeros(remaining)]);
+        }
+        return lockWait;
+    }
+
+    //the clock is read only when the lock is contended
+    private static long lock(ReentrantLock lock) {
+        if (lock.tryLock()) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        lock.lock();
+        return System.nanoTime() - start;
+    }
+
+    private void unlockStripes(long stripes, int firstStripe) {
+        for (long remaining = stripes; remaining != 0; remaining &= remaining - 1) {
+            locks[firstStripe + Long.numberOfTrailingZeros(remaining)].unlock();
+        }
+    }
+
+    int stripe(long accountId) {
+        long hash = accountId * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,16 @@
+package model;
+
+/**
+ * Gets a transfer from a {@link TransferStrategy} once the money is taken from accountFrom and before it's seen
+ * on accountTo. A transfer which spends money another transfer credited can only be applied after that credit,
+ * so it's always appended after the transfer it depends on, whichever thread or lock applied either of them.
+ */
+@FunctionalInterface
+public interface TransferLog {
+    TransferLog NONE = (accountFromId, accountToId, amount) -> 0;
+
+    /**
+     * @return sequence number of the transfer, zero or above
+     */
+    long append(long accountFromId, long accountToId, long amount);
+}
@@ -0,0 +1,17 @@
+package model;
+
+public enum TransferResult {
+    OK,
+    NOT_ENOUGH_MONEY,
+    UNKNOWN_ACCOUNT,
+    INVALID_AMOUNT,
+    SAME_ACCOUNT,
+    //a transfer with the same idempotency key is still running
+    IN_PROGRESS,
+    //the idempotency key came with another transfer before
+    IDEMPOTENCY_KEY_REUSED,
+    //the hold is captured, released or expired
+    UNKNOWN_HOLD,
+    //the transfer failed after it may have been applied, it must not be run again
+    OUTCOME_UNKNOWN
+}
@@ -0,0 +1,103 @@
+package model;
+
+import engine.ShardedTransferEngine;
+
+import java.util.function.LongSupplier;
+
+import static java.lang.String.format;
+
+/**
+ * Moves money between two different accounts. Implementations never overdraw the account the money
+ * is taken from and never deadlock, they differ only in how concurrent transfers are coordinated.
+ */
+public interface TransferStrategy {
+    String SYSTEM_PROPERTY = "moneyTransfer.transferStrategy";
+    String STRIPES_SYSTEM_PROPERTY = "moneyTransfer.transferStrategy.stripes";
+    int DEFAULT_STRIPES = 1024;
+    String SHARDS_SYSTEM_PROPERTY = "moneyTransfer.transferStrategy.shards";
+
+    long DECLINED = -1;
+
+    /**
+     * @return false if there is not enough money on accountFrom, nothing is changed in that case
+     */
+    default boolean transfer(Account accountFrom, Account accountTo, long amountToTransfer) {
+        return transfer(accountFrom, accountTo, amountToTransfer, TransferLog.NONE) != DECLINED;
+    }
+
+    /**
+     * Same as {@link #transfer(Account, Account, long)}, the transfer is appended to the log once accountFrom
+     * is debited and before accountTo is credited, see {@link TransferLog}.
+     *
+     * @return sequence number the log gave the transfer, or {@link #DECLINED} if there is not enough money
+     */
+    long transfer(Account accountFrom, Account accountTo, long amountToTransfer, TransferLog log);
+
+    /**
+     * Applies amounts to accounts all at once, negative amounts are debits and positive ones are credits.
+     *
+     * @param accountsSortedById distinct accounts in ascending account id order
+     * @return false if any debit can't be covered, nothing is changed in that case
+     */
+    default boolean transfer(Account[] accountsSortedById, long[] amounts) {
+        return transfer(accountsSortedById, amounts, () -> 0) != DECLINED;
+    }
+
+    /**
+     * Same as {@link #transfer(Account[], long[])}, the log is called once all debits are applied and before
+     * any credit is, like {@link TransferLog}.
+     *
+     * @return what the log returned, or {@link #DECLINED} if any debit can't be covered
+     */
+    default long transfer(Account[] accountsSortedById, long[] amounts, LongSupplier log) {
+        for (int i = 0; i < accountsSortedById.length; i++) {
+            if (amounts[i] < 0 && !accountsSortedById[i].tryWithdraw(-amounts[i])) {
+                for (int j = 0; j < i; j++) {
+                    if (amounts[j] < 0) {
+                        accountsSortedById[j].add(-amounts[j]);
+                    }
+                }
+                return DECLINED;
+            }
+        }
+        try {
+            return log.getAsLong();
+        } finally {
+            for (int i = 0; i < accountsSortedById.length; i++) {
+                if (amounts[i] > 0) {
+                    accountsSortedById[i].add(amounts[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends the debited transfer to the log and credits accountTo, which is credited even if the log fails,
+     * as the debit is applied already.
+     */
+    static long appendAndCredit(Account accountFrom, Account accountTo, long amountToTransfer, TransferLog log) {
+        try {
+            return log.append(accountFrom.getAccountId(), accountTo.getAccountId(), amountToTransfer);
+        } finally {
+            accountTo.add(amountToTransfer);
+        }
+    }
+
+    static TransferStrategy forName(String name) {
+        if (name == null || name.equals("striped")) {
+            return new StripedLockTransferStrategy(Integer.getInteger(STRIPES_SYSTEM_PROPERTY, DEFAULT_STRIPES));
+        }
+        if (name.equals("monitor")) {
+            return new MonitorTransferStrategy();
+        }
+        if (name.equals("optimistic")) {
+            return new OptimisticTransferStrategy();
+        }
+        if (name.equals("sharded")) {
+            return new ShardedTransferEngine(
+                    Integer.getInteger(SHARDS_SYSTEM_PROPERTY, Runtime.getRuntime().availableProcessors()));
+        }
+        throw new IllegalArgumentException(
+                format("Unknown transfer strategy %s, expected one of monitor, striped, optimistic, sharded", name));
+    }
+}
@@ -0,0 +1,365 @@
+package provisioning;
+
+import cluster.SettlementAccounts;
+import model.Account;
+import org.assertj.core.util.VisibleForTesting;
+import provisioning.BulkLoadReport.MalformedRow;
+import repository.AccountsRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import static java.lang.String.format;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Adds accounts from a file of (accountId, initialBalance) rows. The file is memory-mapped in chunks which are
+ * parsed in parallel, every chunk is added through the given adder, which journals them in the service, as soon
+ * as the chunks before it are, so only about one chunk per thread is in memory whatever the size of the file.
+ * Rows are validated by the {@link Account} constructor, malformed ones are skipped and reported. A row of
+ * an account which already exists, or came earlier in the file, is declined and counted unless replacement is
+ * asked for, then a later row wins like with {@link AccountsRepository#add(Account)}. Chunks added before
+ * a failure stay added.
+ *
+ * <p>A CSV file has a row per line, {@code accountId,initialBalance}, an optional header line and empty lines
+ * are skipped. A binary file has 16 byte rows of two big-endian longs.
+ */
+public class BulkAccountLoader {
+    public static final int MAX_REPORTED_ROWS = 1000;
+    static final int MAX_LINE_LENGTH = 256;
+    private static final int DEFAULT_CHUNK_SIZE = 16 << 20;
+    private static final int BINARY_ROW_SIZE = 16;
+    //bytes of a CSV file read to estimate its number of rows
+    private static final int CSV_SAMPLE_SIZE = 64 << 10;
+
+    public enum Format {
+        CSV,
+        BINARY;
+
+        /**
+         * @return CSV for a .csv file, binary otherwise
+         */
+        public static Format of(Path file) {
+            return file.getFileName().toString().toLowerCase().endsWith(".csv") ? CSV : BINARY;
+        }
+    }
+
+    private final AccountsRepository accountsRepository;
+    private final Consumer<List<Account>> adder;
+    private final int parallelism;
+    private final int chunkSize;
+
+    public BulkAccountLoader(AccountsRepository accountsRepository, Consumer<List<Account>> adder, int parallelism) {
+        this(accountsRepository, adder, parallelism, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Adds rows straight to the repository, without the journal.
+     */
+    public BulkAccountLoader(AccountsRepository accountsRepository, int parallelism) {
+        this(accountsRepository, accountsRepository::addAll, parallelism, DEFAULT_CHUNK_SIZE);
+    }
+
+    @VisibleForTesting
+    BulkAccountLoader(AccountsRepository accountsRepository, int parallelism, int chunkSize) {
+        this(accountsRepository, accountsRepository::addAll, parallelism, chunkSize);
+    }
+
+    private BulkAccountLoader(
+            AccountsRepository accountsRepository, Consumer<List<Account>> adder, int parallelism, int chunkSize) {
+        if (parallelism <= 0 || chunkSize < BINARY_ROW_SIZE) {
+            throw new IllegalArgumentException(format("Parallelism should be above zero and chunks at least %s "
+                    + "bytes, actual were %s and %s", BINARY_ROW_SIZE, parallelism, chunkSize));
+        }
+        this.accountsRepository = accountsRepository;
+        this.adder = adder;
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Loads the file without replacing existing accounts.
+     */
+    public BulkLoadReport load(Path file) {
+        return load(file, false);
+    }
+
+    public BulkLoadReport load(Path file, boolean replaceExisting) {
+        return load(file, Format.of(file), replaceExisting);
+    }
+
+    public BulkLoadReport load(Path file, Format format, boolean replaceExisting) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            long size = channel.size();
+            ensureCapacity(estimateRows(channel, size, format));
+            //binary chunks end on a row boundary
+            long step = format == Format.CSV ? chunkSize : chunkSize - chunkSize % BINARY_ROW_SIZE;
+            //every thread parses one chunk ahead of the one being added
+            Deque<Future<Chunk>> parsing = new ArrayDeque<>(parallelism);
+            long nextStart = 0;
+            long loaded = 0;
+            long malformed = 0;
+            long existing = 0;
+            long rows = 0;
+            List<MalformedRow> malformedRows = new ArrayList<>();
+            while (nextStart < size || !parsing.isEmpty()) {
+                for (; nextStart < size && parsing.size() < parallelism; nextStart += step) {
+                    long chunkStart = nextStart;
+                    long chunkEnd = Math.min(size, nextStart + step);
+                    parsing.add(pool.submit(() -> format == Format.CSV
+                            ? parseCsv(channel, size, chunkStart, chunkEnd)
+                            : parseBinary(channel, size, chunkStart, chunkEnd)));
+                }
+                Chunk chunk = parsing.poll().get();
+                List<Account> accounts = replaceExisting ? chunk.accounts : withoutExisting(chunk.accounts);
+                adder.accept(accounts);
+                loaded += accounts.size();
+                existing += chunk.accounts.size() - accounts.size();
+                malformed += chunk.malformed;
+                for (MalformedRow row : chunk.malformedRows) {
+                    if (malformedRows.size() < MAX_REPORTED_ROWS) {
+                        //rows are numbered within the chunk while parsing, a CSV chunk doesn't know its first line
+                        malformedRows.add(new MalformedRow(rows + row.getRow(), row.getReason()));
+                    }
+                }
+                rows += chunk.rows;
+            }
+            return new BulkLoadReport(loaded, malformed, existing, malformedRows);
+        } catch (IOException e) {
+            throw new UncheckedIOException(format("Can't load accounts from %s", file), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw new UncheckedIOException(format("Can't load accounts from %s", file),
+                        ((UncheckedIOException) e.getCause()).getCause());
+            }
+            throw new IllegalStateException(format("Can't load accounts from %s", file), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(format("Loading accounts from %s is interrupted", file), e);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    //the store grows once up front instead of once per chunk, every chunk is still checked when it's added
+    private void ensureCapacity(long rows) {
+        try {
+            accountsRepository.ensureCapacity(accountsRepository.size() + rows);
+        } catch (IllegalStateException e) {
+            //a store of fixed capacity may still hold the rows which turn out to be new accounts
+        }
+    }
+
+    /**
+     * @return exact number of rows of a binary file, for a CSV file an estimate from the lines of its start
+     */
+    private static long estimateRows(FileChannel channel, long size, Format format) {
+        if (format == Format.BINARY) {
+            return size / BINARY_ROW_SIZE;
+        }
+        if (size == 0) {
+            return 0;
+        }
+        MappedByteBuffer sample = map(channel, 0, Math.min(size, CSV_SAMPLE_SIZE));
+        long lines = 1;
+        for (int i = 0; i < sample.limit(); i++) {
+            if (sample.get(i) == '\n') {
+                lines++;
+            }
+        }
+        return size * lines / sample.limit();
+    }
+
+    //accounts of earlier chunks are in the repository already, repeats within the chunk are found by sorting
+    private List<Account> withoutExisting(List<Account> accounts) {
+        long[] accountIds = new long[accounts.size()];
+        for (int i = 0; i < accountIds.length; i++) {
+            accountIds[i] = accounts.get(i).getAccountId();
+        }
+        Arrays.sort(accountIds);
+        long[] repeatedIds = new long[accountIds.length / 2];
+        int repeated = 0;
+        for (int i = 1; i < accountIds.length; i++) {
+            if (accountIds[i] == accountIds[i - 1] && (repeated == 0 || repeatedIds[repeated - 1] != accountIds[i])) {
+                repeatedIds[repeated++] = accountIds[i];
+            }
+        }
+        boolean[] seen = new boolean[repeated];
+        List<Account> kept = new ArrayList<>(accounts.size());
+        for (Account account : accounts) {
+            int index = Arrays.binarySearch(repeatedIds, 0, repeated, account.getAccountId());
+            if (index >= 0) {
+                if (seen[index]) {
+                    continue;
+                }
+                seen[index] = true;
+            }
+            if (accountsRepository.get(account.getAccountId()) == null) {
+                kept.add(account);
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Parses lines starting from {@code start} (inclusive) to {@code end} (exclusive), the line going on from
+     * the previous chunk is left to it and the last line is read past the end.
+     */
+    private static Chunk parseCsv(FileChannel channel, long size, long start, long end) {
+        long mappedStart = start == 0 ? 0 : start - 1;
+        long mappedEnd = Math.min(size, end + MAX_LINE_LENGTH);
+        MappedByteBuffer buffer = map(channel, mappedStart, mappedEnd);
+        int limit = buffer.limit();
+        int ownedEnd = (int) (end - mappedStart);
+        int position = 0;
+        if (start > 0) {
+            while (position < limit && buffer.get(position) != '\n') {
+                position++;
+            }
+            position++;
+        }
+        Chunk chunk = new Chunk();
+        while (position < ownedEnd) {
+            int lineEnd = position;
+            while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            chunk.rows++;
+            if (lineEnd == limit && mappedEnd < size) {
+                chunk.malformed(format("Row is longer than %s bytes", MAX_LINE_LENGTH));
+                break;
+            }
+            parseCsvLine(buffer, position, lineEnd, start == 0 && chunk.rows == 1, chunk);
+            position = lineEnd + 1;
+        }
+        return chunk;
+    }
+
+    private static void parseCsvLine(MappedByteBuffer buffer, int from, int to, boolean first, Chunk chunk) {
+        from = skipSpaces(buffer, from, to);
+        while (to > from && isSpace(buffer.get(to - 1))) {
+            to--;
+        }
+        if (from == to) {
+            return;
+        }
+        if (first && Character.isLetter(buffer.get(from))) {
+            //header
+            return;
+        }
+        int comma = from;
+        while (comma < to && buffer.get(comma) != ',') {
+            comma++;
+        }
+        if (comma == to) {
+            chunk.malformed("Expected accountId,initialBalance");
+            return;
+        }
+        try {
+            long accountId = parseLong(buffer, from, comma);
+            long initialBalance = parseLong(buffer, comma + 1, to);
+            chunk.add(accountId, initialBalance);
+        } catch (NumberFormatException e) {
+            chunk.malformed("Expected accountId,initialBalance as two whole numbers");
+        }
+    }
+
+    private static Chunk parseBinary(FileChannel channel, long size, long start, long end) {
+        MappedByteBuffer buffer = map(channel, start, end);
+        Chunk chunk = new Chunk();
+        while (buffer.remaining() >= BINARY_ROW_SIZE) {
+            chunk.rows++;
+            chunk.add(buffer.getLong(), buffer.getLong());
+        }
+        if (buffer.hasRemaining()) {
+            chunk.rows++;
+            chunk.malformed(format("Row has %s bytes of %s", buffer.remaining(), BINARY_ROW_SIZE));
+        }
+        return chunk;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long start, long end) {
+        try {
+            return channel.map(READ_ONLY, start, end - start);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //Long.parseLong without a String, surrounding spaces are allowed
+    private static long parseLong(MappedByteBuffer buffer, int from, int to) {
+        from = skipSpaces(buffer, from, to);
+        while (to > from && isSpace(buffer.get(to - 1))) {
+            to--;
+        }
+        boolean negative = from < to && buffer.get(from) == '-';
+        if (negative || from < to && buffer.get(from) == '+') {
+            from++;
+        }
+        if (from == to) {
+            throw new NumberFormatException();
+        }
+        //accumulated negatively like Long.parseLong, so Long.MIN_VALUE fits as well
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long result = 0;
+        for (int i = from; i < to; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9 || result < limit / 10 || result * 10 < limit + digit) {
+                throw new NumberFormatException();
+            }
+            result = result * 10 - digit;
+        }
+        return negative ? result : -result;
+    }
+
+    private static int skipSpaces(MappedByteBuffer buffer, int from, int to) {
+        while (from < to && isSpace(buffer.get(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private static final class Chunk {
+        private final List<Account> accounts = new ArrayList<>();
+        private final List<MalformedRow> malformedRows = new ArrayList<>();
+        private long rows;
+        private long malformed;
+
+        private void add(long accountId, long initialBalance) {
+            if (SettlementAccounts.isSettlementAccount(accountId)) {
+                malformed(format("Account id %s is reserved for settlement accounts", accountId));
+                return;
+            }
+            try {
+                accounts.add(new Account(accountId, initialBalance));
+            } catch (IllegalArgumentException e) {
+                malformed(e.getMessage());
+            }
+        }
+
+        private void malformed(String reason) {
+            malformed++;
+            if (malformedRows.size() < MAX_REPORTED_ROWS) {
+                malformedRows.add(new MalformedRow(rows, reason));
+            }
+        }
+    }
+}
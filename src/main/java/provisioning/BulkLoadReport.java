@@ -0,0 +1,78 @@
+package provisioning;
+
+import java.util.Collections;
+import java.util.List;
+
+import static java.lang.String.format;
+
+/**
+ * Outcome of a bulk load: accounts added, rows skipped as malformed and the first of them with the reason, rows
+ * declined because the account already exists.
+ */
+public class BulkLoadReport {
+    private final long loaded;
+    private final long malformed;
+    private final long existing;
+    private final List<MalformedRow> malformedRows;
+
+    BulkLoadReport(long loaded, long malformed, long existing, List<MalformedRow> malformedRows) {
+        this.loaded = loaded;
+        this.malformed = malformed;
+        this.existing = existing;
+        this.malformedRows = Collections.unmodifiableList(malformedRows);
+    }
+
+    public long getLoaded() {
+        return loaded;
+    }
+
+    public long getMalformed() {
+        return malformed;
+    }
+
+    /**
+     * @return rows not loaded as their account already existed, always zero if existing accounts are replaced
+     */
+    public long getExisting() {
+        return existing;
+    }
+
+    /**
+     * @return at most {@link BulkAccountLoader#MAX_REPORTED_ROWS} malformed rows in file order
+     */
+    public List<MalformedRow> getMalformedRows() {
+        return malformedRows;
+    }
+
+    @Override
+    public String toString() {
+        return format("%s accounts loaded, %s rows of existing accounts declined, %s malformed rows skipped%s",
+                loaded, existing, malformed, malformedRows.isEmpty() ? "" : ", first of them: " + malformedRows);
+    }
+
+    public static class MalformedRow {
+        private final long row;
+        private final String reason;
+
+        MalformedRow(long row, String reason) {
+            this.row = row;
+            this.reason = reason;
+        }
+
+        /**
+         * @return line number of a CSV file or record number of a binary one, starting from 1
+         */
+        public long getRow() {
+            return row;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            return format("row %s: %s", row, reason);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package reconciliation;
+
+/**
+ * Balances of the accounts of one account id range at a snapshot epoch.
+ */
+public class RangeTotals {
+    private long accounts;
+    private long balance;
+    private long checksum;
+
+    void add(long accountId, long accountBalance) {
+        accounts++;
+        balance += accountBalance;
+        checksum += checksumOf(accountId, accountBalance);
+    }
+
+    void add(RangeTotals other) {
+        accounts += other.accounts;
+        balance += other.balance;
+        checksum += other.checksum;
+    }
+
+    public long getAccounts() {
+        return accounts;
+    }
+
+    public long getBalance() {
+        return balance;
+    }
+
+    /**
+     * Order independent checksum of account ids and balances of the range, equal for equal balances of every
+     * account, while the sum of balances is equal as long as money only moves inside the range.
+     */
+    public long getChecksum() {
+        return checksum;
+    }
+
+    private static long checksumOf(long accountId, long accountBalance) {
+        long hash = (accountId * 0x9E3779B97F4A7C15L) ^ accountBalance;
+        hash = (hash ^ (hash >>> 32)) * 0xD6E8FEB86659FD93L;
+        return hash ^ (hash >>> 32);
+    }
+}
@@ -0,0 +1,163 @@
+package reconciliation;
+
+import history.TransferHistory;
+import model.Account;
+import repository.AccountsRepository;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static java.lang.String.format;
+
+/**
+ * Proves that balances add up: sums all balances at a snapshot epoch, per account id range, in parallel on its own
+ * fork-join pool, so it takes at most the given number of CPUs while transfers keep going. The total is checked
+ * against the money supply of the repository. Every range is checked against the previous reconciliation moved
+ * by transfers of the history since then, which points out the ranges where money appeared or disappeared.
+ */
+public class Reconciliation implements Closeable {
+    public static final String INTERVAL_SYSTEM_PROPERTY = "moneyTransfer.reconciliation.intervalSeconds";
+    public static final String PARALLELISM_SYSTEM_PROPERTY = "moneyTransfer.reconciliation.parallelism";
+    public static final String RANGE_BITS_SYSTEM_PROPERTY = "moneyTransfer.reconciliation.rangeBits";
+    public static final long DEFAULT_INTERVAL_SECONDS = 300;
+    static final int DEFAULT_RANGE_BITS = 16;
+    //slots walked by one task without splitting
+    private static final long MAX_TASK_SIZE = 1 << 16;
+
+    private final ForkJoinPool pool;
+    private final int rangeBits;
+    private Checkpoint previous;
+    private volatile ReconciliationReport lastReport;
+
+    public Reconciliation(int parallelism, int rangeBits) {
+        if (rangeBits < 0 || rangeBits > 62) {
+            throw new IllegalArgumentException(format("Range bits should be from 0 to 62, actual was %s", rangeBits));
+        }
+        this.pool = new ForkJoinPool(parallelism);
+        this.rangeBits = rangeBits;
+    }
+
+    public static Reconciliation fromSystemProperties() {
+        int parallelism = Integer.getInteger(
+                PARALLELISM_SYSTEM_PROPERTY, Math.max(1, Runtime.getRuntime().availableProcessors() / 4));
+        return new Reconciliation(parallelism, Integer.getInteger(RANGE_BITS_SYSTEM_PROPERTY, DEFAULT_RANGE_BITS));
+    }
+
+    /**
+     * Reconciles balances of the snapshot epoch, the epoch and the history position should be taken at the same
+     * moment while no transfer is in flight, see {@code MoneyTransferService#reconcile(Reconciliation)}.
+     */
+    public synchronized ReconciliationReport run(
+            AccountsRepository accountsRepository, TransferHistory history, long epoch, long historyPosition) {
+        long moneySupply = accountsRepository.getMoneySupply();
+        SortedMap<Long, RangeTotals> ranges =
+                new TreeMap<>(pool.invoke(new RangeTotalsTask(accountsRepository.spliterator(), epoch, rangeBits)));
+        boolean conclusive = accountsRepository.getMoneySupply() == moneySupply;
+        long total = 0;
+        for (RangeTotals range : ranges.values()) {
+            total += range.getBalance();
+        }
+        SortedMap<Long, Long> driftedRanges = new TreeMap<>();
+        boolean rangesCompared = conclusive && previous != null && previous.moneySupply == moneySupply
+                && compare(history, historyPosition, ranges, driftedRanges);
+        previous = conclusive ? new Checkpoint(ranges, historyPosition, moneySupply) : null;
+        lastReport = new ReconciliationReport(
+                epoch, total, moneySupply, conclusive, ranges, driftedRanges, rangesCompared, rangeBits);
+        return lastReport;
+    }
+
+    /**
+     * @return report of the latest reconciliation or null if there was none
+     */
+    public ReconciliationReport getLastReport() {
+        return lastReport;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    private boolean compare(TransferHistory history, long historyPosition,
+                            SortedMap<Long, RangeTotals> ranges, SortedMap<Long, Long> driftedRanges) {
+        Map<Long, Long> expected = new HashMap<>(previous.balances);
+        boolean complete = history.forEach(previous.historyPosition, historyPosition,
+                (timestamp, accountFromId, accountToId, amount) -> {
+                    expected.merge(firstAccountIdOf(accountFromId, rangeBits), -amount, Long::sum);
+                    expected.merge(firstAccountIdOf(accountToId, rangeBits), amount, Long::sum);
+                });
+        if (!complete) {
+            return false;
+        }
+        for (Map.Entry<Long, RangeTotals> range : ranges.entrySet()) {
+            Long expectedBalance = expected.remove(range.getKey());
+            long drift = range.getValue().getBalance() - (expectedBalance == null ? 0 : expectedBalance);
+            if (drift != 0) {
+                driftedRanges.put(range.getKey(), drift);
+            }
+        }
+        //ranges which had money and have no accounts anymore
+        for (Map.Entry<Long, Long> range : expected.entrySet()) {
+            if (range.getValue() != 0) {
+                driftedRanges.put(range.getKey(), -range.getValue());
+            }
+        }
+        return true;
+    }
+
+    private static long firstAccountIdOf(long accountId, int rangeBits) {
+        return (accountId >> rangeBits) << rangeBits;
+    }
+
+    private static class Checkpoint {
+        private final Map<Long, Long> balances = new HashMap<>();
+        private final long historyPosition;
+        private final long moneySupply;
+
+        private Checkpoint(Map<Long, RangeTotals> ranges, long historyPosition, long moneySupply) {
+            for (Map.Entry<Long, RangeTotals> range : ranges.entrySet()) {
+                balances.put(range.getKey(), range.getValue().getBalance());
+            }
+            this.historyPosition = historyPosition;
+            this.moneySupply = moneySupply;
+        }
+    }
+
+    private static class RangeTotalsTask extends RecursiveTask<Map<Long, RangeTotals>> {
+        private final Spliterator<Account> accounts;
+        private final long epoch;
+        private final int rangeBits;
+
+        private RangeTotalsTask(Spliterator<Account> accounts, long epoch, int rangeBits) {
+            this.accounts = accounts;
+            this.epoch = epoch;
+            this.rangeBits = rangeBits;
+        }
+
+        @Override
+        protected Map<Long, RangeTotals> compute() {
+            if (accounts.estimateSize() > MAX_TASK_SIZE) {
+                Spliterator<Account> prefix = accounts.trySplit();
+                if (prefix != null) {
+                    RangeTotalsTask prefixTask = new RangeTotalsTask(prefix, epoch, rangeBits);
+                    prefixTask.fork();
+                    Map<Long, RangeTotals> totals = compute();
+                    prefixTask.join().forEach((range, rangeTotals) ->
+                            totals.computeIfAbsent(range, ignored -> new RangeTotals()).add(rangeTotals));
+                    return totals;
+                }
+            }
+            Map<Long, RangeTotals> totals = new HashMap<>();
+            accounts.forEachRemaining(account -> totals
+                    .computeIfAbsent(firstAccountIdOf(account.getAccountId(), rangeBits), ignored -> new RangeTotals())
+                    .add(account.getAccountId(), account.getBalanceAt(epoch)));
+            return totals;
+        }
+    }
+}
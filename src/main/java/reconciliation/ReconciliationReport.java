@@ -0,0 +1,100 @@
+package reconciliation;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+
+import static java.lang.String.format;
+
+public class ReconciliationReport {
+    private final long epoch;
+    private final long total;
+    private final long moneySupply;
+    private final boolean conclusive;
+    private final SortedMap<Long, RangeTotals> ranges;
+    private final SortedMap<Long, Long> driftedRanges;
+    private final boolean rangesCompared;
+    private final int rangeBits;
+
+    ReconciliationReport(long epoch, long total, long moneySupply, boolean conclusive,
+                         SortedMap<Long, RangeTotals> ranges, SortedMap<Long, Long> driftedRanges,
+                         boolean rangesCompared, int rangeBits) {
+        this.epoch = epoch;
+        this.total = total;
+        this.moneySupply = moneySupply;
+        this.conclusive = conclusive;
+        this.ranges = Collections.unmodifiableSortedMap(ranges);
+        this.driftedRanges = Collections.unmodifiableSortedMap(driftedRanges);
+        this.rangesCompared = rangesCompared;
+        this.rangeBits = rangeBits;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * @return sum of all balances at the snapshot epoch
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    public long getMoneySupply() {
+        return moneySupply;
+    }
+
+    /**
+     * @return false if accounts were added while the balances were summed up, nothing is checked then
+     */
+    public boolean isConclusive() {
+        return conclusive;
+    }
+
+    public long getTotalDrift() {
+        return conclusive ? total - moneySupply : 0;
+    }
+
+    /**
+     * @return totals of every account id range by the first account id of the range
+     */
+    public SortedMap<Long, RangeTotals> getRanges() {
+        return ranges;
+    }
+
+    /**
+     * @return difference between the balance of the range and the balance expected from the previous
+     * reconciliation and the transfers after it, by the first account id of the range, only ranges which drifted
+     */
+    public SortedMap<Long, Long> getDriftedRanges() {
+        return driftedRanges;
+    }
+
+    /**
+     * @return false if ranges could not be compared with the previous reconciliation: it's the first one,
+     * accounts were added or the transfer history doesn't go back to it anymore
+     */
+    public boolean isRangesCompared() {
+        return rangesCompared;
+    }
+
+    public boolean hasDrift() {
+        return getTotalDrift() != 0 || !driftedRanges.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder(format(
+                "Reconciliation of epoch %s: %s ranges, total %s, money supply %s, drift %s",
+                epoch, ranges.size(), total, moneySupply, conclusive ? String.valueOf(getTotalDrift()) : "unknown"));
+        if (!rangesCompared) {
+            report.append(", ranges not compared");
+        }
+        for (Map.Entry<Long, Long> range : driftedRanges.entrySet()) {
+            long first = range.getKey();
+            report.append(format("%n  accounts %s..%s drifted by %s",
+                    first, first + (1L << rangeBits) - 1, range.getValue()));
+        }
+        return report.toString();
+    }
+}
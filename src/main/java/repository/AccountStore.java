@@ -0,0 +1,102 @@
+package repository;
+
+import model.Account;
+
+import java.nio.file.Paths;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import static java.lang.String.format;
+
+public interface AccountStore {
+    String SYSTEM_PROPERTY = "moneyTransfer.accountStore";
+    String CAPACITY_SYSTEM_PROPERTY = "moneyTransfer.accountStore.capacity";
+    String FILE_SYSTEM_PROPERTY = "moneyTransfer.accountStore.file";
+    int DEFAULT_CAPACITY = 1024;
+    long UNKNOWN_JOURNAL_SEQUENCE = -1;
+    long UNKNOWN_MONEY_SUPPLY = Long.MIN_VALUE;
+
+    void put(Account account);
+
+    /**
+     * Makes room for that many accounts at once instead of growing while they are put.
+     *
+     * @throws IllegalStateException if the store can't hold them
+     */
+    default void ensureCapacity(long expectedSize) {
+    }
+
+    /**
+     * A store which keeps its accounts on the heap returns them as they are and doesn't allocate. A store which keeps
+     * them elsewhere may allocate a view per lookup, see {@link MappedAccountStore}, or to fault an account in, see
+     * {@link TieredAccountStore}.
+     *
+     * @return account with the given id or null
+     */
+    Account get(long accountId);
+
+    void forEach(Consumer<Account> action);
+
+    /**
+     * Like {@link #forEach(Consumer)}, but the store can be split into parts to walk them in parallel.
+     */
+    Spliterator<Account> spliterator();
+
+    int size();
+
+    /**
+     * @return sequence number of the last journal record the accounts have, 0 for a store which starts empty,
+     * {@link #UNKNOWN_JOURNAL_SEQUENCE} if the store outlived a run which didn't close it
+     */
+    default long getJournalSequence() {
+        return 0;
+    }
+
+    /**
+     * Records that the accounts have the journal up to the given sequence number, a store which outlives a restart
+     * keeps it once it's closed. The accounts must not change after.
+     */
+    default void setJournalSequence(long sequence) {
+    }
+
+    /**
+     * @return what balances of the accounts added up to when the store was closed, {@link #UNKNOWN_MONEY_SUPPLY}
+     * for a store which doesn't keep it or outlived a run which didn't close it, then the balances are summed up
+     */
+    default long getMoneySupply() {
+        return UNKNOWN_MONEY_SUPPLY;
+    }
+
+    /**
+     * Records what balances of the accounts add up to, a store which outlives a restart keeps it once it's closed.
+     * The accounts must not change after.
+     */
+    default void setMoneySupply(long moneySupply) {
+    }
+
+    /**
+     * Removes all accounts, so a store which can't tell which journal records it has is rebuilt from the journal.
+     */
+    void clear();
+
+    static AccountStore fromSystemProperties() {
+        String name = System.getProperty(SYSTEM_PROPERTY);
+        int capacity = Integer.getInteger(CAPACITY_SYSTEM_PROPERTY, DEFAULT_CAPACITY);
+        if (name == null || name.equals("open-addressing")) {
+            return new LongOpenHashAccountStore(capacity);
+        }
+        if (name.equals("map")) {
+            return new ConcurrentMapAccountStore(capacity);
+        }
+        if (name.equals("off-heap") || name.equals("tiered")) {
+            String file = System.getProperty(FILE_SYSTEM_PROPERTY);
+            MappedAccountStore store = file == null
+                    ? MappedAccountStore.inMemory(capacity)
+                    : MappedAccountStore.open(Paths.get(file), capacity);
+            return name.equals("off-heap") ? store : new TieredAccountStore(store, Integer.getInteger(
+                    TieredAccountStore.CACHE_CAPACITY_SYSTEM_PROPERTY, TieredAccountStore.DEFAULT_CACHE_CAPACITY));
+        }
+        throw new IllegalArgumentException(
+                format("Unknown account store %s, expected one of open-addressing, map, off-heap, tiered", name));
+    }
+}
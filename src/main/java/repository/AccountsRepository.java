@@ -3,26 +3,124 @@ package repository;
 import model.Account;
 import org.assertj.core.util.VisibleForTesting;
 
-import java.util.Map;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 public class AccountsRepository {
-    private final Map<Long, Account> accounts;
+    private final AccountStore accounts;
+    private final LongAdder moneySupply = new LongAdder();
 
     @VisibleForTesting
     AccountsRepository() {
-        this.accounts = new ConcurrentHashMap<>();
+        this(AccountStore.fromSystemProperties());
+    }
+
+    public AccountsRepository(AccountStore accounts) {
+        this.accounts = accounts;
+        //a store opened again after a restart already has its accounts, a file store which was closed tells their sum
+        long persistedMoneySupply = accounts.getMoneySupply();
+        if (persistedMoneySupply != AccountStore.UNKNOWN_MONEY_SUPPLY) {
+            moneySupply.add(persistedMoneySupply);
+        } else {
+            accounts.forEach(account -> moneySupply.add(account.getBalance()));
+        }
     }
 
     public void add(Account account) {
-        accounts.put(account.getAccountId(), account);
+        Account replaced = accounts.get(account.getAccountId());
+        accounts.put(account);
+        moneySupply.add(account.getBalance() - (replaced == null ? 0 : replaced.getBalance()));
+    }
+
+    /**
+     * Adds the accounts one after another like {@link #add(Account)}, the store grows once for all of them.
+     */
+    public void addAll(Collection<Account> accountsToAdd) {
+        ensureCapacity(accounts.size() + (long) accountsToAdd.size());
+        long added = 0;
+        for (Account account : accountsToAdd) {
+            Account replaced = accounts.get(account.getAccountId());
+            accounts.put(account);
+            added += account.getBalance() - (replaced == null ? 0 : replaced.getBalance());
+        }
+        moneySupply.add(added);
+    }
+
+    /**
+     * @throws IllegalStateException if the store can't hold that many accounts
+     */
+    public void ensureCapacity(long expectedSize) {
+        accounts.ensureCapacity(expectedSize);
     }
 
     public Optional<Account> find(Long accountId) {
         return Optional.ofNullable(accounts.get(accountId));
     }
 
+    public Account get(long accountId) {
+        return accounts.get(accountId);
+    }
+
+    public void forEach(Consumer<Account> action) {
+        accounts.forEach(action);
+    }
+
+    public Spliterator<Account> spliterator() {
+        return accounts.spliterator();
+    }
+
+    /**
+     * @return money brought in by added accounts, transfers never change it, so it's what all balances add up to
+     */
+    public long getMoneySupply() {
+        return moneySupply.sum();
+    }
+
+    public int size() {
+        return accounts.size();
+    }
+
+    /**
+     * @see AccountStore#getJournalSequence()
+     */
+    public long getJournalSequence() {
+        return accounts.getJournalSequence();
+    }
+
+    public void clear() {
+        accounts.clear();
+        moneySupply.reset();
+    }
+
+    /**
+     * Closes the store once the accounts have the journal up to the given sequence number, a store which keeps them
+     * in a file then replays only the journal after it when it's opened again, and doesn't sum up the balances.
+     */
+    public void close(long journalSequence) {
+        accounts.setJournalSequence(journalSequence);
+        accounts.setMoneySupply(getMoneySupply());
+        close();
+    }
+
+    /**
+     * Writes out accounts of a store which keeps them in a file, other stores have nothing to close.
+     */
+    public void close() {
+        if (accounts instanceof Closeable) {
+            try {
+                ((Closeable) accounts).close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Account store can't be closed", e);
+            }
+        }
+    }
+
     public static AccountsRepository getInstance() {
         return AccountsRepositoryInstanceHolder.INSTANCE;
     }
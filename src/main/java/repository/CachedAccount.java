@@ -0,0 +1,172 @@
+package repository;
+
+import model.Account;
+import model.TransferLog;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Account faulted in from the disk by {@link TieredAccountStore}. Every change pins the account for its duration
+ * and an account is evicted only once it's sealed while nothing pins it, so no change is lost by the write-back.
+ * A caller may still hold a sealed account: its changes and reads then go to the account as the store has it now.
+ */
+class CachedAccount extends Account {
+    private static final AtomicIntegerFieldUpdater<CachedAccount> PINS_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(CachedAccount.class, "pins");
+    private static final int SEALED = Integer.MIN_VALUE;
+
+    private final TieredAccountStore store;
+    private final long slot;
+    //the disk preserved the balance of the epoch the account was faulted in, before any change on the heap
+    private final long faultEpoch;
+    private final long balanceAtFaultEpoch;
+    private volatile int pins;
+
+    CachedAccount(TieredAccountStore store, long slot, long accountId, long availableBalance, long held,
+                  long faultEpoch, long balanceAtFaultEpoch) {
+        super(accountId, availableBalance, held);
+        this.store = store;
+        this.slot = slot;
+        this.faultEpoch = faultEpoch;
+        this.balanceAtFaultEpoch = balanceAtFaultEpoch;
+    }
+
+    @Override
+    public void add(long extraAmount) {
+        if (!pin()) {
+            store.get(getAccountId()).add(extraAmount);
+            return;
+        }
+        try {
+            super.add(extraAmount);
+        } finally {
+            unpin();
+        }
+    }
+
+    @Override
+    public boolean tryWithdraw(long amountToWithdraw) {
+        if (!pin()) {
+            return store.get(getAccountId()).tryWithdraw(amountToWithdraw);
+        }
+        try {
+            return super.tryWithdraw(amountToWithdraw);
+        } finally {
+            unpin();
+        }
+    }
+
+    @Override
+    public boolean tryHold(long amountToHold) {
+        if (!pin()) {
+            return store.get(getAccountId()).tryHold(amountToHold);
+        }
+        try {
+            return super.tryHold(amountToHold);
+        } finally {
+            unpin();
+        }
+    }
+
+    @Override
+    public void releaseHold(long amountHeld) {
+        if (!pin()) {
+            store.get(getAccountId()).releaseHold(amountHeld);
+            return;
+        }
+        try {
+            super.releaseHold(amountHeld);
+        } finally {
+            unpin();
+        }
+    }
+
+    @Override
+    public void captureHold(long amountHeld, long amountToCapture) {
+        if (!pin()) {
+            store.get(getAccountId()).captureHold(amountHeld, amountToCapture);
+            return;
+        }
+        try {
+            super.captureHold(amountHeld, amountToCapture);
+        } finally {
+            unpin();
+        }
+    }
+
+    //not pinned while accountTo is credited, which may fault it in under the lock of a segment evicting this one,
+    //the capture pins the account on its own
+    @Override
+    public long captureHold(long amountHeld, Account accountTo, long amountToCapture, TransferLog log) {
+        if (isSealed()) {
+            return store.get(getAccountId()).captureHold(amountHeld, accountTo, amountToCapture, log);
+        }
+        return super.captureHold(amountHeld, accountTo, amountToCapture, log);
+    }
+
+    @Override
+    public long getBalance() {
+        return isSealed() ? store.current(getAccountId()).getBalance() : super.getBalance();
+    }
+
+    @Override
+    public long getHeld() {
+        return isSealed() ? store.current(getAccountId()).getHeld() : super.getHeld();
+    }
+
+    //pinned, so the account isn't sealed and written back while the balance is preserved under its monitor,
+    //the write-back reads the preserved balance without the monitor
+    @Override
+    public long getBalanceAt(long epoch) {
+        if (epoch == faultEpoch) {
+            return balanceAtFaultEpoch;
+        }
+        if (!pin()) {
+            return store.current(getAccountId()).getBalanceAt(epoch);
+        }
+        try {
+            return super.getBalanceAt(epoch);
+        } finally {
+            unpin();
+        }
+    }
+
+    long getSlot() {
+        return slot;
+    }
+
+    /**
+     * @return false if a change or a read of the balance at an epoch is in flight, the account stays cached then
+     */
+    boolean seal() {
+        return PINS_UPDATER.compareAndSet(this, 0, SEALED);
+    }
+
+    //read by the store once sealed, nothing changes the account anymore
+    long sealedAvailableBalance() {
+        return super.getBalance() - super.getHeld();
+    }
+
+    long sealedHeld() {
+        return super.getHeld();
+    }
+
+    //nothing changes a sealed account, so it has the current balance in an epoch it didn't change in, and the
+    //monitor isn't taken: a transfer strategy holds it while it credits another account through the store
+    long sealedBalanceAt(long epoch) {
+        return epoch == faultEpoch ? balanceAtFaultEpoch : getPreservedBalance(epoch, super.getBalance());
+    }
+
+    private boolean isSealed() {
+        return pins < 0;
+    }
+
+    //a sealed account stays sealed, the count of a failed pin is never given back
+    private boolean pin() {
+        return PINS_UPDATER.getAndIncrement(this) >= 0;
+    }
+
+    private void unpin() {
+        PINS_UPDATER.decrementAndGet(this);
+    }
+}
@@ -0,0 +1,46 @@
+package repository;
+
+import model.Account;
+
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+public class ConcurrentMapAccountStore implements AccountStore {
+    private final Map<Long, Account> accounts;
+
+    public ConcurrentMapAccountStore(int expectedSize) {
+        this.accounts = new ConcurrentHashMap<>(expectedSize);
+    }
+
+    @Override
+    public void put(Account account) {
+        accounts.put(account.getAccountId(), account);
+    }
+
+    @Override
+    public Account get(long accountId) {
+        return accounts.get(accountId);
+    }
+
+    @Override
+    public void forEach(Consumer<Account> action) {
+        accounts.values().forEach(action);
+    }
+
+    @Override
+    public Spliterator<Account> spliterator() {
+        return accounts.values().spliterator();
+    }
+
+    @Override
+    public int size() {
+        return accounts.size();
+    }
+
+    @Override
+    public void clear() {
+        accounts.clear();
+    }
+}
@@ -0,0 +1,70 @@
+package repository;
+
+/**
+ * Approximate recent access counts of account ids, the TinyLFU admission filter: a count-min sketch of 4-bit
+ * counters, four per id, 16 counters in a long. Once there were ten times as many increments as the expected
+ * number of ids, all counters are halved, so counts of accounts which went dormant fade away.
+ * Not thread-safe.
+ */
+final class FrequencySketch {
+    static final int MAX_FREQUENCY = 15;
+    private static final long[] SEEDS = {0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L,
+            0x27D4EB2F165667C5L};
+    private static final long HALF_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int expectedSize) {
+        int length = Integer.highestOneBit(Math.max(expectedSize, 16) - 1) << 1;
+        this.table = new long[Math.max(length >>> 2, 4)];
+        this.sampleSize = 10 * Math.max(expectedSize, 16);
+    }
+
+    int frequency(long accountId) {
+        int frequency = MAX_FREQUENCY;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long hash = hash(accountId, i);
+            frequency = Math.min(frequency, (int) (table[indexOf(hash)] >>> shiftOf(hash)) & MAX_FREQUENCY);
+        }
+        return frequency;
+    }
+
+    void increment(long accountId) {
+        boolean incremented = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long hash = hash(accountId, i);
+            int index = indexOf(hash);
+            int shift = shiftOf(hash);
+            if (((table[index] >>> shift) & MAX_FREQUENCY) != MAX_FREQUENCY) {
+                table[index] += 1L << shift;
+                incremented = true;
+            }
+        }
+        if (incremented && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & HALF_MASK;
+        }
+        additions >>>= 1;
+    }
+
+    private int indexOf(long hash) {
+        return (int) (hash >>> 32) & (table.length - 1);
+    }
+
+    //one of the 16 counters of the long
+    private static int shiftOf(long hash) {
+        return (int) (hash >>> 60) << 2;
+    }
+
+    private static long hash(long accountId, int i) {
+        long hash = (accountId + i) * SEEDS[i];
+        return hash ^ (hash >>> 29);
+    }
+}
@@ -0,0 +1,150 @@
+package repository;
+
+import model.Account;
+
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+import static java.lang.String.format;
+
+/**
+ * Open addressing table with linear probing keyed by primitive account id. Lookups take no locks and
+ * allocate nothing, writers are serialized and replace the whole table when it grows, so a reader always
+ * works on a table that is not resized under it. Accounts are only removed all at once, by replacing the table
+ * with an empty one of the same capacity.
+ */
+public class LongOpenHashAccountStore implements AccountStore {
+    private static final int MAX_CAPACITY = 1 << 30;
+    private volatile Table table;
+    private int size;
+
+    public LongOpenHashAccountStore(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException(
+                    format("Expected size should not be negative, actual was %s", expectedSize));
+        }
+        this.table = new Table(capacityFor(expectedSize));
+    }
+
+    @Override
+    public synchronized void put(Account account) {
+        Table current = table;
+        if (current.put(account)) {
+            size++;
+            if (size > current.maxSize) {
+                table = current.resize(capacityFor(size));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void ensureCapacity(long expectedSize) {
+        Table current = table;
+        if (expectedSize > current.maxSize) {
+            table = current.resize(capacityFor((int) Math.min(expectedSize, Integer.MAX_VALUE)));
+        }
+    }
+
+    @Override
+    public Account get(long accountId) {
+        return table.get(accountId);
+    }
+
+    @Override
+    public void forEach(Consumer<Account> action) {
+        table.forEach(action);
+    }
+
+    @Override
+    public Spliterator<Account> spliterator() {
+        Table current = table;
+        return new SlotSpliterator(slot -> current.values.get((int) slot), 0, current.mask + 1);
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized void clear() {
+        table = new Table(table.mask + 1);
+        size = 0;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        long capacity = Long.highestOneBit(Math.max(2L, expectedSize * 4L / 3 + 1) - 1) << 1;
+        if (capacity > MAX_CAPACITY) {
+            throw new IllegalStateException(format("Can't hold %s accounts", expectedSize));
+        }
+        return (int) capacity;
+    }
+
+    private static int index(long accountId, int mask) {
+        long hash = accountId * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private static final class Table {
+        private final long[] keys;
+        private final AtomicReferenceArray<Account> values;
+        private final int mask;
+        private final int maxSize;
+
+        Table(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new AtomicReferenceArray<>(capacity);
+            this.mask = capacity - 1;
+            this.maxSize = capacity / 4 * 3;
+        }
+
+        Account get(long accountId) {
+            for (int i = index(accountId, mask); ; i = (i + 1) & mask) {
+                //volatile read of the value publishes the key written before it
+                Account account = values.get(i);
+                if (account == null) {
+                    return null;
+                }
+                if (keys[i] == accountId) {
+                    return account;
+                }
+            }
+        }
+
+        boolean put(Account account) {
+            long accountId = account.getAccountId();
+            for (int i = index(accountId, mask); ; i = (i + 1) & mask) {
+                if (values.get(i) == null) {
+                    keys[i] = accountId;
+                    values.set(i, account);
+                    return true;
+                }
+                if (keys[i] == accountId) {
+                    values.set(i, account);
+                    return false;
+                }
+            }
+        }
+
+        void forEach(Consumer<Account> action) {
+            for (int i = 0; i <= mask; i++) {
+                Account account = values.get(i);
+                if (account != null) {
+                    action.accept(account);
+                }
+            }
+        }
+
+        Table resize(int capacity) {
+            Table resized = new Table(capacity);
+            for (int i = 0; i <= mask; i++) {
+                Account account = values.get(i);
+                if (account != null) {
+                    resized.put(account);
+                }
+            }
+            return resized;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package repository;
+
+import model.Account;
+
+class MappedAccount extends Account {
+    private final MappedAccountStore store;
+    private final long slot;
+
+    MappedAccount(MappedAccountStore store, long slot, long accountId) {
+        super(accountId);
+        this.store = store;
+        this.slot = slot;
+    }
+
+    @Override
+    public void add(long extraAmount) {
+        store.add(slot, extraAmount);
+    }
+
+    @Override
+    public boolean tryWithdraw(long amountToWithdraw) {
+        return store.tryWithdraw(slot, amountToWithdraw);
+    }
+
+    @Override
+    public long getBalance() {
+        return store.balance(slot);
+    }
+
+    @Override
+    public long getHeld() {
+        return store.held(slot);
+    }
+
+    //a hold moves money within the record, under its lock, so it's not a change for consistent reads
+    @Override
+    public boolean tryHold(long amountToHold) {
+        return store.tryHold(slot, amountToHold);
+    }
+
+    @Override
+    public void releaseHold(long amountHeld) {
+        store.removeHold(slot, amountHeld, amountHeld);
+    }
+
+    @Override
+    public void captureHold(long amountHeld, long amountToCapture) {
+        beginChange();
+        try {
+            store.removeHold(slot, amountHeld, amountHeld - amountToCapture);
+        } finally {
+            endChange();
+        }
+    }
+
+    @Override
+    public long getBalanceAt(long epoch) {
+        return store.balanceAt(slot, epoch);
+    }
+
+    //records live off-heap and the flyweight is thrown away, credits are already serialized by the store
+    @Override
+    public void recordContention() {
+    }
+
+    @Override
+    protected void beginChange() {
+        store.beginChange(slot);
+    }
+
+    @Override
+    protected void endChange() {
+        store.endChange(slot);
+    }
+
+    @Override
+    protected long getChanges() {
+        return store.changes(slot);
+    }
+
+    public long getVersion() {
+        return store.version(slot);
+    }
+}
@@ -0,0 +1,534 @@
+package repository;
+
+import model.Account;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+import static java.lang.String.format;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Keeps accounts outside of the java heap in fixed size records of an open addressing table:
+ * account id, available balance, version, balance preserved for the current snapshot epoch with that epoch
+ * and money on hold, 48 bytes each. A file of any other format version is not opened.
+ * The table lives either in direct buffers or in a memory-mapped file which is opened again as is after a restart,
+ * without any loading. Holds themselves are not persisted, so money left on hold by the previous run is made
+ * available again when the file is opened, which reads every record only if a hold was ever placed. The header
+ * has the journal sequence number the accounts were at when the file was closed, while the file is open it has
+ * {@link #UNKNOWN_JOURNAL_SEQUENCE}, so after a crash the accounts are known to be ahead of the journal by
+ * an unknown number of transfers. The money supply of the accounts is written next to it the same way, so a file
+ * which was closed is opened without reading the records. The header also has the latest snapshot epoch
+ * a balance was preserved for, written as soon as the epoch is seen, so epochs of this run start after it and
+ * never meet a stale preserved balance.
+ * Accounts returned by {@link #get(long)} are short-lived views of a record, a new one per lookup: the balance
+ * is read from and written to the record, so two views of a record always agree. Caching the views would take
+ * a heap table as big as the store, which is what this store avoids. Updates of a record are atomic under one of
+ * the striped record locks. The capacity is fixed when the table is created.
+ * Changes in flight for consistent reads (see {@link Account#readBalances(Account[], long[])}) are counted on
+ * the heap per lock stripe, so they are never persisted and a change of one account also retries reads of
+ * the other accounts of its stripe.
+ */
+public class MappedAccountStore implements AccountStore, Closeable {
+    static final int DEFAULT_SEGMENT_SHIFT = 24;
+    private static final long MAGIC = 0x4D6F6E6579547246L;
+    private static final int FORMAT_VERSION = 4;
+    private static final int HEADER_SIZE = 4096;
+    private static final int RECORD_SIZE = 48;
+    private static final int ACCOUNT_ID = 0;
+    private static final int BALANCE = 8;
+    private static final int VERSION = 16;
+    private static final int PRESERVED_EPOCH = 24;
+    private static final int PRESERVED_BALANCE = 32;
+    private static final int HELD = 40;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int FORMAT_VERSION_OFFSET = 8;
+    private static final int RECORD_SIZE_OFFSET = 12;
+    private static final int CAPACITY_OFFSET = 16;
+    private static final int SIZE_OFFSET = 24;
+    private static final int SEGMENT_SHIFT_OFFSET = 32;
+    private static final int HOLDS_PLACED_OFFSET = 40;
+    private static final int JOURNAL_SEQUENCE_OFFSET = 48;
+    private static final int SNAPSHOT_EPOCH_OFFSET = 56;
+    private static final int MONEY_SUPPLY_OFFSET = 64;
+    private static final int LOCK_STRIPES = 4096;
+    //longs between two change counters, keeps every counter on its own cache line
+    private static final int CHANGES_PADDING = 8;
+    private static final long CHANGE_COMPLETED = (1L << 32) - 1;
+
+    private final FileChannel channel;
+    private final ByteBuffer header;
+    private final ByteBuffer[] segments;
+    private final int segmentShift;
+    private final long segmentMask;
+    private final long capacity;
+    private final long mask;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final AtomicLongArray changes = new AtomicLongArray(LOCK_STRIPES * CHANGES_PADDING);
+    private long size;
+    //written after every insert, read before every lookup, publishes records written by put
+    private volatile long published;
+    private volatile boolean holdsPlaced;
+    private volatile long persistedEpoch;
+    private long journalSequence;
+    private long closedJournalSequence = UNKNOWN_JOURNAL_SEQUENCE;
+    private long moneySupply = UNKNOWN_MONEY_SUPPLY;
+    private long closedMoneySupply = UNKNOWN_MONEY_SUPPLY;
+
+    private MappedAccountStore(FileChannel channel, ByteBuffer header, long capacity, int segmentShift, long size) {
+        this.channel = channel;
+        this.header = header;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.segmentShift = segmentShift;
+        this.segmentMask = (1L << segmentShift) - 1;
+        this.size = size;
+        this.published = size;
+        this.segments = new ByteBuffer[(int) ((capacity + segmentMask) >>> segmentShift)];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    public static MappedAccountStore inMemory(long expectedSize) {
+        return inMemory(expectedSize, DEFAULT_SEGMENT_SHIFT);
+    }
+
+    static MappedAccountStore inMemory(long expectedSize, int segmentShift) {
+        long capacity = capacityFor(expectedSize);
+        ByteBuffer header = ByteBuffer.allocateDirect(HEADER_SIZE);
+        MappedAccountStore store = new MappedAccountStore(null, header, capacity, segmentShift, 0);
+        for (int i = 0; i < store.segments.length; i++) {
+            store.segments[i] = ByteBuffer.allocateDirect((int) (store.segmentRecords(i) * RECORD_SIZE));
+        }
+        store.writeHeader();
+        return store;
+    }
+
+    public static MappedAccountStore open(Path file, long expectedSize) {
+        return open(file, expectedSize, DEFAULT_SEGMENT_SHIFT);
+    }
+
+    static MappedAccountStore open(Path file, long expectedSize, int segmentShift) {
+        try {
+            boolean exists = Files.exists(file) && Files.size(file) >= HEADER_SIZE;
+            FileChannel channel = FileChannel.open(file, CREATE, READ, WRITE);
+            //closed on any failure, a header of another format included, nothing else would ever close it
+            try {
+                MappedByteBuffer header = channel.map(READ_WRITE, 0, HEADER_SIZE);
+                MappedAccountStore store = exists
+                        ? new MappedAccountStore(
+                                channel,
+                                header,
+                                header.getLong(CAPACITY_OFFSET),
+                                checkHeader(file, header),
+                                header.getLong(SIZE_OFFSET))
+                        : new MappedAccountStore(channel, header, capacityFor(expectedSize), segmentShift, 0);
+                long position = HEADER_SIZE;
+                for (int i = 0; i < store.segments.length; i++) {
+                    long length = store.segmentRecords(i) * RECORD_SIZE;
+                    store.segments[i] = channel.map(READ_WRITE, position, length);
+                    position += length;
+                }
+                if (!exists) {
+                    store.writeHeader();
+                } else {
+                    store.journalSequence = header.getLong(JOURNAL_SEQUENCE_OFFSET);
+                    store.moneySupply = header.getLong(MONEY_SUPPLY_OFFSET);
+                    if (header.getLong(HOLDS_PLACED_OFFSET) != 0) {
+                        store.releaseHolds();
+                    }
+                    store.persistedEpoch = header.getLong(SNAPSHOT_EPOCH_OFFSET);
+                    Account.startSnapshotEpochAfter(store.persistedEpoch);
+                }
+                header.putLong(JOURNAL_SEQUENCE_OFFSET, UNKNOWN_JOURNAL_SEQUENCE);
+                header.putLong(MONEY_SUPPLY_OFFSET, UNKNOWN_MONEY_SUPPLY);
+                header.force();
+                return store;
+            } catch (IOException | RuntimeException e) {
+                try {
+                    channel.close();
+                } catch (IOException closeFailure) {
+                    e.addSuppressed(closeFailure);
+                }
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(format("Can't open account store %s", file), e);
+        }
+    }
+
+    @Override
+    public synchronized void put(Account account) {
+        long accountId = account.getAccountId();
+        long balance = account.getBalance();
+        for (long slot = index(accountId); ; slot = (slot + 1) & mask) {
+            synchronized (lock(slot)) {
+                if (read(slot, VERSION) == 0) {
+                    if (size + 1 > capacity / 4 * 3) {
+                        throw new IllegalStateException(format("Account store is full, capacity is %s", capacity));
+                    }
+                    write(slot, ACCOUNT_ID, accountId);
+                    write(slot, BALANCE, balance);
+                    write(slot, HELD, 0);
+                    write(slot, VERSION, 1);
+                    header.putLong(SIZE_OFFSET, ++size);
+                    published = size;
+                    return;
+                }
+                if (read(slot, ACCOUNT_ID) == accountId) {
+                    write(slot, BALANCE, balance);
+                    write(slot, HELD, 0);
+                    write(slot, VERSION, read(slot, VERSION) + 1);
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void ensureCapacity(long expectedSize) {
+        if (expectedSize > capacity / 4 * 3) {
+            throw new IllegalStateException(
+                    format("Account store can't hold %s accounts, capacity is %s", expectedSize, capacity));
+        }
+    }
+
+    @Override
+    public Account get(long accountId) {
+        long slot = find(accountId);
+        return slot < 0 ? null : new MappedAccount(this, slot, accountId);
+    }
+
+    @Override
+    public void forEach(Consumer<Account> action) {
+        if (published == 0) {
+            return;
+        }
+        for (long slot = 0; slot < capacity; slot++) {
+            Account account = accountInSlot(slot);
+            if (account != null) {
+                action.accept(account);
+            }
+        }
+    }
+
+    @Override
+    public Spliterator<Account> spliterator() {
+        if (published == 0) {
+            return Spliterators.emptySpliterator();
+        }
+        return new SlotSpliterator(this::accountInSlot, 0, capacity);
+    }
+
+    @Override
+    public synchronized int size() {
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public synchronized long getJournalSequence() {
+        return journalSequence;
+    }
+
+    /**
+     * The sequence number is written to the file when it's closed.
+     */
+    @Override
+    public synchronized void setJournalSequence(long sequence) {
+        closedJournalSequence = sequence;
+    }
+
+    /**
+     * Releasing holds of the previous run doesn't change it, money on hold is part of the balance.
+     */
+    @Override
+    public synchronized long getMoneySupply() {
+        return moneySupply;
+    }
+
+    /**
+     * The money supply is written to the file when it's closed.
+     */
+    @Override
+    public synchronized void setMoneySupply(long moneySupply) {
+        closedMoneySupply = moneySupply;
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (ByteBuffer segment : segments) {
+            for (int position = 0; position < segment.capacity(); position += Long.BYTES) {
+                segment.putLong(position, 0);
+            }
+        }
+        size = 0;
+        published = 0;
+        header.putLong(SIZE_OFFSET, 0);
+        journalSequence = 0;
+        moneySupply = UNKNOWN_MONEY_SUPPLY;
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    public synchronized void flush() {
+        if (channel != null) {
+            header.putLong(SIZE_OFFSET, size);
+            ((MappedByteBuffer) header).force();
+            for (ByteBuffer segment : segments) {
+                ((MappedByteBuffer) segment).force();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        if (channel != null) {
+            //only once the accounts are on disk
+            header.putLong(JOURNAL_SEQUENCE_OFFSET, closedJournalSequence);
+            header.putLong(MONEY_SUPPLY_OFFSET, closedMoneySupply);
+            ((MappedByteBuffer) header).force();
+            channel.close();
+        }
+    }
+
+    /**
+     * @return slot of the account, below zero if there is no such account
+     */
+    long slotOf(long accountId) {
+        return find(accountId);
+    }
+
+    /**
+     * @return account in the slot or null if the slot is empty
+     */
+    Account accountInSlot(long slot) {
+        return read(slot, VERSION) == 0 ? null : new MappedAccount(this, slot, read(slot, ACCOUNT_ID));
+    }
+
+    long balance(long slot) {
+        synchronized (lock(slot)) {
+            return read(slot, BALANCE) + read(slot, HELD);
+        }
+    }
+
+    long held(long slot) {
+        synchronized (lock(slot)) {
+            return read(slot, HELD);
+        }
+    }
+
+    long version(long slot) {
+        synchronized (lock(slot)) {
+            return read(slot, VERSION);
+        }
+    }
+
+    void beginChange(long slot) {
+        changes.getAndIncrement(changesIndex(slot));
+    }
+
+    void endChange(long slot) {
+        changes.getAndAdd(changesIndex(slot), CHANGE_COMPLETED);
+    }
+
+    long changes(long slot) {
+        return changes.get(changesIndex(slot));
+    }
+
+    long balanceAt(long slot, long epoch) {
+        synchronized (lock(slot)) {
+            preserveBalance(slot, epoch);
+            return read(slot, PRESERVED_BALANCE);
+        }
+    }
+
+    void add(long slot, long extraAmount) {
+        synchronized (lock(slot)) {
+            preserveBalance(slot, Account.getSnapshotEpoch());
+            write(slot, BALANCE, read(slot, BALANCE) + extraAmount);
+            write(slot, VERSION, read(slot, VERSION) + 1);
+        }
+    }
+
+    boolean tryWithdraw(long slot, long amountToWithdraw) {
+        synchronized (lock(slot)) {
+            preserveBalance(slot, Account.getSnapshotEpoch());
+            long balance = read(slot, BALANCE);
+            if (balance < amountToWithdraw) {
+                return false;
+            }
+            write(slot, BALANCE, balance - amountToWithdraw);
+            write(slot, VERSION, read(slot, VERSION) + 1);
+            return true;
+        }
+    }
+
+    boolean tryHold(long slot, long amountToHold) {
+        if (!holdsPlaced) {
+            markHoldsPlaced();
+        }
+        synchronized (lock(slot)) {
+            long balance = read(slot, BALANCE);
+            if (balance < amountToHold) {
+                return false;
+            }
+            write(slot, BALANCE, balance - amountToHold);
+            write(slot, HELD, read(slot, HELD) + amountToHold);
+            write(slot, VERSION, read(slot, VERSION) + 1);
+            return true;
+        }
+    }
+
+    /**
+     * Takes the amount off hold, {@code amountReturned} of it goes back to the available balance.
+     */
+    void removeHold(long slot, long amountHeld, long amountReturned) {
+        synchronized (lock(slot)) {
+            preserveBalance(slot, Account.getSnapshotEpoch());
+            write(slot, HELD, read(slot, HELD) - amountHeld);
+            write(slot, BALANCE, read(slot, BALANCE) + amountReturned);
+            write(slot, VERSION, read(slot, VERSION) + 1);
+        }
+    }
+
+    /**
+     * Overwrites the record with the state of the account kept elsewhere meanwhile, including the balance it had
+     * when the snapshot epoch started.
+     */
+    void writeBack(long slot, long availableBalance, long held, long epoch, long balanceAtEpoch) {
+        if (held != 0 && !holdsPlaced) {
+            markHoldsPlaced();
+        }
+        if (epoch > persistedEpoch) {
+            persistEpoch(epoch);
+        }
+        synchronized (lock(slot)) {
+            write(slot, BALANCE, availableBalance);
+            write(slot, HELD, held);
+            write(slot, PRESERVED_BALANCE, balanceAtEpoch);
+            write(slot, PRESERVED_EPOCH, epoch);
+            write(slot, VERSION, read(slot, VERSION) + 1);
+        }
+    }
+
+    private synchronized void markHoldsPlaced() {
+        header.putLong(HOLDS_PLACED_OFFSET, 1);
+        holdsPlaced = true;
+    }
+
+    //once per epoch, called under a record lock, so the monitor of the store which put takes first is not taken
+    private void persistEpoch(long epoch) {
+        synchronized (header) {
+            if (epoch > persistedEpoch) {
+                header.putLong(SNAPSHOT_EPOCH_OFFSET, epoch);
+                persistedEpoch = epoch;
+            }
+        }
+    }
+
+    private void releaseHolds() {
+        for (long slot = 0; slot < capacity; slot++) {
+            long held = read(slot, HELD);
+            if (read(slot, VERSION) != 0 && held != 0) {
+                write(slot, BALANCE, read(slot, BALANCE) + held);
+                write(slot, HELD, 0);
+                write(slot, VERSION, read(slot, VERSION) + 1);
+            }
+        }
+        header.putLong(HOLDS_PLACED_OFFSET, 0);
+    }
+
+    private void preserveBalance(long slot, long epoch) {
+        if (read(slot, PRESERVED_EPOCH) != epoch) {
+            if (epoch > persistedEpoch) {
+                persistEpoch(epoch);
+            }
+            write(slot, PRESERVED_BALANCE, read(slot, BALANCE) + read(slot, HELD));
+            write(slot, PRESERVED_EPOCH, epoch);
+        }
+    }
+
+    private long find(long accountId) {
+        if (published == 0) {
+            return -1;
+        }
+        for (long slot = index(accountId); ; slot = (slot + 1) & mask) {
+            if (read(slot, VERSION) == 0) {
+                return -1;
+            }
+            if (read(slot, ACCOUNT_ID) == accountId) {
+                return slot;
+            }
+        }
+    }
+
+    private long read(long slot, int field) {
+        return segments[(int) (slot >>> segmentShift)].getLong((int) ((slot & segmentMask) * RECORD_SIZE) + field);
+    }
+
+    private void write(long slot, int field, long value) {
+        segments[(int) (slot >>> segmentShift)].putLong((int) ((slot & segmentMask) * RECORD_SIZE) + field, value);
+    }
+
+    private Object lock(long slot) {
+        return locks[(int) (slot & (LOCK_STRIPES - 1))];
+    }
+
+    private static int changesIndex(long slot) {
+        return (int) (slot & (LOCK_STRIPES - 1)) * CHANGES_PADDING;
+    }
+
+    private long index(long accountId) {
+        long hash = accountId * 0x9E3779B97F4A7C15L;
+        return (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private long segmentRecords(int segment) {
+        return Math.min(capacity - ((long) segment << segmentShift), 1L << segmentShift);
+    }
+
+    private void writeHeader() {
+        header.putLong(MAGIC_OFFSET, MAGIC);
+        header.putInt(FORMAT_VERSION_OFFSET, FORMAT_VERSION);
+        header.putInt(RECORD_SIZE_OFFSET, RECORD_SIZE);
+        header.putLong(CAPACITY_OFFSET, capacity);
+        header.putLong(SIZE_OFFSET, size);
+        header.putInt(SEGMENT_SHIFT_OFFSET, segmentShift);
+        header.putLong(JOURNAL_SEQUENCE_OFFSET, UNKNOWN_JOURNAL_SEQUENCE);
+        header.putLong(MONEY_SUPPLY_OFFSET, UNKNOWN_MONEY_SUPPLY);
+    }
+
+    private static int checkHeader(Path file, ByteBuffer header) {
+        if (header.getLong(MAGIC_OFFSET) != MAGIC
+                || header.getInt(FORMAT_VERSION_OFFSET) != FORMAT_VERSION
+                || header.getInt(RECORD_SIZE_OFFSET) != RECORD_SIZE) {
+            throw new IllegalStateException(format("%s is not an account store", file));
+        }
+        return header.getInt(SEGMENT_SHIFT_OFFSET);
+    }
+
+    private static long capacityFor(long expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException(
+                    format("Expected size should not be negative, actual was %s", expectedSize));
+        }
+        return Long.highestOneBit(Math.max(2L, expectedSize * 4 / 3 + 1) - 1) << 1;
+    }
+}
@@ -0,0 +1,67 @@
+package repository;
+
+import model.Account;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * Walks a range of slots of a table, splits in halves of the range, so parts of a table can be walked in parallel.
+ */
+final class SlotSpliterator implements Spliterator<Account> {
+    private static final long MIN_SLOTS_TO_SPLIT = 1024;
+    //account in the slot or null if the slot is empty
+    private final LongFunction<Account> accountInSlot;
+    private final long end;
+    private long slot;
+
+    SlotSpliterator(LongFunction<Account> accountInSlot, long slot, long end) {
+        this.accountInSlot = accountInSlot;
+        this.slot = slot;
+        this.end = end;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Account> action) {
+        while (slot < end) {
+            Account account = accountInSlot.apply(slot++);
+            if (account != null) {
+                action.accept(account);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super Account> action) {
+        for (; slot < end; slot++) {
+            Account account = accountInSlot.apply(slot);
+            if (account != null) {
+                action.accept(account);
+            }
+        }
+    }
+
+    @Override
+    public Spliterator<Account> trySplit() {
+        if (end - slot < MIN_SLOTS_TO_SPLIT) {
+            return null;
+        }
+        long middle = (slot + end) >>> 1;
+        SlotSpliterator prefix = new SlotSpliterator(accountInSlot, slot, middle);
+        slot = middle;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return end - slot;
+    }
+
+    @Override
+    public int characteristics() {
+        return NONNULL | DISTINCT | CONCURRENT;
+    }
+}
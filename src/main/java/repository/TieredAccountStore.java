@@ -0,0 +1,478 @@
+package repository;
+
+import metrics.TransferMetrics;
+import model.Account;
+import org.assertj.core.util.VisibleForTesting;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+import static java.lang.String.format;
+
+/**
+ * Keeps accounts in use on the heap and all the others only in a {@link MappedAccountStore} file, for many
+ * accounts most of which are dormant. An account which is not cached is faulted in from the file on lookup and
+ * written back when it's evicted or the store is closed, until then the record in the file is stale.
+ *
+ * <p>The cache is split in segments by account id, each under its own lock with a W-TinyLFU policy: a new account
+ * enters a small LRU window, and when it leaves the window it's admitted to the main segmented LRU only if it was
+ * looked up more often recently than the account it would evict, see {@link FrequencySketch}. So a scan over
+ * dormant accounts doesn't flush the accounts which are busy all the time. Entries are kept in primitive arrays
+ * linked by index, a lookup allocates nothing unless it faults an account in.
+ *
+ * <p>A change in flight pins its account, see {@link CachedAccount}, and may need the lock of a segment to look
+ * another account up. So nothing waits for a pinned account under the lock of a segment: another account is evicted
+ * instead, or the lock is released and the lookup is retried.
+ */
+public class TieredAccountStore implements AccountStore, Closeable {
+    public static final String CACHE_CAPACITY_SYSTEM_PROPERTY = "moneyTransfer.accountStore.cacheCapacity";
+    public static final int DEFAULT_CACHE_CAPACITY = 1 << 20;
+    static final int DEFAULT_SEGMENTS = 64;
+    //returned by a segment which can't fault an account in before a change in flight ends
+    private static final Account RETRY = new Account(Long.MIN_VALUE);
+
+    private final TransferMetrics metrics = TransferMetrics.getInstance();
+    private final MappedAccountStore disk;
+    private final Segment[] segments;
+
+    public TieredAccountStore(MappedAccountStore disk, int cacheCapacity) {
+        this(disk, cacheCapacity, DEFAULT_SEGMENTS);
+    }
+
+    @VisibleForTesting
+    TieredAccountStore(MappedAccountStore disk, int cacheCapacity, int segments) {
+        if (segments <= 0 || Integer.bitCount(segments) != 1) {
+            throw new IllegalArgumentException(format("Segments should be a power of two, actual was %s", segments));
+        }
+        if (cacheCapacity < 2 * segments) {
+            throw new IllegalArgumentException(
+                    format("Cache capacity should be at least %s, actual was %s", 2 * segments, cacheCapacity));
+        }
+        this.disk = disk;
+        this.segments = new Segment[segments];
+        for (int i = 0; i < segments; i++) {
+            this.segments[i] = new Segment(cacheCapacity / segments);
+        }
+    }
+
+    /**
+     * Writes the account to the file, a cached copy is dropped first.
+     */
+    @Override
+    public void put(Account account) {
+        Segment segment = segmentOf(account.getAccountId());
+        while (true) {
+            synchronized (segment) {
+                if (segment.remove(account.getAccountId())) {
+                    disk.put(account);
+                    return;
+                }
+            }
+            Thread.yield();
+        }
+    }
+
+    @Override
+    public void ensureCapacity(long expectedSize) {
+        disk.ensureCapacity(expectedSize);
+    }
+
+    /**
+     * Faults the account in if it's not cached, the lookup is counted in the metrics as a hit or a miss.
+     */
+    @Override
+    public Account get(long accountId) {
+        Segment segment = segmentOf(accountId);
+        while (true) {
+            synchronized (segment) {
+                Account account = segment.get(accountId);
+                if (account != RETRY) {
+                    return account;
+                }
+            }
+            Thread.yield();
+        }
+    }
+
+    @Override
+    public void forEach(Consumer<Account> action) {
+        disk.forEach(account -> action.accept(cachedOr(account)));
+    }
+
+    @Override
+    public Spliterator<Account> spliterator() {
+        if (disk.size() == 0) {
+            return Spliterators.emptySpliterator();
+        }
+        return new SlotSpliterator(slot -> {
+            Account account = disk.accountInSlot(slot);
+            return account == null ? null : cachedOr(account);
+        }, 0, disk.capacity());
+    }
+
+    @Override
+    public int size() {
+        return disk.size();
+    }
+
+    @Override
+    public long getJournalSequence() {
+        return disk.getJournalSequence();
+    }
+
+    @Override
+    public void setJournalSequence(long sequence) {
+        disk.setJournalSequence(sequence);
+    }
+
+    @Override
+    public long getMoneySupply() {
+        return disk.getMoneySupply();
+    }
+
+    @Override
+    public void setMoneySupply(long moneySupply) {
+        disk.setMoneySupply(moneySupply);
+    }
+
+    /**
+     * Drops cached accounts without writing them back.
+     */
+    @Override
+    public void clear() {
+        for (Segment segment : segments) {
+            while (!drop(segment, false)) {
+                Thread.yield();
+            }
+        }
+        disk.clear();
+    }
+
+    public int getCachedCount() {
+        int cached = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                cached += segment.size;
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * Writes every cached account back and closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        for (Segment segment : segments) {
+            while (!drop(segment, true)) {
+                Thread.yield();
+            }
+        }
+        disk.close();
+    }
+
+    /**
+     * @return cached account or the record in the file, without faulting the account in
+     */
+    Account current(long accountId) {
+        Segment segment = segmentOf(accountId);
+        synchronized (segment) {
+            int entry = segment.find(accountId);
+            if (entry != Segment.NONE) {
+                return segment.accounts[entry];
+            }
+        }
+        long slot = disk.slotOf(accountId);
+        return slot < 0 ? null : disk.accountInSlot(slot);
+    }
+
+    //false if a change is in flight on an account of the segment, the lock is released for it to end
+    private static boolean drop(Segment segment, boolean writeBack) {
+        synchronized (segment) {
+            return segment.drop(writeBack);
+        }
+    }
+
+    private Account cachedOr(Account onDisk) {
+        Segment segment = segmentOf(onDisk.getAccountId());
+        synchronized (segment) {
+            int entry = segment.find(onDisk.getAccountId());
+            return entry == Segment.NONE ? onDisk : segment.accounts[entry];
+        }
+    }
+
+    private Segment segmentOf(long accountId) {
+        long hash = accountId * 0x9E3779B97F4A7C15L;
+        return segments[(int) (hash >>> 40) & (segments.length - 1)];
+    }
+
+    private final class Segment {
+        static final int NONE = -1;
+        private static final byte WINDOW = 0;
+        private static final byte PROBATION = 1;
+        private static final byte PROTECTED = 2;
+
+        private final long[] accountIds;
+        private final CachedAccount[] accounts;
+        private final int[] prev;
+        private final int[] next;
+        private final byte[] queues;
+        //head is the most recently used entry of a queue, tail the least recently used
+        private final int[] heads = {NONE, NONE, NONE};
+        private final int[] tails = {NONE, NONE, NONE};
+        private final int[] sizes = new int[3];
+        private final int[] maxSizes = new int[3];
+        //entry + 1 by account id, 0 is an empty slot
+        private final int[] index;
+        private final FrequencySketch sketch;
+        private int freeHead = NONE;
+        private int highWater;
+        private int size;
+
+        //one entry more than the capacity, a new account is linked in before another one is evicted
+        private Segment(int capacity) {
+            this.accountIds = new long[capacity + 1];
+            this.accounts = new CachedAccount[capacity + 1];
+            this.prev = new int[capacity + 1];
+            this.next = new int[capacity + 1];
+            this.queues = new byte[capacity + 1];
+            this.index = new int[Integer.highestOneBit(capacity) << 2];
+            this.sketch = new FrequencySketch(capacity);
+            maxSizes[WINDOW] = Math.max(1, capacity / 100);
+            maxSizes[PROTECTED] = (capacity - maxSizes[WINDOW]) * 4 / 5;
+            maxSizes[PROBATION] = capacity - maxSizes[WINDOW] - maxSizes[PROTECTED];
+        }
+
+        private Account get(long accountId) {
+            sketch.increment(accountId);
+            int entry = find(accountId);
+            if (entry != NONE) {
+                metrics.recordAccountCacheLookup(true);
+                onHit(entry);
+                return accounts[entry];
+            }
+            long start = System.nanoTime();
+            long slot = disk.slotOf(accountId);
+            if (slot < 0) {
+                return null;
+            }
+            //every entry is taken only if an earlier eviction was skipped
+            if (size == accounts.length && !evictAny()) {
+                return RETRY;
+            }
+            metrics.recordAccountCacheLookup(false);
+            long epoch = Account.getSnapshotEpoch();
+            long balanceAtEpoch = disk.balanceAt(slot, epoch);
+            long held = disk.held(slot);
+            CachedAccount account = new CachedAccount(TieredAccountStore.this, slot, accountId,
+                    disk.balance(slot) - held, held, epoch, balanceAtEpoch);
+            entry = allocate();
+            accountIds[entry] = accountId;
+            accounts[entry] = account;
+            indexPut(accountId, entry);
+            link(entry, WINDOW);
+            size++;
+            if (sizes[WINDOW] > maxSizes[WINDOW]) {
+                admit(tails[WINDOW]);
+            }
+            metrics.record(TransferMetrics.Stage.FAULT, System.nanoTime() - start);
+            return account;
+        }
+
+        private void onHit(int entry) {
+            byte queue = queues[entry];
+            unlink(entry);
+            if (queue == PROBATION) {
+                link(entry, PROTECTED);
+                if (sizes[PROTECTED] > maxSizes[PROTECTED]) {
+                    int demoted = tails[PROTECTED];
+                    unlink(demoted);
+                    link(demoted, PROBATION);
+                }
+            } else {
+                link(entry, queue);
+            }
+        }
+
+        //the candidate leaves the window for the probation queue, if the main queues are full either the candidate
+        //or the least recently used account of probation is evicted, whichever was looked up less often
+        private void admit(int candidate) {
+            unlink(candidate);
+            link(candidate, PROBATION);
+            if (sizes[PROBATION] + sizes[PROTECTED] <= maxSizes[PROBATION] + maxSizes[PROTECTED]) {
+                return;
+            }
+            int victim = tails[PROBATION];
+            if (victim == candidate) {
+                victim = tails[PROTECTED];
+            }
+            boolean candidateIsEvicted =
+                    sketch.frequency(accountIds[candidate]) <= sketch.frequency(accountIds[victim]);
+            //an account with a change in flight can't be evicted, then the other one is, and if neither can be
+            //the segment stays over its capacity until a later eviction
+            if (!tryEvict(candidateIsEvicted ? candidate : victim)) {
+                tryEvict(candidateIsEvicted ? victim : candidate);
+            }
+        }
+
+        //least recently used accounts first
+        private boolean evictAny() {
+            for (byte queue : new byte[] {PROBATION, PROTECTED, WINDOW}) {
+                for (int entry = tails[queue]; entry != NONE; entry = prev[entry]) {
+                    if (tryEvict(entry)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private boolean tryEvict(int entry) {
+            if (!accounts[entry].seal()) {
+                return false;
+            }
+            writeBack(entry);
+            free(entry);
+            return true;
+        }
+
+        //the epoch is read only once the account is sealed: an epoch started after the seal has no change of it
+        private void writeBack(int entry) {
+            CachedAccount account = accounts[entry];
+            long epoch = Account.getSnapshotEpoch();
+            disk.writeBack(account.getSlot(), account.sealedAvailableBalance(), account.sealedHeld(),
+                    epoch, account.sealedBalanceAt(epoch));
+        }
+
+        /**
+         * The account is overwritten in the file right after, the cached copy is not written back.
+         *
+         * @return false if a change is in flight on the account, it's not removed then
+         */
+        private boolean remove(long accountId) {
+            int entry = find(accountId);
+            if (entry == NONE) {
+                return true;
+            }
+            if (!accounts[entry].seal()) {
+                return false;
+            }
+            free(entry);
+            return true;
+        }
+
+        private void free(int entry) {
+            unlink(entry);
+            indexRemove(accountIds[entry]);
+            accounts[entry] = null;
+            next[entry] = freeHead;
+            freeHead = entry;
+            size--;
+        }
+
+        /**
+         * Drops every account which has no change in flight, written back or not.
+         *
+         * @return true if the segment is empty then
+         */
+        private boolean drop(boolean writeBack) {
+            for (int queue = WINDOW; queue <= PROTECTED; queue++) {
+                for (int entry = heads[queue]; entry != NONE; ) {
+                    int nextEntry = next[entry];
+                    if (accounts[entry].seal()) {
+                        if (writeBack) {
+                            writeBack(entry);
+                        }
+                        free(entry);
+                    }
+                    entry = nextEntry;
+                }
+            }
+            if (size > 0) {
+                return false;
+            }
+            freeHead = NONE;
+            highWater = 0;
+            return true;
+        }
+
+        private int allocate() {
+            if (freeHead != NONE) {
+                int entry = freeHead;
+                freeHead = next[entry];
+                return entry;
+            }
+            return highWater++;
+        }
+
+        private void link(int entry, byte queue) {
+            queues[entry] = queue;
+            prev[entry] = NONE;
+            next[entry] = heads[queue];
+            if (heads[queue] != NONE) {
+                prev[heads[queue]] = entry;
+            } else {
+                tails[queue] = entry;
+            }
+            heads[queue] = entry;
+            sizes[queue]++;
+        }
+
+        private void unlink(int entry) {
+            byte queue = queues[entry];
+            if (prev[entry] != NONE) {
+                next[prev[entry]] = next[entry];
+            } else {
+                heads[queue] = next[entry];
+            }
+            if (next[entry] != NONE) {
+                prev[next[entry]] = prev[entry];
+            } else {
+                tails[queue] = prev[entry];
+            }
+            sizes[queue]--;
+        }
+
+        private int find(long accountId) {
+            for (int i = indexOf(accountId); index[i] != 0; i = (i + 1) & (index.length - 1)) {
+                if (accountIds[index[i] - 1] == accountId) {
+                    return index[i] - 1;
+                }
+            }
+            return NONE;
+        }
+
+        private void indexPut(long accountId, int entry) {
+            int i = indexOf(accountId);
+            while (index[i] != 0) {
+                i = (i + 1) & (index.length - 1);
+            }
+            index[i] = entry + 1;
+        }
+
+        //backward shift deletion keeps every id reachable from its home slot without tombstones
+        private void indexRemove(long accountId) {
+            int mask = index.length - 1;
+            int i = indexOf(accountId);
+            while (accountIds[index[i] - 1] != accountId) {
+                i = (i + 1) & mask;
+            }
+            for (int j = (i + 1) & mask; index[j] != 0; j = (j + 1) & mask) {
+                int home = indexOf(accountIds[index[j] - 1]);
+                if (((j - home) & mask) >= ((j - i) & mask)) {
+                    index[i] = index[j];
+                    i = j;
+                }
+            }
+            index[i] = 0;
+        }
+
+        private int indexOf(long accountId) {
+            long hash = accountId * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & (index.length - 1);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package scheduling;
+
+import model.TransferResult;
+
+import static java.lang.String.format;
+
+/**
+ * Results of the most recently executed scheduled transfers, kept in a ring of primitive arrays: the id of
+ * a transfer and the ordinal of its {@link TransferResult}. A transfer is added when it's taken for execution
+ * and gets its result once its batch is run, or is marked failed if the batch failed. A result is found by scanning
+ * the ring from the newest entry, it's meant for an occasional lookup of a client, not for the transfer path.
+ * Not thread-safe.
+ */
+class ExecutedTransfers {
+    private static final TransferResult[] RESULTS = TransferResult.values();
+    private static final byte EXECUTING = -1;
+    private static final byte FAILED = -2;
+
+    private final long[] ids;
+    private final byte[] results;
+    private long added;
+
+    ExecutedTransfers(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException(format("Capacity should be above zero, actual was %s", capacity));
+        }
+        this.ids = new long[capacity];
+        this.results = new byte[capacity];
+    }
+
+    /**
+     * @return position of the transfer, to pass to {@link #setResult(long, TransferResult)}
+     */
+    long add(long id) {
+        int slot = (int) (added % ids.length);
+        ids[slot] = id;
+        results[slot] = EXECUTING;
+        return added++;
+    }
+
+    /**
+     * Does nothing if the transfer at the position was already pushed out of the ring.
+     */
+    void setResult(long position, TransferResult result) {
+        set(position, (byte) result.ordinal());
+    }
+
+    void setFailed(long position) {
+        set(position, FAILED);
+    }
+
+    /**
+     * @return {@link TransferScheduler#EXECUTING}, {@link TransferScheduler#FAILED}, name of the result,
+     * or null if the transfer is not in the ring
+     */
+    String getStatus(long id) {
+        int slot = slotOf(id);
+        if (slot < 0) {
+            return null;
+        }
+        if (results[slot] == EXECUTING) {
+            return TransferScheduler.EXECUTING;
+        }
+        return results[slot] == FAILED ? TransferScheduler.FAILED : RESULTS[results[slot]].name();
+    }
+
+    private void set(long position, byte result) {
+        if (added - position <= ids.length) {
+            results[(int) (position % ids.length)] = result;
+        }
+    }
+
+    private int slotOf(long id) {
+        long oldest = Math.max(0, added - ids.length);
+        for (long position = added - 1; position >= oldest; position--) {
+            int slot = (int) (position % ids.length);
+            if (ids[slot] == id) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,169 @@
+package scheduling;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.lang.String.format;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only file of fixed size records: type, id, execution time, account from, account to and amount.
+ * A scheduled transfer is written in full, a cancelled one and one taken for execution only with its id.
+ * When the log is opened it's replayed and written anew with pending transfers only.
+ *
+ * <p>Records are staged in memory, a thread which needs its records durable writes and fsyncs everything staged
+ * so far, so threads scheduling at the same time share one fsync.
+ */
+class ScheduleLog implements Closeable {
+    static final int RECORD_SIZE = 48;
+    static final long SCHEDULED = 1;
+    static final long CANCELLED = 2;
+    //forced before the transfer is executed, so a transfer is executed at most once
+    static final long EXECUTED = 3;
+    private static final int MAX_STAGED_RECORDS = 4096;
+
+    private final FileChannel channel;
+    private final ByteBuffer staged = ByteBuffer.allocateDirect(MAX_STAGED_RECORDS * RECORD_SIZE);
+    private final Object forceLock = new Object();
+    private long appended;
+    private long written;
+    private long durable;
+
+    private ScheduleLog(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.appended = channel.size();
+        this.written = appended;
+        this.durable = appended;
+        channel.position(appended);
+    }
+
+    /**
+     * Restores pending transfers of the log, a torn record at the end is cut off, then compacts the log.
+     */
+    static ScheduleLog open(Path file, ScheduledTransfers transfers) {
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            if (Files.exists(file)) {
+                try (FileChannel channel = FileChannel.open(file, READ)) {
+                    replay(channel, transfers);
+                }
+            }
+            transfers.restored();
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            try (FileChannel channel = FileChannel.open(temporaryFile, CREATE, WRITE, TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_STAGED_RECORDS * RECORD_SIZE);
+                transfers.forEach((id, executeAtMillis, accountFromId, accountToId, amount) -> {
+                    if (!buffer.hasRemaining()) {
+                        writeFully(channel, buffer);
+                    }
+                    buffer.putLong(SCHEDULED).putLong(id).putLong(executeAtMillis)
+                            .putLong(accountFromId).putLong(accountToId).putLong(amount);
+                });
+                writeFully(channel, buffer);
+                channel.force(true);
+            }
+            Files.move(temporaryFile, file, ATOMIC_MOVE, REPLACE_EXISTING);
+            return new ScheduleLog(FileChannel.open(file, WRITE));
+        } catch (IOException e) {
+            throw new UncheckedIOException(format("Can't open schedule log %s", file), e);
+        }
+    }
+
+    /**
+     * @return position right after the record, to pass to {@link #force(long)}
+     */
+    synchronized long append(long type, long id, long executeAtMillis, long accountFromId, long accountToId,
+                             long amount) {
+        if (!staged.hasRemaining()) {
+            writeStaged();
+        }
+        staged.putLong(type).putLong(id).putLong(executeAtMillis)
+                .putLong(accountFromId).putLong(accountToId).putLong(amount);
+        appended += RECORD_SIZE;
+        return appended;
+    }
+
+    /**
+     * Returns once records up to the position are on disk.
+     */
+    void force(long position) {
+        synchronized (forceLock) {
+            if (durable >= position) {
+                return;
+            }
+            long end;
+            synchronized (this) {
+                writeStaged();
+                end = written;
+            }
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Schedule log can't be written", e);
+            }
+            durable = end;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            writeStaged();
+        }
+        channel.force(false);
+        channel.close();
+    }
+
+    private void writeStaged() {
+        writeFully(channel, staged);
+        written = appended;
+    }
+
+    private static void replay(FileChannel channel, ScheduledTransfers transfers) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_STAGED_RECORDS * RECORD_SIZE);
+        while (channel.read(buffer) > 0 || buffer.position() >= RECORD_SIZE) {
+            buffer.flip();
+            while (buffer.remaining() >= RECORD_SIZE) {
+                long type = buffer.getLong();
+                long id = buffer.getLong();
+                long executeAtMillis = buffer.getLong();
+                long accountFromId = buffer.getLong();
+                long accountToId = buffer.getLong();
+                long amount = buffer.getLong();
+                if (type == SCHEDULED) {
+                    transfers.restore(id, executeAtMillis, accountFromId, accountToId, amount);
+                } else if (type == CANCELLED || type == EXECUTED) {
+                    transfers.cancel(id);
+                } else {
+                    //a torn record at the end, the rest of the log is not rewritten
+                    return;
+                }
+            }
+            buffer.compact();
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) {
+        try {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Schedule log can't be written", e);
+        }
+    }
+}
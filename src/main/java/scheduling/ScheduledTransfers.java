@@ -0,0 +1,312 @@
+package scheduling;
+
+import java.util.Arrays;
+
+import static java.lang.String.format;
+
+/**
+ * Pending transfers in a hierarchical timing wheel. Time goes in ticks of {@code tickMillis}, every level of
+ * the wheel has 64 slots and a slot of a level spans all 64 slots of the level below, so six levels cover 2^36
+ * ticks. A transfer waits in the slot of the highest level its due tick is away from, and when the wheel reaches
+ * that slot the transfers are moved down a level, until they get to the lowest level and are due.
+ *
+ * <p>Transfers are kept in chunks of primitive arrays, 44 bytes each, and linked into the lists of their slots
+ * by index, so adding, cancelling and moving a transfer takes constant time and no allocation. The id of
+ * a transfer is its index with a 24-bit generation which changes when the index is reused, a stale id is not
+ * cancelled. Ids take at most 56 bits.
+ * Not thread-safe.
+ */
+public class ScheduledTransfers {
+    static final int SLOT_BITS = 6;
+    static final int LEVELS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final long MAX_TICKS_AHEAD = 1L << (SLOT_BITS * LEVELS);
+    private static final int CHUNK_BITS = 12;
+    private static final int GENERATION_MASK = (1 << 24) - 1;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int END = -1;
+    //prev of a free transfer, the first transfer of a slot has -1 - slot as prev
+    private static final int FREE = Integer.MIN_VALUE;
+
+    private final long tickMillis;
+    private final int[] heads = new int[LEVELS * SLOTS];
+    private Chunk[] chunks = new Chunk[0];
+    private int highWater;
+    private int freeHead = END;
+    private int size;
+    private long currentTick;
+
+    public ScheduledTransfers(long tickMillis, long nowMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException(format("Tick should be above zero, actual was %s", tickMillis));
+        }
+        this.tickMillis = tickMillis;
+        this.currentTick = nowMillis / tickMillis;
+        Arrays.fill(heads, END);
+    }
+
+    /**
+     * Schedules the transfer at the first tick not before {@code executeAtMillis}, a transfer in the past is due
+     * right away.
+     *
+     * @return id of the scheduled transfer
+     */
+    public long add(long executeAtMillis, long accountFromId, long accountToId, long amount) {
+        checkExecuteAt(executeAtMillis);
+        int index;
+        if (freeHead != END) {
+            index = freeHead;
+            freeHead = chunkOf(index).next[offsetOf(index)];
+        } else {
+            index = highWater;
+            ensureCapacity(index);
+            highWater++;
+        }
+        return put(index, executeAtMillis, accountFromId, accountToId, amount);
+    }
+
+    /**
+     * Puts the transfer back under the id it was scheduled with. Transfers are restored, and cancelled or polled
+     * while the log is replayed, before any transfer is added, then {@link #restored()} is called.
+     */
+    public void restore(long id, long executeAtMillis, long accountFromId, long accountToId, long amount) {
+        int index = (int) id;
+        if (index < 0) {
+            throw new IllegalArgumentException(format("Id %s is not valid", id));
+        }
+        checkExecuteAt(executeAtMillis);
+        ensureCapacity(index);
+        highWater = Math.max(highWater, index + 1);
+        Chunk chunk = chunkOf(index);
+        if (chunk.prev[offsetOf(index)] != FREE) {
+            throw new IllegalStateException(format("Transfer %s is restored twice", id));
+        }
+        chunk.generations[offsetOf(index)] = (int) (id >>> 32) & GENERATION_MASK;
+        put(index, executeAtMillis, accountFromId, accountToId, amount);
+    }
+
+    /**
+     * Frees indexes which no restored transfer took, so they are reused by {@link #add}.
+     */
+    public void restored() {
+        freeHead = END;
+        for (int index = highWater - 1; index >= 0; index--) {
+            Chunk chunk = chunkOf(index);
+            if (chunk.prev[offsetOf(index)] == FREE) {
+                chunk.next[offsetOf(index)] = freeHead;
+                freeHead = index;
+            }
+        }
+    }
+
+    /**
+     * @return false if there is no such pending transfer, it's already due or cancelled
+     */
+    public boolean cancel(long id) {
+        if (!isPending(id)) {
+            return false;
+        }
+        unlink((int) id);
+        free((int) id);
+        return true;
+    }
+
+    /**
+     * @return amount of the pending transfer, -1 if there is no such pending transfer
+     */
+    public long getAmount(long id) {
+        return isPending(id) ? chunkOf((int) id).amounts[offsetOf((int) id)] : -1;
+    }
+
+    /**
+     * @return account the pending transfer takes money from, undefined if there is no such pending transfer
+     */
+    public long getAccountFromId(long id) {
+        return isPending(id) ? chunkOf((int) id).accountFromIds[offsetOf((int) id)] : 0;
+    }
+
+    /**
+     * Moves the wheel up to the tick of {@code nowMillis} and passes transfers which are due to the visitor,
+     * at most {@code limit} of them. Transfers left in a due slot are passed by the next call.
+     *
+     * @return number of transfers passed to the visitor
+     */
+    public int pollDue(long nowMillis, int limit, DueTransferVisitor visitor) {
+        long targetTick = nowMillis / tickMillis;
+        int polled = 0;
+        while (true) {
+            int slot = (int) (currentTick & (SLOTS - 1));
+            while (heads[slot] != END && polled < limit) {
+                int index = heads[slot];
+                Chunk chunk = chunkOf(index);
+                int offset = offsetOf(index);
+                unlink(index);
+                visitor.visit(idOf(index), chunk.executeAt[offset],
+                        chunk.accountFromIds[offset], chunk.accountToIds[offset], chunk.amounts[offset]);
+                free(index);
+                polled++;
+            }
+            if (polled == limit || currentTick >= targetTick) {
+                return polled;
+            }
+            currentTick++;
+            cascade();
+        }
+    }
+
+    /**
+     * Passes every pending transfer to the visitor in no particular order.
+     */
+    public void forEach(DueTransferVisitor visitor) {
+        for (int index = 0; index < highWater; index++) {
+            Chunk chunk = chunkOf(index);
+            int offset = offsetOf(index);
+            if (chunk.prev[offset] != FREE) {
+                visitor.visit(idOf(index), chunk.executeAt[offset],
+                        chunk.accountFromIds[offset], chunk.accountToIds[offset], chunk.amounts[offset]);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return false if the transfer is already due, cancelled or the id is stale
+     */
+    public boolean isPending(long id) {
+        int index = (int) id;
+        if (id < 0 || index < 0 || index >= highWater) {
+            return false;
+        }
+        Chunk chunk = chunkOf(index);
+        int offset = offsetOf(index);
+        return chunk.prev[offset] != FREE && chunk.generations[offset] == (int) (id >>> 32);
+    }
+
+    private long put(int index, long executeAtMillis, long accountFromId, long accountToId, long amount) {
+        Chunk chunk = chunkOf(index);
+        int offset = offsetOf(index);
+        chunk.executeAt[offset] = executeAtMillis;
+        chunk.accountFromIds[offset] = accountFromId;
+        chunk.accountToIds[offset] = accountToId;
+        chunk.amounts[offset] = amount;
+        link(index);
+        size++;
+        return idOf(index);
+    }
+
+    //like the carry of a counter: once the slots of a level have wrapped around, the transfers of the slot
+    //reached on the level above are linked in again, a level or more lower
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+                return;
+            }
+            int slot = level * SLOTS + (int) ((currentTick >>> (SLOT_BITS * level)) & (SLOTS - 1));
+            int index = heads[slot];
+            heads[slot] = END;
+            while (index != END) {
+                int next = chunkOf(index).next[offsetOf(index)];
+                link(index);
+                index = next;
+            }
+        }
+    }
+
+    private void link(int index) {
+        Chunk chunk = chunkOf(index);
+        int offset = offsetOf(index);
+        long dueTick = Math.max(currentTick, ceilDiv(chunk.executeAt[offset], tickMillis));
+        long ticksAhead = dueTick - currentTick;
+        int level = 0;
+        while (ticksAhead >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        int slot = level * SLOTS + (int) ((dueTick >>> (SLOT_BITS * level)) & (SLOTS - 1));
+        int head = heads[slot];
+        chunk.next[offset] = head;
+        chunk.prev[offset] = -1 - slot;
+        if (head != END) {
+            chunkOf(head).prev[offsetOf(head)] = index;
+        }
+        heads[slot] = index;
+    }
+
+    private void unlink(int index) {
+        Chunk chunk = chunkOf(index);
+        int offset = offsetOf(index);
+        int prev = chunk.prev[offset];
+        int next = chunk.next[offset];
+        if (prev < 0) {
+            heads[-1 - prev] = next;
+        } else {
+            chunkOf(prev).next[offsetOf(prev)] = next;
+        }
+        if (next != END) {
+            chunkOf(next).prev[offsetOf(next)] = prev;
+        }
+    }
+
+    private void free(int index) {
+        Chunk chunk = chunkOf(index);
+        int offset = offsetOf(index);
+        chunk.prev[offset] = FREE;
+        chunk.generations[offset] = (chunk.generations[offset] + 1) & GENERATION_MASK;
+        chunk.next[offset] = freeHead;
+        freeHead = index;
+        size--;
+    }
+
+    private void checkExecuteAt(long executeAtMillis) {
+        if (executeAtMillis < 0 || executeAtMillis / tickMillis - currentTick >= MAX_TICKS_AHEAD) {
+            throw new IllegalArgumentException(format("Transfer can't be scheduled at %s", executeAtMillis));
+        }
+    }
+
+    private void ensureCapacity(int index) {
+        int chunkIndex = index >>> CHUNK_BITS;
+        if (chunkIndex >= chunks.length) {
+            chunks = Arrays.copyOf(chunks, Math.max(chunkIndex + 1, chunks.length * 2));
+        }
+        for (int i = chunkIndex; i >= 0 && chunks[i] == null; i--) {
+            chunks[i] = new Chunk();
+        }
+    }
+
+    private long idOf(int index) {
+        return (long) chunkOf(index).generations[offsetOf(index)] << 32 | index;
+    }
+
+    private Chunk chunkOf(int index) {
+        return chunks[index >>> CHUNK_BITS];
+    }
+
+    private static int offsetOf(int index) {
+        return index & (CHUNK_SIZE - 1);
+    }
+
+    private static long ceilDiv(long value, long divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+    @FunctionalInterface
+    public interface DueTransferVisitor {
+        void visit(long id, long executeAtMillis, long accountFromId, long accountToId, long amount);
+    }
+
+    private static final class Chunk {
+        private final long[] executeAt = new long[CHUNK_SIZE];
+        private final long[] accountFromIds = new long[CHUNK_SIZE];
+        private final long[] accountToIds = new long[CHUNK_SIZE];
+        private final long[] amounts = new long[CHUNK_SIZE];
+        private final int[] next = new int[CHUNK_SIZE];
+        private final int[] prev = new int[CHUNK_SIZE];
+        private final int[] generations = new int[CHUNK_SIZE];
+
+        private Chunk() {
+            Arrays.fill(prev, FREE);
+        }
+    }
+}
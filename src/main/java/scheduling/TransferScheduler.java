@@ -0,0 +1,234 @@
+package scheduling;
+
+import model.TransferResult;
+import org.assertj.core.util.VisibleForTesting;
+import service.MoneyTransferService;
+import service.TransferBatch;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+import static java.lang.String.format;
+
+/**
+ * Runs transfers at a future time. Pending transfers wait in {@link ScheduledTransfers} and are written to
+ * a {@link ScheduleLog}, so they survive a restart. A timer thread wakes up every tick and executes the transfers
+ * which came due as {@link TransferBatch}es of the service, a transfer due while the application was stopped is
+ * executed right after the start.
+ *
+ * <p>The results of the last {@link #KEPT_RESULTS} executed transfers are kept in memory, so a client can look up
+ * whether its transfer was applied or declined, they are not restored after a restart.
+ */
+public class TransferScheduler implements Closeable {
+    public static final String FILE_SYSTEM_PROPERTY = "moneyTransfer.scheduler.file";
+    public static final String TICK_SYSTEM_PROPERTY = "moneyTransfer.scheduler.tickMillis";
+    public static final String PENDING = "PENDING";
+    public static final String EXECUTING = "EXECUTING";
+    public static final String FAILED = "FAILED";
+    static final int KEPT_RESULTS = 1 << 20;
+    private static final long DEFAULT_TICK_MILLIS = 100;
+
+    private final MoneyTransferService moneyTransferService;
+    private final ScheduledTransfers transfers;
+    private final ScheduleLog log;
+    //guarded by the lock of transfers
+    private final ExecutedTransfers executedTransfers = new ExecutedTransfers(KEPT_RESULTS);
+    private final long tickMillis;
+    private final LongSupplier clock;
+    private final Thread timer;
+    private Consumer<Throwable> failureHandler;
+    private volatile boolean running = true;
+
+    public TransferScheduler(MoneyTransferService moneyTransferService, Path file, long tickMillis) {
+        this(moneyTransferService, file, tickMillis, System::currentTimeMillis);
+    }
+
+    @VisibleForTesting
+    TransferScheduler(MoneyTransferService moneyTransferService, Path file, long tickMillis, LongSupplier clock) {
+        this.moneyTransferService = moneyTransferService;
+        this.transfers = new ScheduledTransfers(tickMillis, clock.getAsLong());
+        this.log = ScheduleLog.open(file, transfers);
+        this.tickMillis = tickMillis;
+        this.clock = clock;
+        this.timer = new Thread(this::executeOnEveryTick, "transfer-scheduler");
+        timer.setDaemon(true);
+    }
+
+    /**
+     * Starts executing due transfers, failures of execution, errors included, are passed to the handler and
+     * the transfers which failed are not retried. The timer thread keeps running after a failure.
+     */
+    public void start(Consumer<Throwable> failureHandler) {
+        this.failureHandler = failureHandler;
+        timer.start();
+    }
+
+    /**
+     * Returns once the transfer is written to the log.
+     *
+     * @return id to cancel the transfer with
+     */
+    public long schedule(long executeAtMillis, long accountFromId, long accountToId, long amount) {
+        if (amount <= 0) {
+            throw new IllegalArgumentException(format("Amount should be above zero, actual was %s", amount));
+        }
+        if (accountFromId == accountToId) {
+            throw new IllegalArgumentException(format("Transfer from account %s to itself", accountFromId));
+        }
+        long id;
+        long position;
+        synchronized (transfers) {
+            id = transfers.add(executeAtMillis, accountFromId, accountToId, amount);
+            position = log.append(ScheduleLog.SCHEDULED, id, executeAtMillis, accountFromId, accountToId, amount);
+        }
+        log.force(position);
+        return id;
+    }
+
+    /**
+     * @return false if there is no such pending transfer, it's already executed or cancelled
+     */
+    public boolean cancel(long id) {
+        long position;
+        synchronized (transfers) {
+            if (!transfers.cancel(id)) {
+                return false;
+            }
+            position = log.append(ScheduleLog.CANCELLED, id, 0, 0, 0, 0);
+        }
+        log.force(position);
+        return true;
+    }
+
+    /**
+     * @return {@link #PENDING}, {@link #EXECUTING}, {@link #FAILED} if its batch threw, name of
+     * the {@link TransferResult} of an executed transfer, or null if the transfer is cancelled, unknown or executed
+     * too long ago
+     */
+    public String getStatus(long id) {
+        synchronized (transfers) {
+            return transfers.isPending(id) ? PENDING : executedTransfers.getStatus(id);
+        }
+    }
+
+    public int getPendingCount() {
+        synchronized (transfers) {
+            return transfers.size();
+        }
+    }
+
+    /**
+     * Executes every transfer due by now, in batches of at most {@link TransferBatch#MAX_SIZE} transfers.
+     * The transfers of a batch are marked executed in the log before the batch is run, the result of every
+     * transfer is kept for {@link #getStatus(long)}.
+     *
+     * @return number of applied transfers, declined ones are not counted
+     */
+    @VisibleForTesting
+    int executeDue() {
+        int executed = 0;
+        while (true) {
+            DueBatch dueBatch = new DueBatch();
+            int polled;
+            synchronized (transfers) {
+                polled = transfers.pollDue(clock.getAsLong(), TransferBatch.MAX_SIZE, dueBatch);
+            }
+            if (polled == 0) {
+                return executed;
+            }
+            TransferResult[] results;
+            try {
+                log.force(dueBatch.position);
+                results = moneyTransferService.transfer(dueBatch.batch);
+            } catch (Throwable e) {
+                synchronized (transfers) {
+                    for (int i = 0; i < polled; i++) {
+                        executedTransfers.setFailed(dueBatch.firstPosition + i);
+                    }
+                }
+                throw e;
+            }
+            synchronized (transfers) {
+                for (int i = 0; i < results.length; i++) {
+                    executedTransfers.setResult(dueBatch.firstPosition + i, results[i]);
+                    if (results[i] == TransferResult.OK) {
+                        executed++;
+                    }
+                }
+            }
+            if (polled < TransferBatch.MAX_SIZE) {
+                return executed;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(timer);
+        try {
+            if (timer.isAlive()) {
+                timer.join();
+            }
+            log.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void executeOnEveryTick() {
+        while (running) {
+            try {
+                executeDue();
+            } catch (Throwable e) {
+                failureHandler.accept(e);
+            }
+            long now = clock.getAsLong();
+            long nextTick = (now / tickMillis + 1) * tickMillis;
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(nextTick - now));
+        }
+    }
+
+    //called under the lock of the wheel, the log is appended in the order transfers are polled
+    private class DueBatch implements ScheduledTransfers.DueTransferVisitor {
+        private final TransferBatch batch = new TransferBatch();
+        private long position;
+        private long firstPosition = -1;
+
+        @Override
+        public void visit(long id, long executeAtMillis, long accountFromId, long accountToId, long amount) {
+            batch.add(accountFromId, accountToId, amount);
+            long executedPosition = executedTransfers.add(id);
+            if (firstPosition < 0) {
+                firstPosition = executedPosition;
+            }
+            position = log.append(ScheduleLog.EXECUTED, id, 0, 0, 0, 0);
+        }
+    }
+
+    public static TransferScheduler getInstance() {
+        return TransferSchedulerInstanceHolder.INSTANCE;
+    }
+
+    private static class TransferSchedulerInstanceHolder {
+        private static final TransferScheduler INSTANCE = create(System.getProperty(FILE_SYSTEM_PROPERTY));
+        private TransferSchedulerInstanceHolder() {}
+
+        private static TransferScheduler create(String file) {
+            if (file == null) {
+                return null;
+            }
+            return new TransferScheduler(MoneyTransferService.getInstance(), Paths.get(file),
+                    Long.getLong(TICK_SYSTEM_PROPERTY, DEFAULT_TICK_MILLIS));
+        }
+    }
+}
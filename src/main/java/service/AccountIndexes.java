@@ -0,0 +1,45 @@
+package service;
+
+import java.util.Arrays;
+
+/**
+ * Position of every account of a batch, open addressing with primitive keys to avoid boxing.
+ */
+class AccountIndexes {
+    private final long[] accountIds;
+    private final int[] indexes;
+    private final int mask;
+
+    AccountIndexes(long[] distinctAccountIds) {
+        int capacity = Integer.highestOneBit(Math.max(2, distinctAccountIds.length * 2 - 1)) << 1;
+        this.accountIds = new long[capacity];
+        this.indexes = new int[capacity];
+        this.mask = capacity - 1;
+        Arrays.fill(indexes, -1);
+        for (int i = 0; i < distinctAccountIds.length; i++) {
+            int slot = slot(distinctAccountIds[i]);
+            while (indexes[slot] >= 0) {
+                slot = (slot + 1) & mask;
+            }
+            accountIds[slot] = distinctAccountIds[i];
+            indexes[slot] = i;
+        }
+    }
+
+    /**
+     * @return position of the account or -1 if it's not known
+     */
+    int indexOf(long accountId) {
+        for (int slot = slot(accountId); indexes[slot] >= 0; slot = (slot + 1) & mask) {
+            if (accountIds[slot] == accountId) {
+                return indexes[slot];
+            }
+        }
+        return -1;
+    }
+
+    private int slot(long accountId) {
+        long hash = accountId * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
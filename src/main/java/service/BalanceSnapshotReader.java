@@ -0,0 +1,6 @@
+package service;
+
+@FunctionalInterface
+public interface BalanceSnapshotReader<T> {
+    T read(long epoch, long journalSequence);
+}
@@ -1,35 +1,745 @@
 package service;
 
+import cluster.ClusterTopology;
+import cluster.SettlementAccounts;
+import history.TransferHistory;
+import hold.Holds;
+import idempotency.IdempotencyCache;
+import journal.TransferJournal;
 import json.MoneyTransferRequest;
+import metrics.TransferMetrics;
+import metrics.TransferMetrics.Stage;
 import model.Account;
+import model.TransferLog;
+import model.TransferResult;
+import model.TransferStrategy;
 import org.assertj.core.util.VisibleForTesting;
+import reconciliation.Reconciliation;
+import reconciliation.ReconciliationReport;
+import repository.AccountStore;
 import repository.AccountsRepository;
+import snapshot.SnapshotDirectory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
 
 import static java.lang.String.format;
 
 public class MoneyTransferService {
+    private static final int MAX_BATCH_ATTEMPTS = 3;
+    private static final TransferResult[] TRANSFER_RESULTS = TransferResult.values();
     private final AccountsRepository accountsRepository;
+    private final TransferJournal journal;
+    private final TransferHistory history;
+    private final TransferGate gate = new TransferGate();
+    private final TransferMetrics metrics = TransferMetrics.getInstance();
+    private final IdempotencyCache idempotencyCache;
+    private final Holds holds = Holds.fromSystemProperties();
+    private final Object snapshotLock = new Object();
+    //transfers are appended while they are applied, see TransferLog
+    private final TransferLog transferLog = this::append;
 
     private MoneyTransferService() {
-        this(AccountsRepository.getInstance());
+        this(AccountsRepository.getInstance(), recover(AccountsRepository.getInstance()));
     }
 
     @VisibleForTesting
     MoneyTransferService(AccountsRepository accountsRepository) {
+        this(accountsRepository, TransferJournal.NONE);
+    }
+
+    @VisibleForTesting
+    MoneyTransferService(AccountsRepository accountsRepository, TransferJournal journal) {
+        this(accountsRepository, journal, TransferHistory.getInstance());
+    }
+
+    @VisibleForTesting
+    MoneyTransferService(AccountsRepository accountsRepository, TransferJournal journal, TransferHistory history) {
+        this(accountsRepository, journal, history, IdempotencyCache.getInstance());
+    }
+
+    @VisibleForTesting
+    MoneyTransferService(AccountsRepository accountsRepository, TransferJournal journal, TransferHistory history,
+                         IdempotencyCache idempotencyCache) {
         this.accountsRepository = accountsRepository;
+        this.journal = journal;
+        this.history = history;
+        this.idempotencyCache = idempotencyCache;
     }
 
+    /**
+     * Returns once the transfer is applied and written to the journal.
+     */
     public void transfer(MoneyTransferRequest request) {
+        journal.awaitDurable(apply(request));
+    }
+
+    /**
+     * Result code counterpart of {@link #transfer(MoneyTransferRequest)}, declined transfers are reported without
+     * exceptions and without allocation.
+     */
+    public TransferResult tryTransfer(long accountFromId, long accountToId, long amount) {
+        return awaitDurable(tryApply(accountFromId, accountToId, amount, false));
+    }
+
+    /**
+     * {@link #tryTransfer(long, long, long)} which runs a transfer with an idempotency key only once: a retry gets
+     * the result of the first attempt without taking account locks, or {@link TransferResult#IN_PROGRESS}
+     * while the first attempt is still running. An attempt which fails before balances change is forgotten,
+     * so a retry runs the transfer, one which fails later is remembered as {@link TransferResult#OUTCOME_UNKNOWN}.
+     */
+    public TransferResult tryTransfer(MoneyTransferRequest request) {
+        if (!request.hasIdempotencyKey()) {
+            return tryTransfer(request.getAccountFromId(), request.getAccountToId(), request.getAmount());
+        }
+        long keyHigh = request.idempotencyKeyHigh();
+        long keyLow = request.idempotencyKeyLow();
+        TransferResult stored = idempotencyCache.begin(keyHigh, keyLow, fingerprintOf(request));
+        if (stored != null) {
+            return stored;
+        }
+        long sequence;
+        try {
+            sequence = tryApply(request.getAccountFromId(), request.getAccountToId(), request.getAmount(), false);
+        } catch (RuntimeException e) {
+            idempotencyCache.abandon(keyHigh, keyLow);
+            throw e;
+        }
+        TransferResult result;
+        try {
+            result = awaitDurable(sequence);
+        } catch (RuntimeException e) {
+            idempotencyCache.complete(keyHigh, keyLow, TransferResult.OUTCOME_UNKNOWN);
+            throw e;
+        }
+        idempotencyCache.complete(keyHigh, keyLow, result);
+        return result;
+    }
+
+    /**
+     * Asynchronous counterpart of {@link #tryTransfer(MoneyTransferRequest)}, the request can be reused as soon
+     * as the method returns.
+     */
+    public CompletableFuture<TransferResult> tryTransferAsync(MoneyTransferRequest request) {
+        if (!request.hasIdempotencyKey()) {
+            return tryTransferAsync(request.getAccountFromId(), request.getAccountToId(), request.getAmount());
+        }
+        long keyHigh = request.idempotencyKeyHigh();
+        long keyLow = request.idempotencyKeyLow();
+        TransferResult stored = idempotencyCache.begin(keyHigh, keyLow, fingerprintOf(request));
+        if (stored != null) {
+            return CompletableFuture.completedFuture(stored);
+        }
+        long sequence;
+        try {
+            sequence = tryApply(request.getAccountFromId(), request.getAccountToId(), request.getAmount(), false);
+        } catch (RuntimeException e) {
+            idempotencyCache.abandon(keyHigh, keyLow);
+            throw e;
+        }
+        return whenDurable(sequence).whenComplete((result, e) ->
+                idempotencyCache.complete(keyHigh, keyLow, e != null ? TransferResult.OUTCOME_UNKNOWN : result));
+    }
+
+    /**
+     * Applies the transfer on the calling thread without waiting for the journal.
+     *
+     * @return future of the result, completed once an accepted transfer is written to the journal
+     */
+    public CompletableFuture<TransferResult> tryTransferAsync(long accountFromId, long accountToId, long amount) {
+        return whenDurable(tryApply(accountFromId, accountToId, amount, false));
+    }
+
+    /**
+     * {@link #tryTransferAsync(long, long, long)} for {@link cluster.ClusterNode} only, which moves money to and from
+     * settlement accounts of the cluster. Every other method declines them as unknown accounts, so clients can
+     * neither take money out of them nor see them.
+     */
+    public CompletableFuture<TransferResult> trySettleAsync(long accountFromId, long accountToId, long amount) {
+        if (!SettlementAccounts.isSettlementAccount(accountFromId)
+                && !SettlementAccounts.isSettlementAccount(accountToId)) {
+            throw new IllegalArgumentException(format("Neither %s nor %s is a settlement account",
+                    accountFromId, accountToId));
+        }
+        return whenDurable(tryApply(accountFromId, accountToId, amount, true));
+    }
+
+    private TransferResult awaitDurable(long sequence) {
+        if (sequence < 0) {
+            return declineOf(sequence);
+        }
+        long start = System.nanoTime();
+        journal.awaitDurable(sequence);
+        metrics.record(Stage.JOURNAL, System.nanoTime() - start);
+        return TransferResult.OK;
+    }
+
+    private CompletableFuture<TransferResult> whenDurable(long sequence) {
+        if (sequence < 0) {
+            return CompletableFuture.completedFuture(declineOf(sequence));
+        }
+        long start = System.nanoTime();
+        return journal.whenDurable(sequence).thenApply(ignored -> {
+            metrics.record(Stage.JOURNAL, System.nanoTime() - start);
+            return TransferResult.OK;
+        });
+    }
+
+    /**
+     * Applies all legs of the transfer or none of them. Accounts are looked up and ordered by id before any lock
+     * is taken, then their locks are taken in one ordered pass, so multi-leg transfers never deadlock with each
+     * other or with ordinary transfers, and are held only while debits are checked and amounts applied.
+     * The journal gets the transfer as at most {@code legs - 1} transfers from debited to credited accounts.
+     *
+     * @return {@link TransferResult#INVALID_AMOUNT} if there are less than two legs or their amounts don't add up
+     * to zero, {@link TransferResult#SAME_ACCOUNT} if an account has more than one leg
+     */
+    public TransferResult tryTransfer(MultiLegTransfer transfer) {
+        TransferResult result = tryApply(transfer);
+        metrics.recordResult(result);
+        return result;
+    }
+
+    private TransferResult tryApply(MultiLegTransfer transfer) {
+        int legs = transfer.size();
+        long[] accountIds = new long[legs];
+        long[] amounts = new long[legs];
+        long total = 0;
+        for (int i = 0; i < legs; i++) {
+            //insertion sort, there are only a few legs
+            long accountId = transfer.getAccountId(i);
+            long amount = transfer.getAmount(i);
+            int position = i;
+            for (; position > 0 && accountIds[position - 1] > accountId; position--) {
+                accountIds[position] = accountIds[position - 1];
+                amounts[position] = amounts[position - 1];
+            }
+            accountIds[position] = accountId;
+            amounts[position] = amount;
+            if (position > 0 && accountIds[position - 1] == accountId) {
+                return TransferResult.SAME_ACCOUNT;
+            }
+            //a debit of Long.MIN_VALUE can't be negated, a sum which overflows can't add up to zero
+            if (amount == Long.MIN_VALUE || (total ^ amount) >= 0 && ((total + amount) ^ total) < 0) {
+                return TransferResult.INVALID_AMOUNT;
+            }
+            total += amount;
+        }
+        if (legs < 2 || total != 0) {
+            return TransferResult.INVALID_AMOUNT;
+        }
+        Account[] accounts = new Account[legs];
+        for (int i = 0; i < legs; i++) {
+            accounts[i] = clientAccount(accountIds[i]);
+            if (accounts[i] == null) {
+                return TransferResult.UNKNOWN_ACCOUNT;
+            }
+        }
+        long lastSequence;
+        int stripe = gate.enter();
+        try {
+            lastSequence = Account.transfer(accounts, amounts, () -> journal(accountIds, amounts));
+            if (lastSequence == TransferStrategy.DECLINED) {
+                return TransferResult.NOT_ENOUGH_MONEY;
+            }
+        } finally {
+            gate.exit(stripe);
+        }
+        journal.awaitDurable(lastSequence);
+        return TransferResult.OK;
+    }
+
+    //matches debits with credits in id order, a replay never takes more from an account than its debit
+    private long journal(long[] accountIds, long[] amounts) {
+        long lastSequence = 0;
+        int debit = nextLeg(amounts, 0, -1);
+        int credit = nextLeg(amounts, 0, 1);
+        long debitLeft = debit < amounts.length ? -amounts[debit] : 0;
+        long creditLeft = credit < amounts.length ? amounts[credit] : 0;
+        while (debit < amounts.length && credit < amounts.length) {
+            long amount = Math.min(debitLeft, creditLeft);
+            lastSequence = append(accountIds[debit], accountIds[credit], amount);
+            debitLeft -= amount;
+            creditLeft -= amount;
+            if (debitLeft == 0) {
+                debit = nextLeg(amounts, debit + 1, -1);
+                debitLeft = debit < amounts.length ? -amounts[debit] : 0;
+            }
+            if (creditLeft == 0) {
+                credit = nextLeg(amounts, credit + 1, 1);
+                creditLeft = credit < amounts.length ? amounts[credit] : 0;
+            }
+        }
+        return lastSequence;
+    }
+
+    private static int nextLeg(long[] amounts, int from, int sign) {
+        int leg = from;
+        while (leg < amounts.length && Long.signum(amounts[leg]) != sign) {
+            leg++;
+        }
+        return leg;
+    }
+
+    /**
+     * Puts the amount on hold on the account until the hold is captured, released or expires. A hold takes no
+     * lock of the account, only the lock of the stripe of holds of the calling thread.
+     *
+     * @return id of the hold, or below zero if it's declined, see {@link #declineOf(long)}
+     */
+    public long tryHold(long accountId, long amount, long expiresAtMillis) {
+        if (amount <= 0) {
+            return -1 - TransferResult.INVALID_AMOUNT.ordinal();
+        }
+        Account account = clientAccount(accountId);
+        if (account == null) {
+            return -1 - TransferResult.UNKNOWN_ACCOUNT.ordinal();
+        }
+        int stripe = gate.enter();
+        try {
+            if (!account.tryHold(amount)) {
+                return -1 - TransferResult.NOT_ENOUGH_MONEY.ordinal();
+            }
+            try {
+                return holds.add(accountId, amount, expiresAtMillis);
+            } catch (IllegalArgumentException e) {
+                account.releaseHold(amount);
+                throw e;
+            }
+        } finally {
+            gate.exit(stripe);
+        }
+    }
+
+    /**
+     * Transfers the amount, at most the amount on hold, from the account of the hold to accountTo and releases
+     * the rest of the hold. Returns once the transfer is written to the journal, as any other transfer.
+     */
+    public TransferResult capture(long holdId, long accountToId, long amount) {
+        TransferResult result = tryCapture(holdId, accountToId, amount);
+        metrics.recordResult(result);
+        return result;
+    }
+
+    /**
+     * Makes the money on hold available again, nothing is journaled as the balance doesn't change.
+     */
+    public TransferResult release(long holdId) {
+        long amountHeld = holds.amountOf(holdId);
+        Account account = accountsRepository.get(holds.accountOf(holdId));
+        if (amountHeld == Holds.NO_HOLD || account == null || !holds.remove(holdId)) {
+            return TransferResult.UNKNOWN_HOLD;
+        }
+        int stripe = gate.enter();
+        try {
+            account.releaseHold(amountHeld);
+        } finally {
+            gate.exit(stripe);
+        }
+        return TransferResult.OK;
+    }
+
+    /**
+     * Releases holds which expired by the given time, only the slots of the timing wheels which came due since
+     * the previous call are looked at.
+     *
+     * @return number of released holds
+     */
+    public int releaseExpiredHolds(long nowMillis) {
+        return holds.removeExpired(nowMillis, (accountId, amount) -> {
+            Account account = accountsRepository.get(accountId);
+            if (account != null) {
+                int stripe = gate.enter();
+                try {
+                    account.releaseHold(amount);
+                } finally {
+                    gate.exit(stripe);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return declined outcome of a method which returns a journal sequence number or an id otherwise
+     */
+    public static TransferResult declineOf(long sequence) {
+        return TRANSFER_RESULTS[(int) (-1 - sequence)];
+    }
+
+    //lookups come first, the hold is removed only once the capture can't be declined anymore
+    private TransferResult tryCapture(long holdId, long accountToId, long amount) {
+        long amountHeld = holds.amountOf(holdId);
+        if (amountHeld == Holds.NO_HOLD) {
+            return TransferResult.UNKNOWN_HOLD;
+        }
+        if (amount <= 0 || amount > amountHeld) {
+            return TransferResult.INVALID_AMOUNT;
+        }
+        long accountFromId = holds.accountOf(holdId);
+        if (accountFromId == accountToId) {
+            return TransferResult.SAME_ACCOUNT;
+        }
+        Account accountFrom = clientAccount(accountFromId);
+        Account accountTo = clientAccount(accountToId);
+        if (accountFrom == null || accountTo == null) {
+            return TransferResult.UNKNOWN_ACCOUNT;
+        }
+        if (!holds.remove(holdId)) {
+            return TransferResult.UNKNOWN_HOLD;
+        }
+        long sequence;
+        int stripe = gate.enter();
+        try {
+            sequence = accountFrom.captureHold(amountHeld, accountTo, amount, transferLog);
+        } finally {
+            gate.exit(stripe);
+        }
+        journal.awaitDurable(sequence);
+        return TransferResult.OK;
+    }
+
+    /**
+     * Executes the batch as a unit: transfers are checked one after another in batch order, then the net
+     * amount of every account is applied at once, taking the locks of all accounts in one ordered pass.
+     * If balances change between the check and the locks {@value #MAX_BATCH_ATTEMPTS} times in a row, transfers
+     * are done one by one in batch order instead, each of them on its own, so the batch is no longer a unit:
+     * other transfers can come in between and a reader can see a part of the batch applied.
+     *
+     * @return result of every transfer in batch order
+     */
+    public TransferResult[] transfer(TransferBatch batch) {
+        TransferResult[] results = new TransferResult[batch.size()];
+        long[] accountIds = distinctAccountIds(batch);
+        Account[] accounts = new Account[accountIds.length];
+        int knownAccounts = 0;
+        for (long accountId : accountIds) {
+            Account account = clientAccount(accountId);
+            if (account != null) {
+                accountIds[knownAccounts] = accountId;
+                accounts[knownAccounts++] = account;
+            }
+        }
+        accounts = Arrays.copyOf(accounts, knownAccounts);
+        AccountIndexes accountIndexes = new AccountIndexes(Arrays.copyOf(accountIds, knownAccounts));
+        int[] accountFromIndexes = new int[batch.size()];
+        int[] accountToIndexes = new int[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            accountFromIndexes[i] = accountIndexes.indexOf(batch.getAccountFromId(i));
+            accountToIndexes[i] = accountIndexes.indexOf(batch.getAccountToId(i));
+            results[i] = validate(batch, i, accountFromIndexes[i], accountToIndexes[i]);
+        }
+        for (int attempt = 0; attempt < MAX_BATCH_ATTEMPTS; attempt++) {
+            long[] balances = new long[accounts.length];
+            for (int i = 0; i < accounts.length; i++) {
+                balances[i] = accounts[i].getAvailableBalance();
+            }
+            long[] amounts = new long[accounts.length];
+            TransferResult[] attemptResults = results.clone();
+            for (int i = 0; i < batch.size(); i++) {
+                if (attemptResults[i] == null) {
+                    int from = accountFromIndexes[i];
+                    long amount = batch.getAmount(i);
+                    if (balances[from] < amount) {
+                        attemptResults[i] = TransferResult.NOT_ENOUGH_MONEY;
+                    } else {
+                        int to = accountToIndexes[i];
+                        balances[from] -= amount;
+                        balances[to] += amount;
+                        amounts[from] -= amount;
+                        amounts[to] += amount;
+                        attemptResults[i] = TransferResult.OK;
+                    }
+                }
+            }
+            //balances could change between reading and locking, then the batch is checked once again
+            //and after the last attempt transfers are done one by one, see the javadoc
+            long lastSequence = -1;
+            int stripe = gate.enter();
+            try {
+                lastSequence = Account.transfer(accounts, amounts, () -> journal(batch, attemptResults));
+            } finally {
+                gate.exit(stripe);
+            }
+            if (lastSequence >= 0) {
+                journal.awaitDurable(lastSequence);
+                return recordResults(attemptResults);
+            }
+        }
+        long lastSequence = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            if (results[i] == null) {
+                int stripe = gate.enter();
+                try {
+                    long sequence = accounts[accountFromIndexes[i]]
+                            .tryTransfer(accounts[accountToIndexes[i]], batch.getAmount(i), transferLog);
+                    results[i] = sequence < 0 ? declineOf(sequence) : TransferResult.OK;
+                    if (sequence >= 0) {
+                        lastSequence = sequence;
+                    }
+                } finally {
+                    gate.exit(stripe);
+                }
+            }
+        }
+        journal.awaitDurable(lastSequence);
+        return recordResults(results);
+    }
+
+    /**
+     * Adds the accounts and appends them to the journal, so they are added again when it's replayed. Returns once
+     * they are written to the journal. Ids of settlement accounts are declined before anything is added.
+     */
+    public void addAccounts(Collection<Account> accounts) {
+        for (Account account : accounts) {
+            if (SettlementAccounts.isSettlementAccount(account.getAccountId())) {
+                throw new IllegalArgumentException(
+                        format("Account id %s is reserved for settlement accounts", account.getAccountId()));
+            }
+        }
+        long lastSequence = 0;
+        int stripe = gate.enter();
+        try {
+            accountsRepository.addAll(accounts);
+            for (Account account : accounts) {
+                lastSequence = journal.appendAccount(account.getAccountId(), account.getBalance());
+            }
+        } finally {
+            gate.exit(stripe);
+        }
+        journal.awaitDurable(lastSequence);
+    }
+
+    /**
+     * Balances of the accounts in the given order as they were at one moment, no transfer is half applied between
+     * them. Reads take no locks and don't hold transfers back, neither do they wait for a snapshot or
+     * a reconciliation.
+     *
+     * @return balances or null if the accounts kept changing during every optimistic attempt, to be read again later
+     */
+    public long[] getBalances(long... accountIds) {
+        //a single balance is consistent on its own, it needs no optimistic attempt
+        if (accountIds.length == 1) {
+            return new long[] {getAccount(accountIds[0]).getBalance()};
+        }
+        Account[] accounts = new Account[accountIds.length];
+        for (int i = 0; i < accountIds.length; i++) {
+            accounts[i] = getAccount(accountIds[i]);
+        }
+        long[] balances = new long[accounts.length];
+        return Account.readBalances(accounts, balances) ? balances : null;
+    }
+
+    /**
+     * Gives the reader a consistent view of all balances, {@link Account#getBalanceAt(long)} with the epoch passed
+     * to the reader returns balances as they were after the transfer with the passed journal sequence number.
+     * Transfers are held back only while the epoch is started, not while the reader runs. Only one reader runs
+     * at a time.
+     */
+    public <T> T withBalanceSnapshot(BalanceSnapshotReader<T> reader) {
+        synchronized (snapshotLock) {
+            EpochStart start = startEpoch();
+            return reader.read(start.epoch, start.journalSequence);
+        }
+    }
+
+    /**
+     * Runs the reconciliation over balances of a new snapshot epoch, transfers keep going while it runs.
+     */
+    public ReconciliationReport reconcile(Reconciliation reconciliation) {
+        synchronized (snapshotLock) {
+            EpochStart start = startEpoch();
+            return reconciliation.run(accountsRepository, history, start.epoch, start.historyPosition);
+        }
+    }
+
+    /**
+     * Stops transfers for good, closes the journal and then the account store with the journal sequence number
+     * its accounts are at. Transfers after it fail with {@link IllegalStateException}.
+     */
+    public void close() {
+        gate.terminate();
+        long journalSequence = journal.getLastSequence();
+        try {
+            if (journal instanceof Closeable) {
+                ((Closeable) journal).close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Journal can't be closed", e);
+        } finally {
+            accountsRepository.close(journalSequence);
+        }
+    }
+
+    public long takeSnapshot(SnapshotDirectory snapshotDirectory) {
+        return withBalanceSnapshot((epoch, journalSequence) ->
+                snapshotDirectory.write(accountsRepository, epoch, journalSequence));
+    }
+
+    //transfers are held back only while the epoch is started, so the journal and the history are at the same point
+    private EpochStart startEpoch() {
+        gate.close();
+        try {
+            return new EpochStart(Account.startSnapshotEpoch(), journal.getLastSequence(), history.getPosition());
+        } finally {
+            gate.open();
+        }
+    }
+
+    private long journal(TransferBatch batch, TransferResult[] results) {
+        long lastSequence = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            if (results[i] == TransferResult.OK) {
+                lastSequence = append(batch.getAccountFromId(i), batch.getAccountToId(i), batch.getAmount(i));
+            }
+        }
+        return lastSequence;
+    }
+
+    //every applied transfer goes to the history and to the journal, before its credit is seen, see TransferLog
+    private long append(long accountFromId, long accountToId, long amount) {
+        history.append(accountFromId, accountToId, amount);
+        return journal.append(accountFromId, accountToId, amount);
+    }
+
+    private long apply(MoneyTransferRequest request) {
         Account accountFrom = getAccount(request.getAccountFromId());
         Account accountTo = getAccount(request.getAccountToId());
-        accountFrom.transfer(accountTo, request.getAmount());
+        int stripe = gate.enter();
+        try {
+            return accountFrom.transfer(accountTo, request.getAmount(), transferLog);
+        } finally {
+            gate.exit(stripe);
+        }
+    }
+
+    /**
+     * Throws only before balances change. A failure while the transfer is applied, of the journal as it's appended,
+     * is reported as {@link TransferResult#OUTCOME_UNKNOWN}.
+     *
+     * @return journal sequence number of the applied transfer or, if it is declined, a negative number
+     * which is turned back into the result with {@link #declineOf(long)}
+     */
+    private long tryApply(long accountFromId, long accountToId, long amount, boolean settlement) {
+        long start = System.nanoTime();
+        Account accountFrom = settlement ? accountsRepository.get(accountFromId) : clientAccount(accountFromId);
+        Account accountTo = settlement ? accountsRepository.get(accountToId) : clientAccount(accountToId);
+        long found = System.nanoTime();
+        metrics.record(Stage.LOOKUP, found - start);
+        if (accountFrom == null || accountTo == null) {
+            metrics.recordResult(TransferResult.UNKNOWN_ACCOUNT);
+            return -1 - TransferResult.UNKNOWN_ACCOUNT.ordinal();
+        }
+        metrics.recordTransfer(accountFromId, accountToId);
+        int stripe = gate.enter();
+        try {
+            long sequence;
+            try {
+                sequence = accountFrom.tryTransfer(accountTo, amount, transferLog);
+            } catch (RuntimeException e) {
+                sequence = -1 - TransferResult.OUTCOME_UNKNOWN.ordinal();
+            }
+            metrics.record(Stage.APPLY, System.nanoTime() - found);
+            metrics.recordResult(sequence < 0 ? declineOf(sequence) : TransferResult.OK);
+            return sequence;
+        } finally {
+            gate.exit(stripe);
+        }
+    }
+
+    private TransferResult[] recordResults(TransferResult[] results) {
+        for (TransferResult result : results) {
+            metrics.recordResult(result);
+        }
+        return results;
+    }
+
+    //loads the latest snapshot and replays the journal after it
+    private static TransferJournal recover(AccountsRepository accountsRepository) {
+        //a store which outlives a restart has the journal up to the point it was closed at
+        long journalSequence = accountsRepository.getJournalSequence();
+        if (journalSequence == AccountStore.UNKNOWN_JOURNAL_SEQUENCE
+                && System.getProperty(TransferJournal.FILE_SYSTEM_PROPERTY) != null) {
+            accountsRepository.clear();
+            journalSequence = 0;
+        }
+        SnapshotDirectory snapshotDirectory = SnapshotDirectory.fromSystemProperties();
+        if (snapshotDirectory != null) {
+            journalSequence = snapshotDirectory.loadLatest(accountsRepository, journalSequence);
+        }
+        boolean restored = accountsRepository.size() > 0;
+        //the journal of a cluster node has transfers to and from its settlement accounts
+        ClusterTopology topology = ClusterTopology.fromSystemProperties();
+        if (topology != null) {
+            SettlementAccounts.addMissing(topology, accountsRepository);
+        }
+        TransferJournal journal = TransferJournal.fromSystemProperties(accountsRepository, journalSequence);
+        //transfers of an earlier run are in the store, a snapshot or the journal, but not in the history
+        if (restored || journal.getLastSequence() > 0) {
+            TransferHistory.getInstance().startAfterRestart(System.currentTimeMillis());
+        }
+        return journal;
     }
 
     private Account getAccount(long accountId) {
-        return accountsRepository
-                .find(accountId)
-                .orElseThrow(() ->
-                        new IllegalArgumentException(format("Can't find an account with id %s", accountId)));
+        Account account = clientAccount(accountId);
+        if (account == null) {
+            throw new IllegalArgumentException(format("Can't find an account with id %s", accountId));
+        }
+        return account;
+    }
+
+    //settlement accounts of a cluster are moved only by trySettleAsync, to clients they don't exist
+    private Account clientAccount(long accountId) {
+        return SettlementAccounts.isSettlementAccount(accountId) ? null : accountsRepository.get(accountId);
+    }
+
+    private static long[] distinctAccountIds(TransferBatch batch) {
+        long[] accountIds = new long[batch.size() * 2];
+        for (int i = 0; i < batch.size(); i++) {
+            accountIds[2 * i] = batch.getAccountFromId(i);
+            accountIds[2 * i + 1] = batch.getAccountToId(i);
+        }
+        Arrays.sort(accountIds);
+        int distinct = 0;
+        for (int i = 0; i < accountIds.length; i++) {
+            if (i == 0 || accountIds[i] != accountIds[i - 1]) {
+                accountIds[distinct++] = accountIds[i];
+            }
+        }
+        return Arrays.copyOf(accountIds, distinct);
+    }
+
+    private static TransferResult validate(TransferBatch batch, int index, int accountFromIndex, int accountToIndex) {
+        if (batch.getAmount(index) < 0) {
+            return TransferResult.INVALID_AMOUNT;
+        }
+        if (accountFromIndex < 0 || accountToIndex < 0) {
+            return TransferResult.UNKNOWN_ACCOUNT;
+        }
+        if (accountFromIndex == accountToIndex) {
+            return TransferResult.SAME_ACCOUNT;
+        }
+        return null;
+    }
+
+    private static class EpochStart {
+        private final long epoch;
+        private final long journalSequence;
+        private final long historyPosition;
+
+        private EpochStart(long epoch, long journalSequence, long historyPosition) {
+            this.epoch = epoch;
+            this.journalSequence = journalSequence;
+            this.historyPosition = historyPosition;
+        }
+    }
+
+    private static long fingerprintOf(MoneyTransferRequest request) {
+        return IdempotencyCache.fingerprint(request.getAccountFromId(), request.getAccountToId(), request.getAmount());
     }
 
     public static MoneyTransferService getInstance() {
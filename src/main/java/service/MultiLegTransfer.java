@@ -0,0 +1,56 @@
+package service;
+
+import java.util.Arrays;
+
+import static java.lang.String.format;
+
+/**
+ * Transfer which splits money between several accounts, one leg per account: negative amounts are debits,
+ * positive ones credits, and the amounts of all legs add up to zero. Legs are applied all at once or not at all.
+ */
+public class MultiLegTransfer {
+    public static final int MAX_LEGS = 64;
+    private long[] accountIds;
+    private long[] amounts;
+    private int size;
+
+    public MultiLegTransfer() {
+        this(4);
+    }
+
+    public MultiLegTransfer(int expectedLegs) {
+        this.accountIds = new long[expectedLegs];
+        this.amounts = new long[expectedLegs];
+    }
+
+    public MultiLegTransfer add(long accountId, long amount) {
+        if (size == accountIds.length) {
+            if (size == MAX_LEGS) {
+                throw new IllegalArgumentException(format("Transfer can't have more than %s legs", MAX_LEGS));
+            }
+            int capacity = Math.min(MAX_LEGS, Math.max(4, size * 2));
+            accountIds = Arrays.copyOf(accountIds, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+        }
+        accountIds[size] = accountId;
+        amounts[size] = amount;
+        size++;
+        return this;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getAccountId(int index) {
+        return accountIds[index];
+    }
+
+    public long getAmount(int index) {
+        return amounts[index];
+    }
+}
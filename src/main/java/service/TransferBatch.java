@@ -0,0 +1,55 @@
+package service;
+
+import java.util.Arrays;
+
+import static java.lang.String.format;
+
+public class TransferBatch {
+    public static final int MAX_SIZE = 100_000;
+    private long[] accountFromIds;
+    private long[] accountToIds;
+    private long[] amounts;
+    private int size;
+
+    public TransferBatch() {
+        this(16);
+    }
+
+    public TransferBatch(int expectedSize) {
+        this.accountFromIds = new long[expectedSize];
+        this.accountToIds = new long[expectedSize];
+        this.amounts = new long[expectedSize];
+    }
+
+    public void add(long accountFromId, long accountToId, long amount) {
+        if (size == accountFromIds.length) {
+            if (size == MAX_SIZE) {
+                throw new IllegalArgumentException(format("Batch can't have more than %s transfers", MAX_SIZE));
+            }
+            int capacity = Math.min(MAX_SIZE, Math.max(16, size * 2));
+            accountFromIds = Arrays.copyOf(accountFromIds, capacity);
+            accountToIds = Arrays.copyOf(accountToIds, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+        }
+        accountFromIds[size] = accountFromId;
+        accountToIds[size] = accountToId;
+        amounts[size] = amount;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getAccountFromId(int index) {
+        return accountFromIds[index];
+    }
+
+    public long getAccountToId(int index) {
+        return accountToIds[index];
+    }
+
+    public long getAmount(int index) {
+        return amounts[index];
+    }
+}
@@ -0,0 +1,78 @@
+package service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lets any number of transfers run at the same time, until it's closed: closing waits for transfers in flight
+ * and holds new ones back until the gate is opened again. A terminated gate is closed for good and turns new
+ * transfers away instead of holding them back. Transfers in flight are counted in padded stripes picked by
+ * thread, so entering the gate doesn't make transfers contend with each other.
+ */
+class TransferGate {
+    private static final int STRIPES = 64;
+    //longs between two counters, keeps every counter on its own cache line
+    private static final int PADDING = 16;
+    private static final int OPEN = 0;
+    private static final int CLOSED = 1;
+    private static final int TERMINATED = 2;
+    private final AtomicLongArray inFlight = new AtomicLongArray(STRIPES * PADDING);
+    private volatile int state = OPEN;
+
+    /**
+     * @return stripe to pass to {@link #exit(int)}
+     * @throws IllegalStateException if the gate is terminated
+     */
+    int enter() {
+        int stripe = (int) (Thread.currentThread().getId() & (STRIPES - 1)) * PADDING;
+        while (true) {
+            inFlight.incrementAndGet(stripe);
+            if (state == OPEN) {
+                return stripe;
+            }
+            inFlight.decrementAndGet(stripe);
+            int current;
+            while ((current = state) == CLOSED) {
+                Thread.yield();
+            }
+            if (current == TERMINATED) {
+                throw new IllegalStateException("Transfers are stopped, the service is closed");
+            }
+        }
+    }
+
+    void exit(int stripe) {
+        inFlight.decrementAndGet(stripe);
+    }
+
+    synchronized void close() {
+        if (state == OPEN) {
+            state = CLOSED;
+        }
+        awaitInFlight();
+    }
+
+    /**
+     * Does nothing once the gate is terminated.
+     */
+    synchronized void open() {
+        if (state == CLOSED) {
+            state = OPEN;
+        }
+    }
+
+    /**
+     * Closes the gate for good: waits for transfers in flight, transfers held back and new ones fail.
+     */
+    synchronized void terminate() {
+        state = TERMINATED;
+        awaitInFlight();
+    }
+
+    private void awaitInFlight() {
+        for (int stripe = 0; stripe < STRIPES * PADDING; stripe += PADDING) {
+            while (inFlight.get(stripe) != 0) {
+                Thread.yield();
+            }
+        }
+    }
+}
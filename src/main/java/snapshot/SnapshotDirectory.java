@@ -0,0 +1,186 @@
+package snapshot;
+
+import model.Account;
+import repository.AccountsRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static java.lang.String.format;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Directory of balance snapshots. A snapshot file has a header with the journal sequence number it's consistent
+ * with and the number of accounts, followed by account id and balance of every account, 16 bytes each.
+ * The two latest snapshots are kept.
+ */
+public class SnapshotDirectory {
+    public static final String DIRECTORY_SYSTEM_PROPERTY = "moneyTransfer.snapshot.dir";
+    private static final String PREFIX = "balances-";
+    private static final String SUFFIX = ".snapshot";
+    private static final long MAGIC = 0x4D6F6E6579536E70L;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int FORMAT_VERSION_OFFSET = 8;
+    private static final int RECORD_SIZE_OFFSET = 12;
+    private static final int JOURNAL_SEQUENCE_OFFSET = 16;
+    private static final int ACCOUNTS_OFFSET = 24;
+    private static final int RECORD_SIZE = 16;
+    private static final int SNAPSHOTS_TO_KEEP = 2;
+    //records mapped at once while loading, less than 2 GB
+    private static final long RECORDS_PER_MAPPING = 1 << 26;
+    private final Path directory;
+
+    public SnapshotDirectory(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return snapshot directory or null if it's not configured
+     */
+    public static SnapshotDirectory fromSystemProperties() {
+        String directory = System.getProperty(DIRECTORY_SYSTEM_PROPERTY);
+        return directory == null ? null : new SnapshotDirectory(Paths.get(directory));
+    }
+
+    /**
+     * Writes balances of the snapshot epoch, accounts are read while transfers keep running.
+     *
+     * @return journal sequence number of the written snapshot
+     */
+    public long write(AccountsRepository accountsRepository, long epoch, long journalSequence) {
+        Path file = directory.resolve(format("%s%020d%s", PREFIX, journalSequence, SUFFIX));
+        Path temporaryFile = directory.resolve(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(directory);
+            try (FileChannel channel = FileChannel.open(temporaryFile, CREATE, WRITE, TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+                long[] accounts = {0};
+                channel.position(HEADER_SIZE);
+                accountsRepository.forEach(account -> {
+                    if (buffer.remaining() < RECORD_SIZE) {
+                        writeFully(channel, buffer);
+                    }
+                    buffer.putLong(account.getAccountId()).putLong(account.getBalanceAt(epoch));
+                    accounts[0]++;
+                });
+                writeFully(channel, buffer);
+                buffer.putLong(MAGIC_OFFSET, MAGIC)
+                        .putInt(FORMAT_VERSION_OFFSET, FORMAT_VERSION)
+                        .putInt(RECORD_SIZE_OFFSET, RECORD_SIZE)
+                        .putLong(JOURNAL_SEQUENCE_OFFSET, journalSequence)
+                        .putLong(ACCOUNTS_OFFSET, accounts[0])
+                        .position(HEADER_SIZE);
+                channel.position(0);
+                writeFully(channel, buffer);
+                channel.force(true);
+            }
+            Files.move(temporaryFile, file, ATOMIC_MOVE);
+            List<Path> snapshots = snapshots();
+            for (int i = SNAPSHOTS_TO_KEEP; i < snapshots.size(); i++) {
+                Files.delete(snapshots.get(i));
+            }
+            return journalSequence;
+        } catch (IOException e) {
+            throw new UncheckedIOException(format("Can't write snapshot %s", file), e);
+        }
+    }
+
+    /**
+     * Adds accounts of the latest snapshot to the repository.
+     *
+     * @return journal sequence number of the loaded snapshot, 0 if there are no snapshots
+     */
+    public long loadLatest(AccountsRepository accountsRepository) {
+        List<Path> snapshots = snapshots();
+        return snapshots.isEmpty() ? 0 : load(snapshots.get(0), accountsRepository);
+    }
+
+    /**
+     * Like {@link #loadLatest(AccountsRepository)} for a repository which may already have accounts of a later point
+     * of the journal, its accounts are replaced only if the latest snapshot is after that point or it's empty.
+     *
+     * @return journal sequence number the accounts of the repository are at
+     */
+    public long loadLatest(AccountsRepository accountsRepository, long journalSequence) {
+        List<Path> snapshots = snapshots();
+        if (snapshots.isEmpty()
+                || accountsRepository.size() > 0 && journalSequenceOf(snapshots.get(0)) <= journalSequence) {
+            return journalSequence;
+        }
+        return load(snapshots.get(0), accountsRepository);
+    }
+
+    static long load(Path file, AccountsRepository accountsRepository) {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            MappedByteBuffer header = channel.map(READ_ONLY, 0, HEADER_SIZE);
+            long accounts = header.getLong(ACCOUNTS_OFFSET);
+            if (header.getLong(MAGIC_OFFSET) != MAGIC
+                    || header.getInt(FORMAT_VERSION_OFFSET) != FORMAT_VERSION
+                    || header.getInt(RECORD_SIZE_OFFSET) != RECORD_SIZE
+                    || channel.size() != HEADER_SIZE + accounts * RECORD_SIZE) {
+                throw new IllegalStateException(format("%s is not a complete snapshot", file));
+            }
+            for (long first = 0; first < accounts; first += RECORDS_PER_MAPPING) {
+                long records = Math.min(RECORDS_PER_MAPPING, accounts - first);
+                MappedByteBuffer mapping =
+                        channel.map(READ_ONLY, HEADER_SIZE + first * RECORD_SIZE, records * RECORD_SIZE);
+                while (mapping.hasRemaining()) {
+                    accountsRepository.add(new Account(mapping.getLong(), mapping.getLong()));
+                }
+            }
+            return header.getLong(JOURNAL_SEQUENCE_OFFSET);
+        } catch (IOException e) {
+            throw new UncheckedIOException(format("Can't load snapshot %s", file), e);
+        }
+    }
+
+    //snapshot files, the latest first
+    List<Path> snapshots() {
+        List<Path> snapshots = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return snapshots;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            files.forEach(snapshots::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException(format("Can't list snapshots in %s", directory), e);
+        }
+        snapshots.sort(Collections.reverseOrder());
+        return snapshots;
+    }
+
+    //the file is named after it, see write
+    private static long journalSequenceOf(Path snapshot) {
+        String name = snapshot.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) {
+        try {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package tcp;
+
+import admission.ConcurrencyLimiter;
+import model.TransferResult;
+import service.MoneyTransferService;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import static java.lang.String.format;
+
+/**
+ * Transfer endpoint for internal callers over plain TCP with fixed-size binary frames, all numbers big-endian.
+ * A request is 32 bytes: correlation id, accountFromId, accountToId and amount as longs. A response is 9 bytes:
+ * the correlation id of the request and the ordinal of its {@link model.TransferResult} as a byte, or
+ * {@link #FAILED} if the transfer could not be applied, or {@link #REJECTED} if it was over the limit of
+ * the {@link ConcurrencyLimiter} and should be sent again later. Clients may send many requests without waiting
+ * for responses, which come back in the order transfers are done and durable, not necessarily in the request order.
+ *
+ * <p>Connections are spread over event loops, every loop reads, applies and answers requests of its connections
+ * on its own thread. A transfer waiting for the journal doesn't hold the loop back, its response is written once
+ * the journal completes it.
+ */
+public class BinaryTransferServer implements Closeable {
+    public static final String PORT_SYSTEM_PROPERTY = "moneyTransfer.binary.port";
+    public static final String EVENT_LOOPS_SYSTEM_PROPERTY = "moneyTransfer.binary.eventLoops";
+    public static final int REQUEST_SIZE = 32;
+    public static final int RESPONSE_SIZE = 9;
+    public static final byte FAILED = -1;
+    public static final byte REJECTED = -2;
+
+    private final ServerSocketChannel serverChannel;
+    private final EventLoop[] eventLoops;
+    private final Thread acceptor;
+
+    public BinaryTransferServer(MoneyTransferService moneyTransferService, InetSocketAddress address, int eventLoops)
+            throws IOException {
+        this(moneyTransferService, null, address, eventLoops);
+    }
+
+    /**
+     * Transfer server whose transfers are admitted under the limiter, or not limited if it is null.
+     */
+    public BinaryTransferServer(MoneyTransferService moneyTransferService, ConcurrencyLimiter limiter,
+                                InetSocketAddress address, int eventLoops) throws IOException {
+        this(limiter == null ? transfers(moneyTransferService) : limited(transfers(moneyTransferService), limiter),
+                REQUEST_SIZE, address, eventLoops, "binary-transfer");
+    }
+
+    /**
+     * Server of another protocol with the same framing: requests of {@code requestSize} bytes starting with
+     * the correlation id and 9-byte responses. Its requests are not admitted under the {@link ConcurrencyLimiter},
+     * the handler does it if it should.
+     */
+    public BinaryTransferServer(FrameHandler handler, int requestSize, InetSocketAddress address, int eventLoops,
+                                String name) throws IOException {
+        if (eventLoops <= 0) {
+            throw new IllegalArgumentException(format("Event loops should be above zero, actual was %s", eventLoops));
+        }
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address);
+        this.eventLoops = new EventLoop[eventLoops];
+        for (int i = 0; i < eventLoops; i++) {
+            this.eventLoops[i] = new EventLoop(handler, requestSize, name + "-loop-" + i);
+        }
+        this.acceptor = new Thread(this::accept, name + "-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    @Override
+    public void close() {
+        try {
+            serverChannel.close();
+            acceptor.join();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.close();
+        }
+    }
+
+    private void accept() {
+        int next = 0;
+        while (serverChannel.isOpen()) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.configureBlocking(false);
+                eventLoops[next].register(channel);
+                next = (next + 1) % eventLoops.length;
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                //the connection is dropped before it is set up, the client sees it closed
+            }
+        }
+    }
+
+    private static FrameHandler transfers(MoneyTransferService moneyTransferService) {
+        return request -> moneyTransferService.tryTransferAsync(
+                request.getLong(), request.getLong(), request.getLong());
+    }
+
+    //a binary caller has no identity to budget, only the limit applies
+    private static FrameHandler limited(FrameHandler handler, ConcurrencyLimiter limiter) {
+        return request -> {
+            if (!limiter.tryAcquire(ConcurrencyLimiter.NO_BUDGET)) {
+                CompletableFuture<TransferResult> rejected = new CompletableFuture<>();
+                rejected.completeExceptionally(new RejectedExecutionException("Too many transfers in flight"));
+                return rejected;
+            }
+            long start = System.nanoTime();
+            CompletableFuture<TransferResult> result;
+            try {
+                result = handler.handle(request);
+            } catch (RuntimeException e) {
+                limiter.release(ConcurrencyLimiter.NO_BUDGET, System.nanoTime() - start);
+                throw e;
+            }
+            result.whenComplete(
+                    (ignored, e) -> limiter.release(ConcurrencyLimiter.NO_BUDGET, System.nanoTime() - start));
+            return result;
+        };
+    }
+
+    /**
+     * @return started server or null if the port is not configured
+     */
+    public static BinaryTransferServer fromSystemProperties(MoneyTransferService moneyTransferService) {
+        Integer port = Integer.getInteger(PORT_SYSTEM_PROPERTY);
+        if (port == null) {
+            return null;
+        }
+        int eventLoops = Integer.getInteger(EVENT_LOOPS_SYSTEM_PROPERTY, Runtime.getRuntime().availableProcessors());
+        try {
+            return new BinaryTransferServer(moneyTransferService, ConcurrencyLimiter.getInstance(),
+                    new InetSocketAddress(port), eventLoops);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package tcp;
+
+import model.TransferResult;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static tcp.BinaryTransferServer.FAILED;
+import static tcp.BinaryTransferServer.REJECTED;
+import static tcp.BinaryTransferServer.RESPONSE_SIZE;
+
+/**
+ * Selector thread serving its connections. A connection has at most {@link #MAX_IN_FLIGHT_PER_CONNECTION}
+ * requests which are read but not answered yet, its write buffer holds that many responses, so an answer always
+ * fits and a client which doesn't read responses is simply not read from either. Direct buffers of closed
+ * connections are kept for new ones.
+ */
+final class EventLoop implements Runnable {
+    static final int MAX_IN_FLIGHT_PER_CONNECTION = 1024;
+    private static final int WRITE_BUFFER_SIZE = MAX_IN_FLIGHT_PER_CONNECTION * RESPONSE_SIZE;
+
+    private final FrameHandler handler;
+    private final int requestSize;
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<SocketChannel> registrations = new ConcurrentLinkedQueue<>();
+    private final Queue<Runnable> completions = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private final ArrayDeque<ByteBuffer> readBuffers = new ArrayDeque<>();
+    private final ArrayDeque<ByteBuffer> writeBuffers = new ArrayDeque<>();
+    private final List<Connection> connectionsToServe = new ArrayList<>();
+    private volatile boolean running = true;
+
+    EventLoop(FrameHandler handler, int requestSize, String name) throws IOException {
+        this.handler = handler;
+        this.requestSize = requestSize;
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void register(SocketChannel channel) {
+        registrations.add(channel);
+        wakeup();
+    }
+
+    void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                //cleared before the queues are drained, so nothing added afterwards is missed
+                wakeupPending.set(false);
+                registerConnections();
+                for (Runnable completion = completions.poll(); completion != null; completion = completions.poll()) {
+                    completion.run();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Connection connection = (Connection) key.attachment();
+                    if (key.isValid() && key.isReadable() && connection.channel.read(connection.in) < 0) {
+                        close(connection);
+                    } else if (key.isValid()) {
+                        serve(connection);
+                    }
+                }
+                for (Connection connection : connectionsToServe) {
+                    connection.toServe = false;
+                    serve(connection);
+                }
+                connectionsToServe.clear();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                close((Connection) key.attachment());
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+                //nothing is left to release
+            }
+        }
+    }
+
+    private void registerConnections() {
+        for (SocketChannel channel = registrations.poll(); channel != null; channel = registrations.poll()) {
+            try {
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                key.attach(new Connection(channel, key, buffer(readBuffers, MAX_IN_FLIGHT_PER_CONNECTION * requestSize),
+                        buffer(writeBuffers, WRITE_BUFFER_SIZE)));
+            } catch (IOException e) {
+                closeChannel(channel);
+            }
+        }
+    }
+
+    //applies whole requests which have room for their responses, writes responses and asks for the next events
+    private void serve(Connection connection) {
+        if (connection.closed) {
+            return;
+        }
+        try {
+            int written;
+            do {
+                connection.in.flip();
+                while (connection.in.remaining() >= requestSize && connection.hasRoom()) {
+                    transfer(connection);
+                }
+                connection.in.compact();
+                connection.out.flip();
+                written = connection.channel.write(connection.out);
+                connection.out.compact();
+            } while (written > 0 && connection.in.position() >= requestSize);
+            int interestOps = 0;
+            if (connection.out.position() > 0) {
+                interestOps |= SelectionKey.OP_WRITE;
+            }
+            if (connection.hasRoom() && connection.in.hasRemaining()) {
+                interestOps |= SelectionKey.OP_READ;
+            }
+            connection.key.interestOps(interestOps);
+        } catch (IOException e) {
+            close(connection);
+        }
+    }
+
+    private void transfer(Connection connection) {
+        ByteBuffer in = connection.in;
+        long correlationId = in.getLong();
+        int end = in.position() + requestSize - Long.BYTES;
+        CompletableFuture<TransferResult> result;
+        try {
+            result = handler.handle(in);
+        } catch (RuntimeException e) {
+            respond(connection, correlationId, FAILED);
+            return;
+        } finally {
+            //the handler may fail halfway through the frame, the next one starts where it should anyway
+            in.position(end);
+        }
+        if (result.isDone()) {
+            respond(connection, correlationId, codeOf(result));
+            return;
+        }
+        //the transfer waits for the journal, its response is written by this loop once it is durable
+        connection.pending++;
+        result.whenComplete((ignored, e) -> {
+            completions.add(() -> {
+                connection.pending--;
+                if (!connection.closed) {
+                    respond(connection, correlationId, codeOf(result));
+                    if (!connection.toServe) {
+                        connection.toServe = true;
+                        connectionsToServe.add(connection);
+                    }
+                }
+            });
+            wakeup();
+        });
+    }
+
+    private static void respond(Connection connection, long correlationId, byte code) {
+        connection.out.putLong(correlationId).put(code);
+    }
+
+    private static byte codeOf(CompletableFuture<TransferResult> result) {
+        try {
+            return (byte) result.join().ordinal();
+        } catch (CompletionException e) {
+            return e.getCause() instanceof RejectedExecutionException ? REJECTED : FAILED;
+        } catch (CancellationException e) {
+            return FAILED;
+        }
+    }
+
+    private void wakeup() {
+        if (!wakeupPending.getAndSet(true)) {
+            selector.wakeup();
+        }
+    }
+
+    private void close(Connection connection) {
+        if (connection.closed) {
+            return;
+        }
+        connection.closed = true;
+        connection.key.cancel();
+        closeChannel(connection.channel);
+        connection.in.clear();
+        connection.out.clear();
+        readBuffers.push(connection.in);
+        writeBuffers.push(connection.out);
+    }
+
+    private static void closeChannel(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            //the connection is gone anyway
+        }
+    }
+
+    private static ByteBuffer buffer(ArrayDeque<ByteBuffer> pool, int size) {
+        ByteBuffer buffer = pool.poll();
+        return buffer == null ? ByteBuffer.allocateDirect(size) : buffer;
+    }
+
+    private static final class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ByteBuffer in;
+        private final ByteBuffer out;
+        //requests waiting for the journal
+        private int pending;
+        private boolean toServe;
+        private boolean closed;
+
+        private Connection(SocketChannel channel, SelectionKey key, ByteBuffer in, ByteBuffer out) {
+            this.channel = channel;
+            this.key = key;
+            this.in = in;
+            this.out = out;
+        }
+
+        //responses waiting for the journal or for the socket, a partly written one included
+        private boolean hasRoom() {
+            return pending + (out.position() + RESPONSE_SIZE - 1) / RESPONSE_SIZE < MAX_IN_FLIGHT_PER_CONNECTION;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package tcp;
+
+import model.TransferResult;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs requests of a binary protocol served by {@link BinaryTransferServer} on the event loop thread, so it
+ * should not block.
+ */
+@FunctionalInterface
+public interface FrameHandler {
+    /**
+     * Reads the request after its correlation id from the buffer.
+     *
+     * @return future of the result which is sent back to the client, a future failed with
+     * {@link java.util.concurrent.RejectedExecutionException} is answered with {@link BinaryTransferServer#REJECTED}
+     */
+    CompletableFuture<TransferResult> handle(ByteBuffer request);
+}
@@ -0,0 +1,98 @@
+import model.Account;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import repository.AccountsRepository;
+import service.MoneyTransferService;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+import static javax.servlet.http.HttpServletResponse.SC_OK;
+import static javax.servlet.http.HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class AccountBalanceServletTest {
+    private static final AccountsRepository ACCOUNTS_REPOSITORY = AccountsRepository.getInstance();
+    private static final long FIRST_ACCOUNT_ID = 11L;
+    private static final long SECOND_ACCOUNT_ID = 12L;
+    private static final long NON_EXISTING_ACCOUNT_ID = 13L;
+    private static final long INITIAL_BALANCE_ON_FIRST_ACCOUNT = 150L;
+    private static final long INITIAL_BALANCE_ON_SECOND_ACCOUNT = 10L;
+    private final AccountBalanceServlet accountBalanceServlet = new AccountBalanceServlet();
+    private final StringWriter responseBody = new StringWriter();
+    @Mock private HttpServletRequest requestMock;
+    @Mock private HttpServletResponse responseMock;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        ACCOUNTS_REPOSITORY.add(new Account(FIRST_ACCOUNT_ID, INITIAL_BALANCE_ON_FIRST_ACCOUNT));
+        ACCOUNTS_REPOSITORY.add(new Account(SECOND_ACCOUNT_ID, INITIAL_BALANCE_ON_SECOND_ACCOUNT));
+        when(responseMock.getWriter()).thenReturn(new PrintWriter(responseBody));
+    }
+
+    @Test
+    public void givenSeveralAccounts_whenDoGet_thenBalancesAreReturnedInRequestOrder() throws Exception {
+        //GIVEN
+        when(requestMock.getParameterValues("accountId"))
+                .thenReturn(new String[]{String.valueOf(SECOND_ACCOUNT_ID), String.valueOf(FIRST_ACCOUNT_ID)});
+
+        //WHEN
+        accountBalanceServlet.doGet(requestMock, responseMock);
+
+        //THEN
+        verify(responseMock, times(1)).setStatus(SC_OK);
+        assertThat(responseBody.toString()).isEqualTo("{\"balances\":["
+                + "{\"accountId\":12,\"balance\":10},"
+                + "{\"accountId\":11,\"balance\":150}]}");
+    }
+
+    @Test
+    public void givenNonExistingAccount_whenDoGet_thenErrorIsReturned() throws Exception {
+        //GIVEN
+        when(requestMock.getParameterValues("accountId"))
+                .thenReturn(new String[]{String.valueOf(FIRST_ACCOUNT_ID), String.valueOf(NON_EXISTING_ACCOUNT_ID)});
+
+        //WHEN
+        accountBalanceServlet.doGet(requestMock, responseMock);
+
+        //THEN
+        verify(responseMock, times(1)).sendError(SC_INTERNAL_SERVER_ERROR, "Can't find an account with id 13");
+        verify(responseMock, never()).setStatus(SC_OK);
+    }
+
+    @Test
+    public void givenAccountsWhichKeepChanging_whenDoGet_thenClientIsAskedToRetry() throws Exception {
+        //GIVEN
+        MoneyTransferService moneyTransferServiceMock = mock(MoneyTransferService.class);
+        when(moneyTransferServiceMock.getBalances(FIRST_ACCOUNT_ID)).thenReturn(null);
+        when(requestMock.getParameterValues("accountId")).thenReturn(new String[]{String.valueOf(FIRST_ACCOUNT_ID)});
+
+        //WHEN
+        new AccountBalanceServlet(moneyTransferServiceMock).doGet(requestMock, responseMock);
+
+        //THEN
+        verify(responseMock, times(1)).setHeader("Retry-After", MoneyTransferServlet.RETRY_AFTER_SECONDS);
+        verify(responseMock, times(1)).sendError(SC_SERVICE_UNAVAILABLE, "Balances keep changing, retry later");
+        verify(responseMock, never()).setStatus(SC_OK);
+    }
+
+    @Test
+    public void givenNoAccountId_whenDoGet_thenErrorIsReturned() throws Exception {
+        //WHEN
+        accountBalanceServlet.doGet(requestMock, responseMock);
+
+        //THEN
+        verify(responseMock, times(1)).sendError(SC_INTERNAL_SERVER_ERROR, "Parameter accountId is required");
+    }
+}
@@ -0,0 +1,91 @@
+import history.TransferHistory;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+import static javax.servlet.http.HttpServletResponse.SC_OK;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class AccountHistoryServletTest {
+    private static final long ACCOUNT_ID_OF_ACCOUNT_FROM = 1L;
+    private static final long ACCOUNT_ID_OF_ACCOUNT_TO = 2L;
+    private static final long AMOUNT_OF_MONEY_TO_TRANSFER = 100L;
+    private final TransferHistory transferHistory = new TransferHistory(16);
+    private final AccountHistoryServlet accountHistoryServlet = new AccountHistoryServlet(transferHistory);
+    private final StringWriter responseBody = new StringWriter();
+    @Mock private HttpServletRequest requestMock;
+    @Mock private HttpServletResponse responseMock;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        when(responseMock.getWriter()).thenReturn(new PrintWriter(responseBody));
+        when(requestMock.getParameter("accountId")).thenReturn(String.valueOf(ACCOUNT_ID_OF_ACCOUNT_TO));
+    }
+
+    @Test
+    public void givenTransfers_whenDoGetWithLimit_thenPageOfTransfersAndCursorOfTheNextPageAreReturned()
+            throws Exception {
+        //GIVEN
+        transferHistory.append(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT_OF_MONEY_TO_TRANSFER);
+        transferHistory.append(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT_OF_MONEY_TO_TRANSFER);
+        when(requestMock.getParameter("limit")).thenReturn("1");
+
+        //WHEN
+        accountHistoryServlet.doGet(requestMock, responseMock);
+
+        //THEN
+        verify(responseMock, times(1)).setStatus(SC_OK);
+        assertThat(responseBody.toString())
+                .matches("\\{\"records\":\\[\\{\"timestamp\":\\d+,\"accountFromId\":1,\"accountToId\":2,"
+                        + "\"amount\":100}],\"next\":0,\"truncated\":false}");
+    }
+
+    @Test
+    public void givenNoTransfers_whenDoGet_thenEmptyPageIsReturned() throws Exception {
+        //WHEN
+        accountHistoryServlet.doGet(requestMock, responseMock);
+
+        //THEN
+        verify(responseMock, times(1)).setStatus(SC_OK);
+        assertThat(responseBody.toString()).isEqualTo("{\"records\":[],\"next\":null,\"truncated\":false}");
+    }
+
+    @Test
+    public void givenHistoryStartedAfterRestart_whenDoGet_thenPageIsReportedAsTruncated() throws Exception {
+        //GIVEN
+        transferHistory.startAfterRestart(System.currentTimeMillis());
+
+        //WHEN
+        accountHistoryServlet.doGet(requestMock, responseMock);
+
+        //THEN
+        verify(responseMock, times(1)).setStatus(SC_OK);
+        assertThat(responseBody.toString()).isEqualTo("{\"records\":[],\"next\":null,\"truncated\":true}");
+    }
+
+    @Test
+    public void givenLimitAboveMaximum_whenDoGet_thenErrorIsReturned() throws Exception {
+        //GIVEN
+        when(requestMock.getParameter("limit")).thenReturn("1001");
+
+        //WHEN
+        accountHistoryServlet.doGet(requestMock, responseMock);
+
+        //THEN
+        verify(responseMock, times(1))
+                .sendError(SC_INTERNAL_SERVER_ERROR, "Limit should be from 1 to 1000, actual was 1001");
+        verify(responseMock, never()).setStatus(SC_OK);
+    }
+}
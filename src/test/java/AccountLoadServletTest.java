@@ -0,0 +1,111 @@
+import model.Account;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+import provisioning.BulkAccountLoader;
+import repository.AccountsRepository;
+import repository.LongOpenHashAccountStore;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+import static javax.servlet.http.HttpServletResponse.SC_OK;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class AccountLoadServletTest {
+    private static final int PARALLELISM = 2;
+    @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private final AccountsRepository accountsRepository = new AccountsRepository(new LongOpenHashAccountStore(0));
+    private AccountLoadServlet accountLoadServlet;
+    private final StringWriter responseBody = new StringWriter();
+    @Mock private HttpServletRequest requestMock;
+    @Mock private HttpServletResponse responseMock;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        accountLoadServlet = new AccountLoadServlet(
+                new BulkAccountLoader(accountsRepository, PARALLELISM), temporaryFolder.getRoot().toPath());
+        when(responseMock.getWriter()).thenReturn(new PrintWriter(responseBody));
+    }
+
+    @Test
+    public void givenCsvFileWithMalformedRow_whenDoPost_thenAccountsAreLoadedAndMalformedRowIsReported()
+            throws Exception {
+        //GIVEN
+        Path file = temporaryFolder.getRoot().toPath().resolve("accounts.csv");
+        Files.write(file, "1,100\n2,-5\n3,300\n".getBytes(StandardCharsets.US_ASCII));
+        when(requestMock.getParameter("file")).thenReturn("accounts.csv");
+
+        //WHEN
+        accountLoadServlet.doPost(requestMock, responseMock);
+
+        //THEN
+        verify(responseMock, times(1)).setStatus(SC_OK);
+        assertThat(responseBody.toString()).isEqualTo("{\"loaded\":2,\"existing\":0,\"malformed\":1,\"malformedRows\":"
+                + "[{\"row\":2,\"reason\":\"Initial Balance must be more than zero, actual was -5\"}]}");
+        assertThat(accountsRepository.get(3L).getBalance()).isEqualTo(300L);
+    }
+
+    @Test
+    public void givenExistingAccount_whenDoPostWithReplace_thenItIsReplaced() throws Exception {
+        //GIVEN
+        accountsRepository.add(new Account(1L, 10L));
+        Files.write(temporaryFolder.getRoot().toPath().resolve("accounts.csv"),
+                "1,100\n".getBytes(StandardCharsets.US_ASCII));
+        when(requestMock.getParameter("file")).thenReturn("accounts.csv");
+        when(requestMock.getParameter("replace")).thenReturn("true");
+
+        //WHEN
+        accountLoadServlet.doPost(requestMock, responseMock);
+
+        //THEN
+        verify(responseMock, times(1)).setStatus(SC_OK);
+        assertThat(accountsRepository.get(1L).getBalance()).isEqualTo(100L);
+    }
+
+    @Test
+    public void givenFileOutsideOfDirectory_whenDoPost_thenErrorIsReturnedAndNothingIsLoaded() throws Exception {
+        //GIVEN
+        Path file = temporaryFolder.newFolder("outside").toPath().resolve("accounts.csv");
+        Files.write(file, "1,100\n".getBytes(StandardCharsets.US_ASCII));
+        AccountLoadServlet servlet = new AccountLoadServlet(new BulkAccountLoader(accountsRepository, PARALLELISM),
+                temporaryFolder.newFolder("accounts").toPath());
+        when(requestMock.getParameter("file")).thenReturn("../outside/accounts.csv");
+
+        //WHEN
+        servlet.doPost(requestMock, responseMock);
+
+        //THEN
+        verify(responseMock, times(1)).sendError(eq(SC_INTERNAL_SERVER_ERROR), anyString());
+        assertThat(accountsRepository.get(1L)).isNull();
+    }
+
+    @Test
+    public void givenMissingFile_whenDoPost_thenErrorIsReturned() throws Exception {
+        //GIVEN
+        when(requestMock.getParameter("file")).thenReturn("missing.csv");
+
+        //WHEN
+        accountLoadServlet.doPost(requestMock, responseMock);
+
+        //THEN
+        verify(responseMock, times(1)).sendError(eq(SC_INTERNAL_SERVER_ERROR), anyString());
+        verify(responseMock, never()).setStatus(SC_OK);
+    }
+}
@@ -0,0 +1,123 @@
+import admission.ConcurrencyLimiter;
+import model.TransferResult;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import service.MoneyTransferService;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+import static javax.servlet.http.HttpServletResponse.SC_OK;
+import static javax.servlet.http.HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class HoldServletTest {
+    private static final long HOLD_ID = 42L;
+    private final StringWriter responseBody = new StringWriter();
+    @Mock private MoneyTransferService moneyTransferServiceMock;
+    @Mock private HttpServletRequest requestMock;
+    @Mock private HttpServletResponse responseMock;
+    private HoldServlet holdServlet;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        holdServlet = new HoldServlet(moneyTransferServiceMock);
+        when(responseMock.getWriter()).thenReturn(new PrintWriter(responseBody));
+    }
+
+    @Test
+    public void givenHold_whenDoPost_thenItIsPlacedAndItsIdReturned() throws Exception {
+        //GIVEN
+        when(requestMock.getServletPath()).thenReturn("/hold");
+        when(requestMock.getInputStream())
+                .thenReturn(ServletInputStreams.of("{\"accountId\":1,\"amount\":100,\"ttlSeconds\":60}"));
+        when(moneyTransferServiceMock.tryHold(eq(1L), eq(100L), anyLong())).thenReturn(HOLD_ID);
+
+        //WHEN
+        holdServlet.doPost(requestMock, responseMock);
+
+        //THEN
+        verify(responseMock, times(1)).setStatus(SC_OK);
+        assertThat(responseBody.toString()).isEqualTo("{\"holdId\":42}");
+    }
+
+    @Test
+    public void givenHoldWhichIsNotActive_whenDoPostToCapture_thenErrorReturned() throws Exception {
+        //GIVEN
+        when(requestMock.getServletPath()).thenReturn("/hold/capture");
+        when(requestMock.getInputStream())
+                .thenReturn(ServletInputStreams.of("{\"holdId\":42,\"accountToId\":2,\"amount\":100}"));
+        when(moneyTransferServiceMock.capture(HOLD_ID, 2L, 100L)).thenReturn(TransferResult.UNKNOWN_HOLD);
+
+        //WHEN
+        holdServlet.doPost(requestMock, responseMock);
+
+        //THEN
+        verify(responseMock, times(1)).sendError(SC_INTERNAL_SERVER_ERROR, "UNKNOWN_HOLD");
+        verify(responseMock, never()).setStatus(SC_OK);
+    }
+
+    @Test
+    public void givenActiveHold_whenDoPostToRelease_thenOkReturned() throws Exception {
+        //GIVEN
+        when(requestMock.getServletPath()).thenReturn("/hold/release");
+        when(requestMock.getInputStream()).thenReturn(ServletInputStreams.of("{\"holdId\":42}"));
+        when(moneyTransferServiceMock.release(HOLD_ID)).thenReturn(TransferResult.OK);
+
+        //WHEN
+        holdServlet.doPost(requestMock, responseMock);
+
+        //THEN
+        verify(responseMock, times(1)).setStatus(SC_OK);
+        assertThat(responseBody.toString()).isEmpty();
+    }
+
+    @Test
+    public void givenLimitReached_whenDoPost_thenNothingIsHeldAndRetryLaterReturned() throws Exception {
+        //GIVEN
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, 1.0);
+        HoldServlet limitedHoldServlet = new HoldServlet(moneyTransferServiceMock, limiter);
+        limiter.tryAcquire(ConcurrencyLimiter.NO_BUDGET);
+        when(requestMock.getServletPath()).thenReturn("/hold");
+        when(requestMock.getInputStream())
+                .thenReturn(ServletInputStreams.of("{\"accountId\":1,\"amount\":100,\"ttlSeconds\":60}"));
+
+        //WHEN
+        limitedHoldServlet.doPost(requestMock, responseMock);
+
+        //THEN
+        verify(moneyTransferServiceMock, never()).tryHold(anyLong(), anyLong(), anyLong());
+        verify(responseMock, times(1)).setHeader("Retry-After", MoneyTransferServlet.RETRY_AFTER_SECONDS);
+        verify(responseMock, times(1)).sendError(eq(SC_SERVICE_UNAVAILABLE), any());
+    }
+
+    @Test
+    public void givenLimitedServlet_whenDoPostToRelease_thenPermitIsReleasedAfterwards() throws Exception {
+        //GIVEN
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, 1.0);
+        HoldServlet limitedHoldServlet = new HoldServlet(moneyTransferServiceMock, limiter);
+        when(requestMock.getServletPath()).thenReturn("/hold/release");
+        when(requestMock.getInputStream()).thenReturn(ServletInputStreams.of("{\"holdId\":42}"));
+        when(moneyTransferServiceMock.release(HOLD_ID)).thenReturn(TransferResult.OK);
+
+        //WHEN
+        limitedHoldServlet.doPost(requestMock, responseMock);
+
+        //THEN
+        verify(responseMock, times(1)).setStatus(SC_OK);
+        assertThat(limiter.getInFlight()).isZero();
+    }
+}
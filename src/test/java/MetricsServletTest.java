@@ -0,0 +1,43 @@
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static javax.servlet.http.HttpServletResponse.SC_OK;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class MetricsServletTest {
+    private final MetricsServlet metricsServlet = new MetricsServlet();
+    private final StringWriter responseBody = new StringWriter();
+    @Mock private HttpServletRequest requestMock;
+    @Mock private HttpServletResponse responseMock;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        when(responseMock.getWriter()).thenReturn(new PrintWriter(responseBody));
+    }
+
+    @Test
+    public void givenMetrics_whenDoGet_thenTheyAreReturnedInPrometheusFormat() throws Exception {
+        //WHEN
+        metricsServlet.doGet(requestMock, responseMock);
+
+        //THEN
+        verify(responseMock, times(1)).setStatus(SC_OK);
+        verify(responseMock, times(1)).setContentType("text/plain; version=0.0.4; charset=utf-8");
+        assertThat(responseBody.toString())
+                .contains("# TYPE money_transfer_stage_seconds summary")
+                .contains("# TYPE money_transfer_results_total counter")
+                .contains("# TYPE money_transfer_concurrency_limit gauge")
+                .contains("# TYPE money_transfer_idempotency_evicted_total counter");
+    }
+}
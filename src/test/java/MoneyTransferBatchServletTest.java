@@ -0,0 +1,131 @@
+import admission.ConcurrencyLimiter;
+import model.Account;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import repository.AccountsRepository;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+import static javax.servlet.http.HttpServletResponse.SC_OK;
+import static javax.servlet.http.HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class MoneyTransferBatchServletTest {
+    private static final AccountsRepository ACCOUNTS_REPOSITORY = AccountsRepository.getInstance();
+    private static final long ACCOUNT_ID_OF_ACCOUNT_FROM = 11L;
+    private static final long ACCOUNT_ID_OF_ACCOUNT_TO = 12L;
+    private final MoneyTransferBatchServlet moneyTransferBatchServlet = new MoneyTransferBatchServlet();
+    private final ByteArrayOutputStream responseBody = new ByteArrayOutputStream();
+    @Mock private HttpServletRequest requestMock;
+    @Mock private HttpServletResponse responseMock;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        ACCOUNTS_REPOSITORY.add(new Account(ACCOUNT_ID_OF_ACCOUNT_FROM, 150L));
+        ACCOUNTS_REPOSITORY.add(new Account(ACCOUNT_ID_OF_ACCOUNT_TO, 10L));
+        when(responseMock.getOutputStream()).thenReturn(servletOutputStream(responseBody));
+    }
+
+    @Test
+    public void givenBatchOfTransfers_whenDoPost_thenTransfersAreAppliedAndResultsReturned() throws Exception {
+        //GIVEN
+        when(requestMock.getInputStream()).thenReturn(ServletInputStreams.of("["
+                + "{\"accountFromId\":11,\"accountToId\":12,\"amount\":100},"
+                + "{\"accountFromId\":11,\"accountToId\":12,\"amount\":100},"
+                + "{\"accountFromId\":13,\"accountToId\":12,\"amount\":1}"
+                + "]"));
+
+        //WHEN
+        moneyTransferBatchServlet.doPost(requestMock, responseMock);
+
+        //THEN
+        assertThat(ACCOUNTS_REPOSITORY.get(ACCOUNT_ID_OF_ACCOUNT_FROM).getBalance()).isEqualTo(50L);
+        assertThat(ACCOUNTS_REPOSITORY.get(ACCOUNT_ID_OF_ACCOUNT_TO).getBalance()).isEqualTo(110L);
+        assertThat(new String(responseBody.toByteArray(), StandardCharsets.UTF_8))
+                .isEqualTo("[\"OK\",\"NOT_ENOUGH_MONEY\",\"UNKNOWN_ACCOUNT\"]");
+        verify(responseMock, times(1)).setStatus(SC_OK);
+    }
+
+    @Test
+    public void givenBodyWhichIsNotAnArray_whenDoPost_thenMoneyWereNotTransferredAndErrorReturned() throws Exception {
+        //GIVEN
+        when(requestMock.getInputStream())
+                .thenReturn(ServletInputStreams.of("{\"accountFromId\":11,\"accountToId\":12,\"amount\":100}"));
+
+        //WHEN
+        moneyTransferBatchServlet.doPost(requestMock, responseMock);
+
+        //THEN
+        assertThat(ACCOUNTS_REPOSITORY.get(ACCOUNT_ID_OF_ACCOUNT_FROM).getBalance()).isEqualTo(150L);
+        verify(responseMock, times(1)).sendError(eq(SC_INTERNAL_SERVER_ERROR), any());
+    }
+
+    @Test
+    public void givenLimitReached_whenDoPost_thenMoneyWereNotTransferredAndRetryLaterReturned() throws Exception {
+        //GIVEN
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, 1.0);
+        MoneyTransferBatchServlet limitedBatchServlet = new MoneyTransferBatchServlet(limiter);
+        limiter.tryAcquire(ConcurrencyLimiter.NO_BUDGET);
+        when(requestMock.getInputStream()).thenReturn(
+                ServletInputStreams.of("[{\"accountFromId\":11,\"accountToId\":12,\"amount\":100}]"));
+
+        //WHEN
+        limitedBatchServlet.doPost(requestMock, responseMock);
+
+        //THEN
+        assertThat(ACCOUNTS_REPOSITORY.get(ACCOUNT_ID_OF_ACCOUNT_FROM).getBalance()).isEqualTo(150L);
+        verify(responseMock, times(1)).setHeader("Retry-After", MoneyTransferServlet.RETRY_AFTER_SECONDS);
+        verify(responseMock, times(1)).sendError(eq(SC_SERVICE_UNAVAILABLE), any());
+        verify(responseMock, never()).setStatus(SC_OK);
+    }
+
+    @Test
+    public void givenLimitedServlet_whenDoPost_thenPermitIsReleasedAfterTheBatch() throws Exception {
+        //GIVEN
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, 1.0);
+        MoneyTransferBatchServlet limitedBatchServlet = new MoneyTransferBatchServlet(limiter);
+        when(requestMock.getInputStream()).thenReturn(
+                ServletInputStreams.of("[{\"accountFromId\":11,\"accountToId\":12,\"amount\":100}]"));
+
+        //WHEN
+        limitedBatchServlet.doPost(requestMock, responseMock);
+
+        //THEN
+        verify(responseMock, times(1)).setStatus(SC_OK);
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    private static ServletOutputStream servletOutputStream(ByteArrayOutputStream outputStream) {
+        return new ServletOutputStream() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void write(int b) {
+                outputStream.write(b);
+            }
+        };
+    }
+}
@@ -1,24 +1,39 @@
+import admission.ConcurrencyLimiter;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import json.MoneyTransferRequest;
 import model.Account;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import repository.AccountsRepository;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
 import static javax.servlet.http.HttpServletResponse.SC_OK;
+import static javax.servlet.http.HttpServletResponse.SC_SERVICE_UNAVAILABLE;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -36,6 +51,8 @@ public class MoneyTransferServletTest {
     private static final long AMOUNT_OF_MONEY_TO_TRANSFER = 100L;
     private static final long NOT_VALID_AMOUNT_OF_MONEY_TO_TRANSFER = -200L;
     private static final long TOO_BIG_AMOUNT_TO_TRANSFER = 200L;
+    private static final String CALLER_HEADER = "X-Caller-Id";
+    private static final String CALLER = "caller";
     private static final MoneyTransferRequest MONEY_TRANSFER_REQUEST =
             new MoneyTransferRequest(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT_OF_MONEY_TO_TRANSFER);
     private static final MoneyTransferRequest MONEY_TRANSFER_REQUEST_WITH_TOO_BIG_AMOUNT_TO_TRANSFER =
@@ -62,12 +79,66 @@ public class MoneyTransferServletTest {
     private final MoneyTransferServlet moneyTransferServlet = new MoneyTransferServlet();
     @Mock private HttpServletRequest requestMock;
     @Mock private HttpServletResponse responseMock;
+    @Mock private AsyncContext asyncContextMock;
 
     @Before
     public void setUp() {
         initMocks(this);
         ACCOUNTS_REPOSITORY.add(createAccountFrom());
         ACCOUNTS_REPOSITORY.add(createAccountTo());
+        when(asyncContextMock.getResponse()).thenReturn(responseMock);
+    }
+
+    @Test
+    public void givenAsyncModeAndValidMoneyTransferRequest_whenDoPost_thenMoneyAreTransferredOnTransferExecutor()
+            throws Exception {
+        //GIVEN
+        ExecutorService transferExecutor = Executors.newSingleThreadExecutor();
+        MoneyTransferServlet asyncMoneyTransferServlet = new MoneyTransferServlet(transferExecutor);
+        when(requestMock.isAsyncSupported()).thenReturn(true);
+        when(requestMock.startAsync()).thenReturn(asyncContextMock);
+        when(requestMock.getInputStream())
+                .thenReturn(ServletInputStreams.of(OBJECT_MAPPER.writeValueAsBytes(MONEY_TRANSFER_REQUEST)));
+
+        try {
+            //WHEN
+            asyncMoneyTransferServlet.doPost(requestMock, responseMock);
+
+            //THEN
+            verify(asyncContextMock, timeout(1000).times(1)).complete();
+            verify(responseMock, times(1)).setStatus(SC_OK);
+            verify(responseMock, never()).sendError(eq(SC_INTERNAL_SERVER_ERROR), any());
+            assertThat(ACCOUNTS_REPOSITORY.get(ACCOUNT_ID_OF_ACCOUNT_FROM).getBalance())
+                    .isEqualTo(EXPECTED_BALANCE_AFTER_TRANSFER_ON_ACCOUNT_FROM);
+            assertThat(ACCOUNTS_REPOSITORY.get(ACCOUNT_ID_OF_ACCOUNT_TO).getBalance())
+                    .isEqualTo(EXPECTED_BALANCE_AFTER_TRANSFER_ON_ACCOUNT_TO);
+        } finally {
+            transferExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void givenAsyncModeAndTooBigAmountToTransfer_whenDoPost_thenMoneyWereNotTransferredAndErrorReturned()
+            throws Exception {
+        //GIVEN
+        ExecutorService transferExecutor = Executors.newSingleThreadExecutor();
+        MoneyTransferServlet asyncMoneyTransferServlet = new MoneyTransferServlet(transferExecutor);
+        when(requestMock.isAsyncSupported()).thenReturn(true);
+        when(requestMock.startAsync()).thenReturn(asyncContextMock);
+        when(requestMock.getInputStream())
+                .thenReturn(ServletInputStreams.of(
+                        OBJECT_MAPPER.writeValueAsBytes(MONEY_TRANSFER_REQUEST_WITH_TOO_BIG_AMOUNT_TO_TRANSFER)));
+
+        try {
+            //WHEN
+            asyncMoneyTransferServlet.doPost(requestMock, responseMock);
+
+            //THEN
+            verify(asyncContextMock, timeout(1000).times(1)).complete();
+            assertThatMoneyWereNotTransferredAndErrorReturned();
+        } finally {
+            transferExecutor.shutdown();
+        }
     }
 
     @Test
@@ -86,6 +157,168 @@ public class MoneyTransferServletTest {
         verify(responseMock, times(1)).setStatus(SC_OK);
     }
 
+    @Test
+    public void givenLimitReached_whenDoPost_thenMoneyWereNotTransferredAndRetryLaterReturned() throws Exception {
+        //GIVEN
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, 1.0);
+        MoneyTransferServlet limitedMoneyTransferServlet = new MoneyTransferServlet(null, limiter);
+        limiter.tryAcquire(0);
+        when(requestMock.getReader()).thenReturn(getBufferedReader(MONEY_TRANSFER_REQUEST));
+
+        //WHEN
+        limitedMoneyTransferServlet.doPost(requestMock, responseMock);
+
+        //THEN
+        assertThat(ACCOUNTS_REPOSITORY.find(ACCOUNT_ID_OF_ACCOUNT_FROM).get().getBalance())
+                .isEqualTo(INITIAL_BALANCE_ON_ACCOUNT_FROM);
+        verify(responseMock, times(1)).setHeader("Retry-After", "1");
+        verify(responseMock, times(1)).sendError(eq(SC_SERVICE_UNAVAILABLE), any());
+        verify(responseMock, never()).setStatus(SC_OK);
+    }
+
+    @Test
+    public void givenCallerHeaderWhichIsNotTrusted_whenDoPost_thenCallerAtItsShareIsNotRejected() throws Exception {
+        //GIVEN
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 2, 0.5);
+        MoneyTransferServlet limitedMoneyTransferServlet = new MoneyTransferServlet(null, limiter);
+        limiter.tryAcquire(limiter.budgetOf(CALLER));
+        when(requestMock.getHeader(CALLER_HEADER)).thenReturn(CALLER);
+        when(requestMock.getReader()).thenReturn(getBufferedReader(MONEY_TRANSFER_REQUEST));
+
+        //WHEN
+        limitedMoneyTransferServlet.doPost(requestMock, responseMock);
+
+        //THEN
+        verify(responseMock, times(1)).setStatus(SC_OK);
+    }
+
+    @Test
+    public void givenTrustedCallerHeaderOfCallerAtItsShare_whenDoPost_thenRetryLaterReturned() throws Exception {
+        //GIVEN
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 2, 0.5);
+        MoneyTransferServlet limitedMoneyTransferServlet = new MoneyTransferServlet(null, limiter, CALLER_HEADER);
+        limiter.tryAcquire(limiter.budgetOf(CALLER));
+        when(requestMock.getHeader(CALLER_HEADER)).thenReturn(CALLER);
+        when(requestMock.getReader()).thenReturn(getBufferedReader(MONEY_TRANSFER_REQUEST));
+
+        //WHEN
+        limitedMoneyTransferServlet.doPost(requestMock, responseMock);
+
+        //THEN
+        verify(responseMock, times(1)).sendError(eq(SC_SERVICE_UNAVAILABLE), any());
+        verify(responseMock, never()).setStatus(SC_OK);
+    }
+
+    @Test
+    public void givenLimitedServlet_whenDoPost_thenPermitIsReleasedAfterTheTransfer() throws Exception {
+        //GIVEN
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, 1.0);
+        MoneyTransferServlet limitedMoneyTransferServlet = new MoneyTransferServlet(null, limiter);
+        when(requestMock.getReader()).thenReturn(getBufferedReader(MONEY_TRANSFER_REQUEST));
+
+        //WHEN
+        limitedMoneyTransferServlet.doPost(requestMock, responseMock);
+
+        //THEN
+        verify(responseMock, times(1)).setStatus(SC_OK);
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    @Test
+    public void givenAsyncStartFails_whenDoPost_thenPermitIsReleasedAndErrorReturned() throws Exception {
+        //GIVEN
+        ExecutorService transferExecutor = Executors.newSingleThreadExecutor();
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, 1.0);
+        MoneyTransferServlet asyncMoneyTransferServlet = new MoneyTransferServlet(transferExecutor, limiter);
+        when(requestMock.isAsyncSupported()).thenReturn(true);
+        when(requestMock.startAsync()).thenThrow(new IllegalStateException("Async is not supported"));
+
+        try {
+            //WHEN
+            asyncMoneyTransferServlet.doPost(requestMock, responseMock);
+
+            //THEN
+            verify(responseMock, times(1)).sendError(eq(SC_INTERNAL_SERVER_ERROR), any());
+            assertThat(limiter.getInFlight()).isZero();
+        } finally {
+            transferExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void givenAsyncModeAndTooLongBody_whenDoPost_thenRequestFailsAndPermitIsReleased() throws Exception {
+        //GIVEN
+        ExecutorService transferExecutor = Executors.newSingleThreadExecutor();
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, 1.0);
+        MoneyTransferServlet asyncMoneyTransferServlet = new MoneyTransferServlet(transferExecutor, limiter);
+        when(requestMock.isAsyncSupported()).thenReturn(true);
+        when(requestMock.startAsync()).thenReturn(asyncContextMock);
+        when(requestMock.getInputStream())
+                .thenReturn(ServletInputStreams.of(new byte[MoneyTransferServlet.MAX_BODY_SIZE + 1]));
+
+        try {
+            //WHEN
+            asyncMoneyTransferServlet.doPost(requestMock, responseMock);
+
+            //THEN
+            verify(asyncContextMock, timeout(1000).times(1)).complete();
+            verify(responseMock, times(1)).sendError(eq(SC_INTERNAL_SERVER_ERROR), any());
+            assertThat(limiter.getInFlight()).isZero();
+        } finally {
+            transferExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void givenAsyncRequestTimedOut_whenTransferFinishesAfterIt_thenPermitIsReleasedOnce() throws Exception {
+        //GIVEN
+        List<Runnable> transfers = new ArrayList<>();
+        ExecutorService transferExecutor = pendingExecutor(transfers);
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, 1.0);
+        MoneyTransferServlet asyncMoneyTransferServlet = new MoneyTransferServlet(transferExecutor, limiter);
+        when(requestMock.isAsyncSupported()).thenReturn(true);
+        when(requestMock.startAsync()).thenReturn(asyncContextMock);
+        when(requestMock.getInputStream())
+                .thenReturn(ServletInputStreams.of(OBJECT_MAPPER.writeValueAsBytes(MONEY_TRANSFER_REQUEST)));
+        ArgumentCaptor<AsyncListener> listener = ArgumentCaptor.forClass(AsyncListener.class);
+
+        //WHEN
+        asyncMoneyTransferServlet.doPost(requestMock, responseMock);
+        verify(asyncContextMock).addListener(listener.capture());
+        listener.getValue().onTimeout(new AsyncEvent(asyncContextMock));
+        int inFlightAfterTimeout = limiter.getInFlight();
+        transfers.forEach(Runnable::run);
+
+        //THEN
+        assertThat(inFlightAfterTimeout).isZero();
+        assertThat(limiter.getInFlight()).isZero();
+        verify(asyncContextMock, times(1)).complete();
+        verify(responseMock, times(1)).sendError(eq(SC_INTERNAL_SERVER_ERROR), any());
+        verify(responseMock, never()).setStatus(SC_OK);
+    }
+
+    @Test
+    public void givenAsyncContextCompletedByContainer_whenTransferFinishes_thenPermitIsReleased() throws Exception {
+        //GIVEN
+        List<Runnable> transfers = new ArrayList<>();
+        ExecutorService transferExecutor = pendingExecutor(transfers);
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, 1.0);
+        MoneyTransferServlet asyncMoneyTransferServlet = new MoneyTransferServlet(transferExecutor, limiter);
+        when(requestMock.isAsyncSupported()).thenReturn(true);
+        when(requestMock.startAsync()).thenReturn(asyncContextMock);
+        when(requestMock.getInputStream())
+                .thenReturn(ServletInputStreams.of(OBJECT_MAPPER.writeValueAsBytes(MONEY_TRANSFER_REQUEST)));
+        doThrow(new IllegalStateException("Request is already completed")).when(asyncContextMock).complete();
+
+        //WHEN
+        asyncMoneyTransferServlet.doPost(requestMock, responseMock);
+        transfers.forEach(Runnable::run);
+
+        //THEN
+        verify(asyncContextMock, times(1)).complete();
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
     @Test
     public void givenInvalidAmountToTransfer_whenDoPost_thenMoneyWereNotTransferredAndErrorReturned() throws Exception {
         //GIVEN
@@ -151,6 +384,14 @@ public class MoneyTransferServletTest {
         return new BufferedReader(new StringReader(OBJECT_MAPPER.writeValueAsString(moneyTransferRequest)));
     }
 
+
+    //keeps transfers until the test runs them
+    private static ExecutorService pendingExecutor(List<Runnable> transfers) {
+        ExecutorService transferExecutor = mock(ExecutorService.class);
+        doAnswer(invocation -> transfers.add(invocation.getArgument(0))).when(transferExecutor).execute(any());
+        return transferExecutor;
+    }
+
     private void assertThatMoneyWereNotTransferredAndErrorReturned() throws IOException {
         assertThat(ACCOUNTS_REPOSITORY.find(ACCOUNT_ID_OF_ACCOUNT_FROM).get().getBalance())
                 .isEqualTo(INITIAL_BALANCE_ON_ACCOUNT_FROM);
@@ -0,0 +1,115 @@
+import admission.ConcurrencyLimiter;
+import model.Account;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import repository.AccountsRepository;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+import static javax.servlet.http.HttpServletResponse.SC_OK;
+import static javax.servlet.http.HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class MultiLegTransferServletTest {
+    private static final AccountsRepository ACCOUNTS_REPOSITORY = AccountsRepository.getInstance();
+    private static final long ACCOUNT_ID_OF_ACCOUNT_FROM = 21L;
+    private static final long ACCOUNT_ID_OF_ACCOUNT_TO = 22L;
+    private static final long ACCOUNT_ID_OF_ANOTHER_ACCOUNT_TO = 23L;
+    private final MultiLegTransferServlet multiLegTransferServlet = new MultiLegTransferServlet();
+    @Mock private HttpServletRequest requestMock;
+    @Mock private HttpServletResponse responseMock;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        ACCOUNTS_REPOSITORY.add(new Account(ACCOUNT_ID_OF_ACCOUNT_FROM, 150L));
+        ACCOUNTS_REPOSITORY.add(new Account(ACCOUNT_ID_OF_ACCOUNT_TO, 10L));
+        ACCOUNTS_REPOSITORY.add(new Account(ACCOUNT_ID_OF_ANOTHER_ACCOUNT_TO, 0L));
+    }
+
+    @Test
+    public void givenLegsAddingUpToZero_whenDoPost_thenAllLegsAreApplied() throws Exception {
+        //GIVEN
+        when(requestMock.getInputStream()).thenReturn(ServletInputStreams.of("{\"legs\":["
+                + "{\"accountId\":21,\"amount\":-100},"
+                + "{\"accountId\":22,\"amount\":70},"
+                + "{\"amount\":30,\"accountId\":23}"
+                + "]}"));
+
+        //WHEN
+        multiLegTransferServlet.doPost(requestMock, responseMock);
+
+        //THEN
+        assertThat(ACCOUNTS_REPOSITORY.get(ACCOUNT_ID_OF_ACCOUNT_FROM).getBalance()).isEqualTo(50L);
+        assertThat(ACCOUNTS_REPOSITORY.get(ACCOUNT_ID_OF_ACCOUNT_TO).getBalance()).isEqualTo(80L);
+        assertThat(ACCOUNTS_REPOSITORY.get(ACCOUNT_ID_OF_ANOTHER_ACCOUNT_TO).getBalance()).isEqualTo(30L);
+        verify(responseMock, times(1)).setStatus(SC_OK);
+    }
+
+    @Test
+    public void givenLegWithoutEnoughMoney_whenDoPost_thenNoLegIsAppliedAndErrorReturned() throws Exception {
+        //GIVEN
+        when(requestMock.getInputStream()).thenReturn(ServletInputStreams.of("{\"legs\":["
+                + "{\"accountId\":21,\"amount\":-100},"
+                + "{\"accountId\":22,\"amount\":-100},"
+                + "{\"accountId\":23,\"amount\":200}"
+                + "]}"));
+
+        //WHEN
+        multiLegTransferServlet.doPost(requestMock, responseMock);
+
+        //THEN
+        assertThat(ACCOUNTS_REPOSITORY.get(ACCOUNT_ID_OF_ACCOUNT_FROM).getBalance()).isEqualTo(150L);
+        assertThat(ACCOUNTS_REPOSITORY.get(ACCOUNT_ID_OF_ACCOUNT_TO).getBalance()).isEqualTo(10L);
+        assertThat(ACCOUNTS_REPOSITORY.get(ACCOUNT_ID_OF_ANOTHER_ACCOUNT_TO).getBalance()).isEqualTo(0L);
+        verify(responseMock, times(1)).sendError(SC_INTERNAL_SERVER_ERROR, "NOT_ENOUGH_MONEY");
+    }
+
+    @Test
+    public void givenMalformedLeg_whenDoPost_thenErrorReturned() throws Exception {
+        //GIVEN
+        when(requestMock.getInputStream()).thenReturn(ServletInputStreams.of("{\"legs\":["
+                + "{\"accountId\":21,\"amount\":-100},"
+                + "{\"accountId\":22}"
+                + "]}"));
+
+        //WHEN
+        multiLegTransferServlet.doPost(requestMock, responseMock);
+
+        //THEN
+        assertThat(ACCOUNTS_REPOSITORY.get(ACCOUNT_ID_OF_ACCOUNT_FROM).getBalance()).isEqualTo(150L);
+        verify(responseMock, times(1)).sendError(eq(SC_INTERNAL_SERVER_ERROR), any());
+    }
+
+    @Test
+    public void givenLimitReached_whenDoPost_thenNoLegIsAppliedAndRetryLaterReturned() throws Exception {
+        //GIVEN
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, 1.0);
+        MultiLegTransferServlet limitedMultiLegTransferServlet = new MultiLegTransferServlet(limiter);
+        limiter.tryAcquire(ConcurrencyLimiter.NO_BUDGET);
+        when(requestMock.getInputStream()).thenReturn(ServletInputStreams.of("{\"legs\":["
+                + "{\"accountId\":21,\"amount\":-100},"
+                + "{\"accountId\":22,\"amount\":100}"
+                + "]}"));
+
+        //WHEN
+        limitedMultiLegTransferServlet.doPost(requestMock, responseMock);
+
+        //THEN
+        assertThat(ACCOUNTS_REPOSITORY.get(ACCOUNT_ID_OF_ACCOUNT_FROM).getBalance()).isEqualTo(150L);
+        verify(responseMock, times(1)).setHeader("Retry-After", MoneyTransferServlet.RETRY_AFTER_SECONDS);
+        verify(responseMock, times(1)).sendError(eq(SC_SERVICE_UNAVAILABLE), any());
+        verify(responseMock, never()).setStatus(SC_OK);
+        assertThat(limiter.getInFlight()).isEqualTo(1);
+    }
+}
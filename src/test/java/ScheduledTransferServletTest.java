@@ -0,0 +1,109 @@
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import scheduling.TransferScheduler;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+import static javax.servlet.http.HttpServletResponse.SC_OK;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class ScheduledTransferServletTest {
+    private static final long EXECUTE_AT = 1_539_856_800_000L;
+    private static final long SCHEDULED_TRANSFER_ID = 42L;
+    private final StringWriter responseBody = new StringWriter();
+    @Mock private TransferScheduler transferSchedulerMock;
+    @Mock private HttpServletRequest requestMock;
+    @Mock private HttpServletResponse responseMock;
+    private ScheduledTransferServlet scheduledTransferServlet;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        scheduledTransferServlet = new ScheduledTransferServlet(transferSchedulerMock);
+        when(responseMock.getWriter()).thenReturn(new PrintWriter(responseBody));
+    }
+
+    @Test
+    public void givenTransfer_whenDoPost_thenItIsScheduledAndItsIdReturned() throws Exception {
+        //GIVEN
+        when(requestMock.getInputStream()).thenReturn(ServletInputStreams.of(
+                "{\"accountFromId\":2,\"accountToId\":1,\"amount\":100,\"executeAt\":" + EXECUTE_AT + "}"));
+        when(transferSchedulerMock.schedule(EXECUTE_AT, 2L, 1L, 100L)).thenReturn(SCHEDULED_TRANSFER_ID);
+
+        //WHEN
+        scheduledTransferServlet.doPost(requestMock, responseMock);
+
+        //THEN
+        verify(responseMock, times(1)).setStatus(SC_OK);
+        assertThat(responseBody.toString()).isEqualTo("{\"id\":42}");
+    }
+
+    @Test
+    public void givenTransferWithoutExecutionTime_whenDoPost_thenErrorReturned() throws Exception {
+        //GIVEN
+        when(requestMock.getInputStream())
+                .thenReturn(ServletInputStreams.of("{\"accountFromId\":2,\"accountToId\":1,\"amount\":100}"));
+
+        //WHEN
+        scheduledTransferServlet.doPost(requestMock, responseMock);
+
+        //THEN
+        verify(transferSchedulerMock, never()).schedule(anyLong(), anyLong(), anyLong(), anyLong());
+        verify(responseMock, times(1)).sendError(SC_INTERNAL_SERVER_ERROR, "Field executeAt is required");
+    }
+
+    @Test
+    public void givenExecutedTransfer_whenDoGet_thenItsResultIsReturned() throws Exception {
+        //GIVEN
+        when(requestMock.getParameter("id")).thenReturn(String.valueOf(SCHEDULED_TRANSFER_ID));
+        when(transferSchedulerMock.getStatus(SCHEDULED_TRANSFER_ID)).thenReturn("NOT_ENOUGH_MONEY");
+
+        //WHEN
+        scheduledTransferServlet.doGet(requestMock, responseMock);
+
+        //THEN
+        verify(responseMock, times(1)).setStatus(SC_OK);
+        assertThat(responseBody.toString()).isEqualTo("{\"id\":42,\"status\":\"NOT_ENOUGH_MONEY\"}");
+    }
+
+    @Test
+    public void givenUnknownTransfer_whenDoGet_thenErrorReturned() throws Exception {
+        //GIVEN
+        when(requestMock.getParameter("id")).thenReturn(String.valueOf(SCHEDULED_TRANSFER_ID));
+        when(transferSchedulerMock.getStatus(SCHEDULED_TRANSFER_ID)).thenReturn(null);
+
+        //WHEN
+        scheduledTransferServlet.doGet(requestMock, responseMock);
+
+        //THEN
+        verify(responseMock, times(1)).sendError(SC_INTERNAL_SERVER_ERROR, "Transfer 42 is unknown");
+        verify(responseMock, never()).setStatus(SC_OK);
+    }
+
+    @Test
+    public void givenTransferWhichIsNotPending_whenDoDelete_thenErrorReturned() throws Exception {
+        //GIVEN
+        when(requestMock.getParameter("id")).thenReturn(String.valueOf(SCHEDULED_TRANSFER_ID));
+        when(transferSchedulerMock.cancel(SCHEDULED_TRANSFER_ID)).thenReturn(false);
+
+        //WHEN
+        scheduledTransferServlet.doDelete(requestMock, responseMock);
+
+        //THEN
+        verify(responseMock, times(1)).sendError(eq(SC_INTERNAL_SERVER_ERROR), any());
+        verify(responseMock, never()).setStatus(SC_OK);
+    }
+}
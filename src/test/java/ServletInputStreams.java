@@ -0,0 +1,50 @@
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Request bodies for servlet tests.
+ */
+final class ServletInputStreams {
+    private ServletInputStreams() {
+    }
+
+    static ServletInputStream of(String body) {
+        return of(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Body is available at once, so a listener is notified right when it is set like a container does.
+     */
+    static ServletInputStream of(byte[] body) {
+        ByteArrayInputStream inputStream = new ByteArrayInputStream(body);
+        return new ServletInputStream() {
+            @Override
+            public boolean isFinished() {
+                return inputStream.available() == 0;
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setReadListener(ReadListener readListener) {
+                try {
+                    readListener.onDataAvailable();
+                    readListener.onAllDataRead();
+                } catch (IOException e) {
+                    readListener.onError(e);
+                }
+            }
+
+            @Override
+            public int read() {
+                return inputStream.read();
+            }
+        };
+    }
+}
@@ -0,0 +1,153 @@
+package admission;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ConcurrencyLimiterTest {
+    private static final int INITIAL_LIMIT = 100;
+    private static final int MIN_LIMIT = 10;
+    private static final int MAX_LIMIT = 1000;
+    private static final double CALLER_SHARE = 0.5;
+    private static final long FAST_NANOS = 1_000_000L;
+    private static final long SLOW_NANOS = 10_000_000L;
+    private final AtomicLong clock = new AtomicLong();
+    private final ConcurrencyLimiter limiter =
+            new ConcurrencyLimiter(INITIAL_LIMIT, MIN_LIMIT, MAX_LIMIT, CALLER_SHARE, clock::get);
+
+    @Test
+    public void givenLimitReachedByManyCallers_whenTryAcquire_thenRejected() {
+        //GIVEN
+        for (int i = 0; i < INITIAL_LIMIT; i++) {
+            assertThat(limiter.tryAcquire(i % ConcurrencyLimiter.BUDGETS)).isTrue();
+        }
+
+        //WHEN
+        boolean acquired = limiter.tryAcquire(INITIAL_LIMIT % ConcurrencyLimiter.BUDGETS);
+
+        //THEN
+        assertThat(acquired).isFalse();
+        assertThat(limiter.getInFlight()).isEqualTo(INITIAL_LIMIT);
+        assertThat(limiter.getRejected()).isEqualTo(1L);
+    }
+
+    @Test
+    public void givenCallerAtItsShare_whenTryAcquire_thenOnlyOtherCallersAreAdmitted() {
+        //GIVEN
+        int busyCaller = limiter.budgetOf("busy");
+        int otherCaller = limiter.budgetOf("other");
+        while (limiter.tryAcquire(busyCaller)) {
+            //takes its whole share
+        }
+
+        //WHEN
+        boolean otherAcquired = limiter.tryAcquire(otherCaller);
+
+        //THEN
+        assertThat(otherAcquired).isTrue();
+        assertThat(limiter.getInFlight()).isEqualTo((int) (INITIAL_LIMIT * CALLER_SHARE) + 1);
+    }
+
+    @Test
+    public void givenUnknownCaller_whenTryAcquire_thenOnlyTheLimitApplies() {
+        //GIVEN
+        int unknownCaller = limiter.budgetOf(null);
+        for (int i = 0; i < INITIAL_LIMIT; i++) {
+            assertThat(limiter.tryAcquire(unknownCaller)).isTrue();
+        }
+
+        //WHEN
+        boolean acquired = limiter.tryAcquire(unknownCaller);
+
+        //THEN
+        assertThat(unknownCaller).isEqualTo(ConcurrencyLimiter.NO_BUDGET);
+        assertThat(acquired).isFalse();
+        assertThat(limiter.getInFlight()).isEqualTo(INITIAL_LIMIT);
+    }
+
+    @Test
+    public void givenCallerShareOfWholeLimit_whenBudgetOf_thenCallersHaveNoBudget() {
+        //GIVEN
+        ConcurrencyLimiter unbudgetedLimiter = new ConcurrencyLimiter(INITIAL_LIMIT, MIN_LIMIT, MAX_LIMIT, 1.0);
+
+        //WHEN
+        int budget = unbudgetedLimiter.budgetOf("caller");
+
+        //THEN
+        assertThat(budget).isEqualTo(ConcurrencyLimiter.NO_BUDGET);
+    }
+
+    @Test
+    public void givenReleased_whenTryAcquire_thenPermitIsReused() {
+        //GIVEN
+        int caller = limiter.budgetOf("caller");
+        for (int i = 0; i < INITIAL_LIMIT * CALLER_SHARE; i++) {
+            limiter.tryAcquire(caller);
+        }
+        limiter.release(caller, FAST_NANOS);
+
+        //WHEN
+        boolean acquired = limiter.tryAcquire(caller);
+
+        //THEN
+        assertThat(acquired).isTrue();
+    }
+
+    @Test
+    public void givenSaturatedWindowsWithSteadyLatency_whenReleased_thenLimitGrows() {
+        //WHEN
+        runWindows(10, INITIAL_LIMIT, FAST_NANOS);
+
+        //THEN
+        assertThat(limiter.getLimit()).isGreaterThan(INITIAL_LIMIT);
+    }
+
+    @Test
+    public void givenLatencyGoingUp_whenReleased_thenLimitShrinks() {
+        //GIVEN
+        runWindows(5, INITIAL_LIMIT, FAST_NANOS);
+        int limitBefore = limiter.getLimit();
+
+        //WHEN
+        runWindows(10, limitBefore, SLOW_NANOS);
+
+        //THEN
+        assertThat(limiter.getLimit()).isLessThan(limitBefore);
+        assertThat(limiter.getLimit()).isGreaterThanOrEqualTo(MIN_LIMIT);
+    }
+
+    @Test
+    public void givenWindowsBelowHalfOfTheLimit_whenReleased_thenLimitDoesNotGrow() {
+        //WHEN
+        runWindows(10, INITIAL_LIMIT / 4, FAST_NANOS);
+
+        //THEN
+        assertThat(limiter.getLimit()).isEqualTo(INITIAL_LIMIT);
+    }
+
+    @Test
+    public void givenMinLimitAboveInitial_whenCreated_thenIllegalArgumentException() {
+        //WHEN + THEN
+        assertThatThrownBy(() -> new ConcurrencyLimiter(MIN_LIMIT, INITIAL_LIMIT, MAX_LIMIT, CALLER_SHARE))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    //every window keeps the given number of transfers in flight, spread over callers, then releases them
+    private void runWindows(int windows, int inFlight, long latencyNanos) {
+        for (int window = 0; window < windows; window++) {
+            int acquired = 0;
+            for (int i = 0; i < inFlight; i++) {
+                if (limiter.tryAcquire(i % ConcurrencyLimiter.BUDGETS)) {
+                    acquired++;
+                }
+            }
+            clock.addAndGet(ConcurrencyLimiter.WINDOW_NANOS);
+            for (int i = 0; i < acquired; i++) {
+                limiter.release(i % ConcurrencyLimiter.BUDGETS, latencyNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package cluster;
+
+import idempotency.IdempotencyCache;
+import json.MoneyTransferRequest;
+import model.Account;
+import model.TransferResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import repository.AccountsRepository;
+import service.MoneyTransferService;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//both nodes share the repository of the test JVM, ownership still decides which node does what
+public class ClusterNodeTest {
+    private static final AccountsRepository ACCOUNTS_REPOSITORY = AccountsRepository.getInstance();
+    private static final long FIRST_ACCOUNT_ID = 9_000_000L;
+    //far from the accounts which earlier tests created with other topologies
+    private static final long FIRST_UNKNOWN_ACCOUNT_ID = 9_500_000L;
+    private static final long FIRST_IN_DOUBT_ACCOUNT_ID = 9_700_000L;
+    private static final long INITIAL_BALANCE = 1_000L;
+    private static final long AMOUNT = 100L;
+    private static final long REQUEST_TIMEOUT_MILLIS = 200L;
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private ClusterNode firstNode;
+    private ClusterNode secondNode;
+    private long payerId;
+    private long payeeId;
+    private long localPayeeId;
+    private long unknownPayeeId;
+
+    @Before
+    public void setUp() throws Exception {
+        List<InetSocketAddress> nodes = Arrays.asList(
+                InetSocketAddress.createUnresolved("localhost", freePort()),
+                InetSocketAddress.createUnresolved("localhost", freePort()));
+        ClusterTopology firstTopology = new ClusterTopology(nodes, 0);
+        ClusterTopology secondTopology = new ClusterTopology(nodes, 1);
+        SettlementAccounts.addMissing(firstTopology, ACCOUNTS_REPOSITORY);
+        SettlementAccounts.addMissing(secondTopology, ACCOUNTS_REPOSITORY);
+        firstNode = new ClusterNode(firstTopology, MoneyTransferService.getInstance(),
+                new IdempotencyCache(16, 60_000L), 1, 2, 1);
+        secondNode = new ClusterNode(secondTopology, MoneyTransferService.getInstance(),
+                new IdempotencyCache(16, 60_000L), 1, 2, 1);
+        payerId = accountOwnedBy(firstTopology, 0, FIRST_ACCOUNT_ID);
+        localPayeeId = accountOwnedBy(firstTopology, 0, payerId + 1);
+        payeeId = accountOwnedBy(firstTopology, 1, FIRST_ACCOUNT_ID);
+        unknownPayeeId = accountOwnedBy(firstTopology, 1, FIRST_UNKNOWN_ACCOUNT_ID);
+        ACCOUNTS_REPOSITORY.add(new Account(payerId, INITIAL_BALANCE));
+        ACCOUNTS_REPOSITORY.add(new Account(localPayeeId, INITIAL_BALANCE));
+        ACCOUNTS_REPOSITORY.add(new Account(payeeId, INITIAL_BALANCE));
+    }
+
+    @After
+    public void tearDown() {
+        firstNode.close();
+        secondNode.close();
+    }
+
+    @Test
+    public void givenPayeeOnAnotherNode_whenTryTransferAsync_thenMoneyGoesThroughSettlementAccounts() {
+        //GIVEN
+        long sentBefore = balanceOf(SettlementAccounts.accountId(0, 1, payerId));
+        long receivedBefore = balanceOf(SettlementAccounts.accountId(1, 0, payeeId));
+
+        //WHEN
+        TransferResult result = firstNode.tryTransferAsync(new MoneyTransferRequest(payerId, payeeId, AMOUNT)).join();
+
+        //THEN
+        assertThat(result).isEqualTo(TransferResult.OK);
+        assertThat(balanceOf(payerId)).isEqualTo(INITIAL_BALANCE - AMOUNT);
+        assertThat(balanceOf(payeeId)).isEqualTo(INITIAL_BALANCE + AMOUNT);
+        assertThat(balanceOf(SettlementAccounts.accountId(0, 1, payerId))).isEqualTo(sentBefore + AMOUNT);
+        assertThat(balanceOf(SettlementAccounts.accountId(1, 0, payeeId))).isEqualTo(receivedBefore - AMOUNT);
+    }
+
+    @Test
+    public void givenPayerOnAnotherNode_whenTryTransferAsync_thenTransferIsForwardedToItsOwner() {
+        //WHEN
+        TransferResult result =
+                secondNode.tryTransferAsync(new MoneyTransferRequest(payerId, localPayeeId, AMOUNT)).join();
+
+        //THEN
+        assertThat(result).isEqualTo(TransferResult.OK);
+        assertThat(balanceOf(payerId)).isEqualTo(INITIAL_BALANCE - AMOUNT);
+        assertThat(balanceOf(localPayeeId)).isEqualTo(INITIAL_BALANCE + AMOUNT);
+    }
+
+    @Test
+    public void givenUnknownPayeeOnAnotherNode_whenTryTransferAsync_thenReservationIsGivenBack() {
+        //GIVEN
+        long sentBefore = balanceOf(SettlementAccounts.accountId(0, 1, payerId));
+
+        //WHEN
+        TransferResult result =
+                firstNode.tryTransferAsync(new MoneyTransferRequest(payerId, unknownPayeeId, AMOUNT)).join();
+
+        //THEN
+        assertThat(result).isEqualTo(TransferResult.UNKNOWN_ACCOUNT);
+        assertThat(balanceOf(payerId)).isEqualTo(INITIAL_BALANCE);
+        assertThat(balanceOf(SettlementAccounts.accountId(0, 1, payerId))).isEqualTo(sentBefore);
+    }
+
+    @Test
+    public void givenNotEnoughMoney_whenTryTransferAsync_thenNothingIsCredited() {
+        //WHEN
+        TransferResult result =
+                secondNode.tryTransferAsync(new MoneyTransferRequest(payerId, payeeId, INITIAL_BALANCE + 1)).join();
+
+        //THEN
+        assertThat(result).isEqualTo(TransferResult.NOT_ENOUGH_MONEY);
+        assertThat(balanceOf(payerId)).isEqualTo(INITIAL_BALANCE);
+        assertThat(balanceOf(payeeId)).isEqualTo(INITIAL_BALANCE);
+    }
+
+    @Test
+    public void givenSettlementAccountAsAccountFrom_whenTryTransferAsync_thenTransferIsDeclined() {
+        //GIVEN
+        long settlementAccountId = SettlementAccounts.accountId(0, 1, payerId);
+        long settlementBalanceBefore = balanceOf(settlementAccountId);
+
+        //WHEN
+        TransferResult local = firstNode.tryTransferAsync(
+                new MoneyTransferRequest(settlementAccountId, localPayeeId, AMOUNT)).join();
+        TransferResult forwarded = secondNode.tryTransferAsync(
+                new MoneyTransferRequest(settlementAccountId, payeeId, AMOUNT)).join();
+        TransferResult direct = MoneyTransferService.getInstance()
+                .tryTransfer(settlementAccountId, localPayeeId, AMOUNT);
+
+        //THEN
+        assertThat(local).isEqualTo(TransferResult.UNKNOWN_ACCOUNT);
+        assertThat(forwarded).isEqualTo(TransferResult.UNKNOWN_ACCOUNT);
+        assertThat(direct).isEqualTo(TransferResult.UNKNOWN_ACCOUNT);
+        assertThat(balanceOf(settlementAccountId)).isEqualTo(settlementBalanceBefore);
+        assertThat(balanceOf(localPayeeId)).isEqualTo(INITIAL_BALANCE);
+        assertThat(balanceOf(payeeId)).isEqualTo(INITIAL_BALANCE);
+    }
+
+    @Test
+    public void givenRetriedTransferWithIdempotencyKey_whenForwardedAgain_thenItIsAppliedOnce() {
+        //GIVEN
+        MoneyTransferRequest request = new MoneyTransferRequest(payerId, payeeId, AMOUNT);
+        request.setIdempotencyKey("cluster-retry");
+
+        //WHEN
+        TransferResult first = secondNode.tryTransferAsync(request).join();
+        TransferResult retry = secondNode.tryTransferAsync(request).join();
+
+        //THEN
+        assertThat(first).isEqualTo(TransferResult.OK);
+        assertThat(retry).isEqualTo(TransferResult.OK);
+        assertThat(balanceOf(payerId)).isEqualTo(INITIAL_BALANCE - AMOUNT);
+        assertThat(balanceOf(payeeId)).isEqualTo(INITIAL_BALANCE + AMOUNT);
+    }
+
+    @Test
+    public void givenCreditSentAgainWithSameKey_whenNodeAnswersBoth_thenItIsAppliedOnce() throws IOException {
+        //GIVEN
+        long receivedBefore = balanceOf(SettlementAccounts.accountId(1, 0, payeeId));
+        int credit = ClusterNode.CREDIT | ClusterNode.IDEMPOTENT;
+
+        //WHEN
+        TransferResult first;
+        TransferResult retry;
+        try (PeerConnection connection = new PeerConnection(
+                InetSocketAddress.createUnresolved("localhost", secondNode.getPort()), "test-peer", 5_000L)) {
+            first = connection.send(credit, 0, 0L, payeeId, AMOUNT, 1L, 2L).join();
+            retry = connection.send(credit, 0, 0L, payeeId, AMOUNT, 1L, 2L).join();
+        }
+
+        //THEN
+        assertThat(first).isEqualTo(TransferResult.OK);
+        assertThat(retry).isEqualTo(TransferResult.OK);
+        assertThat(balanceOf(payeeId)).isEqualTo(INITIAL_BALANCE + AMOUNT);
+        assertThat(balanceOf(SettlementAccounts.accountId(1, 0, payeeId))).isEqualTo(receivedBefore - AMOUNT);
+    }
+
+    @Test
+    public void givenNodeNotAnsweringCredit_whenItAnswersAfterRestart_thenReservationIsCreditedOnce()
+            throws Exception {
+        //GIVEN
+        List<InetSocketAddress> nodes = Arrays.asList(
+                InetSocketAddress.createUnresolved("localhost", freePort()),
+                InetSocketAddress.createUnresolved("localhost", freePort()));
+        ClusterTopology localTopology = new ClusterTopology(nodes, 0);
+        ClusterTopology peerTopology = new ClusterTopology(nodes, 1);
+        SettlementAccounts.addMissing(localTopology, ACCOUNTS_REPOSITORY);
+        SettlementAccounts.addMissing(peerTopology, ACCOUNTS_REPOSITORY);
+        long payer = accountOwnedBy(localTopology, 0, FIRST_IN_DOUBT_ACCOUNT_ID);
+        long payee = accountOwnedBy(localTopology, 1, FIRST_IN_DOUBT_ACCOUNT_ID);
+        ACCOUNTS_REPOSITORY.add(new Account(payer, INITIAL_BALANCE));
+        ACCOUNTS_REPOSITORY.add(new Account(payee, INITIAL_BALANCE));
+        Path file = temporaryFolder.getRoot().toPath().resolve("reservations");
+
+        //WHEN
+        TransferResult result;
+        //accepts the connection and never answers
+        try (ServerSocket silentNode = new ServerSocket(nodes.get(1).getPort())) {
+            ClusterNode node = newNode(localTopology, InDoubtReservations.open(file));
+            result = node.tryTransferAsync(new MoneyTransferRequest(payer, payee, AMOUNT)).join();
+            node.close();
+        }
+        InDoubtReservations reservations = InDoubtReservations.open(file);
+        int inDoubtAfterRestart = reservations.inDoubt().size();
+        ClusterNode peer = newNode(peerTopology, InDoubtReservations.inMemory());
+        ClusterNode restarted = newNode(localTopology, reservations);
+        try {
+            long deadline = System.currentTimeMillis() + 10_000L;
+            while (!reservations.inDoubt().isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        } finally {
+            restarted.close();
+            peer.close();
+        }
+
+        //THEN
+        assertThat(result).isEqualTo(TransferResult.OUTCOME_UNKNOWN);
+        assertThat(inDoubtAfterRestart).isEqualTo(1);
+        assertThat(reservations.inDoubt()).isEmpty();
+        assertThat(balanceOf(payer)).isEqualTo(INITIAL_BALANCE - AMOUNT);
+        assertThat(balanceOf(payee)).isEqualTo(INITIAL_BALANCE + AMOUNT);
+    }
+
+    private static ClusterNode newNode(ClusterTopology topology, InDoubtReservations reservations)
+            throws IOException {
+        return new ClusterNode(topology, MoneyTransferService.getInstance(), new IdempotencyCache(16, 60_000L),
+                reservations, REQUEST_TIMEOUT_MILLIS, 1, 2, 1);
+    }
+
+    private static long balanceOf(long accountId) {
+        return ACCOUNTS_REPOSITORY.get(accountId).getBalance();
+    }
+
+    private static long accountOwnedBy(ClusterTopology topology, int node, long fromAccountId) {
+        long accountId = fromAccountId;
+        while (topology.ownerOf(accountId) != node) {
+            accountId++;
+        }
+        return accountId;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package cluster;
+
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ClusterTopologyTest {
+    private static final int ACCOUNTS = 100_000;
+    private static final String FOUR_NODES = "localhost:7101,localhost:7102,localhost:7103,localhost:7104";
+
+    @Test
+    public void givenFourNodes_whenOwnerOf_thenAccountsAreSpreadEvenly() {
+        //GIVEN
+        ClusterTopology topology = new ClusterTopology(ClusterTopology.parse(FOUR_NODES), 0);
+        int[] owned = new int[topology.size()];
+
+        //WHEN
+        for (long accountId = 0; accountId < ACCOUNTS; accountId++) {
+            owned[topology.ownerOf(accountId)]++;
+        }
+
+        //THEN
+        for (int accounts : owned) {
+            assertThat(accounts).isBetween(ACCOUNTS / 4 * 8 / 10, ACCOUNTS / 4 * 12 / 10);
+        }
+    }
+
+    @Test
+    public void givenNodeAdded_whenOwnerOf_thenOnlyAccountsTakenOverByNewNodeMove() {
+        //GIVEN
+        List<InetSocketAddress> nodes = ClusterTopology.parse(FOUR_NODES);
+        ClusterTopology before = new ClusterTopology(nodes, 0);
+        List<InetSocketAddress> moreNodes = new ArrayList<>(nodes);
+        moreNodes.add(InetSocketAddress.createUnresolved("localhost", 7105));
+        ClusterTopology after = new ClusterTopology(moreNodes, 0);
+        int moved = 0;
+
+        //WHEN
+        for (long accountId = 0; accountId < ACCOUNTS; accountId++) {
+            int ownerBefore = before.ownerOf(accountId);
+            int ownerAfter = after.ownerOf(accountId);
+            if (ownerBefore != ownerAfter) {
+                assertThat(ownerAfter).isEqualTo(4);
+                moved++;
+            }
+        }
+
+        //THEN
+        assertThat(moved).isBetween(ACCOUNTS / 5 * 8 / 10, ACCOUNTS / 5 * 12 / 10);
+    }
+
+    @Test
+    public void givenNodesInAnotherOrder_whenOwnerOf_thenAccountsStayWithTheSameAddress() {
+        //GIVEN
+        List<InetSocketAddress> nodes = ClusterTopology.parse(FOUR_NODES);
+        List<InetSocketAddress> reversed = new ArrayList<>(nodes);
+        Collections.reverse(reversed);
+        ClusterTopology topology = new ClusterTopology(nodes, 0);
+        ClusterTopology reversedTopology = new ClusterTopology(reversed, 0);
+
+        //WHEN + THEN
+        for (long accountId = 0; accountId < 1000; accountId++) {
+            assertThat(reversedTopology.addressOf(reversedTopology.ownerOf(accountId)))
+                    .isEqualTo(topology.addressOf(topology.ownerOf(accountId)));
+        }
+    }
+
+    @Test
+    public void givenNodeIndexOutOfList_whenCreate_thenThrowAnException() {
+        //WHEN + THEN
+        assertThatThrownBy(() -> new ClusterTopology(ClusterTopology.parse(FOUR_NODES), 4))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void givenNodeWithoutPort_whenParse_thenThrowAnException() {
+        //WHEN + THEN
+        assertThatThrownBy(() -> ClusterTopology.parse("localhost:7101,localhost"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,100 @@
+package engine;
+
+import model.Account;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ShardedTransferEngineTest {
+    private static final int NUMBER_OF_SHARDS = 4;
+    private static final int NUMBER_OF_ACCOUNTS = 64;
+    private static final int NUMBER_OF_THREADS = 16;
+    private static final int TRANSFERS_PER_THREAD = 20_000;
+    private static final long INITIAL_BALANCE = 1_000L;
+    private final ShardedTransferEngine engine = new ShardedTransferEngine(NUMBER_OF_SHARDS);
+
+    @After
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Test
+    public void givenCreditWhichOverflowsTheBalanceOnAnotherShard_whenTransfer_thenDebitIsGivenBack() {
+        //GIVEN
+        Account accountFrom = new Account(1L, 100L);
+        Account accountTo = accountOnAnotherShard(accountFrom, Long.MAX_VALUE - 10L);
+
+        //WHEN
+        boolean result = engine.transfer(accountFrom, accountTo, 100L);
+
+        //THEN
+        assertThat(result).isFalse();
+        assertThat(accountFrom.getBalance()).isEqualTo(100L);
+        assertThat(accountTo.getBalance()).isEqualTo(Long.MAX_VALUE - 10L);
+    }
+
+    @Test
+    public void givenAccountsOnDifferentShards_whenTransfer_thenMoneyAreTransferred() {
+        //GIVEN
+        Account accountFrom = new Account(1L, 150L);
+        Account accountTo = accountOnAnotherShard(accountFrom, 10L);
+
+        //WHEN
+        boolean result = engine.transfer(accountFrom, accountTo, 100L);
+
+        //THEN
+        assertThat(result).isTrue();
+        assertThat(accountFrom.getBalance()).isEqualTo(50L);
+        assertThat(accountTo.getBalance()).isEqualTo(110L);
+    }
+
+    @Test
+    public void givenManyThreadsMoreThanShards_whenTransfer_thenTotalBalanceIsConserved() throws InterruptedException {
+        //GIVEN
+        Account[] accounts = new Account[NUMBER_OF_ACCOUNTS];
+        for (int i = 0; i < NUMBER_OF_ACCOUNTS; i++) {
+            accounts[i] = new Account(i, INITIAL_BALANCE);
+        }
+        CountDownLatch done = new CountDownLatch(NUMBER_OF_THREADS);
+
+        //WHEN
+        for (int t = 0; t < NUMBER_OF_THREADS; t++) {
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                    int from = random.nextInt(NUMBER_OF_ACCOUNTS);
+                    int to = (from + 1 + random.nextInt(NUMBER_OF_ACCOUNTS - 1)) % NUMBER_OF_ACCOUNTS;
+                    engine.transfer(accounts[from], accounts[to], random.nextInt(100));
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+
+        //THEN
+        long total = 0;
+        for (Account account : accounts) {
+            assertThat(account.getBalance()).isGreaterThanOrEqualTo(0L);
+            total += account.getBalance();
+        }
+        assertThat(total).isEqualTo(NUMBER_OF_ACCOUNTS * INITIAL_BALANCE);
+    }
+
+    @Test
+    public void givenZeroShards_whenCreate_thenThrowAnException() {
+        assertThatThrownBy(() -> new ShardedTransferEngine(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private Account accountOnAnotherShard(Account account, long initialBalance) {
+        long accountId = account.getAccountId() + 1;
+        while (engine.shardIndex(accountId) == engine.shardIndex(account.getAccountId())) {
+            accountId++;
+        }
+        return new Account(accountId, initialBalance);
+    }
+}
@@ -0,0 +1,190 @@
+package history;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TransferHistoryTest {
+    private static final long ACCOUNT_ID = 1L;
+    private static final long OTHER_ACCOUNT_ID = 2L;
+    private static final long THIRD_ACCOUNT_ID = 3L;
+    private static final long FROM_THE_BEGINNING = 0L;
+    private static final long TILL_THE_END = Long.MAX_VALUE;
+    private static final int LIMIT = 10;
+
+    @Test
+    public void givenTransfers_whenRead_thenTransfersOfTheAccountAreReturnedNewestFirst() {
+        //GIVEN
+        TransferHistory history = new TransferHistory(16);
+        history.append(ACCOUNT_ID, OTHER_ACCOUNT_ID, 10L);
+        history.append(OTHER_ACCOUNT_ID, THIRD_ACCOUNT_ID, 20L);
+        history.append(THIRD_ACCOUNT_ID, ACCOUNT_ID, 30L);
+
+        //WHEN
+        List<Long> amounts = new ArrayList<>();
+        long next = read(history, ACCOUNT_ID, TransferHistory.NO_MORE_RECORDS, LIMIT, amounts);
+
+        //THEN
+        assertThat(amounts).containsExactly(30L, 10L);
+        assertThat(next).isEqualTo(TransferHistory.NO_MORE_RECORDS);
+    }
+
+    @Test
+    public void givenMoreTransfersThanLimit_whenReadWithCursor_thenNextPageIsReturned() {
+        //GIVEN
+        TransferHistory history = new TransferHistory(16);
+        for (long amount = 1; amount <= 5; amount++) {
+            history.append(ACCOUNT_ID, OTHER_ACCOUNT_ID, amount);
+            history.append(OTHER_ACCOUNT_ID, THIRD_ACCOUNT_ID, amount);
+        }
+
+        //WHEN
+        List<Long> firstPage = new ArrayList<>();
+        long cursor = read(history, ACCOUNT_ID, TransferHistory.NO_MORE_RECORDS, 3, firstPage);
+        List<Long> secondPage = new ArrayList<>();
+        long next = read(history, ACCOUNT_ID, cursor, 3, secondPage);
+
+        //THEN
+        assertThat(firstPage).containsExactly(5L, 4L, 3L);
+        assertThat(secondPage).containsExactly(2L, 1L);
+        assertThat(next).isEqualTo(TransferHistory.NO_MORE_RECORDS);
+    }
+
+    @Test
+    public void givenTimeRange_whenRead_thenOnlyTransfersInTheRangeAreReturned() throws Exception {
+        //GIVEN
+        TransferHistory history = new TransferHistory(16);
+        history.append(ACCOUNT_ID, OTHER_ACCOUNT_ID, 10L);
+        Thread.sleep(5);
+        long from = System.currentTimeMillis();
+        history.append(ACCOUNT_ID, OTHER_ACCOUNT_ID, 20L);
+        long to = System.currentTimeMillis() + 1;
+        Thread.sleep(5);
+        history.append(ACCOUNT_ID, OTHER_ACCOUNT_ID, 30L);
+
+        //WHEN
+        List<Long> amounts = new ArrayList<>();
+        history.read(ACCOUNT_ID, from, to, TransferHistory.NO_MORE_RECORDS, LIMIT,
+                (timestamp, accountFromId, accountToId, amount) -> amounts.add(amount));
+
+        //THEN
+        assertThat(amounts).containsExactly(20L);
+    }
+
+    @Test
+    public void givenHistoryWhichWrappedAround_whenRead_thenOverwrittenTransfersAreNotReturned() {
+        //GIVEN
+        TransferHistory history = new TransferHistory(4);
+        history.append(ACCOUNT_ID, OTHER_ACCOUNT_ID, 1L);
+        history.append(ACCOUNT_ID, OTHER_ACCOUNT_ID, 2L);
+        for (long amount = 3; amount <= 5; amount++) {
+            history.append(OTHER_ACCOUNT_ID, THIRD_ACCOUNT_ID, amount);
+        }
+
+        //WHEN
+        List<Long> amounts = new ArrayList<>();
+        long next = read(history, ACCOUNT_ID, TransferHistory.NO_MORE_RECORDS, LIMIT, amounts);
+
+        //THEN
+        assertThat(amounts).containsExactly(2L);
+        assertThat(next).isEqualTo(TransferHistory.TRUNCATED);
+    }
+
+    @Test
+    public void givenHistoryStartedAfterRestart_whenReadBackBeforeIt_thenItIsTruncated() {
+        //GIVEN
+        TransferHistory history = new TransferHistory(16);
+        long restartedAt = System.currentTimeMillis();
+        history.startAfterRestart(restartedAt);
+        history.append(ACCOUNT_ID, OTHER_ACCOUNT_ID, 10L);
+
+        //WHEN
+        List<Long> amounts = new ArrayList<>();
+        long all = read(history, ACCOUNT_ID, TransferHistory.NO_MORE_RECORDS, LIMIT, amounts);
+        long sinceRestart = history.read(ACCOUNT_ID, restartedAt, TILL_THE_END, TransferHistory.NO_MORE_RECORDS,
+                LIMIT, (timestamp, accountFromId, accountToId, amount) -> { });
+
+        //THEN
+        assertThat(amounts).containsExactly(10L);
+        assertThat(all).isEqualTo(TransferHistory.TRUNCATED);
+        assertThat(sinceRestart).isEqualTo(TransferHistory.NO_MORE_RECORDS);
+    }
+
+    @Test
+    public void givenCursorOfAnotherAccount_whenRead_thenThrowsAnException() {
+        //GIVEN
+        TransferHistory history = new TransferHistory(16);
+        history.append(OTHER_ACCOUNT_ID, THIRD_ACCOUNT_ID, 10L);
+        history.append(ACCOUNT_ID, OTHER_ACCOUNT_ID, 20L);
+
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> read(history, ACCOUNT_ID, 0L, LIMIT, new ArrayList<>()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Cursor 0 doesn't belong to the account 1");
+        assertThatThrownBy(() -> read(history, ACCOUNT_ID, 2L, LIMIT, new ArrayList<>()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Cursor 2 is not valid");
+    }
+
+    @Test
+    public void givenCapacityWhichIsNotPowerOfTwo_whenCreate_thenThrowsAnException() {
+        //WHEN
+        //THEN
+        assertThatThrownBy(() -> new TransferHistory(10))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("History capacity should be a power of two, actual was 10");
+    }
+
+    @Test
+    public void givenConcurrentAppends_whenRead_thenEveryTransferOfTheAccountIsReturned() throws Exception {
+        //GIVEN
+        int threads = 4;
+        int transfersPerThread = 10_000;
+        TransferHistory history = new TransferHistory(1 << 17);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int thread = 0; thread < threads; thread++) {
+            long accountToId = 100 + thread;
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < transfersPerThread; i++) {
+                    history.append(ACCOUNT_ID, accountToId, 1L);
+                }
+            });
+        }
+
+        //WHEN
+        start.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        //THEN
+        List<Long> amounts = new ArrayList<>();
+        long cursor = TransferHistory.NO_MORE_RECORDS;
+        do {
+            cursor = read(history, ACCOUNT_ID, cursor, 1000, amounts);
+        } while (cursor != TransferHistory.NO_MORE_RECORDS);
+        assertThat(amounts).hasSize(threads * transfersPerThread);
+        List<Long> toAccount = new ArrayList<>();
+        read(history, 100L, TransferHistory.NO_MORE_RECORDS, transfersPerThread + 1, toAccount);
+        assertThat(toAccount).hasSize(transfersPerThread);
+    }
+
+    private static long read(TransferHistory history, long accountId, long cursor, int limit, List<Long> amounts) {
+        return history.read(accountId, FROM_THE_BEGINNING, TILL_THE_END, cursor, limit,
+                (timestamp, accountFromId, accountToId, amount) -> amounts.add(amount));
+    }
+}
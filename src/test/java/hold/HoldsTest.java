@@ -0,0 +1,68 @@
+package hold;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HoldsTest {
+    private static final long TICK_MILLIS = 100L;
+    private static final long NOW = 1_539_856_800_000L;
+    private static final long ACCOUNT_ID = 1L;
+    private static final long AMOUNT = 100L;
+
+    @Test
+    public void givenHold_whenRemove_thenItIsNotActiveAnymore() {
+        //GIVEN
+        Holds holds = new Holds(TICK_MILLIS, NOW);
+        long holdId = holds.add(ACCOUNT_ID, AMOUNT, NOW + 1_000L);
+
+        //WHEN
+        boolean removed = holds.remove(holdId);
+
+        //THEN
+        assertThat(removed).isTrue();
+        assertThat(holds.remove(holdId)).isFalse();
+        assertThat(holds.amountOf(holdId)).isEqualTo(Holds.NO_HOLD);
+        assertThat(holds.size()).isZero();
+    }
+
+    @Test
+    public void givenHolds_whenRemoveExpired_thenOnlyExpiredHoldsArePassedToTheVisitor() {
+        //GIVEN
+        Holds holds = new Holds(TICK_MILLIS, NOW);
+        long expiringHoldId = holds.add(ACCOUNT_ID, AMOUNT, NOW + 1_000L);
+        long activeHoldId = holds.add(ACCOUNT_ID, AMOUNT * 2, NOW + 60_000L);
+        List<Long> expiredAmounts = new ArrayList<>();
+
+        //WHEN
+        int expired = holds.removeExpired(NOW + 1_000L, (accountId, amount) -> expiredAmounts.add(amount));
+
+        //THEN
+        assertThat(expired).isEqualTo(1);
+        assertThat(expiredAmounts).containsExactly(AMOUNT);
+        assertThat(holds.amountOf(expiringHoldId)).isEqualTo(Holds.NO_HOLD);
+        assertThat(holds.amountOf(activeHoldId)).isEqualTo(AMOUNT * 2);
+        assertThat(holds.accountOf(activeHoldId)).isEqualTo(ACCOUNT_ID);
+    }
+
+    @Test
+    public void givenMoreExpiredHoldsThanPolledUnderOneLock_whenRemoveExpired_thenAllOfThemAreRemoved() {
+        //GIVEN
+        Holds holds = new Holds(TICK_MILLIS, NOW);
+        for (int i = 0; i < 5_000; i++) {
+            holds.add(ACCOUNT_ID, AMOUNT, NOW + i);
+        }
+        long[] total = {0};
+
+        //WHEN
+        int expired = holds.removeExpired(NOW + 10_000L, (accountId, amount) -> total[0] += amount);
+
+        //THEN
+        assertThat(expired).isEqualTo(5_000);
+        assertThat(total[0]).isEqualTo(5_000 * AMOUNT);
+        assertThat(holds.size()).isZero();
+    }
+}
@@ -0,0 +1,153 @@
+package idempotency;
+
+import model.TransferResult;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class IdempotencyCacheTest {
+    private static final int CAPACITY = 16;
+    private static final long TTL_MILLIS = 1000L;
+    private static final long KEY_HIGH = 7L;
+    private static final long KEY_LOW = 11L;
+    private static final long FINGERPRINT = IdempotencyCache.fingerprint(1L, 2L, 100L);
+    private static final long ANOTHER_FINGERPRINT = IdempotencyCache.fingerprint(1L, 2L, 200L);
+    private final AtomicLong clock = new AtomicLong(1_000_000L);
+    private final IdempotencyCache cache = new IdempotencyCache(CAPACITY, TTL_MILLIS, clock::get);
+
+    @Test
+    public void givenNewKey_whenBegin_thenTransferShouldRun() {
+        //WHEN
+        TransferResult stored = cache.begin(KEY_HIGH, KEY_LOW, FINGERPRINT);
+
+        //THEN
+        assertThat(stored).isNull();
+    }
+
+    @Test
+    public void givenKeyBegunButNotCompleted_whenBegin_thenInProgressIsReturned() {
+        //GIVEN
+        cache.begin(KEY_HIGH, KEY_LOW, FINGERPRINT);
+
+        //WHEN
+        TransferResult stored = cache.begin(KEY_HIGH, KEY_LOW, FINGERPRINT);
+
+        //THEN
+        assertThat(stored).isEqualTo(TransferResult.IN_PROGRESS);
+    }
+
+    @Test
+    public void givenCompletedKey_whenBegin_thenStoredResultIsReturned() {
+        //GIVEN
+        cache.begin(KEY_HIGH, KEY_LOW, FINGERPRINT);
+        cache.complete(KEY_HIGH, KEY_LOW, TransferResult.NOT_ENOUGH_MONEY);
+
+        //WHEN
+        TransferResult stored = cache.begin(KEY_HIGH, KEY_LOW, FINGERPRINT);
+
+        //THEN
+        assertThat(stored).isEqualTo(TransferResult.NOT_ENOUGH_MONEY);
+    }
+
+    @Test
+    public void givenCompletedKey_whenBeginWithAnotherTransfer_thenKeyReusedIsReturned() {
+        //GIVEN
+        cache.begin(KEY_HIGH, KEY_LOW, FINGERPRINT);
+        cache.complete(KEY_HIGH, KEY_LOW, TransferResult.OK);
+
+        //WHEN
+        TransferResult stored = cache.begin(KEY_HIGH, KEY_LOW, ANOTHER_FINGERPRINT);
+
+        //THEN
+        assertThat(stored).isEqualTo(TransferResult.IDEMPOTENCY_KEY_REUSED);
+    }
+
+    @Test
+    public void givenExpiredKey_whenBegin_thenTransferShouldRunAgain() {
+        //GIVEN
+        cache.begin(KEY_HIGH, KEY_LOW, FINGERPRINT);
+        cache.complete(KEY_HIGH, KEY_LOW, TransferResult.OK);
+        clock.addAndGet(TTL_MILLIS);
+
+        //WHEN
+        TransferResult stored = cache.begin(KEY_HIGH, KEY_LOW, FINGERPRINT);
+
+        //THEN
+        assertThat(stored).isNull();
+    }
+
+    @Test
+    public void givenAbandonedKey_whenBegin_thenTransferShouldRunAgain() {
+        //GIVEN
+        cache.begin(KEY_HIGH, KEY_LOW, FINGERPRINT);
+        cache.abandon(KEY_HIGH, KEY_LOW);
+
+        //WHEN
+        TransferResult stored = cache.begin(KEY_HIGH, KEY_LOW, FINGERPRINT);
+
+        //THEN
+        assertThat(stored).isNull();
+    }
+
+    @Test
+    public void givenFullBucket_whenBeginNewKey_thenEntryExpiringFirstIsEvictedAndInProgressIsKept() {
+        //GIVEN
+        //keys which differ only in the low half of the low long share a bucket
+        cache.begin(KEY_HIGH, 0L, FINGERPRINT);
+        for (long low = 1; low < IdempotencyCache.WAYS; low++) {
+            clock.incrementAndGet();
+            cache.begin(KEY_HIGH, low, FINGERPRINT);
+            cache.complete(KEY_HIGH, low, TransferResult.OK);
+        }
+
+        //WHEN
+        TransferResult stored = cache.begin(KEY_HIGH, IdempotencyCache.WAYS, FINGERPRINT);
+
+        //THEN
+        assertThat(stored).isNull();
+        assertThat(cache.begin(KEY_HIGH, 0L, FINGERPRINT)).isEqualTo(TransferResult.IN_PROGRESS);
+        assertThat(cache.begin(KEY_HIGH, 2L, FINGERPRINT)).isEqualTo(TransferResult.OK);
+        assertThat(cache.begin(KEY_HIGH, 1L, ANOTHER_FINGERPRINT)).isNull();
+    }
+
+    @Test
+    public void givenFullBucketOfLiveAndExpiredKeys_whenBeginNewKeys_thenOnlyLiveKeysPushedOutAreCounted() {
+        //GIVEN
+        for (long low = 0; low < IdempotencyCache.WAYS; low++) {
+            cache.begin(KEY_HIGH, low, FINGERPRINT);
+            cache.complete(KEY_HIGH, low, TransferResult.OK);
+        }
+        clock.addAndGet(TTL_MILLIS);
+        cache.begin(KEY_HIGH, IdempotencyCache.WAYS, FINGERPRINT);
+        long evictedExpired = cache.getEvictedBeforeExpiry();
+        for (long low = 1; low < IdempotencyCache.WAYS; low++) {
+            cache.begin(KEY_HIGH, IdempotencyCache.WAYS + low, FINGERPRINT);
+        }
+
+        //WHEN
+        cache.begin(KEY_HIGH, 2L * IdempotencyCache.WAYS, FINGERPRINT);
+
+        //THEN
+        assertThat(evictedExpired).isZero();
+        assertThat(cache.getEvictedBeforeExpiry()).isEqualTo(1L);
+    }
+
+    @Test
+    public void givenKeyRateAndTimeToLive_whenCapacityFor_thenKeysOfOneTimeToLiveFitWithRoomToSpare() {
+        //WHEN + THEN
+        assertThat(IdempotencyCache.capacityFor(1000L, 3600L)).isEqualTo(1 << 23);
+        assertThat(IdempotencyCache.capacityFor(10_000L, 3600L)).isEqualTo(1 << 26);
+        assertThat(IdempotencyCache.capacityFor(1L, 1L)).isEqualTo(IdempotencyCache.WAYS);
+        assertThat(IdempotencyCache.capacityFor(1_000_000L, 3600L)).isEqualTo(IdempotencyCache.MAX_CAPACITY);
+    }
+
+    @Test
+    public void givenCapacityNotPowerOfTwo_whenCreate_thenThrowAnException() {
+        //WHEN + THEN
+        assertThatThrownBy(() -> new IdempotencyCache(CAPACITY + 1, TTL_MILLIS))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,223 @@
+package journal;
+
+import model.Account;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import repository.AccountsRepository;
+import repository.LongOpenHashAccountStore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FileTransferJournalTest {
+    private static final int NUMBER_OF_THREADS = 8;
+    private static final int TRANSFERS_PER_THREAD = 1000;
+    @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void givenAppendedTransfers_whenAwaitDurable_thenTransfersAreInTheFile() throws IOException {
+        //GIVEN
+        Path file = journalFile();
+        try (FileTransferJournal journal = FileTransferJournal.open(file)) {
+            journal.append(1L, 2L, 100L);
+
+            //WHEN
+            journal.awaitDurable(journal.append(2L, 1L, 10L));
+
+            //THEN
+            assertThat(journal.getDurableSequence()).isEqualTo(2L);
+            assertThat(Files.size(file)).isEqualTo(2L * FileTransferJournal.RECORD_SIZE);
+        }
+    }
+
+    @Test
+    public void givenAppendedTransfer_whenWhenDurable_thenFutureIsCompletedOnceTransferIsInTheFile() throws Exception {
+        //GIVEN
+        Path file = journalFile();
+        try (FileTransferJournal journal = FileTransferJournal.open(file)) {
+            long sequence = journal.append(1L, 2L, 100L);
+
+            //WHEN
+            journal.whenDurable(sequence).get(10, TimeUnit.SECONDS);
+
+            //THEN
+            assertThat(journal.getDurableSequence()).isGreaterThanOrEqualTo(sequence);
+            assertThat(Files.size(file)).isEqualTo(FileTransferJournal.RECORD_SIZE);
+        }
+    }
+
+    @Test
+    public void givenClosedJournal_whenWhenDurable_thenFutureIsFailed() throws IOException {
+        //GIVEN
+        FileTransferJournal journal = FileTransferJournal.open(journalFile());
+        journal.close();
+
+        //WHEN
+        CompletableFuture<Void> future = journal.whenDurable(1L);
+
+        //THEN
+        assertThat(future).isCompletedExceptionally();
+    }
+
+    @Test
+    public void givenJournal_whenReplay_thenTransfersAreAppliedToAccounts() throws IOException {
+        //GIVEN
+        Path file = journalFile();
+        try (FileTransferJournal journal = FileTransferJournal.open(file)) {
+            journal.append(1L, 2L, 100L);
+            journal.awaitDurable(journal.append(2L, 1L, 10L));
+        }
+        AccountsRepository accountsRepository = createAccountsRepository();
+
+        //WHEN
+        long lastSequence = FileTransferJournal.replay(file, accountsRepository);
+
+        //THEN
+        assertThat(lastSequence).isEqualTo(2L);
+        assertThat(accountsRepository.get(1L).getBalance()).isEqualTo(60L);
+        assertThat(accountsRepository.get(2L).getBalance()).isEqualTo(100L);
+    }
+
+    @Test
+    public void givenAddedAccountsInJournal_whenReplay_thenAccountsAreAddedBeforeTheirTransfers() throws IOException {
+        //GIVEN
+        Path file = journalFile();
+        try (FileTransferJournal journal = FileTransferJournal.open(file)) {
+            journal.appendAccount(1L, 150L);
+            journal.appendAccount(2L, 10L);
+            journal.awaitDurable(journal.append(1L, 2L, 100L));
+        }
+        AccountsRepository accountsRepository = new AccountsRepository(new LongOpenHashAccountStore(16));
+
+        //WHEN
+        long lastSequence = FileTransferJournal.replay(file, accountsRepository);
+
+        //THEN
+        assertThat(lastSequence).isEqualTo(3L);
+        assertThat(accountsRepository.get(1L).getBalance()).isEqualTo(50L);
+        assertThat(accountsRepository.get(2L).getBalance()).isEqualTo(110L);
+        assertThat(accountsRepository.getMoneySupply()).isEqualTo(160L);
+    }
+
+    @Test
+    public void givenTornRecordAtTheEnd_whenOpen_thenItIsCutOffAndSequenceContinues() throws IOException {
+        //GIVEN
+        Path file = journalFile();
+        try (FileTransferJournal journal = FileTransferJournal.open(file)) {
+            journal.awaitDurable(journal.append(1L, 2L, 100L));
+        }
+        try (FileChannel channel = FileChannel.open(file, APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 0, 0, 0, 0, 2, 0, 0}));
+        }
+
+        //WHEN
+        try (FileTransferJournal journal = FileTransferJournal.open(file)) {
+            //THEN
+            assertThat(journal.append(2L, 1L, 10L)).isEqualTo(2L);
+            journal.awaitDurable(2L);
+        }
+        assertThat(Files.size(file)).isEqualTo(2L * FileTransferJournal.RECORD_SIZE);
+    }
+
+    @Test
+    public void givenKnownSequence_whenOpen_thenOnlyTheTailIsReadAndSequenceContinues() throws IOException {
+        //GIVEN
+        Path file = journalFile();
+        try (FileTransferJournal journal = FileTransferJournal.open(file)) {
+            journal.append(1L, 2L, 100L);
+            journal.append(2L, 1L, 10L);
+            journal.awaitDurable(journal.append(1L, 2L, 5L));
+        }
+        try (FileChannel channel = FileChannel.open(file, APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 0, 0, 0, 0, 4, 0, 0}));
+        }
+
+        //WHEN
+        try (FileTransferJournal journal = FileTransferJournal.open(file, 2L)) {
+            //THEN
+            assertThat(journal.getLastSequence()).isEqualTo(3L);
+            journal.awaitDurable(journal.append(2L, 1L, 1L));
+        }
+        assertThat(Files.size(file)).isEqualTo(4L * FileTransferJournal.RECORD_SIZE);
+        assertThat(FileTransferJournal.replay(file, createAccountsRepository())).isEqualTo(4L);
+    }
+
+    @Test
+    public void givenManyConcurrentWriters_whenAppend_thenEveryTransferIsDurableOnceAcknowledged()
+            throws IOException, InterruptedException {
+        //GIVEN
+        Path file = journalFile();
+        CountDownLatch endLatch = new CountDownLatch(NUMBER_OF_THREADS);
+        try (FileTransferJournal journal = FileTransferJournal.open(file)) {
+            for (int i = 0; i < NUMBER_OF_THREADS; i++) {
+                new Thread(() -> {
+                    try {
+                        for (int j = 0; j < TRANSFERS_PER_THREAD; j++) {
+                            long sequence = journal.append(1L, 2L, 1L);
+                            journal.awaitDurable(sequence);
+                            assertThat(journal.getDurableSequence()).isGreaterThanOrEqualTo(sequence);
+                        }
+                    } finally {
+                        endLatch.countDown();
+                    }
+                }).start();
+            }
+
+            //WHEN
+            endLatch.await();
+        }
+        AccountsRepository accountsRepository = createAccountsRepository();
+
+        //THEN
+        assertThat(FileTransferJournal.replay(file, accountsRepository))
+                .isEqualTo(NUMBER_OF_THREADS * TRANSFERS_PER_THREAD);
+        assertThat(accountsRepository.get(2L).getBalance()).isEqualTo(10L + NUMBER_OF_THREADS * TRANSFERS_PER_THREAD);
+    }
+
+    @Test
+    public void givenClosedJournal_whenAppend_thenThrowAnException() throws IOException {
+        //GIVEN
+        FileTransferJournal journal = FileTransferJournal.open(journalFile());
+
+        //WHEN
+        journal.close();
+
+        //THEN
+        assertThatThrownBy(() -> journal.append(1L, 2L, 1L)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void givenTransferOfUnknownAccount_whenReplay_thenThrowAnException() throws IOException {
+        //GIVEN
+        Path file = journalFile();
+        try (FileTransferJournal journal = FileTransferJournal.open(file)) {
+            journal.awaitDurable(journal.append(1L, 3L, 1L));
+        }
+
+        //WHEN + THEN
+        assertThatThrownBy(() -> FileTransferJournal.replay(file, createAccountsRepository()))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    private Path journalFile() {
+        return temporaryFolder.getRoot().toPath().resolve("transfers.journal");
+    }
+
+    private static AccountsRepository createAccountsRepository() {
+        AccountsRepository accountsRepository = new AccountsRepository(new LongOpenHashAccountStore(16));
+        accountsRepository.add(new Account(1L, 150L));
+        accountsRepository.add(new Account(2L, 10L));
+        return accountsRepository;
+    }
+}
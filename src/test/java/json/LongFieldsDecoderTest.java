@@ -0,0 +1,32 @@
+package json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class LongFieldsDecoderTest {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    @Test
+    public void givenFieldsInAnyOrder_whenDecode_thenValuesAreReturnedInTheOrderOfNames() throws Exception {
+        //WHEN
+        long[] fields = LongFieldsDecoder.decode(JSON_FACTORY.createParser("{\"amount\":100,\"holdId\":42}"),
+                "holdId", "amount");
+
+        //THEN
+        assertThat(fields).containsExactly(42L, 100L);
+    }
+
+    @Test
+    public void givenUnknownOrNotIntegerField_whenDecode_thenExceptionIsThrown() {
+        //WHEN + THEN
+        assertThatThrownBy(() -> LongFieldsDecoder.decode(JSON_FACTORY.createParser("{\"id\":42}"), "holdId"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Unknown field id");
+        assertThatThrownBy(() -> LongFieldsDecoder.decode(JSON_FACTORY.createParser("{\"holdId\":\"42\"}"), "holdId"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Field holdId should be an integer number");
+    }
+}
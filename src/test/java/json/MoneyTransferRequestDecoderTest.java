@@ -0,0 +1,104 @@
+package json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MoneyTransferRequestDecoderTest {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    @Test
+    public void givenTransferJson_whenDecode_thenAllFieldsAreRead() throws IOException {
+        //GIVEN
+        JsonParser parser = JSON_FACTORY.createParser("{\"amount\":100,\"accountToId\":2,\"accountFromId\":1}");
+
+        //WHEN
+        MoneyTransferRequest request = MoneyTransferRequestDecoder.decode(parser, new MoneyTransferRequest());
+
+        //THEN
+        assertThat(request.getAccountFromId()).isEqualTo(1L);
+        assertThat(request.getAccountToId()).isEqualTo(2L);
+        assertThat(request.getAmount()).isEqualTo(100L);
+    }
+
+    @Test
+    public void givenReusedTargetAndAbsentField_whenDecode_thenAbsentFieldIsZero() throws IOException {
+        //GIVEN
+        MoneyTransferRequest target = new MoneyTransferRequest(1L, 2L, 100L);
+        JsonParser parser = JSON_FACTORY.createParser("{\"accountFromId\":3,\"accountToId\":4}");
+
+        //WHEN
+        MoneyTransferRequest request = MoneyTransferRequestDecoder.decode(parser, target);
+
+        //THEN
+        assertThat(request).isSameAs(target);
+        assertThat(request.getAccountFromId()).isEqualTo(3L);
+        assertThat(request.getAccountToId()).isEqualTo(4L);
+        assertThat(request.getAmount()).isEqualTo(0L);
+    }
+
+    @Test
+    public void givenUnknownField_whenDecode_thenThrowAnException() throws IOException {
+        //GIVEN
+        JsonParser parser = JSON_FACTORY.createParser("{\"accountFromId\":1,\"currency\":2}");
+
+        //WHEN + THEN
+        assertThatThrownBy(() -> MoneyTransferRequestDecoder.decode(parser, new MoneyTransferRequest()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void givenNotNumericField_whenDecode_thenThrowAnException() throws IOException {
+        //GIVEN
+        JsonParser parser = JSON_FACTORY.createParser("{\"accountFromId\":\"1\"}");
+
+        //WHEN + THEN
+        assertThatThrownBy(() -> MoneyTransferRequestDecoder.decode(parser, new MoneyTransferRequest()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void givenIdempotencyKey_whenDecode_thenKeyIsHashedAsByTheSetter() throws IOException {
+        //GIVEN
+        MoneyTransferRequest expected = new MoneyTransferRequest();
+        expected.setIdempotencyKey("key-1");
+        JsonParser parser = JSON_FACTORY.createParser("{\"accountFromId\":1,\"idempotencyKey\":\"key-1\"}");
+
+        //WHEN
+        MoneyTransferRequest request = MoneyTransferRequestDecoder.decode(parser, new MoneyTransferRequest());
+
+        //THEN
+        assertThat(request.hasIdempotencyKey()).isTrue();
+        assertThat(request.idempotencyKeyHigh()).isEqualTo(expected.idempotencyKeyHigh());
+        assertThat(request.idempotencyKeyLow()).isEqualTo(expected.idempotencyKeyLow());
+    }
+
+    @Test
+    public void givenReusedTargetWithIdempotencyKeyAndAbsentKey_whenDecode_thenKeyIsCleared() throws IOException {
+        //GIVEN
+        MoneyTransferRequest target = new MoneyTransferRequest();
+        target.setIdempotencyKey("key-1");
+        JsonParser parser = JSON_FACTORY.createParser("{\"accountFromId\":1}");
+
+        //WHEN
+        MoneyTransferRequest request = MoneyTransferRequestDecoder.decode(parser, target);
+
+        //THEN
+        assertThat(request.hasIdempotencyKey()).isFalse();
+    }
+
+    @Test
+    public void givenEmptyIdempotencyKey_whenDecode_thenThrowAnException() throws IOException {
+        //GIVEN
+        JsonParser parser = JSON_FACTORY.createParser("{\"idempotencyKey\":\"\"}");
+
+        //WHEN + THEN
+        assertThatThrownBy(() -> MoneyTransferRequestDecoder.decode(parser, new MoneyTransferRequest()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
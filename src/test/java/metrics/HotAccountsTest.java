@@ -0,0 +1,28 @@
+package metrics;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HotAccountsTest {
+    private static final long HOT_ACCOUNT_ID = 42L;
+
+    @Test
+    public void givenOneAccountInEveryThirdTransfer_whenTop_thenItIsTheFirst() {
+        //GIVEN
+        HotAccounts hotAccounts = new HotAccounts(16);
+        for (long accountId = 0; accountId < 100_000; accountId++) {
+            hotAccounts.count(accountId % 3 == 0 ? HOT_ACCOUNT_ID : accountId);
+        }
+
+        //WHEN
+        List<long[]> top = hotAccounts.top(3);
+
+        //THEN
+        assertThat(top).hasSize(3);
+        assertThat(top.get(0)[0]).isEqualTo(HOT_ACCOUNT_ID);
+        assertThat(top.get(0)[1]).isGreaterThanOrEqualTo(33_334L * HotAccounts.SAMPLE_RATE);
+    }
+}
@@ -0,0 +1,80 @@
+package metrics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LatencyHistogramTest {
+    private static final double MAX_RELATIVE_ERROR = 1.0 / 32;
+
+    @Test
+    public void givenValuesFromOneToMillion_whenValueAtQuantile_thenValueIsWithinPrecision() {
+        //GIVEN
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1_000_000; value++) {
+            histogram.record(value);
+        }
+
+        //WHEN
+        long median = LatencyHistogram.valueAtQuantile(histogram.counts(), 0.5);
+        long p99 = LatencyHistogram.valueAtQuantile(histogram.counts(), 0.99);
+
+        //THEN
+        assertThat((double) median).isBetween(500_000 * (1 - MAX_RELATIVE_ERROR), 500_000 * (1 + MAX_RELATIVE_ERROR));
+        assertThat((double) p99).isBetween(990_000 * (1 - MAX_RELATIVE_ERROR), 990_000 * (1 + MAX_RELATIVE_ERROR));
+        assertThat(histogram.getSum()).isEqualTo(1_000_000L * 1_000_001L / 2);
+    }
+
+    @Test
+    public void givenValuesRecordedByManyThreads_whenCounts_thenEveryValueIsCountedOnce() throws Exception {
+        //GIVEN
+        LatencyHistogram histogram = new LatencyHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> {
+                for (int value = 0; value < 10_000; value++) {
+                    histogram.record(1_000);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        //WHEN
+        long[] counts = histogram.counts();
+
+        //THEN
+        assertThat(counts[LatencyHistogram.bucketOf(1_000)]).isEqualTo(80_000L);
+        assertThat(LatencyHistogram.valueAtQuantile(counts, 0.5))
+                .isEqualTo(LatencyHistogram.highestValueOf(LatencyHistogram.bucketOf(1_000)));
+    }
+
+    @Test
+    public void givenAnyValue_whenBucketOf_thenValueIsWithinItsBucket() {
+        for (long value : new long[] {0, 1, 31, 32, 33, 63, 64, 65, 1000, 123_456_789L, Long.MAX_VALUE}) {
+            //WHEN
+            int bucket = LatencyHistogram.bucketOf(value);
+
+            //THEN
+            assertThat(LatencyHistogram.highestValueOf(bucket)).isGreaterThanOrEqualTo(value);
+            if (bucket > 0) {
+                assertThat(LatencyHistogram.highestValueOf(bucket - 1)).isLessThan(value);
+            }
+        }
+    }
+
+    @Test
+    public void givenNothingRecorded_whenValueAtQuantile_thenZero() {
+        //GIVEN
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        //WHEN + THEN
+        assertThat(LatencyHistogram.valueAtQuantile(histogram.counts(), 0.99)).isEqualTo(0L);
+    }
+}
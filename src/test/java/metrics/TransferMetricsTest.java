@@ -0,0 +1,91 @@
+package metrics;
+
+import model.TransferResult;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TransferMetricsTest {
+
+    @Test
+    public void givenRecordedStagesAndResults_whenWritePrometheus_thenTheyAreInTheOutput() throws IOException {
+        //GIVEN
+        TransferMetrics transferMetrics = new TransferMetrics();
+        transferMetrics.record(TransferMetrics.Stage.APPLY, 2_047);
+        transferMetrics.recordResult(TransferResult.NOT_ENOUGH_MONEY);
+        transferMetrics.recordResult(TransferResult.NOT_ENOUGH_MONEY);
+        StringBuilder out = new StringBuilder();
+
+        //WHEN
+        transferMetrics.writePrometheus(out);
+
+        //THEN
+        assertThat(out.toString())
+                .contains("# TYPE money_transfer_stage_seconds summary\n")
+                .contains("money_transfer_stage_seconds{stage=\"apply\",quantile=\"0.99\"} 2.047E-6\n")
+                .contains("money_transfer_stage_seconds_count{stage=\"apply\"} 1\n")
+                .contains("money_transfer_stage_seconds_count{stage=\"parse\"} 0\n")
+                .contains("money_transfer_results_total{result=\"NOT_ENOUGH_MONEY\"} 2\n");
+    }
+
+    @Test
+    public void givenPreviousScrape_whenWritePrometheus_thenQuantilesStillCoverItsValues() throws IOException {
+        //GIVEN
+        TransferMetrics transferMetrics = new TransferMetrics(() -> 0L);
+        transferMetrics.record(TransferMetrics.Stage.JOURNAL, 1_000_000);
+        transferMetrics.writePrometheus(new StringBuilder());
+        transferMetrics.record(TransferMetrics.Stage.JOURNAL, 10);
+        StringBuilder out = new StringBuilder();
+
+        //WHEN
+        transferMetrics.writePrometheus(out);
+
+        //THEN
+        assertThat(out.toString())
+                .contains("money_transfer_stage_seconds{stage=\"journal\",quantile=\"0.999\"} 0.001015807\n")
+                .contains("money_transfer_stage_seconds_count{stage=\"journal\"} 2\n");
+    }
+
+    @Test
+    public void givenValuesOlderThanWindow_whenWritePrometheus_thenQuantilesCoverOnlyNewerValues() throws IOException {
+        //GIVEN
+        long[] nanos = {0};
+        TransferMetrics transferMetrics = new TransferMetrics(() -> nanos[0]);
+        transferMetrics.record(TransferMetrics.Stage.JOURNAL, 1_000_000);
+        nanos[0] = TransferMetrics.SLICE_NANOS;
+        transferMetrics.writePrometheus(new StringBuilder());
+        transferMetrics.record(TransferMetrics.Stage.JOURNAL, 10);
+        nanos[0] = TransferMetrics.SLICE_NANOS + TransferMetrics.WINDOW_NANOS;
+        StringBuilder out = new StringBuilder();
+
+        //WHEN
+        transferMetrics.writePrometheus(out);
+
+        //THEN
+        assertThat(out.toString())
+                .contains("money_transfer_stage_seconds{stage=\"journal\",quantile=\"0.999\"} 1.0E-8\n")
+                .contains("money_transfer_stage_seconds_count{stage=\"journal\"} 2\n");
+    }
+
+    @Test
+    public void givenAccountCacheLookups_whenWritePrometheus_thenHitsAndMissesAreCounted() throws IOException {
+        //GIVEN
+        TransferMetrics transferMetrics = new TransferMetrics();
+        transferMetrics.recordAccountCacheLookup(true);
+        transferMetrics.recordAccountCacheLookup(true);
+        transferMetrics.recordAccountCacheLookup(false);
+        transferMetrics.record(TransferMetrics.Stage.FAULT, 1_000);
+        StringBuilder out = new StringBuilder();
+
+        //WHEN
+        transferMetrics.writePrometheus(out);
+
+        //THEN
+        assertThat(out.toString())
+                .contains("money_transfer_account_cache_lookups_total{result=\"hit\"} 2\n")
+                .contains("money_transfer_account_cache_lookups_total{result=\"miss\"} 1\n")
+                .contains("money_transfer_stage_seconds_count{stage=\"fault\"} 1\n");
+    }
+}
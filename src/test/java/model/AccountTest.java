@@ -3,6 +3,7 @@ package model;
 import org.junit.Test;
 
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -117,6 +118,248 @@ public class AccountTest {
         assertThatThrownBy(() -> account.withdraw(200L)).isInstanceOf(IllegalArgumentException.class);
     }
 
+    @Test
+    public void givenSnapshotEpoch_whenTransfer_thenBalanceAtEpochIsTheBalanceBeforeTransfer() {
+        //GIVEN
+        Account accountFrom = createTestAccountFrom();
+        Account accountTo = createTestAccountTo();
+        long epoch = Account.startSnapshotEpoch();
+
+        //WHEN
+        accountFrom.transfer(accountTo, VALID_AMOUNT_OF_MONEY_TO_TRANSFER);
+
+        //THEN
+        assertThat(accountFrom.getBalanceAt(epoch)).isEqualTo(VALID_INITIAL_BALANCE_ON_ACCOUNT_FROM);
+        assertThat(accountTo.getBalanceAt(epoch)).isEqualTo(VALID_INITIAL_BALANCE_ON_ACCOUNT_TO);
+        assertThat(accountFrom.getBalance()).isEqualTo(EXPECTED_AMOUNT_AFTER_TRANSFER_ON_ACCOUNT_FROM);
+        assertThat(accountTo.getBalance()).isEqualTo(EXPECTED_AMOUNT_AFTER_TRANSFER_ON_ACCOUNT_TO);
+    }
+
+    @Test
+    public void givenTooBigAmountToTransfer_whenTryTransfer_thenNotEnoughMoneyIsReturnedAndNothingChanges() {
+        //GIVEN
+        Account accountFrom = createTestAccountFrom();
+        Account accountTo = createTestAccountTo();
+
+        //WHEN
+        TransferResult result = accountFrom.tryTransfer(accountTo, TOO_BIG_AMOUNT_TO_TRANSFER);
+
+        //THEN
+        assertThat(result).isEqualTo(TransferResult.NOT_ENOUGH_MONEY);
+        assertThat(accountFrom.getBalance()).isEqualTo(VALID_INITIAL_BALANCE_ON_ACCOUNT_FROM);
+        assertThat(accountTo.getBalance()).isEqualTo(VALID_INITIAL_BALANCE_ON_ACCOUNT_TO);
+    }
+
+    @Test
+    public void givenValidAndInvalidTransfers_whenTryTransfer_thenResultOfEveryTransferIsReturned() {
+        //GIVEN
+        Account accountFrom = createTestAccountFrom();
+        Account accountTo = createTestAccountTo();
+
+        //WHEN + THEN
+        assertThat(accountFrom.tryTransfer(accountTo, NOT_VALID_AMOUNT_OF_MONEY_TO_TRANSFER))
+                .isEqualTo(TransferResult.INVALID_AMOUNT);
+        assertThat(accountFrom.tryTransfer(accountFrom, VALID_AMOUNT_OF_MONEY_TO_TRANSFER))
+                .isEqualTo(TransferResult.SAME_ACCOUNT);
+        assertThat(accountFrom.tryTransfer(accountTo, VALID_AMOUNT_OF_MONEY_TO_TRANSFER))
+                .isEqualTo(TransferResult.OK);
+        assertThat(accountFrom.getBalance()).isEqualTo(EXPECTED_AMOUNT_AFTER_TRANSFER_ON_ACCOUNT_FROM);
+        assertThat(accountTo.getBalance()).isEqualTo(EXPECTED_AMOUNT_AFTER_TRANSFER_ON_ACCOUNT_TO);
+    }
+
+    @Test
+    public void givenContendedCredits_whenRecordContention_thenAccountBecomesHot() {
+        //GIVEN
+        Account account = createTestAccountTo();
+
+        //WHEN
+        for (int i = 0; i < 64; i++) {
+            account.recordContention();
+        }
+
+        //THEN
+        assertThat(account.isHot()).isTrue();
+    }
+
+    @Test
+    public void givenHotAccountWithCredits_whenWithdrawMoreThanItsBalanceWithoutCredits_thenCreditsAreUsed() {
+        //GIVEN
+        Account account = createTestAccountTo();
+        while (!account.isHot()) {
+            account.recordContention();
+        }
+        long epoch = Account.startSnapshotEpoch();
+        account.add(VALID_AMOUNT_OF_MONEY_TO_TRANSFER);
+        account.add(VALID_AMOUNT_OF_MONEY_TO_TRANSFER);
+
+        //WHEN
+        boolean withdrawn =
+                account.tryWithdraw(VALID_INITIAL_BALANCE_ON_ACCOUNT_TO + VALID_AMOUNT_OF_MONEY_TO_TRANSFER);
+
+        //THEN
+        assertThat(withdrawn).isTrue();
+        assertThat(account.getBalance()).isEqualTo(VALID_AMOUNT_OF_MONEY_TO_TRANSFER);
+        assertThat(account.getBalanceAt(epoch)).isEqualTo(VALID_INITIAL_BALANCE_ON_ACCOUNT_TO);
+        assertThat(account.tryWithdraw(VALID_AMOUNT_OF_MONEY_TO_TRANSFER + 1)).isFalse();
+    }
+
+    @Test
+    public void givenContendedCreditsOnManyThreads_whenRecordContention_thenNoneIsLostAndAccountBecomesHot()
+            throws Exception {
+        //GIVEN
+        Account account = createTestAccountTo();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int j = 0; j < 16; j++) {
+                    account.recordContention();
+                }
+            });
+            threads[i].start();
+        }
+
+        //WHEN
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        //THEN
+        assertThat(account.isHot()).isTrue();
+    }
+
+    @Test
+    public void givenHotAccountWithCreditsBeingFolded_whenGetBalance_thenItNeverGoesDown() throws Exception {
+        //GIVEN
+        Account account = createTestAccountTo();
+        while (!account.isHot()) {
+            account.recordContention();
+        }
+        AtomicBoolean stopped = new AtomicBoolean();
+        Thread credits = new Thread(() -> {
+            while (!stopped.get()) {
+                account.add(1L);
+            }
+        });
+        //a debit which can't be covered folds the credits into the balance and takes nothing
+        Thread folds = new Thread(() -> {
+            while (!stopped.get()) {
+                account.tryWithdraw(Long.MAX_VALUE);
+            }
+        });
+        credits.start();
+        folds.start();
+
+        try {
+            long previous = account.getBalance();
+            for (int i = 0; i < 1_000_000; i++) {
+                //WHEN
+                long balance = account.getBalance();
+
+                //THEN
+                assertThat(balance).isGreaterThanOrEqualTo(previous);
+                previous = balance;
+            }
+        } finally {
+            stopped.set(true);
+            credits.join();
+            folds.join();
+        }
+    }
+
+    @Test
+    public void givenChangeInFlight_whenReadBalances_thenReadFailsUntilTheChangeEnds() {
+        //GIVEN
+        Account accountFrom = createTestAccountFrom();
+        Account accountTo = createTestAccountTo();
+        Account[] accounts = {accountFrom, accountTo};
+        long[] balances = new long[accounts.length];
+        accountFrom.beginChange();
+
+        //WHEN
+        boolean readWhileChanging = Account.readBalances(accounts, balances);
+        accountFrom.endChange();
+        boolean readAfterChange = Account.readBalances(accounts, balances);
+
+        //THEN
+        assertThat(readWhileChanging).isFalse();
+        assertThat(readAfterChange).isTrue();
+        assertThat(balances)
+                .containsExactly(VALID_INITIAL_BALANCE_ON_ACCOUNT_FROM, VALID_INITIAL_BALANCE_ON_ACCOUNT_TO);
+    }
+
+    @Test
+    public void givenConcurrentTransfers_whenReadBalances_thenTotalBalanceIsConserved() throws Exception {
+        //GIVEN
+        Account accountFrom = createTestAccountFrom();
+        Account accountTo = createTestAccountTo();
+        Account[] accounts = {accountFrom, accountTo};
+        long total = VALID_INITIAL_BALANCE_ON_ACCOUNT_FROM + VALID_INITIAL_BALANCE_ON_ACCOUNT_TO;
+        AtomicBoolean stopped = new AtomicBoolean();
+        Thread transfers = new Thread(() -> {
+            while (!stopped.get()) {
+                accountFrom.tryTransfer(accountTo, 1L);
+                accountTo.tryTransfer(accountFrom, 1L);
+            }
+        });
+        transfers.start();
+
+        try {
+            for (int i = 0; i < 10_000; i++) {
+                //WHEN
+                long[] balances = new long[accounts.length];
+                boolean read = Account.readBalances(accounts, balances);
+
+                //THEN
+                if (read) {
+                    assertThat(balances[0] + balances[1]).isEqualTo(total);
+                }
+            }
+        } finally {
+            stopped.set(true);
+            transfers.join();
+        }
+    }
+
+    @Test
+    public void givenHold_whenTransferMoreThanAvailable_thenItIsDeclinedAndHoldIsKept() {
+        //GIVEN
+        Account accountFrom = createTestAccountFrom();
+        Account accountTo = createTestAccountTo();
+        accountFrom.tryHold(VALID_AMOUNT_OF_MONEY_TO_TRANSFER);
+
+        //WHEN
+        TransferResult result = accountFrom.tryTransfer(accountTo, VALID_AMOUNT_OF_MONEY_TO_TRANSFER);
+
+        //THEN
+        assertThat(result).isEqualTo(TransferResult.NOT_ENOUGH_MONEY);
+        assertThat(accountFrom.tryHold(VALID_AMOUNT_OF_MONEY_TO_TRANSFER)).isFalse();
+        assertThat(accountFrom.getBalance()).isEqualTo(VALID_INITIAL_BALANCE_ON_ACCOUNT_FROM);
+        assertThat(accountFrom.getAvailableBalance()).isEqualTo(EXPECTED_AMOUNT_AFTER_TRANSFER_ON_ACCOUNT_FROM);
+        assertThat(accountFrom.getHeld()).isEqualTo(VALID_AMOUNT_OF_MONEY_TO_TRANSFER);
+    }
+
+    @Test
+    public void givenHold_whenCaptureAPartOfIt_thenCapturedAmountLeavesAndTheRestIsAvailableAgain() {
+        //GIVEN
+        Account accountFrom = createTestAccountFrom();
+        accountFrom.tryHold(VALID_AMOUNT_OF_MONEY_TO_TRANSFER);
+
+        //WHEN
+        accountFrom.captureHold(VALID_AMOUNT_OF_MONEY_TO_TRANSFER, 30L);
+
+        //THEN
+        assertThat(accountFrom.getBalance()).isEqualTo(VALID_INITIAL_BALANCE_ON_ACCOUNT_FROM - 30L);
+        assertThat(accountFrom.getAvailableBalance()).isEqualTo(VALID_INITIAL_BALANCE_ON_ACCOUNT_FROM - 30L);
+        assertThat(accountFrom.getHeld()).isZero();
+    }
+
     private static Account createTestAccountFrom() {
         return new Account(ACCOUNT_ID_OF_ACCOUNT_FROM, VALID_INITIAL_BALANCE_ON_ACCOUNT_FROM);
     }
@@ -0,0 +1,270 @@
+package model;
+
+import engine.ShardedTransferEngine;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+import service.TransferBatch;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@RunWith(Parameterized.class)
+public class TransferStrategyTest {
+    private static final int NUMBER_OF_ACCOUNTS = 8;
+    private static final int NUMBER_OF_THREADS = 8;
+    private static final int TRANSFERS_PER_THREAD = 20_000;
+    private static final long INITIAL_BALANCE = 100L;
+    private final TransferStrategy transferStrategy;
+
+    public TransferStrategyTest(String name, TransferStrategy transferStrategy) {
+        this.transferStrategy = transferStrategy;
+    }
+
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> transferStrategies() {
+        return Arrays.asList(
+                new Object[] {"monitor", TransferStrategy.forName("monitor")},
+                new Object[] {"striped", TransferStrategy.forName("striped")},
+                new Object[] {"striped with one stripe", new StripedLockTransferStrategy(1)},
+                new Object[] {"optimistic", TransferStrategy.forName("optimistic")},
+                new Object[] {"sharded", new ShardedTransferEngine(4)},
+                new Object[] {"sharded with one shard", new ShardedTransferEngine(1)});
+    }
+
+    @Test
+    public void givenEnoughMoney_whenTransfer_thenMoneyAreTransferred() {
+        //GIVEN
+        Account accountFrom = new Account(1L, 150L);
+        Account accountTo = new Account(2L, 10L);
+
+        //WHEN
+        boolean result = transferStrategy.transfer(accountFrom, accountTo, 100L);
+
+        //THEN
+        assertThat(result).isTrue();
+        assertThat(accountFrom.getBalance()).isEqualTo(50L);
+        assertThat(accountTo.getBalance()).isEqualTo(110L);
+    }
+
+    @Test
+    public void givenNotEnoughMoney_whenTransfer_thenFalseIsReturnedAndBalancesRemainTheSame() {
+        //GIVEN
+        Account accountFrom = new Account(1L, 150L);
+        Account accountTo = new Account(2L, 10L);
+
+        //WHEN
+        boolean result = transferStrategy.transfer(accountFrom, accountTo, 200L);
+
+        //THEN
+        assertThat(result).isFalse();
+        assertThat(accountFrom.getBalance()).isEqualTo(150L);
+        assertThat(accountTo.getBalance()).isEqualTo(10L);
+    }
+
+    @Test
+    public void givenLog_whenTransfer_thenTransferIsAppendedAfterTheDebitAndBeforeTheCredit() {
+        //GIVEN
+        Account accountFrom = new Account(1L, 150L);
+        Account accountTo = new Account(2L, 10L);
+        long[] balancesWhenAppended = new long[2];
+        TransferLog log = (accountFromId, accountToId, amount) -> {
+            balancesWhenAppended[0] = accountFrom.getBalance();
+            balancesWhenAppended[1] = accountTo.getBalance();
+            return 7L;
+        };
+
+        //WHEN
+        long sequence = transferStrategy.transfer(accountFrom, accountTo, 100L, log);
+
+        //THEN
+        assertThat(sequence).isEqualTo(7L);
+        assertThat(balancesWhenAppended).containsExactly(50L, 10L);
+        assertThat(accountTo.getBalance()).isEqualTo(110L);
+    }
+
+    @Test
+    public void givenLogAndNotEnoughMoney_whenTransfer_thenNothingIsAppended() {
+        //GIVEN
+        Account accountFrom = new Account(1L, 150L);
+        Account accountTo = new Account(2L, 10L);
+        TransferLog log = (accountFromId, accountToId, amount) -> {
+            throw new AssertionError("Declined transfer is appended");
+        };
+
+        //WHEN
+        long sequence = transferStrategy.transfer(accountFrom, accountTo, 200L, log);
+
+        //THEN
+        assertThat(sequence).isEqualTo(TransferStrategy.DECLINED);
+    }
+
+    @Test
+    public void givenLog_whenTransferToManyAccounts_thenLogIsCalledAfterDebitsAndBeforeCredits() {
+        //GIVEN
+        Account[] accounts = {new Account(1L, 100L), new Account(2L, 0L), new Account(3L, 50L)};
+        long[] balancesWhenLogged = new long[accounts.length];
+
+        //WHEN
+        long sequence = transferStrategy.transfer(accounts, new long[] {-100L, 120L, -20L}, () -> {
+            for (int i = 0; i < accounts.length; i++) {
+                balancesWhenLogged[i] = accounts[i].getBalance();
+            }
+            return 7L;
+        });
+
+        //THEN
+        assertThat(sequence).isEqualTo(7L);
+        assertThat(balancesWhenLogged).containsExactly(0L, 0L, 30L);
+        assertThat(accounts[1].getBalance()).isEqualTo(120L);
+    }
+
+    @Test
+    public void givenAmountsCoveredByBalances_whenTransferToManyAccounts_thenAllAmountsAreApplied() {
+        //GIVEN
+        Account[] accounts = {new Account(1L, 100L), new Account(2L, 0L), new Account(3L, 50L)};
+
+        //WHEN
+        boolean result = transferStrategy.transfer(accounts, new long[] {-100L, 120L, -20L});
+
+        //THEN
+        assertThat(result).isTrue();
+        assertThat(accounts[0].getBalance()).isEqualTo(0L);
+        assertThat(accounts[1].getBalance()).isEqualTo(120L);
+        assertThat(accounts[2].getBalance()).isEqualTo(30L);
+    }
+
+    @Test
+    public void givenOneDebitNotCovered_whenTransferToManyAccounts_thenFalseIsReturnedAndBalancesRemainTheSame() {
+        //GIVEN
+        Account[] accounts = {new Account(1L, 100L), new Account(2L, 0L), new Account(3L, 10L)};
+
+        //WHEN
+        boolean result = transferStrategy.transfer(accounts, new long[] {-100L, 120L, -20L});
+
+        //THEN
+        assertThat(result).isFalse();
+        assertThat(accounts[0].getBalance()).isEqualTo(100L);
+        assertThat(accounts[1].getBalance()).isEqualTo(0L);
+        assertThat(accounts[2].getBalance()).isEqualTo(10L);
+    }
+
+    @Test
+    public void givenAccountsOfFullBatch_whenTransferToManyAccounts_thenAllAmountsAreApplied() {
+        //GIVEN
+        Account[] accounts = new Account[2 * TransferBatch.MAX_SIZE];
+        long[] amounts = new long[accounts.length];
+        for (int i = 0; i < accounts.length; i++) {
+            accounts[i] = new Account(i, 1L);
+            amounts[i] = i % 2 == 0 ? -1L : 1L;
+        }
+
+        //WHEN
+        boolean result = transferStrategy.transfer(accounts, amounts);
+
+        //THEN
+        assertThat(result).isTrue();
+        for (int i = 0; i < accounts.length; i++) {
+            assertThat(accounts[i].getBalance()).isEqualTo(i % 2 == 0 ? 0L : 2L);
+        }
+    }
+
+    @Test
+    public void givenManyConcurrentTransfers_whenTransfer_thenMoneyAreConservedAndNoAccountIsOverdrawn()
+            throws InterruptedException {
+        //GIVEN
+        Account[] accounts = createAccounts();
+
+        //WHEN
+        transferConcurrently(accounts);
+
+        //THEN
+        assertThatMoneyAreConservedAndNoAccountIsOverdrawn(accounts);
+    }
+
+    @Test
+    public void givenHotAccount_whenTransfer_thenMoneyAreConservedAndNoAccountIsOverdrawn()
+            throws InterruptedException {
+        //GIVEN
+        Account[] accounts = createAccounts();
+        promoteToHot(accounts[0]);
+        promoteToHot(accounts[1]);
+
+        //WHEN
+        transferConcurrently(accounts);
+
+        //THEN
+        assertThat(accounts[0].isHot()).isTrue();
+        assertThatMoneyAreConservedAndNoAccountIsOverdrawn(accounts);
+    }
+
+    private static Account[] createAccounts() {
+        Account[] accounts = new Account[NUMBER_OF_ACCOUNTS];
+        for (int i = 0; i < NUMBER_OF_ACCOUNTS; i++) {
+            accounts[i] = new Account(i, INITIAL_BALANCE);
+        }
+        return accounts;
+    }
+
+    private static void promoteToHot(Account account) {
+        while (!account.isHot()) {
+            account.recordContention();
+        }
+    }
+
+    private void transferConcurrently(Account[] accounts) throws InterruptedException {
+        CountDownLatch startLatch = new CountDownLatch(1);
+        CountDownLatch endLatch = new CountDownLatch(NUMBER_OF_THREADS);
+        for (int i = 0; i < NUMBER_OF_THREADS; i++) {
+            new Thread(() -> {
+                try {
+                    startLatch.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int j = 0; j < TRANSFERS_PER_THREAD; j++) {
+                        int from = random.nextInt(NUMBER_OF_ACCOUNTS);
+                        int to = (from + 1 + random.nextInt(NUMBER_OF_ACCOUNTS - 1)) % NUMBER_OF_ACCOUNTS;
+                        if (j % 2 == 0) {
+                            transferStrategy.transfer(accounts[from], accounts[to], random.nextInt(30));
+                        } else {
+                            transferStrategy.transfer(accounts, randomAmountsNettingToZero(random));
+                        }
+                    }
+                } catch (InterruptedException ignored) {
+                } finally {
+                    endLatch.countDown();
+                }
+            }).start();
+        }
+        startLatch.countDown();
+        endLatch.await();
+    }
+
+    private static void assertThatMoneyAreConservedAndNoAccountIsOverdrawn(Account[] accounts) {
+        long total = 0;
+        for (Account account : accounts) {
+            assertThat(account.getBalance()).isGreaterThanOrEqualTo(0L);
+            total += account.getBalance();
+        }
+        assertThat(total).isEqualTo(NUMBER_OF_ACCOUNTS * INITIAL_BALANCE);
+    }
+
+    @Test
+    public void givenUnknownName_whenForName_thenThrowAnException() {
+        assertThatThrownBy(() -> TransferStrategy.forName("unknown")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static long[] randomAmountsNettingToZero(ThreadLocalRandom random) {
+        long[] amounts = new long[NUMBER_OF_ACCOUNTS];
+        for (int i = 1; i < NUMBER_OF_ACCOUNTS; i++) {
+            amounts[i] = random.nextInt(-20, 20);
+            amounts[0] -= amounts[i];
+        }
+        return amounts;
+    }
+}
@@ -0,0 +1,213 @@
+package provisioning;
+
+import model.Account;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import repository.AccountsRepository;
+import repository.LongOpenHashAccountStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BulkAccountLoaderTest {
+    private static final int PARALLELISM = 4;
+    //smaller than a line, so lines are split between chunks in every possible way
+    private static final int SMALL_CHUNK_SIZE = 16;
+    private static final int NUMBER_OF_ACCOUNTS = 10_000;
+    @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private AccountsRepository accountsRepository;
+
+    @Before
+    public void setUp() {
+        accountsRepository = new AccountsRepository(new LongOpenHashAccountStore(0));
+    }
+
+    @Test
+    public void givenCsvFileInSmallChunks_whenLoad_thenEveryAccountIsAdded() throws IOException {
+        //GIVEN
+        StringBuilder csv = new StringBuilder("accountId,initialBalance\n");
+        for (int accountId = 0; accountId < NUMBER_OF_ACCOUNTS; accountId++) {
+            csv.append(accountId).append(',').append(accountId * 10L).append(accountId % 2 == 0 ? "\n" : "\r\n");
+        }
+        Path file = write("accounts.csv", csv.toString());
+
+        //WHEN
+        BulkLoadReport report = new BulkAccountLoader(accountsRepository, PARALLELISM, SMALL_CHUNK_SIZE).load(file);
+
+        //THEN
+        assertThat(report.getLoaded()).isEqualTo(NUMBER_OF_ACCOUNTS);
+        assertThat(report.getMalformed()).isZero();
+        assertThat(accountsRepository.size()).isEqualTo(NUMBER_OF_ACCOUNTS);
+        for (int accountId = 0; accountId < NUMBER_OF_ACCOUNTS; accountId++) {
+            assertThat(accountsRepository.get(accountId).getBalance()).isEqualTo(accountId * 10L);
+        }
+        assertThat(accountsRepository.getMoneySupply())
+                .isEqualTo(10L * NUMBER_OF_ACCOUNTS * (NUMBER_OF_ACCOUNTS - 1) / 2);
+    }
+
+    @Test
+    public void givenMalformedRows_whenLoad_thenTheyAreReportedWithLineNumbersAndTheRestIsLoaded() throws IOException {
+        //GIVEN
+        Path file = write("accounts.csv", "1,100\n"
+                + "2;200\n"
+                + "\n"
+                + "3,-300\n"
+                + " 4 , 400 \n"
+                + "5,abc\n"
+                + "6,99999999999999999999\n"
+                + "7,700");
+
+        //WHEN
+        BulkLoadReport report = new BulkAccountLoader(accountsRepository, PARALLELISM, SMALL_CHUNK_SIZE).load(file);
+
+        //THEN
+        assertThat(report.getLoaded()).isEqualTo(3);
+        assertThat(report.getMalformed()).isEqualTo(4);
+        assertThat(report.getMalformedRows().stream().map(BulkLoadReport.MalformedRow::getRow)
+                .collect(Collectors.toList())).containsExactly(2L, 4L, 6L, 7L);
+        assertThat(report.getMalformedRows().get(1).getReason()).contains("-300");
+        assertThat(accountsRepository.get(1L).getBalance()).isEqualTo(100L);
+        assertThat(accountsRepository.get(4L).getBalance()).isEqualTo(400L);
+        assertThat(accountsRepository.get(7L).getBalance()).isEqualTo(700L);
+        assertThat(accountsRepository.get(3L)).isNull();
+    }
+
+    @Test
+    public void givenSameAccountTwiceAndReplacement_whenLoad_thenTheLaterRowWins() throws IOException {
+        //GIVEN
+        Path file = write("accounts.csv", "1,100\n2,200\n1,150\n");
+
+        //WHEN
+        new BulkAccountLoader(accountsRepository, PARALLELISM, SMALL_CHUNK_SIZE).load(file, true);
+
+        //THEN
+        assertThat(accountsRepository.get(1L).getBalance()).isEqualTo(150L);
+        assertThat(accountsRepository.getMoneySupply()).isEqualTo(350L);
+    }
+
+    @Test
+    public void givenExistingAccountAndRepeatedRows_whenLoad_thenTheyAreDeclinedAndCounted() throws IOException {
+        //GIVEN
+        accountsRepository.add(new Account(3L, 30L));
+        Path file = write("accounts.csv", "1,100\n2,200\n1,150\n3,300\n2,250\n1,160\n");
+
+        //WHEN
+        BulkLoadReport report = new BulkAccountLoader(accountsRepository, PARALLELISM, 1 << 10).load(file);
+
+        //THEN
+        assertThat(report.getLoaded()).isEqualTo(2);
+        assertThat(report.getExisting()).isEqualTo(4);
+        assertThat(accountsRepository.get(1L).getBalance()).isEqualTo(100L);
+        assertThat(accountsRepository.get(2L).getBalance()).isEqualTo(200L);
+        assertThat(accountsRepository.get(3L).getBalance()).isEqualTo(30L);
+        assertThat(accountsRepository.getMoneySupply()).isEqualTo(330L);
+    }
+
+    @Test
+    public void givenRepeatedRowsInSmallChunks_whenLoad_thenTheFirstRowWins() throws IOException {
+        //GIVEN
+        Path file = write("accounts.csv", "1,100\n2,200\n1,150\n");
+
+        //WHEN
+        BulkLoadReport report = new BulkAccountLoader(accountsRepository, PARALLELISM, SMALL_CHUNK_SIZE).load(file);
+
+        //THEN
+        assertThat(report.getExisting()).isEqualTo(1);
+        assertThat(accountsRepository.get(1L).getBalance()).isEqualTo(100L);
+        assertThat(accountsRepository.getMoneySupply()).isEqualTo(300L);
+    }
+
+    @Test
+    public void givenTooLongLine_whenLoad_thenItIsReportedAndFollowingLinesAreLoaded() throws IOException {
+        //GIVEN
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < BulkAccountLoader.MAX_LINE_LENGTH * 2; i++) {
+            longLine.append(' ');
+        }
+        Path file = write("accounts.csv", "1,100\n" + longLine + "2,200\n3,300\n");
+
+        //WHEN
+        BulkLoadReport report = new BulkAccountLoader(accountsRepository, PARALLELISM, SMALL_CHUNK_SIZE).load(file);
+
+        //THEN
+        assertThat(report.getLoaded()).isEqualTo(2);
+        assertThat(report.getMalformedRows()).extracting(BulkLoadReport.MalformedRow::getRow).containsExactly(2L);
+        assertThat(accountsRepository.get(3L).getBalance()).isEqualTo(300L);
+    }
+
+    @Test
+    public void givenBinaryFileWithIncompleteLastRow_whenLoad_thenCompleteRowsAreLoaded() throws IOException {
+        //GIVEN
+        ByteBuffer rows = ByteBuffer.allocate(NUMBER_OF_ACCOUNTS * 16 + 5);
+        for (int accountId = 0; accountId < NUMBER_OF_ACCOUNTS; accountId++) {
+            rows.putLong(accountId).putLong(accountId == 7 ? -1L : accountId);
+        }
+        Path file = temporaryFolder.getRoot().toPath().resolve("accounts.bin");
+        Files.write(file, rows.array());
+
+        //WHEN
+        BulkLoadReport report = new BulkAccountLoader(accountsRepository, PARALLELISM, 100).load(file);
+
+        //THEN
+        assertThat(report.getLoaded()).isEqualTo(NUMBER_OF_ACCOUNTS - 1);
+        assertThat(report.getMalformedRows()).extracting(BulkLoadReport.MalformedRow::getRow)
+                .containsExactly(8L, NUMBER_OF_ACCOUNTS + 1L);
+        assertThat(accountsRepository.get(NUMBER_OF_ACCOUNTS - 1L).getBalance()).isEqualTo(NUMBER_OF_ACCOUNTS - 1L);
+        assertThat(accountsRepository.get(7L)).isNull();
+    }
+
+    @Test
+    public void givenBinaryFileInSmallChunks_whenLoad_thenStoreGrowsForAllRowsBeforeTheFirstChunk()
+            throws IOException {
+        //GIVEN
+        ByteBuffer rows = ByteBuffer.allocate(NUMBER_OF_ACCOUNTS * 16);
+        for (int accountId = 0; accountId < NUMBER_OF_ACCOUNTS; accountId++) {
+            rows.putLong(accountId).putLong(accountId);
+        }
+        Path file = temporaryFolder.getRoot().toPath().resolve("accounts.bin");
+        Files.write(file, rows.array());
+        List<Long> expectedSizes = new ArrayList<>();
+        AccountsRepository repository = new AccountsRepository(new LongOpenHashAccountStore(0) {
+            @Override
+            public synchronized void ensureCapacity(long expectedSize) {
+                expectedSizes.add(expectedSize);
+                super.ensureCapacity(expectedSize);
+            }
+        });
+
+        //WHEN
+        BulkLoadReport report = new BulkAccountLoader(repository, PARALLELISM, 100).load(file);
+
+        //THEN
+        assertThat(report.getLoaded()).isEqualTo(NUMBER_OF_ACCOUNTS);
+        assertThat(expectedSizes.get(0)).isEqualTo((long) NUMBER_OF_ACCOUNTS);
+    }
+
+    @Test
+    public void givenMissingFile_whenLoad_thenUncheckedIOException() {
+        //GIVEN
+        Path file = temporaryFolder.getRoot().toPath().resolve("missing.csv");
+
+        //WHEN + THEN
+        assertThatThrownBy(() -> new BulkAccountLoader(accountsRepository, PARALLELISM).load(file))
+                .isInstanceOf(UncheckedIOException.class);
+    }
+
+    private Path write(String name, String content) throws IOException {
+        Path file = temporaryFolder.getRoot().toPath().resolve(name);
+        Files.write(file, content.getBytes(StandardCharsets.US_ASCII));
+        return file;
+    }
+}
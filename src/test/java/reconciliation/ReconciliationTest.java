@@ -0,0 +1,120 @@
+package reconciliation;
+
+import history.TransferHistory;
+import model.Account;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import repository.AccountsRepository;
+import repository.LongOpenHashAccountStore;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReconciliationTest {
+    private static final int NUMBER_OF_ACCOUNTS = 10_000;
+    private static final int RANGE_BITS = 10;
+    private static final long INITIAL_BALANCE = 100L;
+    private static final long FIRST_ACCOUNT_ID = 5L;
+    private static final long LAST_ACCOUNT_ID = NUMBER_OF_ACCOUNTS - 1;
+    private final AccountsRepository accountsRepository =
+            new AccountsRepository(new LongOpenHashAccountStore(NUMBER_OF_ACCOUNTS));
+    private final Reconciliation reconciliation = new Reconciliation(2, RANGE_BITS);
+
+    @Before
+    public void setUp() {
+        for (int i = 0; i < NUMBER_OF_ACCOUNTS; i++) {
+            accountsRepository.add(new Account(i, INITIAL_BALANCE));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        reconciliation.close();
+    }
+
+    @Test
+    public void givenTransfersRecordedInHistory_whenRun_thenTotalIsConservedAndNoRangeDrifted() {
+        //GIVEN
+        TransferHistory history = new TransferHistory(16);
+        reconcile(history);
+        transfer(history, FIRST_ACCOUNT_ID, LAST_ACCOUNT_ID, 40L);
+        transfer(history, LAST_ACCOUNT_ID, FIRST_ACCOUNT_ID + 1, 10L);
+
+        //WHEN
+        ReconciliationReport report = reconcile(history);
+
+        //THEN
+        assertThat(report.isConclusive()).isTrue();
+        assertThat(report.getTotal()).isEqualTo(NUMBER_OF_ACCOUNTS * INITIAL_BALANCE);
+        assertThat(report.getTotalDrift()).isZero();
+        assertThat(report.isRangesCompared()).isTrue();
+        assertThat(report.hasDrift()).isFalse();
+        assertThat(report.getRanges()).hasSize((NUMBER_OF_ACCOUNTS >> RANGE_BITS) + 1);
+        assertThat(report.getRanges().get(0L).getAccounts()).isEqualTo(1L << RANGE_BITS);
+        assertThat(report.getRanges().get(0L).getBalance()).isEqualTo((INITIAL_BALANCE << RANGE_BITS) - 30L);
+        assertThat(reconciliation.getLastReport()).isSameAs(report);
+    }
+
+    @Test
+    public void givenMoneyChangedOutsideOfTransfers_whenRun_thenTotalDriftAndDriftedRangeAreReported() {
+        //GIVEN
+        TransferHistory history = new TransferHistory(16);
+        reconcile(history);
+        accountsRepository.get(LAST_ACCOUNT_ID).add(7L);
+
+        //WHEN
+        ReconciliationReport report = reconcile(history);
+
+        //THEN
+        long rangeOfLastAccount = (LAST_ACCOUNT_ID >> RANGE_BITS) << RANGE_BITS;
+        assertThat(report.getTotalDrift()).isEqualTo(7L);
+        assertThat(report.getDriftedRanges()).containsOnlyKeys(rangeOfLastAccount);
+        assertThat(report.getDriftedRanges().get(rangeOfLastAccount)).isEqualTo(7L);
+        assertThat(report.toString()).contains("accounts 9216..10239 drifted by 7");
+    }
+
+    @Test
+    public void givenHistoryWhichNoLongerHasTransfersSincePreviousRun_whenRun_thenRangesAreNotCompared() {
+        //GIVEN
+        TransferHistory history = new TransferHistory(2);
+        reconcile(history);
+        for (int i = 0; i < 3; i++) {
+            transfer(history, FIRST_ACCOUNT_ID, LAST_ACCOUNT_ID, 1L);
+        }
+
+        //WHEN
+        ReconciliationReport report = reconcile(history);
+
+        //THEN
+        assertThat(report.isRangesCompared()).isFalse();
+        assertThat(report.getTotalDrift()).isZero();
+        assertThat(report.hasDrift()).isFalse();
+    }
+
+    @Test
+    public void givenAddedAccount_whenRun_thenRangesAreComparedFromTheNextRun() {
+        //GIVEN
+        TransferHistory history = new TransferHistory(16);
+        reconcile(history);
+        accountsRepository.add(new Account(NUMBER_OF_ACCOUNTS, INITIAL_BALANCE));
+
+        //WHEN
+        ReconciliationReport afterAdding = reconcile(history);
+        ReconciliationReport next = reconcile(history);
+
+        //THEN
+        assertThat(afterAdding.isRangesCompared()).isFalse();
+        assertThat(afterAdding.getTotalDrift()).isZero();
+        assertThat(next.isRangesCompared()).isTrue();
+        assertThat(next.hasDrift()).isFalse();
+    }
+
+    private ReconciliationReport reconcile(TransferHistory history) {
+        return reconciliation.run(accountsRepository, history, Account.startSnapshotEpoch(), history.getPosition());
+    }
+
+    private void transfer(TransferHistory history, long accountFromId, long accountToId, long amount) {
+        accountsRepository.get(accountFromId).transfer(accountsRepository.get(accountToId), amount);
+        history.append(accountFromId, accountToId, amount);
+    }
+}
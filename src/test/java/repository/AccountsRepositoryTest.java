@@ -4,6 +4,7 @@ import model.Account;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -48,4 +49,47 @@ public class AccountsRepositoryTest {
         Optional<Account> result = accountsRepository.find(ACCOUNT_ID_OF_OTHER_ACCOUNT);
         assertThat(result).isEqualTo(Optional.of(OTHER_ACCOUNT));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void givenIdOfExistingAccount_whenGet_thenReturnsAccount() {
+        //WHEN
+        Account result = accountsRepository.get(ACCOUNT_ID_OF_EXISTING_ACCOUNT);
+
+        //THEN
+        assertThat(result).isSameAs(EXISTING_ACCOUNT);
+    }
+
+    @Test
+    public void givenIdOfNotExistingAccount_whenGet_thenReturnsNull() {
+        //WHEN
+        Account result = accountsRepository.get(ACCOUNT_ID_OF_OTHER_ACCOUNT);
+
+        //THEN
+        assertThat(result).isNull();
+    }
+
+    @Test
+    public void givenAddedAndReplacedAccounts_whenGetMoneySupply_thenBalancesOfCurrentAccountsAreSummedUp() {
+        //GIVEN
+        accountsRepository.add(OTHER_ACCOUNT);
+        accountsRepository.add(new Account(ACCOUNT_ID_OF_EXISTING_ACCOUNT, 15L));
+
+        //WHEN
+        long moneySupply = accountsRepository.getMoneySupply();
+
+        //THEN
+        assertThat(moneySupply).isEqualTo(35L);
+    }
+
+    @Test
+    public void givenNewAndReplacingAccounts_whenAddAll_thenTheyAreAddedInOrderAndMoneySupplyFollows() {
+        //WHEN
+        accountsRepository.addAll(Arrays.asList(OTHER_ACCOUNT,
+                new Account(ACCOUNT_ID_OF_EXISTING_ACCOUNT, 5L), new Account(ACCOUNT_ID_OF_OTHER_ACCOUNT, 7L)));
+
+        //THEN
+        assertThat(accountsRepository.get(ACCOUNT_ID_OF_EXISTING_ACCOUNT).getBalance()).isEqualTo(5L);
+        assertThat(accountsRepository.get(ACCOUNT_ID_OF_OTHER_ACCOUNT).getBalance()).isEqualTo(7L);
+        assertThat(accountsRepository.getMoneySupply()).isEqualTo(12L);
+    }
+}
@@ -0,0 +1,43 @@
+package repository;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FrequencySketchTest {
+    private static final int EXPECTED_SIZE = 64;
+
+    @Test
+    public void givenIncrementedAccounts_whenFrequency_thenCountsAreEstimatedUpToTheMaximum() {
+        //GIVEN
+        FrequencySketch sketch = new FrequencySketch(EXPECTED_SIZE);
+
+        //WHEN
+        for (int i = 0; i < 20; i++) {
+            sketch.increment(1L);
+        }
+        sketch.increment(2L);
+
+        //THEN
+        assertThat(sketch.frequency(1L)).isEqualTo(FrequencySketch.MAX_FREQUENCY);
+        assertThat(sketch.frequency(2L)).isGreaterThanOrEqualTo(1);
+        assertThat(sketch.frequency(2L)).isLessThan(FrequencySketch.MAX_FREQUENCY);
+    }
+
+    @Test
+    public void givenManyIncrementsOfOtherAccounts_whenFrequency_thenCountOfDormantAccountFades() {
+        //GIVEN
+        FrequencySketch sketch = new FrequencySketch(EXPECTED_SIZE);
+        for (int i = 0; i < 20; i++) {
+            sketch.increment(1L);
+        }
+
+        //WHEN
+        for (long accountId = 100; accountId < 100 + 20 * EXPECTED_SIZE; accountId++) {
+            sketch.increment(accountId);
+        }
+
+        //THEN
+        assertThat(sketch.frequency(1L)).isLessThan(FrequencySketch.MAX_FREQUENCY / 2);
+    }
+}
@@ -0,0 +1,128 @@
+package repository;
+
+import model.Account;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LongOpenHashAccountStoreTest {
+    private static final int NUMBER_OF_ACCOUNTS = 100_000;
+
+    @Test
+    public void givenManyAccounts_whenPut_thenAllOfThemCanBeFoundAfterResizes() {
+        //GIVEN
+        LongOpenHashAccountStore store = new LongOpenHashAccountStore(0);
+
+        //WHEN
+        for (long accountId = 0; accountId < NUMBER_OF_ACCOUNTS; accountId++) {
+            store.put(new Account(accountId * 1024, accountId));
+        }
+
+        //THEN
+        assertThat(store.size()).isEqualTo(NUMBER_OF_ACCOUNTS);
+        for (long accountId = 0; accountId < NUMBER_OF_ACCOUNTS; accountId++) {
+            assertThat(store.get(accountId * 1024).getBalance()).isEqualTo(accountId);
+        }
+        assertThat(store.get(1L)).isNull();
+    }
+
+    @Test
+    public void givenAccounts_whenClear_thenNoneIsLeftAndNewOnesCanBePut() {
+        //GIVEN
+        LongOpenHashAccountStore store = new LongOpenHashAccountStore(16);
+        store.put(new Account(1L, 10L));
+        store.put(new Account(2L, 20L));
+
+        //WHEN
+        store.clear();
+        store.put(new Account(2L, 30L));
+
+        //THEN
+        assertThat(store.size()).isEqualTo(1);
+        assertThat(store.get(1L)).isNull();
+        assertThat(store.get(2L).getBalance()).isEqualTo(30L);
+    }
+
+    @Test
+    public void givenEnsuredCapacity_whenPut_thenAccountsPutBeforeAndAfterCanBeFound() {
+        //GIVEN
+        LongOpenHashAccountStore store = new LongOpenHashAccountStore(0);
+        store.put(new Account(-1L, 1L));
+
+        //WHEN
+        store.ensureCapacity(NUMBER_OF_ACCOUNTS + 1);
+        for (long accountId = 0; accountId < NUMBER_OF_ACCOUNTS; accountId++) {
+            store.put(new Account(accountId, accountId));
+        }
+
+        //THEN
+        assertThat(store.size()).isEqualTo(NUMBER_OF_ACCOUNTS + 1);
+        assertThat(store.get(-1L).getBalance()).isEqualTo(1L);
+        for (long accountId = 0; accountId < NUMBER_OF_ACCOUNTS; accountId++) {
+            assertThat(store.get(accountId).getBalance()).isEqualTo(accountId);
+        }
+    }
+
+    @Test
+    public void givenAccountWithTheSameId_whenPut_thenAccountIsReplaced() {
+        //GIVEN
+        LongOpenHashAccountStore store = new LongOpenHashAccountStore(16);
+        Account replacement = new Account(1L, 20L);
+        store.put(new Account(1L, 10L));
+
+        //WHEN
+        store.put(replacement);
+
+        //THEN
+        assertThat(store.get(1L)).isSameAs(replacement);
+        assertThat(store.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void givenNegativeAndZeroIds_whenPut_thenTheyCanBeFound() {
+        //GIVEN
+        LongOpenHashAccountStore store = new LongOpenHashAccountStore(16);
+
+        //WHEN
+        store.put(new Account(0L, 1L));
+        store.put(new Account(-1L, 2L));
+        store.put(new Account(Long.MIN_VALUE, 3L));
+
+        //THEN
+        assertThat(store.get(0L).getBalance()).isEqualTo(1L);
+        assertThat(store.get(-1L).getBalance()).isEqualTo(2L);
+        assertThat(store.get(Long.MIN_VALUE).getBalance()).isEqualTo(3L);
+    }
+
+    @Test
+    public void givenConcurrentReaders_whenPut_thenExistingAccountsAreAlwaysFound() throws InterruptedException {
+        //GIVEN
+        LongOpenHashAccountStore store = new LongOpenHashAccountStore(1);
+        Account existingAccount = new Account(-42L, 1L);
+        store.put(existingAccount);
+        AtomicBoolean missed = new AtomicBoolean();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        CountDownLatch readerStopped = new CountDownLatch(1);
+        new Thread(() -> {
+            while (writing.get()) {
+                if (store.get(-42L) != existingAccount) {
+                    missed.set(true);
+                }
+            }
+            readerStopped.countDown();
+        }).start();
+
+        //WHEN
+        for (long accountId = 0; accountId < NUMBER_OF_ACCOUNTS; accountId++) {
+            store.put(new Account(accountId));
+        }
+        writing.set(false);
+        readerStopped.await();
+
+        //THEN
+        assertThat(missed.get()).isFalse();
+    }
+}
@@ -0,0 +1,291 @@
+package repository;
+
+import model.Account;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MappedAccountStoreTest {
+    private static final int NUMBER_OF_ACCOUNTS = 10_000;
+    private static final long JOURNAL_SEQUENCE = 42L;
+    @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void givenAccountsInOffHeapStore_whenTransfer_thenBalancesAreUpdatedInTheStore() {
+        //GIVEN
+        MappedAccountStore store = MappedAccountStore.inMemory(16);
+        store.put(new Account(1L, 150L));
+        store.put(new Account(2L, 10L));
+
+        //WHEN
+        store.get(1L).transfer(store.get(2L), 100L);
+
+        //THEN
+        assertThat(store.get(1L).getBalance()).isEqualTo(50L);
+        assertThat(store.get(2L).getBalance()).isEqualTo(110L);
+        assertThat(((MappedAccount) store.get(1L)).getVersion()).isEqualTo(2L);
+        assertThat(store.get(3L)).isNull();
+    }
+
+    @Test
+    public void givenNotEnoughMoney_whenWithdraw_thenExceptionIsThrownAndBalanceRemainsTheSame() {
+        //GIVEN
+        MappedAccountStore store = MappedAccountStore.inMemory(16);
+        store.put(new Account(1L, 150L));
+
+        //WHEN + THEN
+        assertThatThrownBy(() -> store.get(1L).withdraw(200L)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(store.get(1L).getBalance()).isEqualTo(150L);
+    }
+
+    @Test
+    public void givenHoldInOffHeapStore_whenCaptureAndRelease_thenHeldMoneyIsUpdatedInTheStore() {
+        //GIVEN
+        MappedAccountStore store = MappedAccountStore.inMemory(16);
+        store.put(new Account(1L, 150L));
+        Account account = store.get(1L);
+
+        //WHEN
+        boolean held = account.tryHold(100L);
+        boolean heldTwice = account.tryHold(100L);
+        account.captureHold(100L, 40L);
+        account.tryHold(50L);
+        account.releaseHold(50L);
+
+        //THEN
+        assertThat(held).isTrue();
+        assertThat(heldTwice).isFalse();
+        assertThat(store.get(1L).getBalance()).isEqualTo(110L);
+        assertThat(store.get(1L).getAvailableBalance()).isEqualTo(110L);
+        assertThat(store.get(1L).getHeld()).isZero();
+    }
+
+    @Test
+    public void givenStoreSpanningSeveralSegments_whenPut_thenAllAccountsCanBeFound() {
+        //GIVEN
+        MappedAccountStore store = MappedAccountStore.inMemory(NUMBER_OF_ACCOUNTS, 10);
+
+        //WHEN
+        for (long accountId = 0; accountId < NUMBER_OF_ACCOUNTS; accountId++) {
+            store.put(new Account(accountId, accountId));
+        }
+
+        //THEN
+        assertThat(store.size()).isEqualTo(NUMBER_OF_ACCOUNTS);
+        for (long accountId = 0; accountId < NUMBER_OF_ACCOUNTS; accountId++) {
+            assertThat(store.get(accountId).getBalance()).isEqualTo(accountId);
+        }
+    }
+
+    @Test
+    public void givenFullStore_whenPut_thenThrowAnException() {
+        //GIVEN
+        MappedAccountStore store = MappedAccountStore.inMemory(2);
+        for (long accountId = 0; accountId < store.capacity() / 4 * 3; accountId++) {
+            store.put(new Account(accountId));
+        }
+
+        //WHEN + THEN
+        assertThatThrownBy(() -> store.put(new Account(-1L))).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void givenStoreTooSmall_whenEnsureCapacity_thenThrowAnException() {
+        //GIVEN
+        MappedAccountStore store = MappedAccountStore.inMemory(2);
+
+        //WHEN + THEN
+        assertThatThrownBy(() -> store.ensureCapacity(store.capacity())).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void givenClosedFileStore_whenOpenAgain_thenAccountsAndBalancesAreRestored() throws IOException {
+        //GIVEN
+        Path file = temporaryFolder.getRoot().toPath().resolve("accounts.bin");
+        try (MappedAccountStore store = MappedAccountStore.open(file, NUMBER_OF_ACCOUNTS, 10)) {
+            for (long accountId = 0; accountId < NUMBER_OF_ACCOUNTS; accountId++) {
+                store.put(new Account(accountId, 100L));
+            }
+            store.get(1L).transfer(store.get(2L), 40L);
+        }
+
+        //WHEN
+        try (MappedAccountStore store = MappedAccountStore.open(file, 0)) {
+            //THEN
+            assertThat(store.size()).isEqualTo(NUMBER_OF_ACCOUNTS);
+            assertThat(store.get(1L).getBalance()).isEqualTo(60L);
+            assertThat(store.get(2L).getBalance()).isEqualTo(140L);
+            assertThat(store.get(NUMBER_OF_ACCOUNTS - 1).getBalance()).isEqualTo(100L);
+        }
+    }
+
+    @Test
+    public void givenFileStoreClosedWithMoneyOnHold_whenOpenAgain_thenMoneyIsAvailable() throws IOException {
+        //GIVEN
+        Path file = temporaryFolder.getRoot().toPath().resolve("accounts.bin");
+        try (MappedAccountStore store = MappedAccountStore.open(file, 16)) {
+            store.put(new Account(1L, 150L));
+            store.get(1L).tryHold(100L);
+        }
+
+        //WHEN
+        try (MappedAccountStore store = MappedAccountStore.open(file, 0)) {
+            //THEN
+            assertThat(store.get(1L).getBalance()).isEqualTo(150L);
+            assertThat(store.get(1L).getAvailableBalance()).isEqualTo(150L);
+            assertThat(store.get(1L).getHeld()).isZero();
+        }
+    }
+
+    @Test
+    public void givenFileStoreClosedAtJournalSequence_whenOpenAgain_thenJournalSequenceIsRestored()
+            throws IOException {
+        //GIVEN
+        Path file = temporaryFolder.getRoot().toPath().resolve("accounts.bin");
+        try (MappedAccountStore store = MappedAccountStore.open(file, 16)) {
+            assertThat(store.getJournalSequence()).isZero();
+            store.put(new Account(1L, 150L));
+            store.setJournalSequence(JOURNAL_SEQUENCE);
+        }
+
+        //WHEN
+        try (MappedAccountStore store = MappedAccountStore.open(file, 0)) {
+            //THEN
+            assertThat(store.getJournalSequence()).isEqualTo(JOURNAL_SEQUENCE);
+        }
+    }
+
+    @Test
+    public void givenFileStoreOfRunWhichDidNotCloseIt_whenOpenAgain_thenJournalSequenceIsUnknown()
+            throws IOException {
+        //GIVEN
+        Path file = temporaryFolder.getRoot().toPath().resolve("accounts.bin");
+        try (MappedAccountStore store = MappedAccountStore.open(file, 16)) {
+            store.setJournalSequence(JOURNAL_SEQUENCE);
+        }
+        MappedAccountStore crashed = MappedAccountStore.open(file, 0);
+        crashed.put(new Account(1L, 150L));
+
+        //WHEN
+        try (MappedAccountStore store = MappedAccountStore.open(file, 0)) {
+            //THEN
+            assertThat(store.getJournalSequence()).isEqualTo(AccountStore.UNKNOWN_JOURNAL_SEQUENCE);
+        }
+    }
+
+    @Test
+    public void givenFileStoreClosedByRepository_whenOpenAgain_thenMoneySupplyIsRestoredWithoutSummingUp()
+            throws IOException {
+        //GIVEN
+        Path file = temporaryFolder.getRoot().toPath().resolve("accounts.bin");
+        AccountsRepository accountsRepository = new AccountsRepository(MappedAccountStore.open(file, 16));
+        accountsRepository.add(new Account(1L, 150L));
+        accountsRepository.add(new Account(2L, 50L));
+        accountsRepository.close(JOURNAL_SEQUENCE);
+
+        //WHEN
+        try (MappedAccountStore store = MappedAccountStore.open(file, 0)) {
+            long persistedMoneySupply = store.getMoneySupply();
+            //a balance changed behind the header's back shows the records are not read
+            store.get(1L).withdraw(1L);
+
+            //THEN
+            assertThat(persistedMoneySupply).isEqualTo(200L);
+            assertThat(new AccountsRepository(store).getMoneySupply()).isEqualTo(200L);
+        }
+    }
+
+    @Test
+    public void givenFileStoreOfRunWhichDidNotCloseIt_whenOpenAgain_thenMoneySupplyIsSummedUp() throws IOException {
+        //GIVEN
+        Path file = temporaryFolder.getRoot().toPath().resolve("accounts.bin");
+        try (MappedAccountStore store = MappedAccountStore.open(file, 16)) {
+            store.put(new Account(1L, 150L));
+            store.setMoneySupply(150L);
+        }
+        MappedAccountStore crashed = MappedAccountStore.open(file, 0);
+        crashed.put(new Account(2L, 50L));
+
+        //WHEN
+        try (MappedAccountStore store = MappedAccountStore.open(file, 0)) {
+            //THEN
+            assertThat(store.getMoneySupply()).isEqualTo(AccountStore.UNKNOWN_MONEY_SUPPLY);
+            assertThat(new AccountsRepository(store).getMoneySupply()).isEqualTo(200L);
+        }
+    }
+
+    @Test
+    public void givenBalancePreservedForLaterEpochByPreviousRun_whenOpenAgain_thenEpochsStartAfterIt()
+            throws IOException {
+        //GIVEN
+        Path file = temporaryFolder.getRoot().toPath().resolve("accounts.bin");
+        //the epoch this run would start next
+        long previousRunEpoch = Account.getSnapshotEpoch() + 1;
+        try (MappedAccountStore store = MappedAccountStore.open(file, 16)) {
+            store.put(new Account(1L, 150L));
+            store.writeBack(store.slotOf(1L), 150L, 0L, previousRunEpoch, 100L);
+        }
+
+        //WHEN
+        try (MappedAccountStore store = MappedAccountStore.open(file, 0)) {
+            long epoch = Account.startSnapshotEpoch();
+
+            //THEN
+            assertThat(epoch).isGreaterThan(previousRunEpoch);
+            assertThat(store.get(1L).getBalanceAt(epoch)).isEqualTo(150L);
+        }
+    }
+
+    @Test
+    public void givenAccountsInStore_whenClear_thenStoreIsEmptyAndAccountsCanBeAddedAgain() {
+        //GIVEN
+        MappedAccountStore store = MappedAccountStore.inMemory(16);
+        store.put(new Account(1L, 150L));
+        store.put(new Account(2L, 10L));
+
+        //WHEN
+        store.clear();
+        store.put(new Account(2L, 20L));
+
+        //THEN
+        assertThat(store.size()).isEqualTo(1);
+        assertThat(store.get(1L)).isNull();
+        assertThat(store.get(2L).getBalance()).isEqualTo(20L);
+    }
+
+    @Test
+    public void givenFileWhichIsNotAStore_whenOpen_thenThrowAnException() throws IOException {
+        //GIVEN
+        Path file = temporaryFolder.newFile().toPath();
+        Files.write(file, new byte[8192]);
+
+        //WHEN + THEN
+        assertThatThrownBy(() -> MappedAccountStore.open(file, 16)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void givenStoreOfAnotherFormatVersion_whenOpen_thenThrowAnException() throws IOException {
+        //GIVEN
+        Path file = temporaryFolder.getRoot().toPath().resolve("accounts.bin");
+        try (MappedAccountStore store = MappedAccountStore.open(file, 16)) {
+            store.put(new Account(1L, 10L));
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            //format version of the header
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, 3), 8);
+        }
+
+        //WHEN + THEN
+        assertThatThrownBy(() -> MappedAccountStore.open(file, 16)).isInstanceOf(IllegalStateException.class);
+    }
+}
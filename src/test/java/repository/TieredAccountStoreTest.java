@@ -0,0 +1,260 @@
+package repository;
+
+import model.Account;
+import model.TransferLog;
+import model.TransferStrategy;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TieredAccountStoreTest {
+    private static final int NUMBER_OF_ACCOUNTS = 64;
+    private static final long INITIAL_BALANCE = 100L;
+    private static final int CACHE_CAPACITY = 4;
+    private static final int EPOCHS = 2000;
+
+    @Test
+    public void givenMoreAccountsThanCacheCapacity_whenTransfer_thenEvictedAccountsAreWrittenToTheFile() {
+        //GIVEN
+        MappedAccountStore disk = createDisk();
+        TieredAccountStore store = new TieredAccountStore(disk, CACHE_CAPACITY, 1);
+
+        //WHEN
+        store.get(1L).transfer(store.get(2L), 40L);
+        touchAccountsFrom(3L, store);
+
+        //THEN
+        assertThat(store.getCachedCount()).isEqualTo(CACHE_CAPACITY);
+        assertThat(disk.get(1L).getBalance()).isEqualTo(INITIAL_BALANCE - 40L);
+        assertThat(disk.get(2L).getBalance()).isEqualTo(INITIAL_BALANCE + 40L);
+        assertThat(store.get(1L).getBalance()).isEqualTo(INITIAL_BALANCE - 40L);
+    }
+
+    @Test
+    public void givenEvictedAccountStillHeldByCaller_whenChangeIt_thenChangeGoesToTheCurrentAccount() {
+        //GIVEN
+        TieredAccountStore store = new TieredAccountStore(createDisk(), CACHE_CAPACITY, 1);
+        Account evicted = store.get(1L);
+        touchAccountsFrom(2L, store);
+
+        //WHEN
+        evicted.add(10L);
+        boolean held = evicted.tryHold(30L);
+
+        //THEN
+        assertThat(held).isTrue();
+        assertThat(evicted.getBalance()).isEqualTo(INITIAL_BALANCE + 10L);
+        assertThat(store.get(1L).getAvailableBalance()).isEqualTo(INITIAL_BALANCE - 20L);
+        assertThat(store.get(1L).getHeld()).isEqualTo(30L);
+    }
+
+    @Test
+    public void givenFrequentlyUsedAccount_whenScanOverDormantAccounts_thenItStaysCached() {
+        //GIVEN
+        TieredAccountStore store = new TieredAccountStore(createDisk(), CACHE_CAPACITY, 1);
+        Account frequentlyUsed = store.get(1L);
+        for (int i = 0; i < 10; i++) {
+            store.get(1L);
+        }
+
+        //WHEN
+        touchAccountsFrom(2L, store);
+
+        //THEN
+        assertThat(store.get(1L)).isSameAs(frequentlyUsed);
+    }
+
+    @Test
+    public void givenAccountChangedInSnapshotEpoch_whenEvicted_thenBalanceAtEpochStartIsKept() {
+        //GIVEN
+        TieredAccountStore store = new TieredAccountStore(createDisk(), CACHE_CAPACITY, 1);
+        store.get(1L).add(10L);
+        long epoch = Account.startSnapshotEpoch();
+        store.get(1L).add(10L);
+
+        //WHEN
+        touchAccountsFrom(2L, store);
+
+        //THEN
+        List<Long> balancesAtEpoch = new ArrayList<>();
+        store.forEach(account -> {
+            if (account.getAccountId() == 1L) {
+                balancesAtEpoch.add(account.getBalanceAt(epoch));
+            }
+        });
+        assertThat(balancesAtEpoch).containsExactly(INITIAL_BALANCE + 10L);
+        assertThat(store.get(1L).getBalanceAt(epoch)).isEqualTo(INITIAL_BALANCE + 10L);
+    }
+
+    @Test
+    public void givenEpochStartedBetweenChangeAndEviction_whenEvicted_thenBalanceAtEpochIsTheChangedOne() {
+        //GIVEN
+        MappedAccountStore disk = createDisk();
+        TieredAccountStore store = new TieredAccountStore(disk, CACHE_CAPACITY, 1);
+        store.get(1L).add(10L);
+        long epoch = Account.startSnapshotEpoch();
+
+        //WHEN
+        touchAccountsFrom(2L, store);
+        store.get(1L).add(10L);
+
+        //THEN
+        assertThat(disk.balanceAt(disk.slotOf(1L), epoch)).isEqualTo(INITIAL_BALANCE + 10L);
+        assertThat(store.get(1L).getBalanceAt(epoch)).isEqualTo(INITIAL_BALANCE + 10L);
+        assertThat(store.get(1L).getBalance()).isEqualTo(INITIAL_BALANCE + 20L);
+    }
+
+    @Test
+    public void givenEpochsStartedWhileTransfersEvictEachOther_whenReadBalancesAtEpoch_thenMoneyAddsUp()
+            throws Exception {
+        //GIVEN
+        TieredAccountStore store = new TieredAccountStore(createDisk(), CACHE_CAPACITY, 1);
+        //transfers hold the read lock, an epoch is started under the write lock while no transfer is in flight
+        ReadWriteLock gate = new ReentrantReadWriteLock();
+        AtomicBoolean stopped = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (!stopped.get()) {
+                    gate.readLock().lock();
+                    try {
+                        store.get(random.nextInt(NUMBER_OF_ACCOUNTS))
+                                .tryTransfer(store.get(random.nextInt(NUMBER_OF_ACCOUNTS)), random.nextInt(1, 50));
+                    } finally {
+                        gate.readLock().unlock();
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+
+        //WHEN
+        List<Long> totalsAtEpochs = new ArrayList<>();
+        try {
+            for (int i = 0; i < EPOCHS; i++) {
+                long epoch;
+                gate.writeLock().lock();
+                try {
+                    epoch = Account.startSnapshotEpoch();
+                } finally {
+                    gate.writeLock().unlock();
+                }
+                long total = 0;
+                for (long accountId = 0; accountId < NUMBER_OF_ACCOUNTS; accountId++) {
+                    total += store.get(accountId).getBalanceAt(epoch);
+                }
+                totalsAtEpochs.add(total);
+            }
+        } finally {
+            stopped.set(true);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+
+        //THEN
+        assertThat(totalsAtEpochs).containsOnly(NUMBER_OF_ACCOUNTS * INITIAL_BALANCE);
+    }
+
+    @Test
+    public void givenConcurrentTransfersEvictingEachOther_whenTheyFinish_thenNoMoneyIsLost() throws Exception {
+        //GIVEN
+        MappedAccountStore disk = createDisk();
+        TieredAccountStore store = new TieredAccountStore(disk, CACHE_CAPACITY, 1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int transfer = 0; transfer < 20_000; transfer++) {
+                    Account accountFrom = store.get(random.nextInt(NUMBER_OF_ACCOUNTS));
+                    Account accountTo = store.get(random.nextInt(NUMBER_OF_ACCOUNTS));
+                    accountFrom.tryTransfer(accountTo, random.nextInt(1, 50));
+                }
+            }));
+        }
+
+        //WHEN
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        store.close();
+
+        //THEN
+        LongAdder total = new LongAdder();
+        disk.forEach(account -> total.add(account.getBalance()));
+        assertThat(total.sum()).isEqualTo(NUMBER_OF_ACCOUNTS * INITIAL_BALANCE);
+        assertThat(store.getCachedCount()).isZero();
+    }
+
+    @Test
+    public void givenCapturesAndTransfersUnderMonitorsEvictingEachOther_whenTheyFinish_thenNoMoneyIsLost()
+            throws Exception {
+        //GIVEN
+        TransferStrategy transferStrategy = Account.getTransferStrategy();
+        Account.setTransferStrategy(TransferStrategy.forName("monitor"));
+        MappedAccountStore disk = createDisk();
+        TieredAccountStore store = new TieredAccountStore(disk, CACHE_CAPACITY, 1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int transfer = 0; transfer < 20_000; transfer++) {
+                    Account accountFrom = store.get(random.nextInt(NUMBER_OF_ACCOUNTS));
+                    Account accountTo = store.get(random.nextInt(NUMBER_OF_ACCOUNTS));
+                    if (accountFrom.getAccountId() == accountTo.getAccountId()) {
+                        continue;
+                    }
+                    if (random.nextBoolean()) {
+                        accountFrom.tryTransfer(accountTo, random.nextInt(1, 50));
+                    } else if (accountFrom.tryHold(10L)) {
+                        accountFrom.captureHold(10L, accountTo, 5L, TransferLog.NONE);
+                    }
+                }
+            }));
+        }
+
+        try {
+            //WHEN
+            threads.forEach(Thread::start);
+            for (Thread thread : threads) {
+                thread.join(TimeUnit.MINUTES.toMillis(1));
+                assertThat(thread.isAlive()).as("deadlocked").isFalse();
+            }
+            store.close();
+        } finally {
+            Account.setTransferStrategy(transferStrategy);
+        }
+
+        //THEN
+        LongAdder total = new LongAdder();
+        disk.forEach(account -> total.add(account.getBalance()));
+        assertThat(total.sum()).isEqualTo(NUMBER_OF_ACCOUNTS * INITIAL_BALANCE);
+        assertThat(store.getCachedCount()).isZero();
+    }
+
+    private static MappedAccountStore createDisk() {
+        MappedAccountStore disk = MappedAccountStore.inMemory(NUMBER_OF_ACCOUNTS);
+        for (long accountId = 0; accountId < NUMBER_OF_ACCOUNTS; accountId++) {
+            disk.put(new Account(accountId, INITIAL_BALANCE));
+        }
+        return disk;
+    }
+
+    //accounts from the given one on are looked up once, many more than the cache holds
+    private static void touchAccountsFrom(long firstAccountId, TieredAccountStore store) {
+        for (long accountId = firstAccountId; accountId < NUMBER_OF_ACCOUNTS; accountId++) {
+            store.get(accountId);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package scheduling;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ScheduledTransfersTest {
+    private static final long TICK_MILLIS = 100L;
+    private static final long START_MILLIS = 1_539_856_800_000L;
+    private static final long ACCOUNT_ID_OF_ACCOUNT_FROM = 1L;
+    private static final long ACCOUNT_ID_OF_ACCOUNT_TO = 2L;
+    private static final long AMOUNT = 100L;
+
+    @Test
+    public void givenTransfersDueAtDifferentLevels_whenPollDue_thenEveryTransferIsPolledAtItsTickAndNotBefore() {
+        //GIVEN
+        ScheduledTransfers transfers = new ScheduledTransfers(TICK_MILLIS, START_MILLIS);
+        Random random = new Random(42);
+        long[] executeAt = new long[1000];
+        for (int i = 0; i < executeAt.length; i++) {
+            //from a tick to a few weeks ahead, the lowest five levels of the wheel get some
+            long ticksAhead = 1L + (long) (Math.pow(2, random.nextInt(25)) * random.nextDouble());
+            executeAt[i] = START_MILLIS + ticksAhead * TICK_MILLIS - random.nextInt((int) TICK_MILLIS);
+            transfers.add(executeAt[i], ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, i);
+        }
+        List<Long> polledAmounts = new ArrayList<>();
+
+        //WHEN
+        long now = START_MILLIS;
+        for (int step = 0; transfers.size() > 0 && step < 100_000; step++) {
+            //time goes in leaps, the wheel moves tick by tick to catch up
+            now += TICK_MILLIS * (1 + random.nextInt(1 << 14));
+            long polledAt = now;
+            transfers.pollDue(now, Integer.MAX_VALUE, (id, executeAtMillis, accountFromId, accountToId, amount) -> {
+                //THEN
+                assertThat(executeAtMillis).isLessThanOrEqualTo(polledAt);
+                assertThat(executeAtMillis).isEqualTo(executeAt[(int) amount]);
+                polledAmounts.add(amount);
+            });
+        }
+
+        //THEN
+        assertThat(polledAmounts).hasSize(executeAt.length).doesNotHaveDuplicates();
+        assertThat(transfers.size()).isZero();
+    }
+
+    @Test
+    public void givenTransfer_whenPollDueTickByTick_thenItIsPolledAtTheFirstTickNotBeforeItsTime() {
+        //GIVEN
+        ScheduledTransfers transfers = new ScheduledTransfers(TICK_MILLIS, START_MILLIS);
+        long executeAt = START_MILLIS + 5_000 * TICK_MILLIS + 1;
+        transfers.add(executeAt, ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT);
+        List<Long> polledAt = new ArrayList<>();
+
+        //WHEN
+        for (long now = START_MILLIS; now <= executeAt + 2 * TICK_MILLIS; now += TICK_MILLIS) {
+            long tick = now;
+            transfers.pollDue(now, Integer.MAX_VALUE, (id, executeAtMillis, accountFromId, accountToId, amount) ->
+                    polledAt.add(tick));
+        }
+
+        //THEN
+        assertThat(polledAt).containsExactly(START_MILLIS + 5_001 * TICK_MILLIS);
+    }
+
+    @Test
+    public void givenTransferInThePast_whenPollDue_thenItIsPolledRightAway() {
+        //GIVEN
+        ScheduledTransfers transfers = new ScheduledTransfers(TICK_MILLIS, START_MILLIS);
+        transfers.add(START_MILLIS - 60_000L, ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT);
+
+        //WHEN
+        int polled = transfers.pollDue(START_MILLIS, Integer.MAX_VALUE, (id, executeAt, from, to, amount) -> { });
+
+        //THEN
+        assertThat(polled).isEqualTo(1);
+    }
+
+    @Test
+    public void givenManyTransfersDueAtOnce_whenPollDueWithLimit_thenTheyArePolledInParts() {
+        //GIVEN
+        ScheduledTransfers transfers = new ScheduledTransfers(TICK_MILLIS, START_MILLIS);
+        for (int i = 0; i < 250; i++) {
+            transfers.add(START_MILLIS + 3_600_000L, ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT);
+        }
+        long now = START_MILLIS + 3_600_000L;
+
+        //WHEN
+        int first = transfers.pollDue(now, 100, (id, executeAt, from, to, amount) -> { });
+        int second = transfers.pollDue(now, 100, (id, executeAt, from, to, amount) -> { });
+        int third = transfers.pollDue(now, 100, (id, executeAt, from, to, amount) -> { });
+
+        //THEN
+        assertThat(first).isEqualTo(100);
+        assertThat(second).isEqualTo(100);
+        assertThat(third).isEqualTo(50);
+        assertThat(transfers.size()).isZero();
+    }
+
+    @Test
+    public void givenCancelledTransfer_whenPollDue_thenItIsNotPolledAndItsIdIsNotReused() {
+        //GIVEN
+        ScheduledTransfers transfers = new ScheduledTransfers(TICK_MILLIS, START_MILLIS);
+        long cancelledId =
+                transfers.add(START_MILLIS + 1_000L, ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, 1L);
+        long id = transfers.add(START_MILLIS + 1_000L, ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, 2L);
+
+        //WHEN
+        boolean cancelled = transfers.cancel(cancelledId);
+        long reusingId =
+                transfers.add(START_MILLIS + 1_000L, ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, 3L);
+        List<Long> polledAmounts = new ArrayList<>();
+        transfers.pollDue(START_MILLIS + 1_000L, Integer.MAX_VALUE,
+                (polledId, executeAt, from, to, amount) -> polledAmounts.add(amount));
+
+        //THEN
+        assertThat(cancelled).isTrue();
+        assertThat(reusingId).isNotEqualTo(cancelledId);
+        assertThat(polledAmounts).containsExactlyInAnyOrder(2L, 3L);
+        assertThat(transfers.cancel(cancelledId)).isFalse();
+        assertThat(transfers.cancel(id)).isFalse();
+    }
+
+    @Test
+    public void givenRestoredTransfers_whenAdd_thenRestoredIdsAreKeptAndFreeIdsReused() {
+        //GIVEN
+        ScheduledTransfers transfers = new ScheduledTransfers(TICK_MILLIS, START_MILLIS);
+        long restoredId = 7L << 32 | 3;
+        transfers.restore(restoredId, START_MILLIS + 1_000L, ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, 1L);
+        transfers.restored();
+
+        //WHEN
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            ids.add(transfers.add(START_MILLIS + 1_000L, ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, 2L));
+        }
+
+        //THEN
+        assertThat(ids).containsExactly(0L, 1L, 2L, 4L);
+        assertThat(transfers.cancel(restoredId)).isTrue();
+        assertThatThrownBy(() -> transfers.restore(ids.get(0), START_MILLIS, 1L, 2L, 1L))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void givenTransferBeyondTheWheel_whenAdd_thenThrowsAnException() {
+        //GIVEN
+        ScheduledTransfers transfers = new ScheduledTransfers(TICK_MILLIS, START_MILLIS);
+
+        //WHEN
+        assertThatThrownBy(() ->
+                transfers.add(Long.MAX_VALUE, ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, 1L))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,196 @@
+package scheduling;
+
+import model.TransferResult;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import service.MoneyTransferService;
+import service.TransferBatch;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class TransferSchedulerTest {
+    private static final long TICK_MILLIS = 100L;
+    private static final long START_MILLIS = 1_539_856_800_000L;
+    private static final long ACCOUNT_ID_OF_ACCOUNT_FROM = 1L;
+    private static final long ACCOUNT_ID_OF_ACCOUNT_TO = 2L;
+    private static final long AMOUNT = 100L;
+    @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    @Mock private MoneyTransferService moneyTransferServiceMock;
+    private final AtomicLong clock = new AtomicLong(START_MILLIS);
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        when(moneyTransferServiceMock.transfer(any(TransferBatch.class))).thenAnswer(invocation -> {
+            TransferResult[] results = new TransferResult[invocation.<TransferBatch>getArgument(0).size()];
+            Arrays.fill(results, TransferResult.OK);
+            return results;
+        });
+    }
+
+    @Test
+    public void givenScheduledTransfers_whenTheyAreDue_thenTheyAreExecutedAsOneBatch() throws IOException {
+        //GIVEN
+        try (TransferScheduler scheduler = scheduler(scheduleFile())) {
+            scheduler.schedule(START_MILLIS + 60_000L, ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT);
+            scheduler.schedule(START_MILLIS + 60_000L, ACCOUNT_ID_OF_ACCOUNT_TO, ACCOUNT_ID_OF_ACCOUNT_FROM, AMOUNT);
+            clock.set(START_MILLIS + 59_999L);
+            int executedEarly = scheduler.executeDue();
+
+            //WHEN
+            clock.set(START_MILLIS + 60_000L);
+            int executed = scheduler.executeDue();
+
+            //THEN
+            assertThat(executedEarly).isZero();
+            assertThat(executed).isEqualTo(2);
+            ArgumentCaptor<TransferBatch> batch = ArgumentCaptor.forClass(TransferBatch.class);
+            verify(moneyTransferServiceMock, times(1)).transfer(batch.capture());
+            assertThat(batch.getValue().size()).isEqualTo(2);
+            assertThat(scheduler.getPendingCount()).isZero();
+        }
+    }
+
+    @Test
+    public void givenCancelledTransfer_whenItIsDue_thenItIsNotExecuted() throws IOException {
+        //GIVEN
+        try (TransferScheduler scheduler = scheduler(scheduleFile())) {
+            long id = scheduler.schedule(
+                    START_MILLIS + 60_000L, ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT);
+
+            //WHEN
+            boolean cancelled = scheduler.cancel(id);
+            clock.set(START_MILLIS + 60_000L);
+            scheduler.executeDue();
+
+            //THEN
+            assertThat(cancelled).isTrue();
+            assertThat(scheduler.cancel(id)).isFalse();
+            verify(moneyTransferServiceMock, never()).transfer(any(TransferBatch.class));
+        }
+    }
+
+    @Test
+    public void givenRestart_whenSchedulerIsCreated_thenPendingTransfersAreRestoredUnderTheirIds() throws Exception {
+        //GIVEN
+        Path file = scheduleFile();
+        long pendingId;
+        try (TransferScheduler scheduler = scheduler(file)) {
+            scheduler.schedule(START_MILLIS + 1_000L, ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT);
+            long cancelledId = scheduler.schedule(
+                    START_MILLIS + 60_000L, ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT);
+            pendingId = scheduler.schedule(
+                    START_MILLIS + 60_000L, ACCOUNT_ID_OF_ACCOUNT_TO, ACCOUNT_ID_OF_ACCOUNT_FROM, AMOUNT);
+            scheduler.schedule(START_MILLIS + 120_000L, ACCOUNT_ID_OF_ACCOUNT_TO, ACCOUNT_ID_OF_ACCOUNT_FROM, AMOUNT);
+            scheduler.cancel(cancelledId);
+            clock.set(START_MILLIS + 1_000L);
+            scheduler.executeDue();
+        }
+        //a record torn by a crash
+        try (FileChannel channel = FileChannel.open(file, APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[ScheduleLog.RECORD_SIZE / 2]));
+        }
+
+        //WHEN
+        try (TransferScheduler scheduler = scheduler(file)) {
+            //THEN
+            assertThat(scheduler.getPendingCount()).isEqualTo(2);
+            assertThat(Files.size(file)).isEqualTo(2L * ScheduleLog.RECORD_SIZE);
+            assertThat(scheduler.cancel(pendingId)).isTrue();
+            clock.set(START_MILLIS + 120_000L);
+            assertThat(scheduler.executeDue()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void givenDeclinedTransfer_whenItIsExecuted_thenItIsNotCountedAndItsResultIsKept() throws IOException {
+        //GIVEN
+        when(moneyTransferServiceMock.transfer(any(TransferBatch.class)))
+                .thenReturn(new TransferResult[] {TransferResult.OK, TransferResult.NOT_ENOUGH_MONEY});
+        try (TransferScheduler scheduler = scheduler(scheduleFile())) {
+            long appliedId = scheduler.schedule(
+                    START_MILLIS + 1_000L, ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT);
+            long declinedId = scheduler.schedule(
+                    START_MILLIS + 1_000L, ACCOUNT_ID_OF_ACCOUNT_TO, ACCOUNT_ID_OF_ACCOUNT_FROM, AMOUNT);
+            long pendingId = scheduler.schedule(
+                    START_MILLIS + 60_000L, ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT);
+            clock.set(START_MILLIS + 1_000L);
+
+            //WHEN
+            int executed = scheduler.executeDue();
+
+            //THEN
+            assertThat(executed).isEqualTo(1);
+            assertThat(scheduler.getStatus(appliedId)).isEqualTo("OK");
+            assertThat(scheduler.getStatus(declinedId)).isEqualTo("NOT_ENOUGH_MONEY");
+            assertThat(scheduler.getStatus(pendingId)).isEqualTo(TransferScheduler.PENDING);
+            scheduler.cancel(pendingId);
+            assertThat(scheduler.getStatus(pendingId)).isNull();
+        }
+    }
+
+    @Test
+    public void givenBatchThrowsAnError_whenTimerExecutesIt_thenErrorIsHandledAndTransferIsFailed() throws Exception {
+        //GIVEN
+        when(moneyTransferServiceMock.transfer(any(TransferBatch.class))).thenThrow(new AssertionError("batch"));
+        CountDownLatch handled = new CountDownLatch(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        try (TransferScheduler scheduler = scheduler(scheduleFile())) {
+            long id = scheduler.schedule(START_MILLIS, ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT);
+
+            //WHEN
+            scheduler.start(e -> {
+                failure.set(e);
+                handled.countDown();
+            });
+
+            //THEN
+            assertThat(handled.await(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(failure.get()).isInstanceOf(AssertionError.class);
+            assertThat(scheduler.getStatus(id)).isEqualTo(TransferScheduler.FAILED);
+        }
+    }
+
+    @Test
+    public void givenTransferFromAccountToItself_whenSchedule_thenThrowsAnException() throws IOException {
+        //GIVEN
+        try (TransferScheduler scheduler = scheduler(scheduleFile())) {
+            //WHEN
+            assertThatThrownBy(() -> scheduler.schedule(
+                    START_MILLIS, ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_FROM, AMOUNT))
+                    .isInstanceOf(IllegalArgumentException.class);
+            assertThat(scheduler.getPendingCount()).isZero();
+        }
+    }
+
+    private TransferScheduler scheduler(Path file) {
+        return new TransferScheduler(moneyTransferServiceMock, file, TICK_MILLIS, clock::get);
+    }
+
+    private Path scheduleFile() throws IOException {
+        return temporaryFolder.newFolder().toPath().resolve("scheduled-transfers");
+    }
+}
@@ -1,17 +1,45 @@
 package service;
 
+import history.TransferHistory;
+import idempotency.IdempotencyCache;
+import journal.FileTransferJournal;
+import journal.TransferJournal;
 import json.MoneyTransferRequest;
 import model.Account;
+import model.TransferLog;
+import model.TransferResult;
+import model.TransferStrategy;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.InOrder;
 import org.mockito.Mock;
+import org.mockito.stubbing.Answer;
+import reconciliation.Reconciliation;
+import reconciliation.ReconciliationReport;
 import repository.AccountsRepository;
+import repository.LongOpenHashAccountStore;
 
-import java.util.Optional;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -19,7 +47,10 @@ public class MoneyTransferServiceTest {
     private static final long ACCOUNT_ID_OF_ACCOUNT_FROM = 1L;
     private static final long ACCOUNT_ID_OF_ACCOUNT_TO = 2L;
     private static final long UNKNOWN_ACCOUNT_ID = 3L;
+    private static final long ACCOUNT_ID_OF_ANOTHER_ACCOUNT = 4L;
     private static final long AMOUNT_TO_TRANSFER = 100L;
+    private static final long HOLD_TTL_MILLIS = 60_000L;
+    private static final String IDEMPOTENCY_KEY = "retried-transfer";
     private static final MoneyTransferRequest MONEY_TRANSFER_REQUEST =
             new MoneyTransferRequest(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT_TO_TRANSFER);
     private static final MoneyTransferRequest MONEY_TRANSFER_REQUEST_WITH_UNKNOWN_ACCOUNT_ID =
@@ -27,12 +58,14 @@ public class MoneyTransferServiceTest {
     @Mock private AccountsRepository accountsRepositoryMock;
     @Mock private Account accountFromMock;
     @Mock private Account accountToMock;
+    @Mock private TransferJournal journalMock;
+    @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
 
     @Before
     public void setUp() throws Exception {
         initMocks(this);
-        when(accountsRepositoryMock.find(ACCOUNT_ID_OF_ACCOUNT_FROM)).thenReturn(Optional.of(accountFromMock));
-        when(accountsRepositoryMock.find(ACCOUNT_ID_OF_ACCOUNT_TO)).thenReturn(Optional.of(accountToMock));
+        when(accountsRepositoryMock.get(ACCOUNT_ID_OF_ACCOUNT_FROM)).thenReturn(accountFromMock);
+        when(accountsRepositoryMock.get(ACCOUNT_ID_OF_ACCOUNT_TO)).thenReturn(accountToMock);
     }
 
     @Test
@@ -42,9 +75,273 @@ public class MoneyTransferServiceTest {
         moneyTransferService.transfer(MONEY_TRANSFER_REQUEST);
 
         //THEN
-        verify(accountFromMock, times(1)).transfer(accountToMock, AMOUNT_TO_TRANSFER);
-        verify(accountsRepositoryMock, times(1)).find(ACCOUNT_ID_OF_ACCOUNT_FROM);
-        verify(accountsRepositoryMock, times(1)).find(ACCOUNT_ID_OF_ACCOUNT_TO);
+        verify(accountFromMock, times(1)).transfer(eq(accountToMock), eq(AMOUNT_TO_TRANSFER), any(TransferLog.class));
+        verify(accountsRepositoryMock, times(1)).get(ACCOUNT_ID_OF_ACCOUNT_FROM);
+        verify(accountsRepositoryMock, times(1)).get(ACCOUNT_ID_OF_ACCOUNT_TO);
+    }
+
+    @Test
+    public void givenJournal_whenTransfer_thenTransferIsAppendedWhileItIsAppliedAndAwaited() {
+        //GIVEN
+        when(accountFromMock.transfer(eq(accountToMock), eq(AMOUNT_TO_TRANSFER), any(TransferLog.class)))
+                .thenAnswer(appendedToLog());
+        when(journalMock.append(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT_TO_TRANSFER))
+                .thenReturn(7L);
+        MoneyTransferService moneyTransferService = new MoneyTransferService(accountsRepositoryMock, journalMock);
+
+        //WHEN
+        moneyTransferService.transfer(MONEY_TRANSFER_REQUEST);
+
+        //THEN
+        InOrder inOrder = inOrder(accountFromMock, journalMock);
+        inOrder.verify(accountFromMock).transfer(eq(accountToMock), eq(AMOUNT_TO_TRANSFER), any(TransferLog.class));
+        inOrder.verify(journalMock).append(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT_TO_TRANSFER);
+        inOrder.verify(journalMock).awaitDurable(7L);
+    }
+
+    @Test
+    public void givenJournal_whenAddAccounts_thenAccountsAreAddedAndAppendedAndAwaited() {
+        //GIVEN
+        AccountsRepository accountsRepository = new AccountsRepository(new LongOpenHashAccountStore(16));
+        when(journalMock.appendAccount(ACCOUNT_ID_OF_ACCOUNT_FROM, AMOUNT_TO_TRANSFER)).thenReturn(1L);
+        when(journalMock.appendAccount(ACCOUNT_ID_OF_ACCOUNT_TO, 0L)).thenReturn(2L);
+        MoneyTransferService moneyTransferService = new MoneyTransferService(accountsRepository, journalMock);
+
+        //WHEN
+        moneyTransferService.addAccounts(Arrays.asList(
+                new Account(ACCOUNT_ID_OF_ACCOUNT_FROM, AMOUNT_TO_TRANSFER), new Account(ACCOUNT_ID_OF_ACCOUNT_TO, 0L)));
+
+        //THEN
+        assertThat(accountsRepository.get(ACCOUNT_ID_OF_ACCOUNT_FROM).getBalance()).isEqualTo(AMOUNT_TO_TRANSFER);
+        assertThat(accountsRepository.get(ACCOUNT_ID_OF_ACCOUNT_TO).getBalance()).isZero();
+        InOrder inOrder = inOrder(journalMock);
+        inOrder.verify(journalMock).appendAccount(ACCOUNT_ID_OF_ACCOUNT_FROM, AMOUNT_TO_TRANSFER);
+        inOrder.verify(journalMock).appendAccount(ACCOUNT_ID_OF_ACCOUNT_TO, 0L);
+        inOrder.verify(journalMock).awaitDurable(2L);
+    }
+
+    @Test
+    public void givenJournal_whenClose_thenAccountsAreClosedAtTheLastJournalSequence() {
+        //GIVEN
+        when(journalMock.getLastSequence()).thenReturn(7L);
+        MoneyTransferService moneyTransferService = new MoneyTransferService(accountsRepositoryMock, journalMock);
+
+        //WHEN
+        moneyTransferService.close();
+
+        //THEN
+        verify(accountsRepositoryMock).close(7L);
+    }
+
+    @Test
+    public void givenClosedService_whenTryTransfer_thenItFailsInsteadOfWaiting() {
+        //GIVEN
+        MoneyTransferService moneyTransferService = new MoneyTransferService(accountsRepositoryMock, journalMock);
+        moneyTransferService.close();
+
+        //WHEN
+        assertThatThrownBy(() -> moneyTransferService.tryTransfer(MONEY_TRANSFER_REQUEST))
+                .isInstanceOf(IllegalStateException.class);
+
+        //THEN
+        verify(journalMock, never()).append(anyLong(), anyLong(), anyLong());
+    }
+
+    @Test
+    public void givenJournalAndNotEnoughMoney_whenTransfer_thenNothingIsAppended() {
+        //GIVEN
+        doThrow(new IllegalArgumentException("Not enough money!"))
+                .when(accountFromMock).transfer(eq(accountToMock), eq(AMOUNT_TO_TRANSFER), any(TransferLog.class));
+        MoneyTransferService moneyTransferService = new MoneyTransferService(accountsRepositoryMock, journalMock);
+
+        //WHEN
+        assertThatThrownBy(() -> moneyTransferService.transfer(MONEY_TRANSFER_REQUEST))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        //THEN
+        verifyZeroInteractions(journalMock);
+    }
+
+    @Test
+    public void givenJournalAndNotEnoughMoney_whenTryTransfer_thenDeclineIsReturnedAndNothingIsAppended() {
+        //GIVEN
+        when(accountFromMock.tryTransfer(eq(accountToMock), eq(AMOUNT_TO_TRANSFER), any(TransferLog.class)))
+                .thenReturn(-1L - TransferResult.NOT_ENOUGH_MONEY.ordinal());
+        MoneyTransferService moneyTransferService = new MoneyTransferService(accountsRepositoryMock, journalMock);
+
+        //WHEN
+        TransferResult result = moneyTransferService.tryTransfer(
+                ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT_TO_TRANSFER);
+
+        //THEN
+        assertThat(result).isEqualTo(TransferResult.NOT_ENOUGH_MONEY);
+        verifyZeroInteractions(journalMock);
+    }
+
+    @Test
+    public void givenJournal_whenTryTransfer_thenTransferIsAppendedAndAwaited() {
+        //GIVEN
+        when(accountFromMock.tryTransfer(eq(accountToMock), eq(AMOUNT_TO_TRANSFER), any(TransferLog.class)))
+                .thenAnswer(appendedToLog());
+        when(journalMock.append(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT_TO_TRANSFER))
+                .thenReturn(7L);
+        MoneyTransferService moneyTransferService = new MoneyTransferService(accountsRepositoryMock, journalMock);
+
+        //WHEN
+        TransferResult result = moneyTransferService.tryTransfer(
+                ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT_TO_TRANSFER);
+
+        //THEN
+        assertThat(result).isEqualTo(TransferResult.OK);
+        verify(journalMock, times(1)).awaitDurable(7L);
+    }
+
+    @Test
+    public void givenHistory_whenTryTransfer_thenOnlyAppliedTransfersAreRecorded() {
+        //GIVEN
+        when(accountFromMock.tryTransfer(eq(accountToMock), eq(AMOUNT_TO_TRANSFER), any(TransferLog.class)))
+                .thenAnswer(appendedToLog());
+        when(accountFromMock.tryTransfer(eq(accountToMock), eq(AMOUNT_TO_TRANSFER * 2), any(TransferLog.class)))
+                .thenReturn(-1L - TransferResult.NOT_ENOUGH_MONEY.ordinal());
+        TransferHistory history = new TransferHistory(16);
+        MoneyTransferService moneyTransferService =
+                new MoneyTransferService(accountsRepositoryMock, TransferJournal.NONE, history);
+
+        //WHEN
+        moneyTransferService.tryTransfer(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT_TO_TRANSFER);
+        moneyTransferService.tryTransfer(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT_TO_TRANSFER * 2);
+
+        //THEN
+        List<Long> amounts = new ArrayList<>();
+        history.read(ACCOUNT_ID_OF_ACCOUNT_TO, 0, Long.MAX_VALUE, TransferHistory.NO_MORE_RECORDS, 10,
+                (timestamp, accountFromId, accountToId, amount) -> amounts.add(amount));
+        assertThat(amounts).containsExactly(AMOUNT_TO_TRANSFER);
+    }
+
+    @Test
+    public void givenRetriedTransferWithIdempotencyKey_whenTryTransfer_thenTransferIsAppliedOnce() {
+        //GIVEN
+        when(accountFromMock.tryTransfer(eq(accountToMock), eq(AMOUNT_TO_TRANSFER), any(TransferLog.class)))
+                .thenAnswer(appendedToLog());
+        MoneyTransferService moneyTransferService = new MoneyTransferService(accountsRepositoryMock,
+                TransferJournal.NONE, new TransferHistory(16), new IdempotencyCache(16, 60_000L));
+        MoneyTransferRequest request =
+                new MoneyTransferRequest(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT_TO_TRANSFER);
+        request.setIdempotencyKey(IDEMPOTENCY_KEY);
+
+        //WHEN
+        TransferResult first = moneyTransferService.tryTransfer(request);
+        TransferResult retry = moneyTransferService.tryTransfer(request);
+        TransferResult asyncRetry = moneyTransferService.tryTransferAsync(request).join();
+
+        //THEN
+        assertThat(first).isEqualTo(TransferResult.OK);
+        assertThat(retry).isEqualTo(TransferResult.OK);
+        assertThat(asyncRetry).isEqualTo(TransferResult.OK);
+        verify(accountFromMock, times(1))
+                .tryTransfer(eq(accountToMock), eq(AMOUNT_TO_TRANSFER), any(TransferLog.class));
+    }
+
+    @Test
+    public void givenJournalFailingAfterTransferIsApplied_whenRetryWithIdempotencyKey_thenOutcomeUnknownIsReturned() {
+        //GIVEN
+        when(accountFromMock.tryTransfer(eq(accountToMock), eq(AMOUNT_TO_TRANSFER), any(TransferLog.class)))
+                .thenAnswer(appendedToLog());
+        when(journalMock.append(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT_TO_TRANSFER))
+                .thenReturn(7L);
+        doThrow(new IllegalStateException("Journal is closed")).when(journalMock).awaitDurable(7L);
+        MoneyTransferService moneyTransferService = new MoneyTransferService(accountsRepositoryMock,
+                journalMock, new TransferHistory(16), new IdempotencyCache(16, 60_000L));
+        MoneyTransferRequest request =
+                new MoneyTransferRequest(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT_TO_TRANSFER);
+        request.setIdempotencyKey(IDEMPOTENCY_KEY);
+        assertThatThrownBy(() -> moneyTransferService.tryTransfer(request)).isInstanceOf(IllegalStateException.class);
+
+        //WHEN
+        TransferResult retry = moneyTransferService.tryTransfer(request);
+
+        //THEN
+        assertThat(retry).isEqualTo(TransferResult.OUTCOME_UNKNOWN);
+        verify(accountFromMock, times(1))
+                .tryTransfer(eq(accountToMock), eq(AMOUNT_TO_TRANSFER), any(TransferLog.class));
+    }
+
+    @Test
+    public void givenLookupFailingBeforeTransferIsApplied_whenRetryWithIdempotencyKey_thenTransferIsApplied() {
+        //GIVEN
+        when(accountsRepositoryMock.get(ACCOUNT_ID_OF_ACCOUNT_FROM))
+                .thenThrow(new IllegalStateException("Account store is closed"))
+                .thenReturn(accountFromMock);
+        when(accountFromMock.tryTransfer(eq(accountToMock), eq(AMOUNT_TO_TRANSFER), any(TransferLog.class)))
+                .thenAnswer(appendedToLog());
+        MoneyTransferService moneyTransferService = new MoneyTransferService(accountsRepositoryMock,
+                TransferJournal.NONE, new TransferHistory(16), new IdempotencyCache(16, 60_000L));
+        MoneyTransferRequest request =
+                new MoneyTransferRequest(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT_TO_TRANSFER);
+        request.setIdempotencyKey(IDEMPOTENCY_KEY);
+        assertThatThrownBy(() -> moneyTransferService.tryTransfer(request)).isInstanceOf(IllegalStateException.class);
+
+        //WHEN
+        TransferResult retry = moneyTransferService.tryTransfer(request);
+
+        //THEN
+        assertThat(retry).isEqualTo(TransferResult.OK);
+        verify(accountFromMock, times(1))
+                .tryTransfer(eq(accountToMock), eq(AMOUNT_TO_TRANSFER), any(TransferLog.class));
+    }
+
+    @Test
+    public void givenJournalFailingWhileTransferIsApplied_whenTryTransfer_thenOutcomeUnknownIsReturned() {
+        //GIVEN
+        when(accountFromMock.tryTransfer(eq(accountToMock), eq(AMOUNT_TO_TRANSFER), any(TransferLog.class)))
+                .thenAnswer(appendedToLog());
+        when(journalMock.append(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT_TO_TRANSFER))
+                .thenThrow(new IllegalStateException("Journal is closed"));
+        MoneyTransferService moneyTransferService = new MoneyTransferService(accountsRepositoryMock, journalMock);
+
+        //WHEN
+        TransferResult result = moneyTransferService.tryTransfer(
+                ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT_TO_TRANSFER);
+
+        //THEN
+        assertThat(result).isEqualTo(TransferResult.OUTCOME_UNKNOWN);
+    }
+
+    @Test
+    public void givenIdempotencyKeyReusedForAnotherTransfer_whenTryTransfer_thenKeyReusedIsReturned() {
+        //GIVEN
+        when(accountFromMock.tryTransfer(eq(accountToMock), eq(AMOUNT_TO_TRANSFER), any(TransferLog.class)))
+                .thenAnswer(appendedToLog());
+        MoneyTransferService moneyTransferService = new MoneyTransferService(accountsRepositoryMock,
+                TransferJournal.NONE, new TransferHistory(16), new IdempotencyCache(16, 60_000L));
+        MoneyTransferRequest request =
+                new MoneyTransferRequest(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT_TO_TRANSFER);
+        request.setIdempotencyKey(IDEMPOTENCY_KEY);
+        MoneyTransferRequest anotherRequest =
+                new MoneyTransferRequest(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT_TO_TRANSFER * 2);
+        anotherRequest.setIdempotencyKey(IDEMPOTENCY_KEY);
+        moneyTransferService.tryTransfer(request);
+
+        //WHEN
+        TransferResult result = moneyTransferService.tryTransfer(anotherRequest);
+
+        //THEN
+        assertThat(result).isEqualTo(TransferResult.IDEMPOTENCY_KEY_REUSED);
+        verify(accountFromMock, times(0))
+                .tryTransfer(eq(accountToMock), eq(AMOUNT_TO_TRANSFER * 2), any(TransferLog.class));
+    }
+
+    @Test
+    public void givenNotExistingAccount_whenTryTransfer_thenUnknownAccountIsReturned() {
+        //GIVEN
+        MoneyTransferService moneyTransferService = new MoneyTransferService(accountsRepositoryMock);
+
+        //WHEN
+        TransferResult result = moneyTransferService.tryTransfer(
+                UNKNOWN_ACCOUNT_ID, ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT_TO_TRANSFER);
+
+        //THEN
+        assertThat(result).isEqualTo(TransferResult.UNKNOWN_ACCOUNT);
     }
 
     @Test
@@ -54,4 +351,534 @@ public class MoneyTransferServiceTest {
         assertThatThrownBy(() -> moneyTransferService.transfer(MONEY_TRANSFER_REQUEST_WITH_UNKNOWN_ACCOUNT_ID))
                 .isInstanceOf(IllegalArgumentException.class);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void givenBatch_whenTransfer_thenTransfersAreAppliedInOrderAndResultOfEveryTransferIsReturned() {
+        //GIVEN
+        Account accountFrom = new Account(ACCOUNT_ID_OF_ACCOUNT_FROM, 150L);
+        Account accountTo = new Account(ACCOUNT_ID_OF_ACCOUNT_TO, 10L);
+        when(accountsRepositoryMock.get(ACCOUNT_ID_OF_ACCOUNT_FROM)).thenReturn(accountFrom);
+        when(accountsRepositoryMock.get(ACCOUNT_ID_OF_ACCOUNT_TO)).thenReturn(accountTo);
+        TransferBatch batch = new TransferBatch();
+        batch.add(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, 100L);
+        batch.add(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, 100L);
+        batch.add(ACCOUNT_ID_OF_ACCOUNT_TO, ACCOUNT_ID_OF_ACCOUNT_FROM, 110L);
+        batch.add(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, 160L);
+        batch.add(UNKNOWN_ACCOUNT_ID, ACCOUNT_ID_OF_ACCOUNT_TO, 1L);
+        batch.add(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, -1L);
+        batch.add(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_FROM, 1L);
+        MoneyTransferService moneyTransferService = new MoneyTransferService(accountsRepositoryMock);
+
+        //WHEN
+        TransferResult[] results = moneyTransferService.transfer(batch);
+
+        //THEN
+        assertThat(results).containsExactly(
+                TransferResult.OK,
+                TransferResult.NOT_ENOUGH_MONEY,
+                TransferResult.OK,
+                TransferResult.OK,
+                TransferResult.UNKNOWN_ACCOUNT,
+                TransferResult.INVALID_AMOUNT,
+                TransferResult.SAME_ACCOUNT);
+        assertThat(accountFrom.getBalance()).isEqualTo(0L);
+        assertThat(accountTo.getBalance()).isEqualTo(160L);
+    }
+
+    @Test
+    public void givenFullBatchOfDistinctAccountsUnderMonitors_whenTransfer_thenAllTransfersAreApplied() {
+        //GIVEN
+        AccountsRepository accountsRepository =
+                new AccountsRepository(new LongOpenHashAccountStore(4 * TransferBatch.MAX_SIZE));
+        TransferBatch batch = new TransferBatch(TransferBatch.MAX_SIZE);
+        for (int i = 0; i < TransferBatch.MAX_SIZE; i++) {
+            accountsRepository.add(new Account(2L * i, 1L));
+            accountsRepository.add(new Account(2L * i + 1, 0L));
+            batch.add(2L * i, 2L * i + 1, 1L);
+        }
+        MoneyTransferService moneyTransferService = new MoneyTransferService(accountsRepository);
+        TransferStrategy transferStrategy = Account.getTransferStrategy();
+        Account.setTransferStrategy(TransferStrategy.forName("monitor"));
+
+        //WHEN
+        TransferResult[] results;
+        try {
+            results = moneyTransferService.transfer(batch);
+        } finally {
+            Account.setTransferStrategy(transferStrategy);
+        }
+
+        //THEN
+        assertThat(results).containsOnly(TransferResult.OK);
+        assertThat(accountsRepository.get(0L).getBalance()).isEqualTo(0L);
+        assertThat(accountsRepository.get(2L * TransferBatch.MAX_SIZE - 1).getBalance()).isEqualTo(1L);
+    }
+
+    @Test
+    public void givenMultiLegTransfer_whenTryTransfer_thenAllLegsAreAppliedAndJournaledAsTransfers() {
+        //GIVEN
+        Account accountFrom = new Account(ACCOUNT_ID_OF_ACCOUNT_FROM, 150L);
+        Account accountTo = new Account(ACCOUNT_ID_OF_ACCOUNT_TO, 10L);
+        Account anotherAccount = new Account(ACCOUNT_ID_OF_ANOTHER_ACCOUNT, 20L);
+        when(accountsRepositoryMock.get(ACCOUNT_ID_OF_ACCOUNT_FROM)).thenReturn(accountFrom);
+        when(accountsRepositoryMock.get(ACCOUNT_ID_OF_ACCOUNT_TO)).thenReturn(accountTo);
+        when(accountsRepositoryMock.get(ACCOUNT_ID_OF_ANOTHER_ACCOUNT)).thenReturn(anotherAccount);
+        when(journalMock.append(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, 60L)).thenReturn(6L);
+        when(journalMock.append(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ANOTHER_ACCOUNT, 40L)).thenReturn(7L);
+        MoneyTransferService moneyTransferService = new MoneyTransferService(accountsRepositoryMock, journalMock);
+
+        //WHEN
+        TransferResult result = moneyTransferService.tryTransfer(new MultiLegTransfer()
+                .add(ACCOUNT_ID_OF_ANOTHER_ACCOUNT, 40L)
+                .add(ACCOUNT_ID_OF_ACCOUNT_FROM, -AMOUNT_TO_TRANSFER)
+                .add(ACCOUNT_ID_OF_ACCOUNT_TO, 60L));
+
+        //THEN
+        assertThat(result).isEqualTo(TransferResult.OK);
+        assertThat(accountFrom.getBalance()).isEqualTo(50L);
+        assertThat(accountTo.getBalance()).isEqualTo(70L);
+        assertThat(anotherAccount.getBalance()).isEqualTo(60L);
+        InOrder inOrder = inOrder(journalMock);
+        inOrder.verify(journalMock).append(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, 60L);
+        inOrder.verify(journalMock).append(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ANOTHER_ACCOUNT, 40L);
+        inOrder.verify(journalMock).awaitDurable(7L);
+    }
+
+    @Test
+    public void givenMultiLegTransferWithoutEnoughMoneyForOneLeg_whenTryTransfer_thenNoLegIsApplied() {
+        //GIVEN
+        Account accountFrom = new Account(ACCOUNT_ID_OF_ACCOUNT_FROM, 150L);
+        Account accountTo = new Account(ACCOUNT_ID_OF_ACCOUNT_TO, 10L);
+        Account anotherAccount = new Account(ACCOUNT_ID_OF_ANOTHER_ACCOUNT, 20L);
+        when(accountsRepositoryMock.get(ACCOUNT_ID_OF_ACCOUNT_FROM)).thenReturn(accountFrom);
+        when(accountsRepositoryMock.get(ACCOUNT_ID_OF_ACCOUNT_TO)).thenReturn(accountTo);
+        when(accountsRepositoryMock.get(ACCOUNT_ID_OF_ANOTHER_ACCOUNT)).thenReturn(anotherAccount);
+        MoneyTransferService moneyTransferService = new MoneyTransferService(accountsRepositoryMock, journalMock);
+
+        //WHEN
+        TransferResult result = moneyTransferService.tryTransfer(new MultiLegTransfer()
+                .add(ACCOUNT_ID_OF_ACCOUNT_FROM, -AMOUNT_TO_TRANSFER)
+                .add(ACCOUNT_ID_OF_ANOTHER_ACCOUNT, -AMOUNT_TO_TRANSFER)
+                .add(ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT_TO_TRANSFER * 2));
+
+        //THEN
+        assertThat(result).isEqualTo(TransferResult.NOT_ENOUGH_MONEY);
+        assertThat(accountFrom.getBalance()).isEqualTo(150L);
+        assertThat(accountTo.getBalance()).isEqualTo(10L);
+        assertThat(anotherAccount.getBalance()).isEqualTo(20L);
+        verifyZeroInteractions(journalMock);
+    }
+
+    @Test
+    public void givenInvalidMultiLegTransfers_whenTryTransfer_thenTheyAreDeclined() {
+        //GIVEN
+        Account accountFrom = new Account(ACCOUNT_ID_OF_ACCOUNT_FROM, 150L);
+        Account accountTo = new Account(ACCOUNT_ID_OF_ACCOUNT_TO, 10L);
+        when(accountsRepositoryMock.get(ACCOUNT_ID_OF_ACCOUNT_FROM)).thenReturn(accountFrom);
+        when(accountsRepositoryMock.get(ACCOUNT_ID_OF_ACCOUNT_TO)).thenReturn(accountTo);
+        MoneyTransferService moneyTransferService = new MoneyTransferService(accountsRepositoryMock, journalMock);
+
+        //WHEN
+        TransferResult notNetZero = moneyTransferService.tryTransfer(new MultiLegTransfer()
+                .add(ACCOUNT_ID_OF_ACCOUNT_FROM, -AMOUNT_TO_TRANSFER)
+                .add(ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT_TO_TRANSFER + 1));
+        TransferResult overflow = moneyTransferService.tryTransfer(new MultiLegTransfer()
+                .add(ACCOUNT_ID_OF_ACCOUNT_FROM, Long.MIN_VALUE)
+                .add(ACCOUNT_ID_OF_ACCOUNT_TO, Long.MAX_VALUE)
+                .add(ACCOUNT_ID_OF_ANOTHER_ACCOUNT, 1L));
+        TransferResult singleLeg = moneyTransferService.tryTransfer(new MultiLegTransfer()
+                .add(ACCOUNT_ID_OF_ACCOUNT_FROM, 0L));
+        TransferResult sameAccount = moneyTransferService.tryTransfer(new MultiLegTransfer()
+                .add(ACCOUNT_ID_OF_ACCOUNT_FROM, -AMOUNT_TO_TRANSFER)
+                .add(ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT_TO_TRANSFER)
+                .add(ACCOUNT_ID_OF_ACCOUNT_FROM, 0L));
+        TransferResult unknownAccount = moneyTransferService.tryTransfer(new MultiLegTransfer()
+                .add(ACCOUNT_ID_OF_ACCOUNT_FROM, -AMOUNT_TO_TRANSFER)
+                .add(UNKNOWN_ACCOUNT_ID, AMOUNT_TO_TRANSFER));
+
+        //THEN
+        assertThat(notNetZero).isEqualTo(TransferResult.INVALID_AMOUNT);
+        assertThat(overflow).isEqualTo(TransferResult.INVALID_AMOUNT);
+        assertThat(singleLeg).isEqualTo(TransferResult.INVALID_AMOUNT);
+        assertThat(sameAccount).isEqualTo(TransferResult.SAME_ACCOUNT);
+        assertThat(unknownAccount).isEqualTo(TransferResult.UNKNOWN_ACCOUNT);
+        assertThat(accountFrom.getBalance()).isEqualTo(150L);
+        assertThat(accountTo.getBalance()).isEqualTo(10L);
+        verifyZeroInteractions(journalMock);
+    }
+
+    @Test
+    public void givenConcurrentTransfers_whenWithBalanceSnapshot_thenTotalBalanceIsConserved() throws Exception {
+        //GIVEN
+        AccountsRepository accountsRepository = new AccountsRepository(new LongOpenHashAccountStore(16));
+        accountsRepository.add(new Account(ACCOUNT_ID_OF_ACCOUNT_FROM, 1_000_000L));
+        accountsRepository.add(new Account(ACCOUNT_ID_OF_ACCOUNT_TO, 1_000_000L));
+        MoneyTransferService moneyTransferService = new MoneyTransferService(accountsRepository);
+        AtomicBoolean stopped = new AtomicBoolean();
+        Thread transfers = new Thread(() -> {
+            while (!stopped.get()) {
+                moneyTransferService.transfer(
+                        new MoneyTransferRequest(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, 1L));
+                moneyTransferService.transfer(
+                        new MoneyTransferRequest(ACCOUNT_ID_OF_ACCOUNT_TO, ACCOUNT_ID_OF_ACCOUNT_FROM, 1L));
+            }
+        });
+        transfers.start();
+
+        try {
+            for (int i = 0; i < 1000; i++) {
+                //WHEN
+                long total = moneyTransferService.withBalanceSnapshot((epoch, journalSequence) -> {
+                    long sum = 0;
+                    for (Account account : new Account[]{accountsRepository.get(ACCOUNT_ID_OF_ACCOUNT_FROM),
+                            accountsRepository.get(ACCOUNT_ID_OF_ACCOUNT_TO)}) {
+                        sum += account.getBalanceAt(epoch);
+                    }
+                    return sum;
+                });
+
+                //THEN
+                assertThat(total).isEqualTo(2_000_000L);
+            }
+        } finally {
+            stopped.set(true);
+            transfers.join();
+        }
+    }
+
+    @Test
+    public void givenConcurrentTransfers_whenGetBalances_thenTotalBalanceIsConserved() throws Exception {
+        //GIVEN
+        AccountsRepository accountsRepository = new AccountsRepository(new LongOpenHashAccountStore(16));
+        accountsRepository.add(new Account(ACCOUNT_ID_OF_ACCOUNT_FROM, 1_000_000L));
+        accountsRepository.add(new Account(ACCOUNT_ID_OF_ACCOUNT_TO, 1_000_000L));
+        MoneyTransferService moneyTransferService = new MoneyTransferService(accountsRepository);
+        AtomicBoolean stopped = new AtomicBoolean();
+        Thread transfers = new Thread(() -> {
+            while (!stopped.get()) {
+                moneyTransferService.tryTransfer(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, 1L);
+                moneyTransferService.tryTransfer(ACCOUNT_ID_OF_ACCOUNT_TO, ACCOUNT_ID_OF_ACCOUNT_FROM, 1L);
+            }
+        });
+        transfers.start();
+
+        try {
+            for (int i = 0; i < 10_000; i++) {
+                //WHEN
+                long[] balances =
+                        moneyTransferService.getBalances(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO);
+
+                //THEN
+                if (balances != null) {
+                    assertThat(balances[0] + balances[1]).isEqualTo(2_000_000L);
+                }
+            }
+        } finally {
+            stopped.set(true);
+            transfers.join();
+        }
+    }
+
+    @Test
+    public void givenTransfersSpendingMoneyOfConcurrentTransfers_whenJournalIsReplayed_thenNoPrefixOverdraws()
+            throws Exception {
+        //GIVEN
+        Path file = temporaryFolder.newFile().toPath();
+        AccountsRepository accountsRepository = new AccountsRepository(new LongOpenHashAccountStore(16));
+        accountsRepository.add(new Account(ACCOUNT_ID_OF_ACCOUNT_FROM, 100_000L));
+        accountsRepository.add(new Account(ACCOUNT_ID_OF_ACCOUNT_TO, 0L));
+        accountsRepository.add(new Account(ACCOUNT_ID_OF_ANOTHER_ACCOUNT, 0L));
+        try (FileTransferJournal journal = FileTransferJournal.open(file)) {
+            MoneyTransferService moneyTransferService = new MoneyTransferService(accountsRepository, journal);
+            CountDownLatch start = new CountDownLatch(1);
+            Thread credits = new Thread(() -> {
+                awaitUninterruptibly(start);
+                for (int i = 0; i < 100_000; i++) {
+                    moneyTransferService.tryTransferAsync(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, 1L);
+                }
+            });
+            //spends every unit as soon as it's credited
+            Thread spending = new Thread(() -> {
+                awaitUninterruptibly(start);
+                for (int i = 0; i < 200_000; i++) {
+                    moneyTransferService.tryTransferAsync(ACCOUNT_ID_OF_ACCOUNT_TO, ACCOUNT_ID_OF_ANOTHER_ACCOUNT, 1L);
+                }
+            });
+            credits.start();
+            spending.start();
+            start.countDown();
+            credits.join();
+            spending.join();
+            journal.awaitDurable(journal.getLastSequence());
+        }
+        AccountsRepository replayed = new AccountsRepository(new LongOpenHashAccountStore(16));
+        LowestBalanceAccount accountTo = new LowestBalanceAccount(ACCOUNT_ID_OF_ACCOUNT_TO, 0L);
+        replayed.add(new LowestBalanceAccount(ACCOUNT_ID_OF_ACCOUNT_FROM, 100_000L));
+        replayed.add(accountTo);
+        replayed.add(new LowestBalanceAccount(ACCOUNT_ID_OF_ANOTHER_ACCOUNT, 0L));
+
+        //WHEN
+        //records are applied one by one in sequence order, so every prefix the journal could be cut at is seen
+        FileTransferJournal.replay(file, replayed);
+
+        //THEN
+        assertThat(accountTo.lowestBalance).isNotNegative();
+        assertThat(replayed.get(ACCOUNT_ID_OF_ACCOUNT_TO).getBalance())
+                .isEqualTo(accountsRepository.get(ACCOUNT_ID_OF_ACCOUNT_TO).getBalance());
+        assertThat(replayed.get(ACCOUNT_ID_OF_ANOTHER_ACCOUNT).getBalance())
+                .isEqualTo(accountsRepository.get(ACCOUNT_ID_OF_ANOTHER_ACCOUNT).getBalance());
+    }
+
+    @Test
+    public void givenConcurrentCaptures_whenGetBalances_thenTotalBalanceIsConserved() throws Exception {
+        //GIVEN
+        AccountsRepository accountsRepository = new AccountsRepository(new LongOpenHashAccountStore(16));
+        accountsRepository.add(new Account(ACCOUNT_ID_OF_ACCOUNT_FROM, 1_000_000L));
+        accountsRepository.add(new Account(ACCOUNT_ID_OF_ACCOUNT_TO, 1_000_000L));
+        MoneyTransferService moneyTransferService = new MoneyTransferService(accountsRepository);
+        AtomicBoolean stopped = new AtomicBoolean();
+        Thread captures = new Thread(() -> {
+            while (!stopped.get()) {
+                long expiresAtMillis = System.currentTimeMillis() + HOLD_TTL_MILLIS;
+                moneyTransferService.capture(moneyTransferService.tryHold(ACCOUNT_ID_OF_ACCOUNT_FROM, 2L,
+                        expiresAtMillis), ACCOUNT_ID_OF_ACCOUNT_TO, 1L);
+                moneyTransferService.capture(moneyTransferService.tryHold(ACCOUNT_ID_OF_ACCOUNT_TO, 2L,
+                        expiresAtMillis), ACCOUNT_ID_OF_ACCOUNT_FROM, 1L);
+            }
+        });
+        captures.start();
+
+        try {
+            for (int i = 0; i < 1_000_000; i++) {
+                //WHEN
+                long[] balances =
+                        moneyTransferService.getBalances(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO);
+
+                //THEN
+                if (balances != null) {
+                    assertThat(balances[0] + balances[1]).isEqualTo(2_000_000L);
+                }
+            }
+        } finally {
+            stopped.set(true);
+            captures.join();
+        }
+    }
+
+    @Test
+    public void givenChangeInFlightAndSnapshotBeingWritten_whenGetBalances_thenNullIsReturnedWithoutWaiting()
+            throws Exception {
+        //GIVEN
+        AccountsRepository accountsRepository = new AccountsRepository(new LongOpenHashAccountStore(16));
+        accountsRepository.add(new Account(ACCOUNT_ID_OF_ACCOUNT_FROM, 150L) {
+            {
+                //never ends, like a transfer which takes longer than every read attempt
+                beginChange();
+            }
+        });
+        accountsRepository.add(new Account(ACCOUNT_ID_OF_ACCOUNT_TO, 10L));
+        MoneyTransferService moneyTransferService = new MoneyTransferService(accountsRepository);
+        CountDownLatch snapshotStarted = new CountDownLatch(1);
+        CountDownLatch balancesRead = new CountDownLatch(1);
+        Thread snapshot = new Thread(() -> moneyTransferService.withBalanceSnapshot((epoch, journalSequence) -> {
+            snapshotStarted.countDown();
+            try {
+                return balancesRead.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }));
+        snapshot.start();
+        snapshotStarted.await();
+
+        try {
+            //WHEN
+            long[] balances = moneyTransferService.getBalances(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO);
+
+            //THEN
+            assertThat(balances).isNull();
+        } finally {
+            balancesRead.countDown();
+            snapshot.join();
+        }
+    }
+
+    @Test
+    public void givenOneAccount_whenGetBalances_thenItsBalanceIsReadDirectly() {
+        //GIVEN
+        when(accountFromMock.getBalance()).thenReturn(150L);
+        MoneyTransferService moneyTransferService = new MoneyTransferService(accountsRepositoryMock);
+
+        //WHEN
+        long[] balances = moneyTransferService.getBalances(ACCOUNT_ID_OF_ACCOUNT_FROM);
+
+        //THEN
+        assertThat(balances).containsExactly(150L);
+        verify(accountFromMock).getBalance();
+    }
+
+    @Test
+    public void givenNotExistingAccount_whenGetBalances_thenThrowsAnException() {
+        //WHEN
+        MoneyTransferService moneyTransferService = new MoneyTransferService(accountsRepositoryMock);
+
+        //THEN
+        assertThatThrownBy(() -> moneyTransferService.getBalances(ACCOUNT_ID_OF_ACCOUNT_FROM, UNKNOWN_ACCOUNT_ID))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Can't find an account with id 3");
+    }
+
+    @Test
+    public void givenHold_whenCapture_thenCapturedAmountIsTransferredAndJournaled() {
+        //GIVEN
+        Account accountFrom = new Account(ACCOUNT_ID_OF_ACCOUNT_FROM, 150L);
+        Account accountTo = new Account(ACCOUNT_ID_OF_ACCOUNT_TO, 10L);
+        when(accountsRepositoryMock.get(ACCOUNT_ID_OF_ACCOUNT_FROM)).thenReturn(accountFrom);
+        when(accountsRepositoryMock.get(ACCOUNT_ID_OF_ACCOUNT_TO)).thenReturn(accountTo);
+        when(journalMock.append(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, 60L)).thenReturn(7L);
+        MoneyTransferService moneyTransferService = new MoneyTransferService(accountsRepositoryMock, journalMock);
+        long holdId = moneyTransferService.tryHold(ACCOUNT_ID_OF_ACCOUNT_FROM, AMOUNT_TO_TRANSFER,
+                System.currentTimeMillis() + HOLD_TTL_MILLIS);
+
+        //WHEN
+        TransferResult captured = moneyTransferService.capture(holdId, ACCOUNT_ID_OF_ACCOUNT_TO, 60L);
+        TransferResult capturedTwice = moneyTransferService.capture(holdId, ACCOUNT_ID_OF_ACCOUNT_TO, 40L);
+
+        //THEN
+        assertThat(captured).isEqualTo(TransferResult.OK);
+        assertThat(capturedTwice).isEqualTo(TransferResult.UNKNOWN_HOLD);
+        assertThat(accountFrom.getBalance()).isEqualTo(90L);
+        assertThat(accountFrom.getHeld()).isZero();
+        assertThat(accountTo.getBalance()).isEqualTo(70L);
+        verify(journalMock, times(1)).awaitDurable(7L);
+    }
+
+    @Test
+    public void givenNotEnoughAvailableMoney_whenTryHold_thenItIsDeclined() {
+        //GIVEN
+        Account accountFrom = new Account(ACCOUNT_ID_OF_ACCOUNT_FROM, 150L);
+        when(accountsRepositoryMock.get(ACCOUNT_ID_OF_ACCOUNT_FROM)).thenReturn(accountFrom);
+        MoneyTransferService moneyTransferService = new MoneyTransferService(accountsRepositoryMock, journalMock);
+        moneyTransferService.tryHold(ACCOUNT_ID_OF_ACCOUNT_FROM, AMOUNT_TO_TRANSFER,
+                System.currentTimeMillis() + HOLD_TTL_MILLIS);
+
+        //WHEN
+        long notEnoughMoney = moneyTransferService.tryHold(ACCOUNT_ID_OF_ACCOUNT_FROM, AMOUNT_TO_TRANSFER, 0L);
+        long unknownAccount = moneyTransferService.tryHold(UNKNOWN_ACCOUNT_ID, AMOUNT_TO_TRANSFER, 0L);
+
+        //THEN
+        assertThat(MoneyTransferService.declineOf(notEnoughMoney)).isEqualTo(TransferResult.NOT_ENOUGH_MONEY);
+        assertThat(MoneyTransferService.declineOf(unknownAccount)).isEqualTo(TransferResult.UNKNOWN_ACCOUNT);
+        assertThat(accountFrom.getAvailableBalance()).isEqualTo(50L);
+    }
+
+    @Test
+    public void givenMoneyOnHold_whenTransferBatch_thenDebitsAreCheckedAgainstAvailableBalance() {
+        //GIVEN
+        Account accountFrom = new Account(ACCOUNT_ID_OF_ACCOUNT_FROM, 150L);
+        Account accountTo = new Account(ACCOUNT_ID_OF_ACCOUNT_TO, 0L);
+        when(accountsRepositoryMock.get(ACCOUNT_ID_OF_ACCOUNT_FROM)).thenReturn(accountFrom);
+        when(accountsRepositoryMock.get(ACCOUNT_ID_OF_ACCOUNT_TO)).thenReturn(accountTo);
+        MoneyTransferService moneyTransferService = new MoneyTransferService(accountsRepositoryMock, journalMock);
+        moneyTransferService.tryHold(ACCOUNT_ID_OF_ACCOUNT_FROM, AMOUNT_TO_TRANSFER,
+                System.currentTimeMillis() + HOLD_TTL_MILLIS);
+        TransferBatch batch = new TransferBatch();
+        batch.add(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, 50L);
+        batch.add(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, 1L);
+        batch.add(ACCOUNT_ID_OF_ACCOUNT_TO, ACCOUNT_ID_OF_ACCOUNT_FROM, 10L);
+
+        //WHEN
+        TransferResult[] results = moneyTransferService.transfer(batch);
+
+        //THEN
+        assertThat(results).containsExactly(TransferResult.OK, TransferResult.NOT_ENOUGH_MONEY, TransferResult.OK);
+        assertThat(accountFrom.getBalance()).isEqualTo(110L);
+        assertThat(accountFrom.getAvailableBalance()).isEqualTo(10L);
+        assertThat(accountTo.getBalance()).isEqualTo(40L);
+    }
+
+    @Test
+    public void givenExpiredHold_whenReleaseExpiredHolds_thenMoneyIsAvailableAndHoldCantBeCaptured() {
+        //GIVEN
+        Account accountFrom = new Account(ACCOUNT_ID_OF_ACCOUNT_FROM, 150L);
+        when(accountsRepositoryMock.get(ACCOUNT_ID_OF_ACCOUNT_FROM)).thenReturn(accountFrom);
+        MoneyTransferService moneyTransferService = new MoneyTransferService(accountsRepositoryMock, journalMock);
+        long now = System.currentTimeMillis();
+        long holdId = moneyTransferService.tryHold(ACCOUNT_ID_OF_ACCOUNT_FROM, AMOUNT_TO_TRANSFER, now);
+
+        //WHEN
+        int released = moneyTransferService.releaseExpiredHolds(now + 1_000L);
+
+        //THEN
+        assertThat(released).isEqualTo(1);
+        assertThat(accountFrom.getAvailableBalance()).isEqualTo(150L);
+        assertThat(moneyTransferService.capture(holdId, ACCOUNT_ID_OF_ACCOUNT_TO, AMOUNT_TO_TRANSFER))
+                .isEqualTo(TransferResult.UNKNOWN_HOLD);
+        assertThat(moneyTransferService.release(holdId)).isEqualTo(TransferResult.UNKNOWN_HOLD);
+        verifyZeroInteractions(journalMock);
+    }
+
+    @Test
+    public void givenConcurrentTransfers_whenReconcile_thenNoDriftIsReported() throws Exception {
+        //GIVEN
+        AccountsRepository accountsRepository = new AccountsRepository(new LongOpenHashAccountStore(16));
+        accountsRepository.add(new Account(ACCOUNT_ID_OF_ACCOUNT_FROM, 1_000_000L));
+        accountsRepository.add(new Account(ACCOUNT_ID_OF_ACCOUNT_TO, 1_000_000L));
+        MoneyTransferService moneyTransferService =
+                new MoneyTransferService(accountsRepository, TransferJournal.NONE, new TransferHistory(1 << 20));
+        AtomicBoolean stopped = new AtomicBoolean();
+        Thread transfers = new Thread(() -> {
+            while (!stopped.get()) {
+                moneyTransferService.tryTransfer(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, 1L);
+                moneyTransferService.tryTransfer(ACCOUNT_ID_OF_ACCOUNT_TO, ACCOUNT_ID_OF_ACCOUNT_FROM, 1L);
+            }
+        });
+        transfers.start();
+
+        try (Reconciliation reconciliation = new Reconciliation(1, 0)) {
+            int comparedReports = 0;
+            for (int i = 0; i < 100; i++) {
+                //WHEN
+                ReconciliationReport report = moneyTransferService.reconcile(reconciliation);
+
+                //THEN
+                assertThat(report.getTotal()).isEqualTo(2_000_000L);
+                assertThat(report.hasDrift()).isFalse();
+                comparedReports += report.isRangesCompared() ? 1 : 0;
+            }
+            assertThat(comparedReports).isPositive();
+        } finally {
+            stopped.set(true);
+            transfers.join();
+        }
+    }
+
+    //a mocked account which applies the transfer appends it to the log as a real one does
+    private static Answer<Long> appendedToLog() {
+        return invocation -> invocation.<TransferLog>getArgument(2)
+                .append(ACCOUNT_ID_OF_ACCOUNT_FROM, ACCOUNT_ID_OF_ACCOUNT_TO, invocation.<Long>getArgument(1));
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class LowestBalanceAccount extends Account {
+        private long lowestBalance;
+
+        private LowestBalanceAccount(long accountId, long initialBalance) {
+            super(accountId, initialBalance);
+            this.lowestBalance = initialBalance;
+        }
+
+        @Override
+        public void add(long extraAmount) {
+            super.add(extraAmount);
+            lowestBalance = Math.min(lowestBalance, getBalance());
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package snapshot;
+
+import model.Account;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import repository.AccountsRepository;
+import repository.LongOpenHashAccountStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SnapshotDirectoryTest {
+    private static final int NUMBER_OF_ACCOUNTS = 10_000;
+    @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void givenSnapshot_whenLoadLatest_thenAccountsAndJournalSequenceAreRestored() {
+        //GIVEN
+        SnapshotDirectory snapshotDirectory = new SnapshotDirectory(temporaryFolder.getRoot().toPath());
+        AccountsRepository accountsRepository = createAccountsRepository();
+        for (long accountId = 0; accountId < NUMBER_OF_ACCOUNTS; accountId++) {
+            accountsRepository.add(new Account(accountId, accountId * 10));
+        }
+        long epoch = Account.startSnapshotEpoch();
+        accountsRepository.get(1L).transfer(accountsRepository.get(2L), 5L);
+        snapshotDirectory.write(accountsRepository, epoch, 42L);
+        AccountsRepository restoredAccountsRepository = createAccountsRepository();
+
+        //WHEN
+        long journalSequence = snapshotDirectory.loadLatest(restoredAccountsRepository);
+
+        //THEN
+        assertThat(journalSequence).isEqualTo(42L);
+        assertThat(restoredAccountsRepository.size()).isEqualTo(NUMBER_OF_ACCOUNTS);
+        for (long accountId = 0; accountId < NUMBER_OF_ACCOUNTS; accountId++) {
+            //transfer after the start of the epoch is not in the snapshot
+            assertThat(restoredAccountsRepository.get(accountId).getBalance()).isEqualTo(accountId * 10);
+        }
+    }
+
+    @Test
+    public void givenSeveralSnapshots_whenWrite_thenOnlyTwoLatestAreKeptAndTheLatestIsLoaded() {
+        //GIVEN
+        SnapshotDirectory snapshotDirectory = new SnapshotDirectory(temporaryFolder.getRoot().toPath());
+        AccountsRepository accountsRepository = createAccountsRepository();
+        accountsRepository.add(new Account(1L, 10L));
+
+        //WHEN
+        for (long journalSequence = 1; journalSequence <= 10; journalSequence++) {
+            accountsRepository.get(1L).add(1L);
+            snapshotDirectory.write(accountsRepository, Account.startSnapshotEpoch(), journalSequence);
+        }
+
+        //THEN
+        assertThat(snapshotDirectory.snapshots()).hasSize(2);
+        AccountsRepository restoredAccountsRepository = createAccountsRepository();
+        assertThat(snapshotDirectory.loadLatest(restoredAccountsRepository)).isEqualTo(10L);
+        assertThat(restoredAccountsRepository.get(1L).getBalance()).isEqualTo(20L);
+    }
+
+    @Test
+    public void givenAccountsAfterTheLatestSnapshot_whenLoadLatest_thenAccountsAreKept() {
+        //GIVEN
+        SnapshotDirectory snapshotDirectory = new SnapshotDirectory(temporaryFolder.getRoot().toPath());
+        AccountsRepository accountsRepository = createAccountsRepository();
+        accountsRepository.add(new Account(1L, 10L));
+        snapshotDirectory.write(accountsRepository, Account.startSnapshotEpoch(), 5L);
+        accountsRepository.get(1L).add(1L);
+
+        //WHEN
+        long journalSequence = snapshotDirectory.loadLatest(accountsRepository, 7L);
+
+        //THEN
+        assertThat(journalSequence).isEqualTo(7L);
+        assertThat(accountsRepository.get(1L).getBalance()).isEqualTo(11L);
+        assertThat(snapshotDirectory.loadLatest(accountsRepository, 3L)).isEqualTo(5L);
+        assertThat(accountsRepository.get(1L).getBalance()).isEqualTo(10L);
+    }
+
+    @Test
+    public void givenNoSnapshots_whenLoadLatest_thenNothingIsLoaded() {
+        //GIVEN
+        SnapshotDirectory snapshotDirectory = new SnapshotDirectory(temporaryFolder.getRoot().toPath().resolve("none"));
+        AccountsRepository accountsRepository = createAccountsRepository();
+
+        //WHEN
+        long journalSequence = snapshotDirectory.loadLatest(accountsRepository);
+
+        //THEN
+        assertThat(journalSequence).isEqualTo(0L);
+        assertThat(accountsRepository.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void givenTruncatedSnapshot_whenLoad_thenThrowAnException() throws IOException {
+        //GIVEN
+        SnapshotDirectory snapshotDirectory = new SnapshotDirectory(temporaryFolder.getRoot().toPath());
+        AccountsRepository accountsRepository = createAccountsRepository();
+        accountsRepository.add(new Account(1L, 10L));
+        snapshotDirectory.write(accountsRepository, Account.startSnapshotEpoch(), 1L);
+        Path snapshot = snapshotDirectory.snapshots().get(0);
+        byte[] content = Files.readAllBytes(snapshot);
+        Files.write(snapshot, Arrays.copyOf(content, content.length - 1));
+
+        //WHEN + THEN
+        assertThatThrownBy(() -> SnapshotDirectory.load(snapshot, createAccountsRepository()))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    private static AccountsRepository createAccountsRepository() {
+        return new AccountsRepository(new LongOpenHashAccountStore(16));
+    }
+}
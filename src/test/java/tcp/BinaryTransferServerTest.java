@@ -0,0 +1,184 @@
+package tcp;
+
+import admission.ConcurrencyLimiter;
+import model.Account;
+import model.TransferResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import repository.AccountsRepository;
+import service.MoneyTransferService;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BinaryTransferServerTest {
+    private static final AccountsRepository ACCOUNTS_REPOSITORY = AccountsRepository.getInstance();
+    private static final long FIRST_ACCOUNT_ID = 7001L;
+    private static final long SECOND_ACCOUNT_ID = 7002L;
+    private static final long NON_EXISTING_ACCOUNT_ID = 7003L;
+    private static final long INITIAL_BALANCE = 1_000L;
+    private static final int EVENT_LOOPS = 2;
+    private BinaryTransferServer server;
+    private SocketChannel client;
+
+    @Before
+    public void setUp() throws Exception {
+        ACCOUNTS_REPOSITORY.add(new Account(FIRST_ACCOUNT_ID, INITIAL_BALANCE));
+        ACCOUNTS_REPOSITORY.add(new Account(SECOND_ACCOUNT_ID, INITIAL_BALANCE));
+        server = new BinaryTransferServer(
+                MoneyTransferService.getInstance(), new InetSocketAddress("localhost", 0), EVENT_LOOPS);
+        client = SocketChannel.open(new InetSocketAddress("localhost", server.getPort()));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void givenPipelinedRequests_whenSent_thenEveryRequestIsAnsweredWithItsResultCode() throws Exception {
+        //GIVEN
+        ByteBuffer requests = ByteBuffer.allocate(3 * BinaryTransferServer.REQUEST_SIZE);
+        putRequest(requests, 1L, FIRST_ACCOUNT_ID, SECOND_ACCOUNT_ID, 100L);
+        putRequest(requests, 2L, FIRST_ACCOUNT_ID, SECOND_ACCOUNT_ID, INITIAL_BALANCE);
+        putRequest(requests, 3L, FIRST_ACCOUNT_ID, NON_EXISTING_ACCOUNT_ID, 100L);
+        requests.flip();
+
+        //WHEN
+        writeFully(requests);
+        Map<Long, Byte> results = readResponses(3);
+
+        //THEN
+        assertThat(results).containsEntry(1L, (byte) TransferResult.OK.ordinal())
+                .containsEntry(2L, (byte) TransferResult.NOT_ENOUGH_MONEY.ordinal())
+                .containsEntry(3L, (byte) TransferResult.UNKNOWN_ACCOUNT.ordinal());
+        assertThat(ACCOUNTS_REPOSITORY.get(FIRST_ACCOUNT_ID).getBalance()).isEqualTo(INITIAL_BALANCE - 100L);
+        assertThat(ACCOUNTS_REPOSITORY.get(SECOND_ACCOUNT_ID).getBalance()).isEqualTo(INITIAL_BALANCE + 100L);
+    }
+
+    @Test
+    public void givenRequestSplitAcrossWrites_whenSent_thenItIsAppliedOnceComplete() throws Exception {
+        //GIVEN
+        ByteBuffer request = ByteBuffer.allocate(BinaryTransferServer.REQUEST_SIZE);
+        putRequest(request, 1L, FIRST_ACCOUNT_ID, SECOND_ACCOUNT_ID, 100L);
+        request.flip();
+
+        //WHEN
+        request.limit(BinaryTransferServer.REQUEST_SIZE / 2 + 1);
+        writeFully(request);
+        Thread.sleep(50);
+        request.limit(BinaryTransferServer.REQUEST_SIZE);
+        writeFully(request);
+        Map<Long, Byte> results = readResponses(1);
+
+        //THEN
+        assertThat(results).containsEntry(1L, (byte) TransferResult.OK.ordinal());
+        assertThat(ACCOUNTS_REPOSITORY.get(SECOND_ACCOUNT_ID).getBalance()).isEqualTo(INITIAL_BALANCE + 100L);
+    }
+
+    @Test
+    public void givenMoreRequestsThanInFlightLimit_whenPipelined_thenAllAreAnswered() throws Exception {
+        //GIVEN
+        int count = EventLoop.MAX_IN_FLIGHT_PER_CONNECTION * 20;
+        ByteBuffer requests = ByteBuffer.allocate(count * BinaryTransferServer.REQUEST_SIZE);
+        for (int i = 0; i < count; i++) {
+            //every other transfer sends the money back, so balances never run out
+            boolean back = i % 2 == 1;
+            putRequest(requests, i, back ? SECOND_ACCOUNT_ID : FIRST_ACCOUNT_ID,
+                    back ? FIRST_ACCOUNT_ID : SECOND_ACCOUNT_ID, 1L);
+        }
+        requests.flip();
+
+        //WHEN
+        //responses are read while requests are written, the server doesn't read from a client which doesn't read
+        CompletableFuture<Void> written = CompletableFuture.runAsync(() -> {
+            try {
+                writeFully(requests);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Map<Long, Byte> results = readResponses(count);
+        written.join();
+
+        //THEN
+        assertThat(results).hasSize(count);
+        assertThat(results.values()).containsOnly((byte) TransferResult.OK.ordinal());
+        assertThat(ACCOUNTS_REPOSITORY.get(FIRST_ACCOUNT_ID).getBalance()).isEqualTo(INITIAL_BALANCE);
+        assertThat(ACCOUNTS_REPOSITORY.get(SECOND_ACCOUNT_ID).getBalance()).isEqualTo(INITIAL_BALANCE);
+    }
+
+    @Test
+    public void givenLimitReached_whenSent_thenRequestIsRejectedAndNotApplied() throws Exception {
+        //GIVEN
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, 1.0);
+        limiter.tryAcquire(ConcurrencyLimiter.NO_BUDGET);
+        ByteBuffer request = ByteBuffer.allocate(BinaryTransferServer.REQUEST_SIZE);
+        putRequest(request, 1L, FIRST_ACCOUNT_ID, SECOND_ACCOUNT_ID, 100L);
+        request.flip();
+        Map<Long, Byte> results;
+
+        //WHEN
+        try (BinaryTransferServer limitedServer = new BinaryTransferServer(MoneyTransferService.getInstance(),
+                limiter, new InetSocketAddress("localhost", 0), 1);
+             SocketChannel limitedClient = SocketChannel.open(
+                     new InetSocketAddress("localhost", limitedServer.getPort()))) {
+            writeFully(limitedClient, request);
+            results = readResponses(limitedClient, 1);
+        }
+
+        //THEN
+        assertThat(results).containsEntry(1L, BinaryTransferServer.REJECTED);
+        assertThat(ACCOUNTS_REPOSITORY.get(FIRST_ACCOUNT_ID).getBalance()).isEqualTo(INITIAL_BALANCE);
+        assertThat(limiter.getInFlight()).isEqualTo(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void givenNoEventLoops_whenCreated_thenIllegalArgumentException() throws Exception {
+        //WHEN
+        new BinaryTransferServer(MoneyTransferService.getInstance(), new InetSocketAddress("localhost", 0), 0);
+    }
+
+    private static void putRequest(ByteBuffer buffer, long correlationId, long accountFromId, long accountToId,
+                                   long amount) {
+        buffer.putLong(correlationId).putLong(accountFromId).putLong(accountToId).putLong(amount);
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        writeFully(client, buffer);
+    }
+
+    private static void writeFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private Map<Long, Byte> readResponses(int count) throws IOException {
+        return readResponses(client, count);
+    }
+
+    private static Map<Long, Byte> readResponses(SocketChannel channel, int count) throws IOException {
+        ByteBuffer responses = ByteBuffer.allocate(count * BinaryTransferServer.RESPONSE_SIZE);
+        while (responses.hasRemaining()) {
+            if (channel.read(responses) < 0) {
+                throw new IOException("Connection closed");
+            }
+        }
+        responses.flip();
+        Map<Long, Byte> results = new HashMap<>();
+        while (responses.hasRemaining()) {
+            results.put(responses.getLong(), responses.get());
+        }
+        return results;
+    }
+}